@@ -0,0 +1,63 @@
+package org.gescobar.management.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.DynamicMBean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author German Escobar
+ *
+ * Measures getAttribute and setAttribute on MBeans whose metadata was generated at
+ * compile time and on MBeans built with reflection. The cost by the number of 
+ * attributes of the MBean is measured by {@link WidthBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class AttributeBenchmark {
+
+    @Param({"generated", "reflective"})
+    public String path;
+
+    private DynamicMBean mBean;
+
+    private Attribute counter = new Attribute("counter", 42L);
+
+    @Setup
+    public void setup() throws Exception {
+	BenchmarkMBeanFactory factory = new BenchmarkMBeanFactory();
+
+	if ("generated".equals(path)) {
+	    mBean = factory.createMBean(new GeneratedBean());
+	} else {
+	    mBean = factory.createMBean(new ReflectiveBean());
+	}
+    }
+
+    @Benchmark
+    public Object getAttribute() throws Exception {
+	return mBean.getAttribute("counter");
+    }
+
+    @Benchmark
+    public void setAttribute() throws Exception {
+	mBean.setAttribute(counter);
+    }
+
+}
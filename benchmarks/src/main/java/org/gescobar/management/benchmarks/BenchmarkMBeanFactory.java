@@ -0,0 +1,20 @@
+package org.gescobar.management.benchmarks;
+
+import javax.enterprise.inject.spi.AnnotatedType;
+
+import org.gescobar.management.cdi.AbstractMBeanFactory;
+
+/**
+ * @author German Escobar
+ *
+ * An {@link org.gescobar.management.MBeanFactory} that doesn't need a CDI container.
+ */
+public class BenchmarkMBeanFactory extends AbstractMBeanFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected AnnotatedType<? extends Object> getAnnotatedType(Object instance) throws Exception {
+	return new ReflectionAnnotatedType<Object>((Class<Object>) instance.getClass());
+    }
+
+}
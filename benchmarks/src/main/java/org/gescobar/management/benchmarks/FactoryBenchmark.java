@@ -0,0 +1,84 @@
+package org.gescobar.management.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.DynamicMBean;
+
+import org.gescobar.management.cdi.AbstractMBeanFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author German Escobar
+ *
+ * Measures the creation of MBeans, with the metadata cache cleared before each 
+ * invocation (cold) and with the metadata already cached (warm).
+ * 
+ * A cold creation can't be repeated without clearing the cache, so it's measured
+ * as single shots: each iteration is one invocation, and the cache is cleared 
+ * before the iteration, outside of the measured time. A setup at the invocation
+ * level would be measured with the invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FactoryBenchmark {
+
+    @Param({"generated", "reflective"})
+    public String path;
+
+    private BenchmarkMBeanFactory factory;
+
+    private Object instance;
+
+    @Setup
+    public void setup() {
+	factory = new BenchmarkMBeanFactory();
+
+	if ("generated".equals(path)) {
+	    instance = new GeneratedBean();
+	} else {
+	    instance = new ReflectiveBean();
+	}
+    }
+
+    @Benchmark
+    public DynamicMBean warm() throws Exception {
+	return factory.createMBean(instance);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 100, batchSize = 1)
+    @Measurement(iterations = 1000, batchSize = 1)
+    public DynamicMBean cold(ColdCache cache) throws Exception {
+	return factory.createMBean(instance);
+    }
+
+    /**
+     * Clears the metadata cache before each iteration, which is a single invocation.
+     */
+    @State(Scope.Thread)
+    public static class ColdCache {
+
+	@Setup(Level.Iteration)
+	public void clear() {
+	    AbstractMBeanFactory.getMetadataCache().clear();
+	}
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package org.gescobar.management.benchmarks;
+
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedAttribute;
+import org.gescobar.management.ManagedOperation;
+
+/**
+ * @author German Escobar
+ *
+ * Its members are visible to generated code, so the annotation processor generates
+ * its metadata and the reflective path is never used.
+ */
+@MBean("org.gescobar.benchmarks:type=Generated")
+public class GeneratedBean {
+
+    @ManagedAttribute
+    long counter;
+
+    @ManagedAttribute
+    String name = "generated";
+
+    @ManagedOperation
+    public long add(long value) {
+	counter += value;
+	return counter;
+    }
+
+    @ManagedOperation
+    public long add(long value, int times) {
+	counter += value * times;
+	return counter;
+    }
+
+    @ManagedOperation
+    public long add(String value) {
+	return add(Long.parseLong(value));
+    }
+
+}
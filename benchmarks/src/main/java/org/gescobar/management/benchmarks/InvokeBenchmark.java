@@ -0,0 +1,83 @@
+package org.gescobar.management.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.DynamicMBean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author German Escobar
+ *
+ * Measures the invocation of overloaded operations, with the exact signature of the
+ * method and with the names of the wrapper types (as some JMX clients send them).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class InvokeBenchmark {
+
+    private static final String[] LONG_SIGNATURE = new String[] { long.class.getName() };
+
+    private static final String[] LONG_INT_SIGNATURE = new String[] { long.class.getName(), int.class.getName() };
+
+    private static final String[] STRING_SIGNATURE = new String[] { String.class.getName() };
+
+    private static final String[] WRAPPER_SIGNATURE = new String[] { Long.class.getName() };
+
+    @Param({"generated", "reflective"})
+    public String path;
+
+    private DynamicMBean mBean;
+
+    private Object[] longParams = new Object[] { 1L };
+
+    private Object[] longIntParams = new Object[] { 1L, 2 };
+
+    private Object[] stringParams = new Object[] { "1" };
+
+    @Setup
+    public void setup() throws Exception {
+	BenchmarkMBeanFactory factory = new BenchmarkMBeanFactory();
+
+	if ("generated".equals(path)) {
+	    mBean = factory.createMBean(new GeneratedBean());
+	} else {
+	    mBean = factory.createMBean(new ReflectiveBean());
+	}
+    }
+
+    @Benchmark
+    public Object invokeLong() throws Exception {
+	return mBean.invoke("add", longParams, LONG_SIGNATURE);
+    }
+
+    @Benchmark
+    public Object invokeLongInt() throws Exception {
+	return mBean.invoke("add", longIntParams, LONG_INT_SIGNATURE);
+    }
+
+    @Benchmark
+    public Object invokeString() throws Exception {
+	return mBean.invoke("add", stringParams, STRING_SIGNATURE);
+    }
+
+    @Benchmark
+    public Object invokeWrapperSignature() throws Exception {
+	return mBean.invoke("add", longParams, WRAPPER_SIGNATURE);
+    }
+
+}
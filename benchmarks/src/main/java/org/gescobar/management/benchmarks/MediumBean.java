@@ -0,0 +1,44 @@
+package org.gescobar.management.benchmarks;
+
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedAttribute;
+
+/**
+ * @author German Escobar
+ *
+ * An MBean with 10 attributes, used by {@link WidthBenchmark}.
+ */
+@MBean("org.gescobar.benchmarks:type=Medium")
+public class MediumBean {
+
+    @ManagedAttribute
+    long attribute0 = 0;
+
+    @ManagedAttribute
+    long attribute1 = 1;
+
+    @ManagedAttribute
+    long attribute2 = 2;
+
+    @ManagedAttribute
+    long attribute3 = 3;
+
+    @ManagedAttribute
+    long attribute4 = 4;
+
+    @ManagedAttribute
+    long attribute5 = 5;
+
+    @ManagedAttribute
+    long attribute6 = 6;
+
+    @ManagedAttribute
+    long attribute7 = 7;
+
+    @ManagedAttribute
+    long attribute8 = 8;
+
+    @ManagedAttribute
+    long attribute9 = 9;
+
+}
@@ -0,0 +1,17 @@
+package org.gescobar.management.benchmarks;
+
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedAttribute;
+
+/**
+ * @author German Escobar
+ *
+ * An MBean with 1 attribute, used by {@link WidthBenchmark}.
+ */
+@MBean("org.gescobar.benchmarks:type=Narrow")
+public class NarrowBean {
+
+    @ManagedAttribute
+    long attribute0 = 0;
+
+}
@@ -0,0 +1,297 @@
+package org.gescobar.management.benchmarks;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.enterprise.inject.spi.Annotated;
+import javax.enterprise.inject.spi.AnnotatedCallable;
+import javax.enterprise.inject.spi.AnnotatedConstructor;
+import javax.enterprise.inject.spi.AnnotatedField;
+import javax.enterprise.inject.spi.AnnotatedMethod;
+import javax.enterprise.inject.spi.AnnotatedParameter;
+import javax.enterprise.inject.spi.AnnotatedType;
+
+/**
+ * @author German Escobar
+ *
+ * @param <X>
+ * 
+ * An AnnotatedType built with plain reflection, so the factories can be 
+ * benchmarked without a CDI container.
+ */
+public class ReflectionAnnotatedType<X> extends ReflectionAnnotated implements AnnotatedType<X> {
+
+    private final Class<X> type;
+
+    public ReflectionAnnotatedType(Class<X> type) {
+	super(type, type);
+	this.type = type;
+    }
+
+    @Override
+    public Class<X> getJavaClass() {
+	return type;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<AnnotatedConstructor<X>> getConstructors() {
+	Set<AnnotatedConstructor<X>> constructors = new HashSet<AnnotatedConstructor<X>>();
+	for (Constructor<?> c : type.getDeclaredConstructors()) {
+	    constructors.add(new ReflectionAnnotatedConstructor<X>((Constructor<X>) c, this));
+	}
+
+	return constructors;
+    }
+
+    @Override
+    public Set<AnnotatedMethod<? super X>> getMethods() {
+	Set<AnnotatedMethod<? super X>> methods = new HashSet<AnnotatedMethod<? super X>>();
+	for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+	    for (Method m : c.getDeclaredMethods()) {
+		if (!m.isSynthetic()) {
+		    methods.add(new ReflectionAnnotatedMethod<X>(m, this));
+		}
+	    }
+	}
+
+	return methods;
+    }
+
+    @Override
+    public Set<AnnotatedField<? super X>> getFields() {
+	Set<AnnotatedField<? super X>> fields = new HashSet<AnnotatedField<? super X>>();
+	for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+	    for (Field f : c.getDeclaredFields()) {
+		if (!f.isSynthetic()) {
+		    fields.add(new ReflectionAnnotatedField<X>(f, this));
+		}
+	    }
+	}
+
+	return fields;
+    }
+
+    private static <X> List<AnnotatedParameter<X>> parameters(AnnotatedCallable<X> callable, 
+	    Class<?>[] types, Annotation[][] annotations) {
+	List<AnnotatedParameter<X>> parameters = new ArrayList<AnnotatedParameter<X>>();
+	for (int i = 0; i < types.length; i++) {
+	    parameters.add(new ReflectionAnnotatedParameter<X>(callable, i, types[i], annotations[i]));
+	}
+
+	return parameters;
+    }
+
+    private static class ReflectionAnnotatedConstructor<X> extends ReflectionAnnotated 
+    	    implements AnnotatedConstructor<X> {
+
+	private final Constructor<X> constructor;
+
+	private final AnnotatedType<X> declaringType;
+
+	ReflectionAnnotatedConstructor(Constructor<X> constructor, AnnotatedType<X> declaringType) {
+	    super(constructor, constructor.getDeclaringClass());
+	    this.constructor = constructor;
+	    this.declaringType = declaringType;
+	}
+
+	@Override
+	public List<AnnotatedParameter<X>> getParameters() {
+	    return parameters(this, constructor.getParameterTypes(), constructor.getParameterAnnotations());
+	}
+
+	@Override
+	public boolean isStatic() {
+	    return false;
+	}
+
+	@Override
+	public AnnotatedType<X> getDeclaringType() {
+	    return declaringType;
+	}
+
+	@Override
+	public Constructor<X> getJavaMember() {
+	    return constructor;
+	}
+
+    }
+
+    private static class ReflectionAnnotatedMethod<X> extends ReflectionAnnotated 
+	    implements AnnotatedMethod<X> {
+
+	private final Method method;
+
+	private final AnnotatedType<X> declaringType;
+
+	ReflectionAnnotatedMethod(Method method, AnnotatedType<X> declaringType) {
+	    super(method, method.getGenericReturnType());
+	    this.method = method;
+	    this.declaringType = declaringType;
+	}
+
+	@Override
+	public List<AnnotatedParameter<X>> getParameters() {
+	    return parameters(this, method.getParameterTypes(), method.getParameterAnnotations());
+	}
+
+	@Override
+	public boolean isStatic() {
+	    return Modifier.isStatic(method.getModifiers());
+	}
+
+	@Override
+	public AnnotatedType<X> getDeclaringType() {
+	    return declaringType;
+	}
+
+	@Override
+	public Method getJavaMember() {
+	    return method;
+	}
+
+    }
+
+    private static class ReflectionAnnotatedField<X> extends ReflectionAnnotated 
+	    implements AnnotatedField<X> {
+
+	private final Field field;
+
+	private final AnnotatedType<X> declaringType;
+
+	ReflectionAnnotatedField(Field field, AnnotatedType<X> declaringType) {
+	    super(field, field.getGenericType());
+	    this.field = field;
+	    this.declaringType = declaringType;
+	}
+
+	@Override
+	public boolean isStatic() {
+	    return Modifier.isStatic(field.getModifiers());
+	}
+
+	@Override
+	public AnnotatedType<X> getDeclaringType() {
+	    return declaringType;
+	}
+
+	@Override
+	public Field getJavaMember() {
+	    return field;
+	}
+
+    }
+
+    private static class ReflectionAnnotatedParameter<X> implements AnnotatedParameter<X> {
+
+	private final AnnotatedCallable<X> callable;
+
+	private final int position;
+
+	private final Type type;
+
+	private final Annotation[] annotations;
+
+	ReflectionAnnotatedParameter(AnnotatedCallable<X> callable, int position, Type type, 
+		Annotation[] annotations) {
+	    this.callable = callable;
+	    this.position = position;
+	    this.type = type;
+	    this.annotations = annotations;
+	}
+
+	@Override
+	public int getPosition() {
+	    return position;
+	}
+
+	@Override
+	public AnnotatedCallable<X> getDeclaringCallable() {
+	    return callable;
+	}
+
+	@Override
+	public Type getBaseType() {
+	    return type;
+	}
+
+	@Override
+	public Set<Type> getTypeClosure() {
+	    return new HashSet<Type>(Arrays.asList(type));
+	}
+
+	@Override
+	public <T extends Annotation> T getAnnotation(Class<T> annotationType) {
+	    for (Annotation annotation : annotations) {
+		if (annotationType.isInstance(annotation)) {
+		    return annotationType.cast(annotation);
+		}
+	    }
+
+	    return null;
+	}
+
+	@Override
+	public Set<Annotation> getAnnotations() {
+	    return new HashSet<Annotation>(Arrays.asList(annotations));
+	}
+
+	@Override
+	public boolean isAnnotationPresent(Class<? extends Annotation> annotationType) {
+	    return getAnnotation(annotationType) != null;
+	}
+
+    }
+
+}
+
+/**
+ * Base class of the reflective Annotated implementations.
+ */
+class ReflectionAnnotated implements Annotated {
+
+    private final AnnotatedElement element;
+
+    private final Type baseType;
+
+    ReflectionAnnotated(AnnotatedElement element, Type baseType) {
+	this.element = element;
+	this.baseType = baseType;
+    }
+
+    @Override
+    public Type getBaseType() {
+	return baseType;
+    }
+
+    @Override
+    public Set<Type> getTypeClosure() {
+	return new HashSet<Type>(Arrays.asList(baseType));
+    }
+
+    @Override
+    public <T extends Annotation> T getAnnotation(Class<T> annotationType) {
+	return element.getAnnotation(annotationType);
+    }
+
+    @Override
+    public Set<Annotation> getAnnotations() {
+	return new HashSet<Annotation>(Arrays.asList(element.getAnnotations()));
+    }
+
+    @Override
+    public boolean isAnnotationPresent(Class<? extends Annotation> annotationType) {
+	return element.isAnnotationPresent(annotationType);
+    }
+
+}
@@ -0,0 +1,40 @@
+package org.gescobar.management.benchmarks;
+
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedAttribute;
+import org.gescobar.management.ManagedOperation;
+
+/**
+ * @author German Escobar
+ *
+ * Same members as {@link GeneratedBean} but its fields are private and have no
+ * accessors, so the annotation processor skips it and its metadata is built with 
+ * reflection.
+ */
+@MBean("org.gescobar.benchmarks:type=Reflective")
+public class ReflectiveBean {
+
+    @ManagedAttribute
+    private long counter;
+
+    @ManagedAttribute
+    private String name = "reflective";
+
+    @ManagedOperation
+    public long add(long value) {
+	counter += value;
+	return counter;
+    }
+
+    @ManagedOperation
+    public long add(long value, int times) {
+	counter += value * times;
+	return counter;
+    }
+
+    @ManagedOperation
+    public long add(String value) {
+	return add(Long.parseLong(value));
+    }
+
+}
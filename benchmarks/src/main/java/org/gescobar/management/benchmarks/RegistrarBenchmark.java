@@ -0,0 +1,94 @@
+package org.gescobar.management.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.DynamicMBean;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.gescobar.management.util.MBeanRegistrar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author German Escobar
+ *
+ * Measures how many per-instance MBeans the {@link MBeanRegistrar} registers and 
+ * unregisters per second, a pool of {@link #INSTANCES} at a time, submitted one by
+ * one and in bulk. The registrations are flushed before the unregistrations so 
+ * they don't cancel each other in the queue.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class RegistrarBenchmark {
+
+    public static final int INSTANCES = 10000;
+
+    private MBeanRegistrar registrar;
+
+    private Map<ObjectName,DynamicMBean> mBeans;
+
+    private List<ObjectName> names;
+
+    @Setup
+    public void setup() throws Exception {
+	registrar = new MBeanRegistrar(MBeanServerFactory.newMBeanServer());
+
+	BenchmarkMBeanFactory factory = new BenchmarkMBeanFactory();
+	mBeans = new LinkedHashMap<ObjectName,DynamicMBean>();
+	names = new ArrayList<ObjectName>();
+	for (int i = 0; i < INSTANCES; i++) {
+	    ObjectName name = new ObjectName("org.gescobar.benchmarks:type=Worker,id=" + i);
+	    mBeans.put(name, factory.createMBean(new GeneratedBean()));
+	    names.add(name);
+	}
+    }
+
+    @TearDown
+    public void tearDown() {
+	registrar.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTANCES)
+    public void oneByOne() throws Exception {
+	for (Map.Entry<ObjectName,DynamicMBean> entry : mBeans.entrySet()) {
+	    registrar.register(entry.getValue(), entry.getKey());
+	}
+	registrar.flush();
+
+	for (ObjectName name : names) {
+	    registrar.unregister(name);
+	}
+	registrar.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTANCES)
+    public void bulk() throws Exception {
+	registrar.registerAll(mBeans);
+	registrar.flush();
+
+	registrar.unregisterAll(names);
+	registrar.flush();
+    }
+
+}
@@ -0,0 +1,54 @@
+package org.gescobar.management.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.DynamicMBean;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author German Escobar
+ *
+ * Measures a registration followed by an unregistration in the platform MBeanServer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class RegistrationBenchmark {
+
+    private MBeanServer mBeanServer;
+
+    private DynamicMBean mBean;
+
+    private ObjectName objectName;
+
+    @Setup
+    public void setup() throws Exception {
+	mBeanServer = ManagementFactory.getPlatformMBeanServer();
+	mBean = new BenchmarkMBeanFactory().createMBean(new GeneratedBean());
+	objectName = new ObjectName("org.gescobar.benchmarks:type=Generated,thread=" 
+		+ Thread.currentThread().getId());
+    }
+
+    @Benchmark
+    public void registerUnregister() throws Exception {
+	mBeanServer.registerMBean(mBean, objectName);
+	mBeanServer.unregisterMBean(objectName);
+    }
+
+}
@@ -0,0 +1,314 @@
+package org.gescobar.management.benchmarks;
+
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedAttribute;
+
+/**
+ * @author German Escobar
+ *
+ * An MBean with 100 attributes, used by {@link WidthBenchmark}.
+ */
+@MBean("org.gescobar.benchmarks:type=Wide")
+public class WideBean {
+
+    @ManagedAttribute
+    long attribute0 = 0;
+
+    @ManagedAttribute
+    long attribute1 = 1;
+
+    @ManagedAttribute
+    long attribute2 = 2;
+
+    @ManagedAttribute
+    long attribute3 = 3;
+
+    @ManagedAttribute
+    long attribute4 = 4;
+
+    @ManagedAttribute
+    long attribute5 = 5;
+
+    @ManagedAttribute
+    long attribute6 = 6;
+
+    @ManagedAttribute
+    long attribute7 = 7;
+
+    @ManagedAttribute
+    long attribute8 = 8;
+
+    @ManagedAttribute
+    long attribute9 = 9;
+
+    @ManagedAttribute
+    long attribute10 = 10;
+
+    @ManagedAttribute
+    long attribute11 = 11;
+
+    @ManagedAttribute
+    long attribute12 = 12;
+
+    @ManagedAttribute
+    long attribute13 = 13;
+
+    @ManagedAttribute
+    long attribute14 = 14;
+
+    @ManagedAttribute
+    long attribute15 = 15;
+
+    @ManagedAttribute
+    long attribute16 = 16;
+
+    @ManagedAttribute
+    long attribute17 = 17;
+
+    @ManagedAttribute
+    long attribute18 = 18;
+
+    @ManagedAttribute
+    long attribute19 = 19;
+
+    @ManagedAttribute
+    long attribute20 = 20;
+
+    @ManagedAttribute
+    long attribute21 = 21;
+
+    @ManagedAttribute
+    long attribute22 = 22;
+
+    @ManagedAttribute
+    long attribute23 = 23;
+
+    @ManagedAttribute
+    long attribute24 = 24;
+
+    @ManagedAttribute
+    long attribute25 = 25;
+
+    @ManagedAttribute
+    long attribute26 = 26;
+
+    @ManagedAttribute
+    long attribute27 = 27;
+
+    @ManagedAttribute
+    long attribute28 = 28;
+
+    @ManagedAttribute
+    long attribute29 = 29;
+
+    @ManagedAttribute
+    long attribute30 = 30;
+
+    @ManagedAttribute
+    long attribute31 = 31;
+
+    @ManagedAttribute
+    long attribute32 = 32;
+
+    @ManagedAttribute
+    long attribute33 = 33;
+
+    @ManagedAttribute
+    long attribute34 = 34;
+
+    @ManagedAttribute
+    long attribute35 = 35;
+
+    @ManagedAttribute
+    long attribute36 = 36;
+
+    @ManagedAttribute
+    long attribute37 = 37;
+
+    @ManagedAttribute
+    long attribute38 = 38;
+
+    @ManagedAttribute
+    long attribute39 = 39;
+
+    @ManagedAttribute
+    long attribute40 = 40;
+
+    @ManagedAttribute
+    long attribute41 = 41;
+
+    @ManagedAttribute
+    long attribute42 = 42;
+
+    @ManagedAttribute
+    long attribute43 = 43;
+
+    @ManagedAttribute
+    long attribute44 = 44;
+
+    @ManagedAttribute
+    long attribute45 = 45;
+
+    @ManagedAttribute
+    long attribute46 = 46;
+
+    @ManagedAttribute
+    long attribute47 = 47;
+
+    @ManagedAttribute
+    long attribute48 = 48;
+
+    @ManagedAttribute
+    long attribute49 = 49;
+
+    @ManagedAttribute
+    long attribute50 = 50;
+
+    @ManagedAttribute
+    long attribute51 = 51;
+
+    @ManagedAttribute
+    long attribute52 = 52;
+
+    @ManagedAttribute
+    long attribute53 = 53;
+
+    @ManagedAttribute
+    long attribute54 = 54;
+
+    @ManagedAttribute
+    long attribute55 = 55;
+
+    @ManagedAttribute
+    long attribute56 = 56;
+
+    @ManagedAttribute
+    long attribute57 = 57;
+
+    @ManagedAttribute
+    long attribute58 = 58;
+
+    @ManagedAttribute
+    long attribute59 = 59;
+
+    @ManagedAttribute
+    long attribute60 = 60;
+
+    @ManagedAttribute
+    long attribute61 = 61;
+
+    @ManagedAttribute
+    long attribute62 = 62;
+
+    @ManagedAttribute
+    long attribute63 = 63;
+
+    @ManagedAttribute
+    long attribute64 = 64;
+
+    @ManagedAttribute
+    long attribute65 = 65;
+
+    @ManagedAttribute
+    long attribute66 = 66;
+
+    @ManagedAttribute
+    long attribute67 = 67;
+
+    @ManagedAttribute
+    long attribute68 = 68;
+
+    @ManagedAttribute
+    long attribute69 = 69;
+
+    @ManagedAttribute
+    long attribute70 = 70;
+
+    @ManagedAttribute
+    long attribute71 = 71;
+
+    @ManagedAttribute
+    long attribute72 = 72;
+
+    @ManagedAttribute
+    long attribute73 = 73;
+
+    @ManagedAttribute
+    long attribute74 = 74;
+
+    @ManagedAttribute
+    long attribute75 = 75;
+
+    @ManagedAttribute
+    long attribute76 = 76;
+
+    @ManagedAttribute
+    long attribute77 = 77;
+
+    @ManagedAttribute
+    long attribute78 = 78;
+
+    @ManagedAttribute
+    long attribute79 = 79;
+
+    @ManagedAttribute
+    long attribute80 = 80;
+
+    @ManagedAttribute
+    long attribute81 = 81;
+
+    @ManagedAttribute
+    long attribute82 = 82;
+
+    @ManagedAttribute
+    long attribute83 = 83;
+
+    @ManagedAttribute
+    long attribute84 = 84;
+
+    @ManagedAttribute
+    long attribute85 = 85;
+
+    @ManagedAttribute
+    long attribute86 = 86;
+
+    @ManagedAttribute
+    long attribute87 = 87;
+
+    @ManagedAttribute
+    long attribute88 = 88;
+
+    @ManagedAttribute
+    long attribute89 = 89;
+
+    @ManagedAttribute
+    long attribute90 = 90;
+
+    @ManagedAttribute
+    long attribute91 = 91;
+
+    @ManagedAttribute
+    long attribute92 = 92;
+
+    @ManagedAttribute
+    long attribute93 = 93;
+
+    @ManagedAttribute
+    long attribute94 = 94;
+
+    @ManagedAttribute
+    long attribute95 = 95;
+
+    @ManagedAttribute
+    long attribute96 = 96;
+
+    @ManagedAttribute
+    long attribute97 = 97;
+
+    @ManagedAttribute
+    long attribute98 = 98;
+
+    @ManagedAttribute
+    long attribute99 = 99;
+
+}
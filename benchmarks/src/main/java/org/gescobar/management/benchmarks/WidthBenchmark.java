@@ -0,0 +1,70 @@
+package org.gescobar.management.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author German Escobar
+ *
+ * Measures getAttribute and getAttributes on MBeans with 1, 10 and 100 attributes:
+ * reading one attribute shouldn't depend on the width of the MBean, reading all of
+ * them should grow linearly with it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class WidthBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int width;
+
+    private DynamicMBean mBean;
+
+    private String[] attributeNames;
+
+    @Setup
+    public void setup() throws Exception {
+	BenchmarkMBeanFactory factory = new BenchmarkMBeanFactory();
+
+	if (width == 1) {
+	    mBean = factory.createMBean(new NarrowBean());
+	} else if (width == 10) {
+	    mBean = factory.createMBean(new MediumBean());
+	} else {
+	    mBean = factory.createMBean(new WideBean());
+	}
+
+	attributeNames = new String[width];
+	for (int i = 0; i < width; i++) {
+	    attributeNames[i] = "attribute" + i;
+	}
+    }
+
+    @Benchmark
+    public Object getAttribute() throws Exception {
+	return mBean.getAttribute("attribute0");
+    }
+
+    @Benchmark
+    public AttributeList getAttributes() {
+	return mBean.getAttributes(attributeNames);
+    }
+
+}
@@ -0,0 +1,169 @@
+package org.gescobar.management;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * @author German Escobar
+ *
+ * A counter that can be incremented from many threads without contention. While
+ * there is no contention the value is kept in a single field. The first time two 
+ * threads collide updating it, the counter starts spreading the updates over a 
+ * number of cells, at most {@value #MAX_CELLS}, each one in its own cache line and 
+ * selected by the id of the thread, as LongAdder does. The cells are only added 
+ * when the value is read, so reads are slower than updates and are not an atomic 
+ * snapshot while the counter is being updated.
+ * 
+ * Expose it with {@link ManagedCounter}.
+ */
+public class Counter extends Number {
+
+    /**
+     * Generated Serial Version UID
+     */
+    private static final long serialVersionUID = 2405474283906733419L;
+
+    /**
+     * The maximum number of cells, so a counter never takes more than a couple of
+     * KB however many processors there are.
+     */
+    static final int MAX_CELLS = 16;
+
+    /**
+     * The distance, in longs, between two cells. 16 longs (128 bytes) keep the cells
+     * in different cache lines even if the adjacent line is prefetched.
+     */
+    private static final int STRIDE = 16;
+
+    private static final int CELLS = Striping.cellCount(MAX_CELLS);
+
+    private static final AtomicLongFieldUpdater<Counter> BASE = 
+	AtomicLongFieldUpdater.newUpdater(Counter.class, "base");
+
+    private static final AtomicReferenceFieldUpdater<Counter,AtomicLongArray> CELLS_UPDATER = 
+	AtomicReferenceFieldUpdater.newUpdater(Counter.class, AtomicLongArray.class, "cells");
+
+    /**
+     * The value while there is no contention.
+     */
+    private volatile long base;
+
+    /**
+     * Created on the first collision updating the base.
+     */
+    private volatile AtomicLongArray cells;
+
+    public void increment() {
+	add(1);
+    }
+
+    public void decrement() {
+	add(-1);
+    }
+
+    public void add(long value) {
+	AtomicLongArray cs = cells;
+	if (cs == null) {
+	    long b = base;
+	    if (BASE.compareAndSet(this, b, b + value)) {
+		return;
+	    }
+	    cs = striped();
+	}
+
+	cs.getAndAdd(index(), value);
+    }
+
+    /**
+     * @return the current value of the counter.
+     */
+    public long sum() {
+	long sum = base;
+	AtomicLongArray cs = cells;
+	if (cs != null) {
+	    for (int i = 1; i <= CELLS; i++) {
+		sum += cs.get(i * STRIDE);
+	    }
+	}
+
+	return sum;
+    }
+
+    /**
+     * Sets the counter to zero. Updates that happen at the same time may be lost.
+     */
+    public void reset() {
+	base = 0;
+	AtomicLongArray cs = cells;
+	if (cs != null) {
+	    for (int i = 1; i <= CELLS; i++) {
+		cs.set(i * STRIDE, 0);
+	    }
+	}
+    }
+
+    /**
+     * Returns the current value and sets the counter to zero. Updates that happen
+     * at the same time are kept for the next call.
+     * @return the value of the counter before it was reset.
+     */
+    public long sumThenReset() {
+	long sum = BASE.getAndSet(this, 0);
+	AtomicLongArray cs = cells;
+	if (cs != null) {
+	    for (int i = 1; i <= CELLS; i++) {
+		sum += cs.getAndSet(i * STRIDE, 0);
+	    }
+	}
+
+	return sum;
+    }
+
+    @Override
+    public long longValue() {
+	return sum();
+    }
+
+    @Override
+    public int intValue() {
+	return (int) sum();
+    }
+
+    @Override
+    public float floatValue() {
+	return sum();
+    }
+
+    @Override
+    public double doubleValue() {
+	return sum();
+    }
+
+    @Override
+    public String toString() {
+	return Long.toString(sum());
+    }
+
+    /**
+     * @return the cells, created by the first thread that gets here.
+     */
+    private AtomicLongArray striped() {
+	AtomicLongArray cs = cells;
+	if (cs == null) {
+	    CELLS_UPDATER.compareAndSet(this, null, new AtomicLongArray((CELLS + 1) * STRIDE));
+	    cs = cells;
+	}
+
+	return cs;
+    }
+
+    /**
+     * @return the position of the cell of the current thread. The first cell is 
+     * left empty so the ones in use don't share a line with the array header.
+     */
+    private static int index() {
+	return (Striping.threadHash(CELLS) + 1) * STRIDE;
+    }
+
+}
@@ -0,0 +1,38 @@
+package org.gescobar.management;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * @author German Escobar
+ *
+ * Monitors a numeric attribute from inside the JVM. The attribute is sampled by a 
+ * shared background thread (every second, or the period in milliseconds of the 
+ * system property {@value org.gescobar.management.util.ThresholdSampler#PERIOD_PROPERTY})
+ * while the MBean is registered.
+ * 
+ * When the value rises to high or above, the MBean sends a 
+ * {@value org.gescobar.management.util.ThresholdSampler#HIGH_TYPE} notification. 
+ * It's not sent again until the value has fallen to low or below, which sends a 
+ * {@value org.gescobar.management.util.ThresholdSampler#LOW_TYPE} notification, so 
+ * a value that oscillates around a threshold doesn't flood the listeners. The user
+ * data of the notifications is the value (a Double).
+ */
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={FIELD})
+public @interface GaugeThreshold {
+
+    double high();
+
+    /**
+     * The value the attribute has to fall to after a high notification, it must be 
+     * less than high.
+     */
+    double low();
+
+}
@@ -0,0 +1,382 @@
+package org.gescobar.management;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author German Escobar
+ *
+ * Records the distribution of non-negative long values, usually latencies. The
+ * values are counted in log-linear buckets: every power of two is split in 16 
+ * buckets, so any value is reported with an error of less than 1/32 of it. The
+ * buckets of a power of two are only allocated when a value falls in it, so a
+ * histogram takes a couple of KB for the usual ranges of latencies.
+ * 
+ * Recording a value doesn't lock: the buckets are updated atomically and the min 
+ * and max with a compare-and-set loop when a value exceeds them. While there is no
+ * contention all the threads update the same buckets. The first time two threads 
+ * collide, the buckets are striped by thread, in at most 8 stripes, so concurrent
+ * updates don't contend for the same cache lines.
+ * 
+ * The buckets are cumulative, the reads don't change them. {@link #snapshot()} 
+ * returns all the values recorded, and {@link Snapshot#since(Snapshot)} the values 
+ * recorded between two snapshots, so each reader can keep its previous snapshot 
+ * and get its own intervals. Expose it with {@link ManagedHistogram}.
+ */
+public class Histogram {
+
+    /**
+     * The number of linear buckets in each power of two is 2^SUB_BUCKET_BITS.
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The buckets of a power of two make a row, allocated on first use.
+     */
+    private static final int ROWS = 64 - SUB_BUCKET_BITS;
+
+    static final int BUCKETS = ROWS * SUB_BUCKETS;
+
+    private static final int SUM = 0;
+
+    private static final int MIN = 1;
+
+    private static final int MAX = 2;
+
+    /**
+     * The size of the sum, min and max of a stripe, padded so two stripes don't 
+     * share a cache line.
+     */
+    private static final int TOTALS = 16;
+
+    private static final int STRIPES = Striping.cellCount(8);
+
+    private final boolean striped;
+
+    /**
+     * The buckets updated while there is no contention.
+     */
+    private final Cells base;
+
+    /**
+     * Created on the first collision updating the base, if the histogram is striped.
+     */
+    private volatile Cells[] stripes;
+
+    public Histogram() {
+	this(true);
+    }
+
+    /**
+     * @param striped false for the histograms that are rarely updated by many 
+     * threads at the same time, which then never take more than one set of buckets.
+     */
+    public Histogram(boolean striped) {
+	this.striped = striped;
+	this.base = new Cells(striped);
+    }
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     * @param value the value to record.
+     */
+    public void record(long value) {
+	if (value < 0) {
+	    value = 0;
+	}
+
+	Cells[] s = stripes;
+	if (s == null) {
+	    // the value is recorded in the base anyway, the next ones go to the stripes
+	    if (!base.record(value, striped)) {
+		stripe();
+	    }
+	    return;
+	}
+
+	s[Striping.threadHash(STRIPES)].record(value, false);
+    }
+
+    /**
+     * Returns the values recorded so far. Values recorded while the snapshot is 
+     * taken may or may not be in it.
+     * @return the snapshot of the histogram.
+     */
+    public Snapshot snapshot() {
+	long[][] counts = new long[ROWS][];
+	long[] totals = new long[] { 0, Long.MAX_VALUE, 0 };
+
+	base.addTo(counts, totals);
+	Cells[] s = stripes;
+	if (s != null) {
+	    for (Cells cells : s) {
+		cells.addTo(counts, totals);
+	    }
+	}
+
+	return new Snapshot(counts, totals[SUM], totals[MIN], totals[MAX]);
+    }
+
+    private void stripe() {
+	synchronized (base) {
+	    if (stripes == null) {
+		Cells[] s = new Cells[STRIPES];
+		for (int i = 0; i < s.length; i++) {
+		    s[i] = new Cells(true);
+		}
+		stripes = s;
+	    }
+	}
+    }
+
+    /**
+     * @param value a non-negative value.
+     * @return the index of the bucket of the value. The values lower than 
+     * 2 * SUB_BUCKETS have their own bucket.
+     */
+    static int bucketIndex(long value) {
+	if (value < 2 * SUB_BUCKETS) {
+	    return (int) value;
+	}
+
+	int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+	return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * @param index the index of a bucket.
+     * @return the lowest value that is counted in the bucket.
+     */
+    static long bucketLowerBound(int index) {
+	if (index < 2 * SUB_BUCKETS) {
+	    return index;
+	}
+
+	int shift = index / SUB_BUCKETS - 1;
+	return (long) (index - shift * SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * @param index the index of a bucket.
+     * @return the number of values that are counted in the bucket.
+     */
+    static long bucketWidth(int index) {
+	if (index < 2 * SUB_BUCKETS) {
+	    return 1;
+	}
+
+	return 1L << (index / SUB_BUCKETS - 1);
+    }
+
+    /**
+     * A set of buckets with their sum, min and max.
+     */
+    private static final class Cells {
+
+	final AtomicReferenceArray<AtomicLongArray> rows = new AtomicReferenceArray<AtomicLongArray>(ROWS);
+
+	final AtomicLongArray totals;
+
+	/**
+	 * @param padded true to keep the totals in their own cache line.
+	 */
+	Cells(boolean padded) {
+	    totals = new AtomicLongArray(padded ? TOTALS : MAX + 1);
+	    totals.set(MIN, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param detect true to report a collision with another thread.
+	 * @return false if the bucket was updated by another thread at the same time.
+	 */
+	boolean record(long value, boolean detect) {
+	    int index = bucketIndex(value);
+	    AtomicLongArray row = row(index / SUB_BUCKETS);
+	    int column = index % SUB_BUCKETS;
+
+	    boolean uncontended = true;
+	    if (detect) {
+		long count = row.get(column);
+		if (!row.compareAndSet(column, count, count + 1)) {
+		    uncontended = false;
+		    row.getAndIncrement(column);
+		}
+	    } else {
+		row.getAndIncrement(column);
+	    }
+	    totals.getAndAdd(SUM, value);
+
+	    long min = totals.get(MIN);
+	    while (value < min && !totals.compareAndSet(MIN, min, value)) {
+		min = totals.get(MIN);
+	    }
+
+	    long max = totals.get(MAX);
+	    while (value > max && !totals.compareAndSet(MAX, max, value)) {
+		max = totals.get(MAX);
+	    }
+
+	    return uncontended;
+	}
+
+	private AtomicLongArray row(int index) {
+	    AtomicLongArray row = rows.get(index);
+	    if (row == null) {
+		rows.compareAndSet(index, null, new AtomicLongArray(SUB_BUCKETS));
+		row = rows.get(index);
+	    }
+
+	    return row;
+	}
+
+	void addTo(long[][] counts, long[] sums) {
+	    for (int i = 0; i < ROWS; i++) {
+		AtomicLongArray row = rows.get(i);
+		if (row == null) {
+		    continue;
+		}
+		if (counts[i] == null) {
+		    counts[i] = new long[SUB_BUCKETS];
+		}
+		for (int j = 0; j < SUB_BUCKETS; j++) {
+		    counts[i][j] += row.get(j);
+		}
+	    }
+
+	    sums[SUM] += totals.get(SUM);
+	    sums[MIN] = Math.min(sums[MIN], totals.get(MIN));
+	    sums[MAX] = Math.max(sums[MAX], totals.get(MAX));
+	}
+
+    }
+
+    /**
+     * The values recorded until a moment, or between two moments.
+     */
+    public static class Snapshot {
+
+	/**
+	 * The counts of the buckets by row, null for the rows without values.
+	 */
+	private final long[][] counts;
+
+	private final long count;
+
+	private final long sum;
+
+	private final long min;
+
+	private final long max;
+
+	Snapshot(long[][] counts, long sum, long min, long max) {
+	    long count = 0;
+	    for (long[] row : counts) {
+		if (row != null) {
+		    for (long c : row) {
+			count += c;
+		    }
+		}
+	    }
+
+	    this.counts = counts;
+	    this.count = count;
+	    this.sum = sum;
+	    this.min = count == 0 ? 0 : min;
+	    this.max = count == 0 ? 0 : max;
+	}
+
+	/**
+	 * Returns the values recorded after a previous snapshot of the same histogram
+	 * and before this one. The min and max of the interval are those of its lowest
+	 * and highest buckets, so they are off by less than 1/32 of their value.
+	 * @param previous a snapshot taken before this one, null for none.
+	 * @return the values recorded between both snapshots.
+	 */
+	public Snapshot since(Snapshot previous) {
+	    if (previous == null) {
+		return this;
+	    }
+
+	    long[][] interval = new long[ROWS][];
+	    int lowest = -1;
+	    int highest = -1;
+	    for (int i = 0; i < ROWS; i++) {
+		if (counts[i] == null) {
+		    continue;
+		}
+		interval[i] = new long[SUB_BUCKETS];
+		for (int j = 0; j < SUB_BUCKETS; j++) {
+		    long c = counts[i][j] - (previous.counts[i] == null ? 0 : previous.counts[i][j]);
+		    interval[i][j] = c;
+		    if (c > 0) {
+			highest = i * SUB_BUCKETS + j;
+			if (lowest < 0) {
+			    lowest = highest;
+			}
+		    }
+		}
+	    }
+
+	    if (lowest < 0) {
+		return new Snapshot(new long[ROWS][], 0, 0, 0);
+	    }
+
+	    long intervalMin = Math.max(min, bucketLowerBound(lowest));
+	    long intervalMax = Math.min(max, bucketLowerBound(highest) + bucketWidth(highest) - 1);
+	    return new Snapshot(interval, sum - previous.sum, intervalMin, intervalMax);
+	}
+
+	public long getCount() {
+	    return count;
+	}
+
+	public long getSum() {
+	    return sum;
+	}
+
+	public long getMin() {
+	    return min;
+	}
+
+	public long getMax() {
+	    return max;
+	}
+
+	public double getMean() {
+	    return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * @param quantile a number between 0 and 1 (e.g. 0.99 for the 99th percentile).
+	 * @return the value below which the quantile of the recorded values fall. It's 
+	 * the middle of the bucket in which the value was counted.
+	 */
+	public long getValueAtQuantile(double quantile) {
+	    if (count == 0) {
+		return 0;
+	    }
+
+	    long rank = Math.max(1, (long) Math.ceil(quantile * count));
+	    long seen = 0;
+	    for (int i = 0; i < ROWS; i++) {
+		if (counts[i] == null) {
+		    continue;
+		}
+		for (int j = 0; j < SUB_BUCKETS; j++) {
+		    seen += counts[i][j];
+		    if (seen >= rank) {
+			int index = i * SUB_BUCKETS + j;
+			long value = bucketLowerBound(index) + (bucketWidth(index) - 1) / 2;
+			return Math.max(min, Math.min(max, value));
+		    }
+		}
+	    }
+
+	    return max;
+	}
+
+    }
+
+}
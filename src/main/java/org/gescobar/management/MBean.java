@@ -15,4 +15,34 @@ import java.lang.annotation.Target;
 public @interface MBean {
     String value() default "";
     boolean autoRegister() default true;
+
+    /**
+     * If true, the MBean registered automatically is a placeholder that creates 
+     * the real MBean the first time a JMX client uses it.
+     */
+    boolean lazy() default false;
+
+    /**
+     * If true, the automatic registration and unregistration are queued and applied
+     * on a background thread (see {@link org.gescobar.management.util.MBeanRegistrar}).
+     */
+    boolean asyncRegistration() default false;
+
+    /**
+     * If true, the instances are not registered one by one: a single 
+     * {@link org.gescobar.management.util.AggregateMBean} is registered with the 
+     * sums, minimums, maximums and per instance values of the numeric attributes of
+     * the live instances. Meant for Dependent or scoped beans with many instances. 
+     * The operations, notifications and thresholds of the class are not exposed.
+     */
+    boolean aggregate() default false;
+
+    /**
+     * If true, the attributes whose types are not open types (enums, arrays, 
+     * collections, maps and other classes) are exposed as open types, as in the 
+     * MXBeans, so the JMX clients don't need the classes of the application (see 
+     * {@link org.gescobar.management.util.OpenTypeConverter}). The attributes of 
+     * classes that can't be converted back are read-only.
+     */
+    boolean openTypes() default false;
 }
@@ -8,10 +8,24 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 
+/**
+ * @author German Escobar
+ *
+ * Exposes a field, or a getter/setter pair, as an attribute of the MBean. When a
+ * getter or a setter is annotated, the other method of the pair is found by name 
+ * and the attribute is named after the property (e.g. queueSize for getQueueSize).
+ */
 @Documented
 @Retention(value=RUNTIME)
 @Target(value={FIELD,METHOD})
 public @interface ManagedAttribute {
     boolean readable() default true;
     boolean writable() default true;
+
+    /**
+     * The time, in milliseconds, during which the value read is reused instead of
+     * reading it again. Useful for getters that are expensive to compute. 0 (the
+     * default) disables the cache.
+     */
+    long cacheMillis() default 0;
 }
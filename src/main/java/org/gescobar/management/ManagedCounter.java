@@ -0,0 +1,23 @@
+package org.gescobar.management;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * @author German Escobar
+ *
+ * Exposes a {@link Counter}, java.util.concurrent.atomic.AtomicLong, AtomicInteger 
+ * or LongAdder field as a read-only long attribute with the value of the counter.
+ * If resettable is true, an operation named "reset" followed by the name of the
+ * field (e.g. resetRequests) is also exposed.
+ */
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={FIELD})
+public @interface ManagedCounter {
+    boolean resettable() default false;
+}
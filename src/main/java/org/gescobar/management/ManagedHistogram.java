@@ -0,0 +1,22 @@
+package org.gescobar.management;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * @author German Escobar
+ *
+ * Exposes a {@link Histogram} field as a read-only CompositeData attribute with 
+ * the count, min, max, mean, p50, p90, p99 and p999 of the values recorded since
+ * the attribute was last read.
+ */
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={FIELD})
+public @interface ManagedHistogram {
+
+}
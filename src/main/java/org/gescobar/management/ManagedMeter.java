@@ -0,0 +1,23 @@
+package org.gescobar.management;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * @author German Escobar
+ *
+ * Exposes a {@link Meter} field as five read-only attributes named after the field:
+ * <i>field</i>Count (long) and <i>field</i>MeanRate, <i>field</i>OneMinuteRate, 
+ * <i>field</i>FiveMinuteRate and <i>field</i>FifteenMinuteRate (double, in events 
+ * per second).
+ */
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={FIELD})
+public @interface ManagedMeter {
+
+}
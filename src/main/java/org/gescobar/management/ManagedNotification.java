@@ -0,0 +1,46 @@
+package org.gescobar.management;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import javax.management.Notification;
+
+/**
+ * @author German Escobar
+ *
+ * Declares the notifications an MBean emits through its {@link Notifier}. Each 
+ * annotation becomes an MBeanNotificationInfo of the MBeanInfo. Use 
+ * {@link ManagedNotifications} to declare more than one.
+ * 
+ * If coalesceMillis is greater than zero, the notifications of these types that are 
+ * sent less than coalesceMillis after the previous one are not delivered right away: 
+ * only the last of them is, when the window expires. 
+ */
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={TYPE})
+public @interface ManagedNotification {
+
+    /**
+     * The types of the notifications, e.g. "cache.eviction".
+     */
+    String[] types();
+
+    /**
+     * The class of the notifications.
+     */
+    Class<? extends Notification> notificationClass() default Notification.class;
+
+    String description() default "";
+
+    /**
+     * The window, in milliseconds, in which the notifications of the same type are 
+     * coalesced. 0 (the default) delivers every notification.
+     */
+    long coalesceMillis() default 0;
+
+}
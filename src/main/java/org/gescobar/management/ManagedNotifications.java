@@ -0,0 +1,22 @@
+package org.gescobar.management;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * @author German Escobar
+ *
+ * Declares several {@link ManagedNotification}s on the same MBean.
+ */
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={TYPE})
+public @interface ManagedNotifications {
+
+    ManagedNotification[] value();
+
+}
@@ -0,0 +1,167 @@
+package org.gescobar.management;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author German Escobar
+ *
+ * Measures the rate of events: the mean rate and the one, five and fifteen minute
+ * exponentially weighted moving averages, in events per second, like the load 
+ * average of Unix.
+ * 
+ * Marking an event only adds to a {@link Counter}, which takes a few bytes until
+ * it's contended. There is no thread ticking the averages: they are updated when 
+ * they are read, for all the five second intervals that have passed since the last
+ * read at once. The events marked since the last read are spread evenly over those
+ * intervals, so the averages of a steady rate are the same however often they are
+ * read. Expose it with {@link ManagedMeter}.
+ */
+public class Meter {
+
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private static final double SECONDS_PER_TICK = TICK_INTERVAL / (double) TimeUnit.SECONDS.toNanos(1);
+
+    private static final double M1_ALPHA = 1 - Math.exp(-5 / 60.0);
+
+    private static final double M5_ALPHA = 1 - Math.exp(-5 / 60.0 / 5);
+
+    private static final double M15_ALPHA = 1 - Math.exp(-5 / 60.0 / 15);
+
+    /**
+     * The events that haven't been accounted in the averages yet.
+     */
+    private final Counter uncounted = new Counter();
+
+    private final Clock clock;
+
+    private final long startTime;
+
+    /**
+     * The following fields are guarded by this.
+     */
+    private long lastTick;
+
+    private long count;
+
+    private boolean initialized;
+
+    private double m1Rate;
+
+    private double m5Rate;
+
+    private double m15Rate;
+
+    public Meter() {
+	this(Clock.SYSTEM);
+    }
+
+    Meter(Clock clock) {
+	this.clock = clock;
+	this.startTime = clock.nanoTime();
+	this.lastTick = startTime;
+    }
+
+    public void mark() {
+	uncounted.increment();
+    }
+
+    public void mark(long events) {
+	uncounted.add(events);
+    }
+
+    /**
+     * @return the number of events marked since the meter was created.
+     */
+    public synchronized long getCount() {
+	return count + uncounted.sum();
+    }
+
+    /**
+     * @return the number of events per second since the meter was created.
+     */
+    public double getMeanRate() {
+	long count = getCount();
+	if (count == 0) {
+	    return 0;
+	}
+
+	double elapsed = (clock.nanoTime() - startTime) / (double) TimeUnit.SECONDS.toNanos(1);
+	return count / elapsed;
+    }
+
+    /**
+     * @return the one minute moving average of events per second.
+     */
+    public synchronized double getOneMinuteRate() {
+	tickIfNecessary();
+	return m1Rate;
+    }
+
+    /**
+     * @return the five minute moving average of events per second.
+     */
+    public synchronized double getFiveMinuteRate() {
+	tickIfNecessary();
+	return m5Rate;
+    }
+
+    /**
+     * @return the fifteen minute moving average of events per second.
+     */
+    public synchronized double getFifteenMinuteRate() {
+	tickIfNecessary();
+	return m15Rate;
+    }
+
+    /**
+     * Updates the averages with the intervals since the last tick. Must be called 
+     * holding the lock.
+     */
+    private void tickIfNecessary() {
+	long now = clock.nanoTime();
+	long ticks = (now - lastTick) / TICK_INTERVAL;
+	if (ticks <= 0) {
+	    return;
+	}
+	lastTick += ticks * TICK_INTERVAL;
+
+	long events = uncounted.sumThenReset();
+	count += events;
+
+	// the events are spread over the intervals, each one with the same rate; 
+	// applying it in n intervals at once is rate + (m - rate) * (1 - alpha)^n
+	double rate = events / (ticks * SECONDS_PER_TICK);
+	if (initialized) {
+	    m1Rate = decay(m1Rate, rate, M1_ALPHA, ticks);
+	    m5Rate = decay(m5Rate, rate, M5_ALPHA, ticks);
+	    m15Rate = decay(m15Rate, rate, M15_ALPHA, ticks);
+	} else {
+	    m1Rate = rate;
+	    m5Rate = rate;
+	    m15Rate = rate;
+	    initialized = true;
+	}
+    }
+
+    private static double decay(double average, double rate, double alpha, long ticks) {
+	return rate + (average - rate) * Math.pow(1 - alpha, ticks);
+    }
+
+    /**
+     * The source of the time, replaced in the tests.
+     */
+    interface Clock {
+
+	Clock SYSTEM = new Clock() {
+	    @Override
+	    public long nanoTime() {
+		return System.nanoTime();
+	    }
+	};
+
+	long nanoTime();
+
+    }
+
+}
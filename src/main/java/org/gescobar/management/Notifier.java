@@ -0,0 +1,98 @@
+package org.gescobar.management;
+
+import javax.management.Notification;
+
+import org.gescobar.management.util.NotificationSupport;
+
+/**
+ * @author German Escobar
+ *
+ * Sends notifications from an MBean. Declare a field of this type in the class that
+ * is exposed, either initialized or injected (the extension adds this class as a 
+ * bean), and the field is bound to the MBean when it's created. Declare the types 
+ * that are sent with {@link ManagedNotification}.
+ * 
+ * Sending never blocks: the notifications are queued for each listener and 
+ * delivered on a background thread. Until the MBean is created, or while it has no
+ * listeners, the notifications are discarded without being created.
+ */
+public class Notifier {
+
+    private volatile NotificationSupport support;
+
+    /**
+     * Sends a notification without user data.
+     * @param type the type of the notification.
+     * @param message the message of the notification.
+     */
+    public void send(String type, String message) {
+	send(type, message, null);
+    }
+
+    /**
+     * Sends a notification, with the MBean as the source, the next sequence number 
+     * and the current time.
+     * @param type the type of the notification.
+     * @param message the message of the notification.
+     * @param userData the user data of the notification, can be null.
+     */
+    public void send(String type, String message, Object userData) {
+	NotificationSupport s = support;
+	if (s == null || !s.hasListeners()) {
+	    return;
+	}
+
+	Notification notification = new Notification(type, s.getSource(), s.nextSequenceNumber(), message);
+	notification.setUserData(userData);
+	s.sendNotification(notification);
+    }
+
+    /**
+     * Sends a notification created by the caller, e.g. an AttributeChangeNotification.
+     * Use {@link #getSource()} and {@link #nextSequenceNumber()} to create it.
+     * @param notification the notification to send.
+     */
+    public void send(Notification notification) {
+	NotificationSupport s = support;
+	if (s != null) {
+	    s.sendNotification(notification);
+	}
+    }
+
+    /**
+     * @return true if the notifier is bound to an MBean that has listeners, so
+     * creating a notification is worth it.
+     */
+    public boolean isEnabled() {
+	NotificationSupport s = support;
+	return s != null && s.hasListeners();
+    }
+
+    /**
+     * @return the source of the notifications (the MBean), or null if the notifier 
+     * is not bound yet.
+     */
+    public Object getSource() {
+	NotificationSupport s = support;
+	return s == null ? null : s.getSource();
+    }
+
+    /**
+     * @return the next sequence number of the MBean, or 0 if the notifier is not 
+     * bound yet.
+     */
+    public long nextSequenceNumber() {
+	NotificationSupport s = support;
+	return s == null ? 0 : s.nextSequenceNumber();
+    }
+
+    /**
+     * Binds the notifier to the MBean that exposes its owner. Called when the MBean 
+     * is created.
+     * @param support the notification support of the MBean.
+     */
+    public void bind(NotificationSupport support) {
+	this.support = support;
+    }
+
+}
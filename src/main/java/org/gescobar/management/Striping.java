@@ -0,0 +1,39 @@
+package org.gescobar.management;
+
+/**
+ * @author German Escobar
+ *
+ * Helpers shared by the types that spread their updates over a number of cells,
+ * like {@link Counter} and {@link Histogram}, to reduce contention.
+ */
+final class Striping {
+
+    private Striping() {}
+
+    /**
+     * @param max the maximum number of cells, must be a power of two.
+     * @return the smallest power of two greater than or equal to twice the number 
+     * of processors, so threads rarely share a cell, limited to max.
+     */
+    static int cellCount(int max) {
+	int processors = Runtime.getRuntime().availableProcessors();
+
+	int count = 1;
+	while (count < processors * 2 && count < max) {
+	    count <<= 1;
+	}
+
+	return count;
+    }
+
+    /**
+     * @param cells the number of cells, a power of two.
+     * @return the cell, between 0 and cells - 1, assigned to the current thread.
+     */
+    static int threadHash(int cells) {
+	long id = Thread.currentThread().getId();
+	int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+	return hash >>> 16 & (cells - 1);
+    }
+
+}
@@ -0,0 +1,36 @@
+package org.gescobar.management;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import javax.interceptor.InterceptorBinding;
+
+/**
+ * @author German Escobar
+ *
+ * Interceptor binding that records the number of calls, the number of errors and
+ * the latency of a method (or of all the business methods of a class). On an 
+ * {@link MBean} each timed method is exposed as a read-only CompositeData attribute
+ * named after the method followed by "Timing" (e.g. processTiming). 
+ * 
+ * As any CDI interceptor, it has to be enabled in the beans.xml of the archive:
+ * <pre>
+ * &lt;interceptors&gt;
+ *     &lt;class&gt;org.gescobar.management.cdi.TimedInterceptor&lt;/class&gt;
+ * &lt;/interceptors&gt;
+ * </pre>
+ */
+@Inherited
+@InterceptorBinding
+@Documented
+@Retention(value=RUNTIME)
+@Target(value={TYPE,METHOD})
+public @interface Timed {
+
+}
@@ -0,0 +1,477 @@
+package org.gescobar.management.apt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import org.gescobar.management.Description;
+import org.gescobar.management.Impact;
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedAttribute;
+import org.gescobar.management.ManagedOperation;
+import org.gescobar.management.Notifier;
+import org.gescobar.management.util.MBeanMetadataProvider;
+
+/**
+ * @author German Escobar
+ *
+ * Collects the exposed members of a class annotated with
+ * {@link org.gescobar.management.MBean} and writes the source of its
+ * {@link org.gescobar.management.util.MBeanMetadataProvider}. The members are
+ * selected as in the {@link org.gescobar.management.cdi.DynamicMBeanInfoBuilder}.
+ */
+class MBeanMetadataWriter {
+
+    private static final String ANNOTATIONS_PACKAGE = MBean.class.getPackage().getName();
+
+    private static final String NOTIFIER_CLASS = Notifier.class.getName();
+
+    /**
+     * The annotations of the annotations package the generated code knows how to
+     * handle. Any other one means the class needs the reflective builders.
+     */
+    private static final Set<String> KNOWN_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+	    MBean.class.getName(), ManagedAttribute.class.getName(),
+	    ManagedOperation.class.getName(), Description.class.getName()));
+
+    private final Elements elements;
+
+    private final Types types;
+
+    private final TypeElement type;
+
+    private final String packageName;
+
+    private final String simpleName;
+
+    private final List<Attribute> attributes = new ArrayList<Attribute>();
+
+    private final List<Operation> operations = new ArrayList<Operation>();
+
+    MBeanMetadataWriter(ProcessingEnvironment env, TypeElement type) throws UnsupportedMemberException {
+	this.elements = env.getElementUtils();
+	this.types = env.getTypeUtils();
+	this.type = type;
+
+	PackageElement pkg = elements.getPackageOf(type);
+	this.packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+
+	String binaryName = elements.getBinaryName(type).toString();
+	this.simpleName = (packageName.length() == 0 ? binaryName : binaryName.substring(packageName.length() + 1))
+		+ MBeanMetadataProvider.GENERATED_SUFFIX;
+
+	collectMembers();
+    }
+
+    String getGeneratedClassName() {
+	return packageName.length() == 0 ? simpleName : packageName + "." + simpleName;
+    }
+
+    private void collectMembers() throws UnsupportedMemberException {
+	// the open type converters are built from the runtime types
+	if (type.getAnnotation(MBean.class).openTypes()) {
+	    throw new UnsupportedMemberException("open types");
+	}
+
+	List<ExecutableElement> visitedMethods = new ArrayList<ExecutableElement>();
+
+	TypeElement current = type;
+	while (current != null && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+	    // annotations like @Timed are inherited
+	    checkAnnotations(current);
+	    for (Element member : current.getEnclosedElements()) {
+		checkAnnotations(member);
+	    }
+
+	    for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+		// notifiers are bound by the reflective metadata
+		if (isNotifier(field)) {
+		    throw new UnsupportedMemberException("notifier " + field.getSimpleName());
+		}
+		if (field.getAnnotation(ManagedAttribute.class) != null) {
+		    attributes.add(new Attribute(field));
+		}
+	    }
+
+	    for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+		if (isOverridden(method, visitedMethods)) {
+		    continue;
+		}
+		visitedMethods.add(method);
+
+		if (method.getAnnotation(ManagedAttribute.class) != null) {
+		    throw new UnsupportedMemberException("attribute method " + method.getSimpleName());
+		}
+		if (method.getAnnotation(ManagedOperation.class) != null) {
+		    if (!isAccessible(method)) {
+			throw new UnsupportedMemberException("operation " + method.getSimpleName() + " is not accessible");
+		    }
+		    operations.add(new Operation(method));
+		}
+	    }
+
+	    TypeMirror superclass = current.getSuperclass();
+	    current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(superclass) : null;
+	}
+    }
+
+    private boolean isNotifier(VariableElement field) {
+	TypeMirror fieldType = types.erasure(field.asType());
+	return fieldType.getKind() == TypeKind.DECLARED 
+		&& ((TypeElement) types.asElement(fieldType)).getQualifiedName().contentEquals(NOTIFIER_CLASS);
+    }
+
+    private void checkAnnotations(Element element) throws UnsupportedMemberException {
+	for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+	    TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+	    String name = annotationType.getQualifiedName().toString();
+
+	    if (elements.getPackageOf(annotationType).getQualifiedName().contentEquals(ANNOTATIONS_PACKAGE)
+		    && !KNOWN_ANNOTATIONS.contains(name)) {
+		throw new UnsupportedMemberException("@" + annotationType.getSimpleName() + " on " + element.getSimpleName());
+	    }
+	}
+    }
+
+    private boolean isOverridden(ExecutableElement method, List<ExecutableElement> subclassMethods) {
+	for (ExecutableElement m : subclassMethods) {
+	    if (elements.overrides(m, method, type)) {
+		return true;
+	    }
+	}
+
+	return false;
+    }
+
+    /**
+     * @param member a field or method of the class or one of its superclasses.
+     * @return true if the generated class, in the package of the annotated class, can
+     * access the member.
+     */
+    private boolean isAccessible(Element member) {
+	Set<Modifier> modifiers = member.getModifiers();
+	if (modifiers.contains(Modifier.PUBLIC)) {
+	    return true;
+	}
+	if (modifiers.contains(Modifier.PRIVATE)) {
+	    return false;
+	}
+
+	return elements.getPackageOf(member).getQualifiedName().contentEquals(packageName);
+    }
+
+    void write(Writer out) throws IOException {
+	String target = sourceName(type.asType());
+
+	StringBuilder sb = new StringBuilder();
+	if (packageName.length() > 0) {
+	    sb.append("package ").append(packageName).append(";\n\n");
+	}
+	sb.append("/* Generated by ").append(MBeanProcessor.class.getName()).append(" */\n");
+	sb.append("public final class ").append(simpleName)
+		.append(" implements org.gescobar.management.util.MBeanMetadataProvider {\n\n");
+
+	// getMetadata
+	sb.append("    public org.gescobar.management.util.MBeanMetadata getMetadata() {\n");
+	sb.append("        javax.management.MBeanAttributeInfo[] attributes = new javax.management.MBeanAttributeInfo[] {\n");
+	for (Attribute attribute : attributes) {
+	    sb.append("            new javax.management.MBeanAttributeInfo(").append(literal(attribute.name)).append(", ")
+		    .append(literal(className(attribute.type))).append(", ").append(literal(attribute.description))
+		    .append(", ").append(attribute.readable).append(", ").append(attribute.writable).append(", false),\n");
+	}
+	sb.append("        };\n");
+
+	sb.append("        javax.management.MBeanConstructorInfo[] constructors = new javax.management.MBeanConstructorInfo[] {\n");
+	for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+	    sb.append("            new javax.management.MBeanConstructorInfo(")
+		    .append(literal(elements.getBinaryName(type).toString())).append(", ")
+		    .append(literal(description(constructor))).append(", new javax.management.MBeanParameterInfo[] {");
+	    int position = 1;
+	    for (VariableElement parameter : constructor.getParameters()) {
+		sb.append(" new javax.management.MBeanParameterInfo(").append(literal("p" + position++)).append(", ")
+			.append(literal(className(parameter.asType()))).append(", \"\"),");
+	    }
+	    sb.append(" }),\n");
+	}
+	sb.append("        };\n");
+
+	sb.append("        javax.management.MBeanOperationInfo[] operations = new javax.management.MBeanOperationInfo[] {\n");
+	for (Operation operation : operations) {
+	    ExecutableElement method = operation.method;
+	    sb.append("            new javax.management.MBeanOperationInfo(").append(literal(method.getSimpleName().toString()))
+		    .append(", ").append(literal(description(method))).append(", new javax.management.MBeanParameterInfo[] {");
+	    int position = 0;
+	    for (VariableElement parameter : method.getParameters()) {
+		sb.append(" new javax.management.MBeanParameterInfo(").append(literal("param" + position++)).append(", ")
+			.append(literal(description(parameter))).append(", ").append(literal(className(parameter.asType()))).append("),");
+	    }
+	    sb.append(" }, ").append(literal(className(method.getReturnType()))).append(", ")
+		    .append(operation.impact.getCode()).append("),\n");
+	}
+	sb.append("        };\n");
+
+	sb.append("        javax.management.MBeanInfo mBeanInfo = new javax.management.MBeanInfo(")
+		.append(literal(elements.getBinaryName(type).toString())).append(", ").append(literal(description(type)))
+		.append(", attributes, constructors, operations, new javax.management.MBeanNotificationInfo[0]);\n\n");
+
+	sb.append("        org.gescobar.management.util.AttributeAccessor[] accessors = new org.gescobar.management.util.AttributeAccessor[] {\n");
+	for (int i = 0; i < attributes.size(); i++) {
+	    Attribute attribute = attributes.get(i);
+	    if (attribute.direct) {
+		sb.append("            new Attribute").append(i).append("(),\n");
+	    } else {
+		sb.append("            org.gescobar.management.util.Accessors.forField(").append(target).append(".class, ")
+			.append(literal(elements.getBinaryName((TypeElement) attribute.field.getEnclosingElement()).toString()))
+			.append(", ").append(literal(attribute.name)).append("),\n");
+	    }
+	}
+	sb.append("        };\n");
+	sb.append("        org.gescobar.management.util.OperationInvoker[] invokers = new org.gescobar.management.util.OperationInvoker[] {\n");
+	for (int i = 0; i < operations.size(); i++) {
+	    sb.append("            new Operation").append(i).append("(),\n");
+	}
+	sb.append("        };\n\n");
+	sb.append("        return new org.gescobar.management.util.MBeanMetadata(mBeanInfo, accessors, \n");
+	sb.append("                new org.gescobar.management.util.OperationTable(invokers));\n");
+	sb.append("    }\n");
+
+	// accessors
+	for (int i = 0; i < attributes.size(); i++) {
+	    Attribute attribute = attributes.get(i);
+	    if (!attribute.direct) {
+		continue;
+	    }
+
+	    sb.append("\n    private static final class Attribute").append(i)
+		    .append(" extends org.gescobar.management.util.GeneratedAttributeAccessor {\n\n");
+	    sb.append("        Attribute").append(i).append("() {\n");
+	    sb.append("            super(").append(literal(attribute.name)).append(", ").append(classLiteral(attribute.type)).append(");\n");
+	    sb.append("        }\n\n");
+	    sb.append("        protected Object doGet(Object target) throws Exception {\n");
+	    sb.append("            return ").append(attribute.readExpression(target)).append(";\n");
+	    sb.append("        }\n\n");
+	    sb.append("        protected void doSet(Object target, Object value) throws Exception {\n");
+	    sb.append("            ").append(attribute.writeStatement(target, "(" + boxedName(attribute.type) + ") value")).append(";\n");
+	    sb.append("        }\n");
+	    sb.append("    }\n");
+	}
+
+	// invokers
+	for (int i = 0; i < operations.size(); i++) {
+	    ExecutableElement method = operations.get(i).method;
+	    List<? extends VariableElement> parameters = method.getParameters();
+
+	    sb.append("\n    private static final class Operation").append(i)
+		    .append(" extends org.gescobar.management.util.GeneratedOperationInvoker {\n\n");
+	    sb.append("        Operation").append(i).append("() {\n");
+	    sb.append("            super(").append(literal(method.getSimpleName().toString())).append(", new Class<?>[] {");
+	    for (VariableElement parameter : parameters) {
+		sb.append(" ").append(classLiteral(parameter.asType())).append(",");
+	    }
+	    sb.append(" });\n");
+	    sb.append("        }\n\n");
+
+	    StringBuilder call = new StringBuilder();
+	    call.append(method.getModifiers().contains(Modifier.STATIC) ? sourceName(method.getEnclosingElement().asType())
+		    : "((" + target + ") target)");
+	    call.append(".").append(method.getSimpleName()).append("(");
+	    for (int j = 0; j < parameters.size(); j++) {
+		call.append(j == 0 ? "" : ", ").append("(").append(boxedName(parameters.get(j).asType())).append(") params[").append(j).append("]");
+	    }
+	    call.append(")");
+
+	    sb.append("        protected Object doInvoke(Object target, Object[] params) throws Exception {\n");
+	    if (method.getReturnType().getKind() == TypeKind.VOID) {
+		sb.append("            ").append(call).append(";\n");
+		sb.append("            return null;\n");
+	    } else {
+		sb.append("            return ").append(call).append(";\n");
+	    }
+	    sb.append("        }\n");
+	    sb.append("    }\n");
+	}
+
+	sb.append("\n}\n");
+	out.write(sb.toString());
+    }
+
+    private String description(Element element) {
+	Description description = element.getAnnotation(Description.class);
+	return description == null ? "" : description.value();
+    }
+
+    /**
+     * @return the name of the type as it is written in the source code, after erasure.
+     */
+    private String sourceName(TypeMirror t) {
+	return types.erasure(t).toString();
+    }
+
+    private String classLiteral(TypeMirror t) {
+	return sourceName(t) + ".class";
+    }
+
+    /**
+     * @return the source name of the wrapper class if the type is a primitive, the
+     * source name of the type otherwise.
+     */
+    private String boxedName(TypeMirror t) {
+	if (t.getKind().isPrimitive()) {
+	    return types.boxedClass((PrimitiveType) t).getQualifiedName().toString();
+	}
+
+	return sourceName(t);
+    }
+
+    /**
+     * @return the name of the type as returned by Class.getName().
+     */
+    private String className(TypeMirror t) {
+	TypeMirror erased = types.erasure(t);
+	switch (erased.getKind()) {
+	case ARRAY:
+	    return "[" + descriptor(((ArrayType) erased).getComponentType());
+	case DECLARED:
+	    return elements.getBinaryName((TypeElement) ((DeclaredType) erased).asElement()).toString();
+	default:
+	    return erased.getKind().name().toLowerCase();
+	}
+    }
+
+    private String descriptor(TypeMirror t) {
+	TypeMirror erased = types.erasure(t);
+	switch (erased.getKind()) {
+	case BOOLEAN: return "Z";
+	case BYTE: return "B";
+	case CHAR: return "C";
+	case SHORT: return "S";
+	case INT: return "I";
+	case LONG: return "J";
+	case FLOAT: return "F";
+	case DOUBLE: return "D";
+	case ARRAY:
+	    return "[" + descriptor(((ArrayType) erased).getComponentType());
+	default:
+	    return "L" + className(erased) + ";";
+	}
+    }
+
+    private static String literal(String value) {
+	StringBuilder sb = new StringBuilder("\"");
+	for (char c : value.toCharArray()) {
+	    switch (c) {
+	    case '"': sb.append("\\\""); break;
+	    case '\\': sb.append("\\\\"); break;
+	    case '\n': sb.append("\\n"); break;
+	    case '\r': sb.append("\\r"); break;
+	    case '\t': sb.append("\\t"); break;
+	    default:
+		if (c < 0x20 || c > 0x7e) {
+		    sb.append(String.format("\\u%04x", (int) c));
+		} else {
+		    sb.append(c);
+		}
+	    }
+	}
+
+	return sb.append("\"").toString();
+    }
+
+    /**
+     * An exposed field. The generated code reads and writes it directly when it can,
+     * otherwise it uses the reflective {@link org.gescobar.management.util.FieldAccessor}
+     * of the field, so the values are always those of the field, as with the 
+     * reflective metadata, and not of its getter or setter.
+     */
+    private class Attribute {
+
+	final String name;
+
+	final TypeMirror type;
+
+	final String description;
+
+	final boolean readable;
+
+	final boolean writable;
+
+	final VariableElement field;
+
+	/**
+	 * True if the generated class can read and write the field.
+	 */
+	final boolean direct;
+
+	Attribute(VariableElement field) throws UnsupportedMemberException {
+	    ManagedAttribute annotation = field.getAnnotation(ManagedAttribute.class);
+
+	    this.field = field;
+	    this.name = field.getSimpleName().toString();
+	    this.type = field.asType();
+	    this.description = description(field);
+	    this.readable = annotation.readable();
+	    this.writable = annotation.writable();
+
+	    if (annotation.cacheMillis() > 0) {
+		throw new UnsupportedMemberException("cached attribute " + name);
+	    }
+
+	    this.direct = isAccessible(field) && !field.getModifiers().contains(Modifier.FINAL);
+	}
+
+	private String qualifier(String target) {
+	    if (field.getModifiers().contains(Modifier.STATIC)) {
+		return sourceName(field.getEnclosingElement().asType());
+	    }
+
+	    return "((" + target + ") target)";
+	}
+
+	String readExpression(String target) {
+	    return qualifier(target) + "." + name;
+	}
+
+	String writeStatement(String target, String value) {
+	    return qualifier(target) + "." + name + " = " + value;
+	}
+
+    }
+
+    /**
+     * An exposed method.
+     */
+    private static class Operation {
+
+	final ExecutableElement method;
+
+	final Impact impact;
+
+	Operation(ExecutableElement method) {
+	    this.method = method;
+	    this.impact = method.getAnnotation(ManagedOperation.class).impact();
+	}
+
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.gescobar.management.apt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+import org.gescobar.management.MBean;
+
+/**
+ * @author German Escobar
+ *
+ * Annotation processor that generates, for each class annotated with 
+ * {@link org.gescobar.management.MBean}, a class that builds its MBeanInfo, 
+ * attribute accessors and operation table without reflection (see 
+ * {@link org.gescobar.management.util.MBeanMetadataProvider}). The MBean factories
+ * use the generated class when it is present and fall back to the reflective 
+ * builders otherwise.
+ * 
+ * Classes with members the generated code can't reach (private operations) or 
+ * with annotations this processor doesn't know are skipped with a note, so they 
+ * keep working through reflection. The private and final fields are read and 
+ * written through the reflective accessors.
+ * 
+ * The processor is not registered in META-INF/services, so it doesn't run in 
+ * every build that has the library on its class path. Enable it with 
+ * <code>-processor org.gescobar.management.apt.MBeanProcessor</code> (javac looks
+ * for it in the class path if there is no <code>-processorpath</code>) or, with 
+ * Maven, in the <code>annotationProcessors</code> of the compiler plugin.
+ */
+@SupportedAnnotationTypes("org.gescobar.management.MBean")
+public class MBeanProcessor extends AbstractProcessor {
+
+    /**
+     * The classes already generated, processing can take several rounds.
+     */
+    private final Set<String> generated = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+	return SourceVersion.latest();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+	for (Element element : roundEnv.getElementsAnnotatedWith(MBean.class)) {
+	    if (element.getKind() != ElementKind.CLASS) {
+		continue;
+	    }
+
+	    TypeElement type = (TypeElement) element;
+	    if (!isReachable(type)) {
+		note(type, "the class is not reachable from a generated class");
+		continue;
+	    }
+
+	    try {
+		MBeanMetadataWriter writer = new MBeanMetadataWriter(processingEnv, type);
+		String className = writer.getGeneratedClassName();
+		if (!generated.add(className)) {
+		    continue;
+		}
+
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(className, type);
+		Writer out = file.openWriter();
+		try {
+		    writer.write(out);
+		} finally {
+		    out.close();
+		}
+	    } catch (UnsupportedMemberException e) {
+		note(type, e.getMessage());
+	    } catch (IOException e) {
+		processingEnv.getMessager().printMessage(Kind.ERROR, 
+			"Cannot write the MBean metadata of " + type + ": " + e.getMessage(), type);
+	    }
+	}
+
+	// other processors can also process the MBean annotation
+	return false;
+    }
+
+    /**
+     * @param type a class annotated with MBean.
+     * @return true if the generated class, which lives in the same package, can 
+     * reference the type.
+     */
+    private boolean isReachable(TypeElement type) {
+	Element current = type;
+	while (current instanceof TypeElement) {
+	    TypeElement t = (TypeElement) current;
+	    if (t.getModifiers().contains(Modifier.PRIVATE)) {
+		return false;
+	    }
+	    if (t.getNestingKind() == NestingKind.MEMBER && !t.getModifiers().contains(Modifier.STATIC)) {
+		return false;
+	    }
+	    if (t.getNestingKind() == NestingKind.LOCAL || t.getNestingKind() == NestingKind.ANONYMOUS) {
+		return false;
+	    }
+
+	    current = t.getEnclosingElement();
+	}
+
+	return true;
+    }
+
+    private void note(TypeElement type, String reason) {
+	processingEnv.getMessager().printMessage(Kind.NOTE, "No MBean metadata generated for " + type 
+		+ " (" + reason + "), the reflective builders will be used", type);
+    }
+
+}
@@ -0,0 +1,20 @@
+package org.gescobar.management.apt;
+
+/**
+ * @author German Escobar
+ *
+ * Thrown when a class annotated with {@link org.gescobar.management.MBean} has a 
+ * member the generated code can't handle. 
+ */
+class UnsupportedMemberException extends Exception {
+
+    /**
+     * Generated Serial Version UID
+     */
+    private static final long serialVersionUID = 3907455532218104826L;
+
+    UnsupportedMemberException(String message) {
+	super(message);
+    }
+
+}
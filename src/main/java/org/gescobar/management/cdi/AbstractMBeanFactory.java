@@ -10,7 +10,17 @@ import javax.enterprise.inject.spi.AnnotatedType;
 import org.gescobar.management.MBean;
 import org.gescobar.management.MBeanFactory;
 import org.gescobar.management.ManagementException;
+import org.gescobar.management.util.AttributeAccessor;
+import org.gescobar.management.util.BootProfiler;
 import org.gescobar.management.util.MBeanImpl;
+import org.gescobar.management.util.MBeanMetadata;
+import org.gescobar.management.util.MBeanMetadataProvider;
+import org.gescobar.management.util.MBeanReaper;
+import org.gescobar.management.util.MetadataCache;
+import org.gescobar.management.util.OperationTable;
+import org.gescobar.management.util.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @author German Escobar
@@ -20,6 +30,20 @@ import org.gescobar.management.util.MBeanImpl;
  */
 public abstract class AbstractMBeanFactory implements MBeanFactory {
     
+    private static Logger log = LoggerFactory.getLogger(AbstractMBeanFactory.class);
+    
+    /**
+     * The metadata of the exposed classes, shared by all the factories so the 
+     * AnnotatedType of a class is processed only once.
+     */
+    private static final MetadataCache METADATA_CACHE = new MetadataCache();
+    
+    static {
+	if (Statistics.ENABLED) {
+	    Statistics.getDefault().setMetadataCache(METADATA_CACHE);
+	}
+    }
+    
     /**
      * This method has to be implemented by concrete classes to retrieve the annotated
      * type from which the MBean is going to be created.
@@ -35,26 +59,162 @@ public abstract class AbstractMBeanFactory implements MBeanFactory {
     @Override
     public <T> MBeanImpl<T> createMBean(T instance) throws ManagementException {
 	try {
+	    MBeanMetadata metadata = getMetadata(instance);
+	    
+	    // create the MBean
+	    return metadata.createMBean(instance);
+	} catch (ManagementException e) {
+	    throw e;
+	} catch (Exception e) {
+	    throw new ManagementException(e);
+	}
+    }
+    
+    /**
+     * Creates an MBean like {@link #createMBean(Object)} that references the object 
+     * weakly, so the MBean doesn't keep it alive. Once the object is garbage 
+     * collected, the MBean is unregistered from the MBeanServer by the 
+     * {@link MBeanReaper}. Meant for MBeans that are registered by hand and might not
+     * be unregistered. It's not part of {@link MBeanFactory}, so the implementations
+     * of that interface outside of this library don't have to provide it; inject the
+     * {@link CDIMBeanFactory} to use it.
+     * 
+     * @param instance the object that wants to be exposed as an MBean.
+     * @return the MBean that can be registered to an MBeanServer.
+     * @throws ManagementException wraps any exception (checked or unchecked)
+     * 		that is thrown in the creation process.
+     */
+    public <T> MBeanImpl<T> createWeakMBean(T instance) throws ManagementException {
+	MBeanImpl<T> mBean = createMBean(instance);
+	mBean.bindWeakly(MBeanReaper.getDefault());
+	
+	return mBean;
+    }
+    
+    /**
+     * @return the cache shared by all the factories that holds the metadata of the 
+     * classes that have already been exposed.
+     */
+    public static MetadataCache getMetadataCache() {
+	return METADATA_CACHE;
+    }
+    
+    /**
+     * Retrieves the metadata of the class of the instance from the cache, building
+     * it if it's not there. The AnnotatedType is only retrieved when the class of the
+     * instance is not in the cache.
+     * 
+     * The metadata is cached under the class of the AnnotatedType, as the 
+     * {@link MetadataPrecomputer} does, which is not the class of the instance when 
+     * the container proxies it (e.g. a Weld subclass). In that case the metadata is 
+     * also cached under the class of the instance, so the next instances are found
+     * with a single lookup.
+     * @param instance the object that is going to be exposed.
+     * @return the metadata of the class of the instance.
+     * @throws Exception
+     */
+    protected MBeanMetadata getMetadata(Object instance) throws Exception {
+	Class<?> type = instance.getClass();
+	
+	MBeanMetadata metadata = METADATA_CACHE.get(type);
+	if (metadata == null) {
 	    AnnotatedType<? extends Object> at = getAnnotatedType(instance);
+	    Class<?> javaClass = at.getJavaClass();
 	    
-	    // select the type of visitor
-	    AnnotatedTypeVisitor visitor = null;
-	    if (at.isAnnotationPresent(MBean.class)) {
-		visitor = new DynamicMBeanInfoBuilder();
-	    } else {
-		visitor = new StandardMBeanInfoBuilder();
+	    if (javaClass != type) {
+		metadata = METADATA_CACHE.get(javaClass);
 	    }
-	    
-	    processAnnotatedType(at, visitor);
-    	    	
-    	    // create the MBean
-    	    MBeanImpl<T> mBean = new MBeanImpl<T>(instance, visitor.getFields(), visitor.getMethods(), 
-    		    visitor.getMBeanInfo());
-    	
-    	    return mBean;
+	    if (metadata == null) {
+		metadata = cacheMetadata(javaClass, at);
+	    }
+	    if (javaClass != type) {
+		metadata = METADATA_CACHE.putIfAbsent(type, metadata);
+	    }
+	}
+	
+	return metadata;
+    }
+    
+    /**
+     * Builds the metadata of an AnnotatedType, or loads the generated one, and adds
+     * it to the cache shared by the factories. The aggregate classes always use the
+     * reflective metadata, the {@link org.gescobar.management.util.AggregateMBean} 
+     * needs its numeric accessors.
+     * @param type the class of the exposed objects.
+     * @param at the AnnotatedType of the class.
+     * @return the metadata that is in the cache after the call.
+     */
+    static MBeanMetadata cacheMetadata(Class<?> type, AnnotatedType<? extends Object> at) {
+	MBeanMetadata metadata = null;
+	
+	// prefer the metadata generated at compile time
+	if (at.isAnnotationPresent(MBean.class) && !at.getAnnotation(MBean.class).aggregate()) {
+	    metadata = loadGeneratedMetadata(at.getJavaClass());
+	}
+	if (metadata == null) {
+	    metadata = buildMetadata(at);
+	}
+	
+	return METADATA_CACHE.putIfAbsent(type, metadata);
+    }
+    
+    /**
+     * Loads the metadata generated by the {@link org.gescobar.management.apt.MBeanProcessor}
+     * for a class annotated with {@link MBean}.
+     * @param type the class annotated with MBean.
+     * @return the generated metadata or null if the class was not processed.
+     */
+    static MBeanMetadata loadGeneratedMetadata(Class<?> type) {
+	String name = type.getName() + MBeanMetadataProvider.GENERATED_SUFFIX;
+	try {
+	    Class<?> generated = Class.forName(name, true, type.getClassLoader());
+	    return ((MBeanMetadataProvider) generated.getDeclaredConstructor().newInstance()).getMetadata();
+	} catch (ClassNotFoundException e) {
+	    // the class was not processed, the reflective builders will be used
+	    return null;
 	} catch (Exception e) {
-	    throw new ManagementException(e);
+	    log.warn("couldn't use the generated MBean metadata " + name + ", falling back to reflection", e);
+	    return null;
+	}
+    }
+    
+    /**
+     * Builds the metadata of an AnnotatedType: the MBeanInfo, the accessors of the
+     * exposed attributes and the operation table.
+     * @param <X>
+     * @param at the AnnotatedType from which the MBean is going to be created.
+     * @return the metadata used to create the MBeans of the type.
+     */
+    static <X> MBeanMetadata buildMetadata(AnnotatedType<X> at) {
+	long start = System.nanoTime();
+	
+	// select the type of visitor
+	AnnotatedTypeVisitor visitor = null;
+	if (at.isAnnotationPresent(MBean.class)) {
+	    visitor = new DynamicMBeanInfoBuilder();
+	} else {
+	    visitor = new StandardMBeanInfoBuilder();
 	}
+	
+	processAnnotatedType(at, visitor);
+	long visited = System.nanoTime();
+	
+	// create the accessors once, the MBeans use them on every call
+	AttributeAccessor[] attributeAccessors = visitor.getAttributeAccessors();
+	OperationTable operationTable = visitor.getOperationTable();
+	
+	MBeanMetadata metadata = new MBeanMetadata(visitor.getMBeanInfo(), attributeAccessors, operationTable, 
+		visitor.getNotifierFields(), visitor.getCoalesceWindows(), visitor.getThresholds());
+	
+	if (Statistics.ENABLED) {
+	    long end = System.nanoTime();
+	    Statistics statistics = Statistics.getDefault();
+	    statistics.metadataBuilt(end - start);
+	    statistics.getBootProfiler().record(at.getJavaClass(), BootProfiler.Phase.VISIT, visited - start);
+	    statistics.getBootProfiler().record(at.getJavaClass(), BootProfiler.Phase.MBEAN_INFO, end - visited);
+	}
+	
+	return metadata;
     }
     
     /**
@@ -65,7 +225,7 @@ public abstract class AbstractMBeanFactory implements MBeanFactory {
      * @param at
      * @param visitor
      */
-    private <T> void processAnnotatedType(AnnotatedType<T> at, AnnotatedTypeVisitor visitor) {
+    private static <T> void processAnnotatedType(AnnotatedType<T> at, AnnotatedTypeVisitor visitor) {
 	// visit annotated type
 	visitor.visitAnnotatedType(at);
 	
@@ -2,6 +2,7 @@ package org.gescobar.management.cdi;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Map;
 
 import javax.enterprise.inject.spi.AnnotatedConstructor;
 import javax.enterprise.inject.spi.AnnotatedField;
@@ -9,6 +10,10 @@ import javax.enterprise.inject.spi.AnnotatedMethod;
 import javax.enterprise.inject.spi.AnnotatedType;
 import javax.management.MBeanInfo;
 
+import org.gescobar.management.util.AttributeAccessor;
+import org.gescobar.management.util.OperationTable;
+import org.gescobar.management.util.Threshold;
+
 /**
  * @author German Escobar
  *
@@ -32,6 +37,16 @@ public interface AnnotatedTypeVisitor {
     
     Field[] getFields();
     
+    AttributeAccessor[] getAttributeAccessors();
+    
     Method[] getMethods();
     
+    OperationTable getOperationTable();
+    
+    Field[] getNotifierFields();
+    
+    Map<String,Long> getCoalesceWindows();
+    
+    Threshold[] getThresholds();
+    
 }
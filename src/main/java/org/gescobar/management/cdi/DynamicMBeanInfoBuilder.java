@@ -5,7 +5,11 @@ import javax.enterprise.inject.spi.AnnotatedMethod;
 
 import org.gescobar.management.Impact;
 import org.gescobar.management.ManagedAttribute;
+import org.gescobar.management.ManagedCounter;
+import org.gescobar.management.ManagedHistogram;
+import org.gescobar.management.ManagedMeter;
 import org.gescobar.management.ManagedOperation;
+import org.gescobar.management.Notifier;
 
 /**
  * @author German Escobar
@@ -13,7 +17,10 @@ import org.gescobar.management.ManagedOperation;
  * A DynamicMBeanInfoBuilder is a {@link StandardMBeanInfoBuilder} that only 
  * includes those fields and methods annotated with
  * {@link org.gescobar.management.ManagedAttribute} and
- * {@link org.gescobar.management.ManagedOperation} in the MBeanInfo. The 
+ * {@link org.gescobar.management.ManagedOperation} (and the counters, histograms and
+ * meters annotated with {@link org.gescobar.management.ManagedCounter}, 
+ * {@link org.gescobar.management.ManagedHistogram} and 
+ * {@link org.gescobar.management.ManagedMeter}) in the MBeanInfo. The 
  * AnnotatedType must be annotated with {@link org.gescobar.management.MBean}.
  */
 public class DynamicMBeanInfoBuilder extends StandardMBeanInfoBuilder {
@@ -23,6 +30,13 @@ public class DynamicMBeanInfoBuilder extends StandardMBeanInfoBuilder {
      */
     @Override
     public <T> void visitAnnotatedField(AnnotatedField<T> af) {
+	// notifiers, counters, histograms and meters don't need the ManagedAttribute annotation
+	if (Notifier.class.equals(af.getJavaMember().getType()) || af.isAnnotationPresent(ManagedCounter.class) || af.isAnnotationPresent(ManagedHistogram.class) 
+		|| af.isAnnotationPresent(ManagedMeter.class)) {
+	    super.visitAnnotatedField(af);
+	    return;
+	}
+	
 	// if the annotation is not present, ignore the field
 	if (!af.isAnnotationPresent(ManagedAttribute.class)) {
 	    return;
@@ -32,7 +46,7 @@ public class DynamicMBeanInfoBuilder extends StandardMBeanInfoBuilder {
 	boolean readable = annAttribute.readable();
 	boolean writable = annAttribute.writable();
 	
-	super.visitAnnotatedField(af, readable, writable);
+	super.visitAnnotatedField(af, readable, writable, annAttribute.cacheMillis());
     }
 
     /* (non-Javadoc)
@@ -40,6 +54,13 @@ public class DynamicMBeanInfoBuilder extends StandardMBeanInfoBuilder {
      */
     @Override
     public <T> void visitAnnotatedMethod(AnnotatedMethod<T> am) {
+	// timed methods are exposed even if they are not operations
+	visitTimedMethod(am);
+	
+	if (am.isAnnotationPresent(ManagedAttribute.class)) {
+	    super.visitAttributeMethod(am);
+	}
+	
 	// if the annotation is not present, ignore the method
 	if (!am.isAnnotationPresent(ManagedOperation.class)) {
 	    return;
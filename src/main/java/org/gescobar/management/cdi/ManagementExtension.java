@@ -4,7 +4,9 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.enterprise.context.Dependent;
 import javax.enterprise.context.spi.CreationalContext;
@@ -12,17 +14,31 @@ import javax.enterprise.event.Observes;
 import javax.enterprise.inject.Any;
 import javax.enterprise.inject.Default;
 import javax.enterprise.inject.spi.AfterBeanDiscovery;
+import javax.enterprise.inject.spi.AfterDeploymentValidation;
 import javax.enterprise.inject.spi.AnnotatedType;
 import javax.enterprise.inject.spi.Bean;
 import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.BeforeBeanDiscovery;
+import javax.enterprise.inject.spi.BeforeShutdown;
 import javax.enterprise.inject.spi.Extension;
 import javax.enterprise.inject.spi.InjectionPoint;
 import javax.enterprise.inject.spi.InjectionTarget;
+import javax.enterprise.inject.spi.ProcessAnnotatedType;
 import javax.enterprise.inject.spi.ProcessInjectionTarget;
 import javax.enterprise.util.AnnotationLiteral;
 
 import org.gescobar.management.MBean;
 import org.gescobar.management.MBeanFactory;
+import org.gescobar.management.Notifier;
+import org.gescobar.management.util.BootProfiler;
+import org.gescobar.management.util.MBeanReaper;
+import org.gescobar.management.util.MBeanRegistrar;
+import org.gescobar.management.util.MBeanServerLocator;
+import org.gescobar.management.util.NotificationDispatcher;
+import org.gescobar.management.util.OpenTypeConverter;
+import org.gescobar.management.util.PrometheusExporter;
+import org.gescobar.management.util.Statistics;
+import org.gescobar.management.util.ThresholdSampler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +53,66 @@ public class ManagementExtension implements Extension {
 
     private static Logger log = LoggerFactory.getLogger(ManagementExtension.class);
     
+    /**
+     * The classes of this library that are added as beans, and whether one of their
+     * annotated types was already processed.
+     */
+    private final Map<Class<?>,Boolean> libraryTypes = new ConcurrentHashMap<Class<?>,Boolean>();
+    
+    /**
+     * Collects the MBean classes of the deployment and builds their metadata after 
+     * the bean discovery.
+     */
+    private final MetadataPrecomputer metadataPrecomputer = new MetadataPrecomputer();
+    
+    /**
+     * The MBean classes of the deployment, their metadata is removed from the cache 
+     * on shutdown so it doesn't keep the class loader of the application reachable.
+     */
+    private final Set<Class<?>> mBeanTypes = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>,Boolean>());
+    
+    /**
+     * The injection targets of the aggregate classes, their MBeans are unregistered 
+     * on shutdown.
+     */
+    private final Set<ManagementInjectionTarget<?>> aggregateTargets = 
+	    Collections.newSetFromMap(new ConcurrentHashMap<ManagementInjectionTarget<?>,Boolean>());
+    
+    /**
+     * Adds the {@link TimedInterceptor} and the {@link Notifier} to the deployment, 
+     * this library is not a bean archive. The interceptor still has to be enabled in 
+     * the beans.xml of the application.
+     * @param bbd
+     * @param bm
+     */
+    void beforeBeanDiscovery(@Observes BeforeBeanDiscovery bbd, BeanManager bm) {
+	libraryTypes.put(TimedInterceptor.class, Boolean.FALSE);
+	libraryTypes.put(Notifier.class, Boolean.FALSE);
+	
+	bbd.addAnnotatedType(bm.createAnnotatedType(TimedInterceptor.class));
+	bbd.addAnnotatedType(bm.createAnnotatedType(Notifier.class));
+    }
+    
+    /**
+     * Vetoes the second annotated type of a library class, found when the library is 
+     * also packaged as a bean archive, so its injection points are not ambiguous.
+     * @param <T>
+     * @param pat
+     */
+    <T> void processAnnotatedType(@Observes ProcessAnnotatedType<T> pat) {
+	Class<T> c = pat.getAnnotatedType().getJavaClass();
+	Boolean processed = libraryTypes.get(c);
+	if (processed == null) {
+	    return;
+	}
+	
+	if (processed.booleanValue()) {
+	    pat.veto();
+	} else {
+	    libraryTypes.put(c, Boolean.TRUE);
+	}
+    }
+    
     /**
      * This method gets called when an injection target is processed on bootstrap. It
      * wraps the InjectionTarget to add the JMX registration magic.
@@ -48,11 +124,16 @@ public class ManagementExtension implements Extension {
 	// check if the MBean annotation is present
 	AnnotatedType<T> at = pit.getAnnotatedType();
 	if (at.isAnnotationPresent(MBean.class)) {
+	    long start = System.nanoTime();
+	    mBeanTypes.add(at.getJavaClass());
+	    metadataPrecomputer.add(at);
 	    
-	    // check if automatic registration is on
 	    MBean mBeanAnnotation = at.getAnnotation(MBean.class);
+	    
+	    // check if automatic registration is on
 	    if (!mBeanAnnotation.autoRegister()) {
 		log.info(at.getJavaClass().getName() + "has the MBean annotation with autoRegister=false");
+		profile(at, start);
 		return;
 	    }
 	    
@@ -60,14 +141,39 @@ public class ManagementExtension implements Extension {
 		
 	    // decorate the InjectionTarget
 	    final InjectionTarget<T> delegate = pit.getInjectionTarget();
-	    InjectionTarget<T> wrapper = new ManagementInjectionTarget<T>(at, delegate);
+	    ManagementInjectionTarget<T> wrapper = new ManagementInjectionTarget<T>(at, delegate);
+	    if (wrapper.isAggregate()) {
+		aggregateTargets.add(wrapper);
+	    }
 
 	    // change the InjectionTarget with the decorated one
 	    pit.setInjectionTarget(wrapper);
+	    profile(at, start);
 	}
     }
     
+    /**
+     * Adds the time spent processing the injection target of an MBean class to the
+     * {@link BootProfiler}.
+     */
+    private void profile(AnnotatedType<?> at, long start) {
+	if (Statistics.ENABLED) {
+	    Statistics.getDefault().getBootProfiler().record(at.getJavaClass(), 
+		    BootProfiler.Phase.PROCESS_INJECTION_TARGET, System.nanoTime() - start);
+	}
+    }
+    
+    /**
+     * Builds the metadata of the MBean classes, reporting the invalid ones as 
+     * definition errors so the deployment fails, and adds the MBeanFactory bean.
+     * @param abd
+     * @param bm
+     */
     void afterBeanDiscovery(@Observes AfterBeanDiscovery abd, BeanManager bm) {
+	for (Throwable error : metadataPrecomputer.precompute()) {
+	    abd.addDefinitionError(error);
+	}
+	
 	// add the MBeanFactory service
 	final Class<CDIMBeanFactory> c = CDIMBeanFactory.class;
 	
@@ -149,6 +255,61 @@ public class ManagementExtension implements Extension {
         } );
 
     }
+    
+    /**
+     * Registers the {@link Statistics} of the library, unless they are disabled, 
+     * logs the summary of the {@link BootProfiler} and starts the 
+     * {@link PrometheusExporter}, if it's enabled.
+     * @param adv
+     */
+    void afterDeploymentValidation(@Observes AfterDeploymentValidation adv) {
+	if (Statistics.ENABLED) {
+	    Statistics.getDefault().register(MBeanServerLocator.instance().getmBeanServer());
+	    log.info(Statistics.getDefault().getBootProfiler().getSummary());
+	}
+	if (PrometheusExporter.ENABLED) {
+	    PrometheusExporter.getDefault().start();
+	}
+    }
+    
+    /**
+     * Unregisters the aggregate MBeans and applies the registrations and 
+     * unregistrations that are still queued before the container shuts down, stops
+     * the threads of the {@link NotificationDispatcher}, the {@link ThresholdSampler},
+     * the {@link MBeanReaper} and the {@link PrometheusExporter} and removes the 
+     * metadata of the MBean classes from the cache, and the open type converters of
+     * their class loaders.
+     * @param bs
+     */
+    void beforeShutdown(@Observes BeforeShutdown bs) {
+	for (ManagementInjectionTarget<?> target : aggregateTargets) {
+	    target.unregisterAggregateMBean();
+	}
+	aggregateTargets.clear();
+	MBeanRegistrar.shutdownDefault();
+	NotificationDispatcher.shutdownDefault();
+	ThresholdSampler.shutdownDefault();
+	MBeanReaper.shutdownDefault();
+	
+	Set<ClassLoader> loaders = new HashSet<ClassLoader>();
+	for (Class<?> type : mBeanTypes) {
+	    AbstractMBeanFactory.getMetadataCache().remove(type);
+	    if (type.getClassLoader() != null) {
+		loaders.add(type.getClassLoader());
+	    }
+	}
+	mBeanTypes.clear();
+	for (ClassLoader loader : loaders) {
+	    OpenTypeConverter.remove(loader);
+	}
+	
+	if (Statistics.ENABLED) {
+	    Statistics.getDefault().unregister(MBeanServerLocator.instance().getmBeanServer());
+	}
+	if (PrometheusExporter.ENABLED) {
+	    PrometheusExporter.getDefault().stop();
+	}
+    }
 	
 }
    
@@ -1,5 +1,8 @@
 package org.gescobar.management.cdi;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import javax.enterprise.context.spi.CreationalContext;
@@ -7,23 +10,94 @@ import javax.enterprise.inject.spi.AnnotatedType;
 import javax.enterprise.inject.spi.InjectionPoint;
 import javax.enterprise.inject.spi.InjectionTarget;
 import javax.management.DynamicMBean;
+import javax.management.MBeanInfo;
 import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
+import org.gescobar.management.Description;
 import org.gescobar.management.MBean;
 import org.gescobar.management.MBeanFactory;
+import org.gescobar.management.ManagementException;
+import org.gescobar.management.util.AggregateMBean;
+import org.gescobar.management.util.BootProfiler;
+import org.gescobar.management.util.LazyMBean;
+import org.gescobar.management.util.MBeanMetadata;
+import org.gescobar.management.util.MBeanRegistrar;
 import org.gescobar.management.util.MBeanServerLocator;
+import org.gescobar.management.util.ObjectNameTemplate;
+import org.gescobar.management.util.Statistics;
 
 public class ManagementInjectionTarget<T> implements InjectionTarget<T> {
     
     private AnnotatedType<T> at;
     private InjectionTarget<T> delegate;
     
-    private ObjectName objectName;
+    /**
+     * The template of the names of the MBeans, parsed once.
+     */
+    private ObjectNameTemplate nameTemplate;
+    
+    /**
+     * The names of the registered instances if the template has placeholders, so 
+     * they can be unregistered.
+     */
+    private Map<Object,ObjectName> objectNames = Collections.synchronizedMap(new IdentityHashMap<Object,ObjectName>());
+    
+    private MBeanFactory mBeanFactory;
+    
+    /**
+     * The MBeanInfo of the placeholders registered in lazy mode, null otherwise.
+     */
+    private MBeanInfo placeholderInfo;
+    
+    /**
+     * The registrar used in asynchronous mode, null otherwise.
+     */
+    private MBeanRegistrar registrar;
+    
+    /**
+     * The MBeanServer used in synchronous mode, resolved once.
+     */
+    private MBeanServer mBeanServer;
+    
+    /**
+     * True if the instances are exposed by a single {@link AggregateMBean}.
+     */
+    private boolean aggregate;
+    
+    /**
+     * The aggregate MBean, created and registered with the first instance.
+     */
+    private volatile AggregateMBean aggregateMBean;
     
     public ManagementInjectionTarget(AnnotatedType<T> at, InjectionTarget<T> delegate) {
 	this.at = at;
 	this.delegate = delegate;
+	this.mBeanFactory = new BootstrapMBeanFactory(at);
+	
+	try {
+	    this.nameTemplate = ObjectNameTemplate.parse(this.getNameTemplate(at), at.getJavaClass());
+	} catch (MalformedObjectNameException e) {
+	    throw new ManagementException(e, "Invalid ObjectName for " + at.getJavaClass().getName());
+	}
+	
+	MBean mBeanAnnotation = at.getAnnotation(MBean.class);
+	if (mBeanAnnotation != null && mBeanAnnotation.lazy()) {
+	    this.placeholderInfo = createPlaceholderInfo(at);
+	}
+	if (mBeanAnnotation != null && mBeanAnnotation.asyncRegistration()) {
+	    this.registrar = MBeanRegistrar.getDefault();
+	} else {
+	    this.mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	}
+	if (mBeanAnnotation != null && mBeanAnnotation.aggregate()) {
+	    if (!nameTemplate.isConstant()) {
+		throw new ManagementException(new IllegalArgumentException("The aggregate MBean of " 
+			+ at.getJavaClass().getName() + " can't have placeholders in its name"));
+	    }
+	    this.aggregate = true;
+	}
     }
 
     @Override
@@ -35,14 +109,32 @@ public class ManagementInjectionTarget<T> implements InjectionTarget<T> {
     public void postConstruct(T instance) {
 	delegate.postConstruct(instance);
 	
+	if (aggregate) {
+	    getAggregateMBean().add(instance);
+	    return;
+	}
+	
 	try {
-	    MBeanFactory mBeanFactory = new BootstrapMBeanFactory(at);
-	    DynamicMBean mBeanImpl = mBeanFactory.createMBean(instance);
+	    DynamicMBean mBeanImpl = null;
+	    if (placeholderInfo != null) {
+		mBeanImpl = new LazyMBean<T>(mBeanFactory, instance, placeholderInfo);
+	    } else {
+		mBeanImpl = mBeanFactory.createMBean(instance);
+	    }
 	    
-	    objectName = this.getObjectName(at);
+	    ObjectName objectName = nameTemplate.create(instance);
 	
-	    MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
-	    mBeanServer.registerMBean(mBeanImpl, objectName);
+	    long start = System.nanoTime();
+	    if (registrar != null) {
+		registrar.register(mBeanImpl, objectName);
+	    } else {
+		mBeanServer.registerMBean(mBeanImpl, objectName);
+	    }
+	    profile(start);
+	    
+	    if (!nameTemplate.isConstant()) {
+		objectNames.put(instance, objectName);
+	    }
 	} catch (Exception e) {
 	    e.printStackTrace();
 	}
@@ -53,9 +145,24 @@ public class ManagementInjectionTarget<T> implements InjectionTarget<T> {
     public void preDestroy(T instance) {
 	delegate.preDestroy(instance);
 	
+	if (aggregate) {
+	    // the aggregate MBean stays registered
+	    getAggregateMBean().remove(instance);
+	    return;
+	}
+	
 	try {
-	    MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
-	    mBeanServer.unregisterMBean(objectName);
+	    ObjectName objectName = nameTemplate.isConstant() ? nameTemplate.create(null) : objectNames.remove(instance);
+	    if (objectName == null) {
+		// the registration failed
+		return;
+	    }
+	    
+	    if (registrar != null) {
+		registrar.unregister(objectName);
+	    } else {
+		mBeanServer.unregisterMBean(objectName);
+	    }
 	} catch (Exception e) {
 	    e.printStackTrace();
 	}
@@ -77,7 +184,106 @@ public class ManagementInjectionTarget<T> implements InjectionTarget<T> {
 	return delegate.produce(ctx);
     }
     
-    private ObjectName getObjectName(AnnotatedType<T> at) throws Exception {
+    /**
+     * Unregisters the aggregate MBean, if it was created, so it doesn't keep the 
+     * class loader of the application reachable after a redeploy. Called by the 
+     * extension before the container shuts down.
+     */
+    void unregisterAggregateMBean() {
+	AggregateMBean mBean;
+	synchronized (this) {
+	    mBean = aggregateMBean;
+	    aggregateMBean = null;
+	}
+	if (mBean == null) {
+	    return;
+	}
+	
+	try {
+	    ObjectName objectName = nameTemplate.create(null);
+	    if (registrar != null) {
+		registrar.unregister(objectName);
+	    } else if (mBeanServer.isRegistered(objectName)) {
+		mBeanServer.unregisterMBean(objectName);
+	    }
+	} catch (Exception e) {
+	    e.printStackTrace();
+	}
+    }
+    
+    /**
+     * @return the aggregate MBean, creating and registering it if this is the first
+     * instance. Only the creation is synchronized.
+     */
+    private AggregateMBean getAggregateMBean() {
+	AggregateMBean mBean = aggregateMBean;
+	if (mBean != null) {
+	    return mBean;
+	}
+	
+	synchronized (this) {
+	    if (aggregateMBean == null) {
+		aggregateMBean = createAggregateMBean();
+	    }
+	    return aggregateMBean;
+	}
+    }
+    
+    private AggregateMBean createAggregateMBean() {
+	String description = "";
+	if (at.isAnnotationPresent(Description.class)) {
+	    description = at.getAnnotation(Description.class).value();
+	}
+	
+	// the metadata of an aggregate class is always the reflective one, which has 
+	// the numeric accessors of the attributes
+	MBeanMetadata metadata = AbstractMBeanFactory.getMetadataCache().get(at.getJavaClass());
+	if (metadata == null) {
+	    metadata = AbstractMBeanFactory.cacheMetadata(at.getJavaClass(), at);
+	}
+	AggregateMBean mBean = new AggregateMBean(at.getJavaClass().getName(), description, 
+		metadata.getAttributeAccessors());
+	
+	try {
+	    ObjectName objectName = nameTemplate.create(null);
+	    long start = System.nanoTime();
+	    if (registrar != null) {
+		registrar.register(mBean, objectName);
+	    } else {
+		mBeanServer.registerMBean(mBean, objectName);
+	    }
+	    profile(start);
+	} catch (Exception e) {
+	    e.printStackTrace();
+	}
+	
+	return mBean;
+    }
+    
+    /**
+     * Adds the time spent registering an MBean of the class to the 
+     * {@link BootProfiler}; only the queueing if the registration is asynchronous.
+     * @param start when the registration started.
+     */
+    private void profile(long start) {
+	if (Statistics.ENABLED) {
+	    Statistics.getDefault().getBootProfiler().record(at.getJavaClass(), BootProfiler.Phase.REGISTER_MBEAN, 
+		    System.nanoTime() - start);
+	}
+    }
+    
+    /**
+     * @return true if the instances are exposed by a single {@link AggregateMBean}.
+     */
+    boolean isAggregate() {
+	return aggregate;
+    }
+    
+    /**
+     * @return the ObjectName of the MBean annotation or, if it has none, the one made
+     * of the package and the simple name of the class.
+     */
+    private String getNameTemplate(AnnotatedType<T> at) {
 	
 	String name = "";
 	
@@ -93,7 +299,16 @@ public class ManagementInjectionTarget<T> implements InjectionTarget<T> {
 	    name = at.getJavaClass().getPackage().getName() + ":type=" + at.getJavaClass().getSimpleName();
 	}
 	
-	return new ObjectName(name);
+	return name;
+    }
+    
+    private MBeanInfo createPlaceholderInfo(AnnotatedType<T> at) {
+	String description = "";
+	if (at.isAnnotationPresent(Description.class)) {
+	    description = at.getAnnotation(Description.class).value();
+	}
+	
+	return new MBeanInfo(at.getJavaClass().getName(), description, null, null, null, null);
     }
     
     private class BootstrapMBeanFactory extends AbstractMBeanFactory {
@@ -0,0 +1,148 @@
+package org.gescobar.management.cdi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.enterprise.inject.spi.AnnotatedType;
+
+import org.gescobar.management.ManagementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * Builds the metadata of the MBean classes found during the bean discovery in
+ * parallel, when the container boots, and adds it to the cache shared by the
+ * factories, so the first instance of each class doesn't pay for the reflection.
+ *
+ * The metadata of the classes is independent, so it's built on a pool with a thread
+ * per core that only lives while the metadata is built. The failures are returned
+ * so the extension can report them as definition errors.
+ */
+class MetadataPrecomputer {
+
+    private static Logger log = LoggerFactory.getLogger(MetadataPrecomputer.class);
+
+    /**
+     * The system property with the number of threads used to build the metadata,
+     * the number of processors by default. With 1 it's built on the thread of the
+     * container.
+     */
+    public static final String THREADS_PROPERTY = "org.gescobar.management.precompute.threads";
+
+    private final List<AnnotatedType<?>> types = new ArrayList<AnnotatedType<?>>();
+
+    /**
+     * Adds a class whose metadata will be built.
+     * @param at the AnnotatedType of the class.
+     */
+    public synchronized void add(AnnotatedType<?> at) {
+	types.add(at);
+    }
+
+    /**
+     * Builds the metadata of the classes added so far.
+     * @return the errors of the classes whose metadata is invalid, empty if there
+     * are none.
+     */
+    public List<Throwable> precompute() {
+	List<AnnotatedType<?>> pending;
+	synchronized (this) {
+	    pending = new ArrayList<AnnotatedType<?>>(types);
+	    types.clear();
+	}
+
+	if (pending.isEmpty()) {
+	    return Collections.emptyList();
+	}
+
+	long start = System.nanoTime();
+	int threads = Math.min(pending.size(),
+		Math.max(1, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors())));
+
+	List<Throwable> errors = threads == 1 ? precomputeSerially(pending) : precomputeInParallel(pending, threads);
+
+	log.info("built the MBean metadata of " + pending.size() + " classes in "
+		+ (System.nanoTime() - start) / 1000000 + " ms on " + threads + " threads");
+	if (!errors.isEmpty()) {
+	    StringBuilder report = new StringBuilder("invalid MBean metadata in " + errors.size() + " classes:");
+	    for (Throwable error : errors) {
+		report.append("\n  ").append(error.getMessage());
+	    }
+	    log.error(report.toString());
+	}
+
+	return errors;
+    }
+
+    private List<Throwable> precomputeSerially(List<AnnotatedType<?>> pending) {
+	List<Throwable> errors = new ArrayList<Throwable>();
+	for (AnnotatedType<?> at : pending) {
+	    try {
+		AbstractMBeanFactory.cacheMetadata(at.getJavaClass(), at);
+	    } catch (Exception e) {
+		errors.add(invalid(at, e));
+	    }
+	}
+
+	return errors;
+    }
+
+    private List<Throwable> precomputeInParallel(List<AnnotatedType<?>> pending, int threads) {
+	ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+	    private final AtomicInteger count = new AtomicInteger();
+
+	    @Override
+	    public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, "MBeanMetadata-" + count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	    }
+	});
+
+	List<Throwable> errors = new ArrayList<Throwable>();
+	try {
+	    List<Future<Void>> futures = new ArrayList<Future<Void>>(pending.size());
+	    for (final AnnotatedType<?> at : pending) {
+		futures.add(executor.submit(new Callable<Void>() {
+		    @Override
+		    public Void call() throws Exception {
+			AbstractMBeanFactory.cacheMetadata(at.getJavaClass(), at);
+			return null;
+		    }
+		}));
+	    }
+
+	    for (int i = 0; i < futures.size(); i++) {
+		try {
+		    futures.get(i).get();
+		} catch (ExecutionException e) {
+		    Throwable cause = e.getCause();
+		    errors.add(invalid(pending.get(i), cause instanceof Exception ? (Exception) cause : e));
+		}
+	    }
+	} catch (InterruptedException e) {
+	    // the metadata that is missing will be built on first use
+	    Thread.currentThread().interrupt();
+	} finally {
+	    executor.shutdownNow();
+	}
+
+	return errors;
+    }
+
+    private static ManagementException invalid(AnnotatedType<?> at, Exception e) {
+	Throwable cause = e instanceof ManagementException && e.getCause() != null ? e.getCause() : e;
+	return new ManagementException(e, at.getJavaClass().getName() + ": " + cause);
+    }
+
+}
@@ -2,8 +2,13 @@ package org.gescobar.management.cdi;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.enterprise.inject.spi.AnnotatedConstructor;
@@ -17,9 +22,35 @@ import javax.management.MBeanInfo;
 import javax.management.MBeanNotificationInfo;
 import javax.management.MBeanOperationInfo;
 import javax.management.MBeanParameterInfo;
+import javax.management.Notification;
+import javax.management.openmbean.OpenMBeanAttributeInfoSupport;
 
 import org.gescobar.management.Description;
+import org.gescobar.management.GaugeThreshold;
 import org.gescobar.management.Impact;
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedAttribute;
+import org.gescobar.management.ManagedCounter;
+import org.gescobar.management.ManagedHistogram;
+import org.gescobar.management.ManagedMeter;
+import org.gescobar.management.ManagedNotification;
+import org.gescobar.management.ManagedNotifications;
+import org.gescobar.management.ManagementException;
+import org.gescobar.management.Notifier;
+import org.gescobar.management.Timed;
+import org.gescobar.management.util.Accessors;
+import org.gescobar.management.util.AttributeAccessor;
+import org.gescobar.management.util.CounterAccessor;
+import org.gescobar.management.util.FieldAccessor;
+import org.gescobar.management.util.HistogramAccessor;
+import org.gescobar.management.util.MeterAccessor;
+import org.gescobar.management.util.OpenTypeConverter;
+import org.gescobar.management.util.OperationInvoker;
+import org.gescobar.management.util.OperationTable;
+import org.gescobar.management.util.PropertyAccessor;
+import org.gescobar.management.util.Threshold;
+import org.gescobar.management.util.ThresholdSampler;
+import org.gescobar.management.util.TimingAccessor;
 
 /**
  * @author German Escobar
@@ -37,6 +68,21 @@ public class StandardMBeanInfoBuilder implements AnnotatedTypeVisitor {
      */
     protected String description = "";
     
+    /**
+     * True if the class is annotated with {@link Timed}.
+     */
+    protected boolean timedType;
+    
+    /**
+     * True if the attributes are exposed as open types (see {@link MBean#openTypes()}).
+     */
+    protected boolean openTypes;
+    
+    /**
+     * The class of the MBean. Used to find the getters and setters of the attributes.
+     */
+    protected Class<?> javaClass;
+    
     /**
      * The constructors of the MBean. Used to create the MBeanInfo.
      */
@@ -57,23 +103,97 @@ public class StandardMBeanInfoBuilder implements AnnotatedTypeVisitor {
      */
     protected Set<Field> exposedFields = new HashSet<Field>();
     
+    /**
+     * The accessors of the exposed attributes. Used to create the MBean metadata.
+     */
+    protected List<AttributeAccessor> attributeAccessors = new ArrayList<AttributeAccessor>();
+    
+    /**
+     * The names of the attributes that expose the timed methods.
+     */
+    protected Set<String> timingAttributes = new HashSet<String>();
+    
+    /**
+     * The names of the attributes backed by getters and setters.
+     */
+    protected Set<String> propertyAttributes = new HashSet<String>();
+    
     /**
      * The methods that will be exposed in the MBean. 
      */
     protected Set<Method> exposedMethods = new HashSet<Method>();
     
+    /**
+     * The invokers of the exposed methods. Used to create the OperationTable.
+     */
+    protected List<OperationInvoker> operationInvokers = new ArrayList<OperationInvoker>();
+    
+    /**
+     * The notifications of the MBean. Used to create the MBeanInfo.
+     */
+    protected List<MBeanNotificationInfo> mBeanNotifications = new ArrayList<MBeanNotificationInfo>();
+    
+    /**
+     * The coalescing windows in milliseconds indexed by notification type.
+     */
+    protected Map<String,Long> coalesceWindows = new HashMap<String,Long>();
+    
+    /**
+     * The {@link Notifier} fields that are bound to the MBean.
+     */
+    protected Set<Field> notifierFields = new HashSet<Field>();
+    
+    /**
+     * The thresholds of the attributes annotated with {@link GaugeThreshold}.
+     */
+    protected List<Threshold> thresholds = new ArrayList<Threshold>();
+    
     /* (non-Javadoc)
      * @see org.gescobar.management.cdi.AnnotatedTypeVisitor#visitAnnotatedType(javax.enterprise.inject.spi.AnnotatedType)
      */
     @Override
     public <T> void visitAnnotatedType(AnnotatedType<T> at) {
+	this.javaClass = at.getJavaClass();
 	this.className = at.getJavaClass().getName();
+	this.timedType = at.isAnnotationPresent(Timed.class);
+	this.openTypes = at.isAnnotationPresent(MBean.class) && at.getAnnotation(MBean.class).openTypes();
 	
 	// retrieve the description
 	if (at.isAnnotationPresent(Description.class)) {
 	    Description annDescription = at.getAnnotation(Description.class);
 	    this.description = annDescription.value();
 	}
+	
+	// retrieve the notifications
+	if (at.isAnnotationPresent(ManagedNotification.class)) {
+	    visitNotification(at.getAnnotation(ManagedNotification.class));
+	}
+	if (at.isAnnotationPresent(ManagedNotifications.class)) {
+	    for (ManagedNotification annNotification : at.getAnnotation(ManagedNotifications.class).value()) {
+		visitNotification(annNotification);
+	    }
+	}
+    }
+    
+    /**
+     * Adds the MBeanNotificationInfo of a {@link ManagedNotification} and the 
+     * coalescing window of its types.
+     * @param annNotification the annotation.
+     */
+    protected void visitNotification(ManagedNotification annNotification) {
+	String[] types = annNotification.types();
+	if (types.length == 0) {
+	    throw new ManagementException(new IllegalArgumentException("@ManagedNotification of " + className 
+		    + " has no types"));
+	}
+	
+	for (String type : types) {
+	    coalesceWindows.put(type, annNotification.coalesceMillis());
+	}
+	
+	MBeanNotificationInfo notificationInfo = new MBeanNotificationInfo(types, 
+		annNotification.notificationClass().getName(), annNotification.description());
+	this.mBeanNotifications.add(notificationInfo);
     }
 
     /* (non-Javadoc)
@@ -96,6 +216,24 @@ public class StandardMBeanInfoBuilder implements AnnotatedTypeVisitor {
      */
     @Override
     public <T> void visitAnnotatedField(AnnotatedField<T> af) {
+	if (Notifier.class.equals(af.getJavaMember().getType())) {
+	    this.visitNotifierField(af);
+	    return;
+	}
+	if (af.isAnnotationPresent(ManagedCounter.class)) {
+	    ManagedCounter annCounter = af.getAnnotation(ManagedCounter.class);
+	    this.visitCounterField(af, annCounter.resettable());
+	    return;
+	}
+	if (af.isAnnotationPresent(ManagedHistogram.class)) {
+	    this.visitHistogramField(af);
+	    return;
+	}
+	if (af.isAnnotationPresent(ManagedMeter.class)) {
+	    this.visitMeterField(af);
+	    return;
+	}
+	
 	/* FIXME should check if set and get methods exists */
 	boolean readable = true;
 	boolean writable = true;
@@ -104,8 +242,23 @@ public class StandardMBeanInfoBuilder implements AnnotatedTypeVisitor {
     }
     
     protected <T> void visitAnnotatedField(AnnotatedField<T> af, boolean readable, boolean writable) {
+	this.visitAnnotatedField(af, readable, writable, 0);
+    }
+    
+    protected <T> void visitAnnotatedField(AnnotatedField<T> af, boolean readable, boolean writable, 
+	    long cacheMillis) {
+	Field field = af.getJavaMember();
+	OpenTypeConverter converter = getOpenTypeConverter(field.getGenericType());
+	
 	// add the field to the collection of exposed fields
-	exposedFields.add(af.getJavaMember());
+	if (exposedFields.add(field)) {
+	    FieldAccessor accessor = Accessors.forField(field);
+	    attributeAccessors.add(Accessors.cached(Accessors.openTyped(accessor, converter), cacheMillis));
+	    
+	    if (af.isAnnotationPresent(GaugeThreshold.class)) {
+		visitThreshold(accessor, af.getAnnotation(GaugeThreshold.class));
+	    }
+	}
 	
 	// create the MBeanAttributeInfo
 	String fieldDescription = "";
@@ -114,24 +267,313 @@ public class StandardMBeanInfoBuilder implements AnnotatedTypeVisitor {
 	    fieldDescription = annDescription.value();
 	}
 	
-	Field field = af.getJavaMember();
-	MBeanAttributeInfo attributeInfo = new MBeanAttributeInfo(field.getName(), field.getType().getName(), 
+	MBeanAttributeInfo attributeInfo = createAttributeInfo(field.getName(), field.getType(), converter, 
 		fieldDescription, readable, writable, false);
 	
 	this.mBeanAttributes.add(attributeInfo);
     }
+    
+    /**
+     * @param type the type of an attribute.
+     * @return the converter of the type if the attributes are exposed as open types
+     * and the type is not an open type already, null otherwise.
+     */
+    protected OpenTypeConverter getOpenTypeConverter(Type type) {
+	if (!openTypes) {
+	    return null;
+	}
+	
+	OpenTypeConverter converter = OpenTypeConverter.forType(type);
+	return converter.isIdentity() ? null : converter;
+    }
+    
+    /**
+     * Creates the MBeanAttributeInfo of an attribute. If its values are converted to
+     * open types, it's an open MBean attribute info, writable only if the values can
+     * be converted back.
+     */
+    protected MBeanAttributeInfo createAttributeInfo(String name, Class<?> type, OpenTypeConverter converter, 
+	    String description, boolean readable, boolean writable, boolean is) {
+	if (converter == null) {
+	    return new MBeanAttributeInfo(name, type.getName(), description, readable, writable, is);
+	}
+	
+	// open MBean infos require a description
+	return new OpenMBeanAttributeInfoSupport(name, description.length() > 0 ? description : name, 
+		converter.getOpenType(), readable, writable && converter.isReconstructible(), is);
+    }
+    
+    /**
+     * Adds the threshold of an attribute annotated with {@link GaugeThreshold}. The 
+     * sampler reads the field directly, even if the attribute is cached.
+     * @param accessor the accessor of the field.
+     * @param annThreshold the annotation.
+     */
+    protected void visitThreshold(FieldAccessor accessor, GaugeThreshold annThreshold) {
+	if (!accessor.isNumeric()) {
+	    throw new ManagementException(new IllegalArgumentException("Field " + accessor.getName() 
+		    + " has a @GaugeThreshold but it's not numeric"));
+	}
+	if (annThreshold.low() >= annThreshold.high()) {
+	    // without a gap between them the notifications would flap
+	    throw new ManagementException(new IllegalArgumentException("The low threshold of " 
+		    + accessor.getName() + " must be less than the high one"));
+	}
+	
+	if (thresholds.isEmpty()) {
+	    MBeanNotificationInfo notificationInfo = new MBeanNotificationInfo(
+		    new String[] { ThresholdSampler.HIGH_TYPE, ThresholdSampler.LOW_TYPE }, 
+		    Notification.class.getName(), "Crossings of the attribute thresholds");
+	    this.mBeanNotifications.add(notificationInfo);
+	}
+	
+	thresholds.add(new Threshold(accessor, annThreshold.high(), annThreshold.low()));
+    }
+    
+    /**
+     * Keeps a {@link Notifier} field so it's bound to the MBean. It's not exposed as
+     * an attribute.
+     * @param <T>
+     * @param af the notifier field.
+     */
+    protected <T> void visitNotifierField(AnnotatedField<T> af) {
+	Field field = af.getJavaMember();
+	field.setAccessible(true);
+	notifierFields.add(field);
+    }
+    
+    /**
+     * Exposes a field annotated with {@link ManagedCounter} as a read-only long 
+     * attribute and, if it's resettable, an operation that sets it to zero.
+     * @param <T>
+     * @param af the counter field.
+     * @param resettable true if the reset operation has to be exposed.
+     */
+    protected <T> void visitCounterField(AnnotatedField<T> af, boolean resettable) {
+	Field field = af.getJavaMember();
+	if (!exposedFields.add(field)) {
+	    return;
+	}
+	
+	CounterAccessor accessor = Accessors.forCounter(field);
+	attributeAccessors.add(accessor);
+	
+	String fieldDescription = "";
+	if (af.isAnnotationPresent(Description.class)) {
+	    Description annDescription = af.getAnnotation(Description.class);
+	    fieldDescription = annDescription.value();
+	}
+	
+	MBeanAttributeInfo attributeInfo = new MBeanAttributeInfo(field.getName(), Long.TYPE.getName(), 
+		fieldDescription, true, false, false);
+	this.mBeanAttributes.add(attributeInfo);
+	
+	if (resettable) {
+	    OperationInvoker resetInvoker = accessor.createResetInvoker();
+	    operationInvokers.add(resetInvoker);
+	    
+	    MBeanOperationInfo operationInfo = new MBeanOperationInfo(resetInvoker.getName(), 
+		    "Sets " + field.getName() + " to zero", new MBeanParameterInfo[0], Void.TYPE.getName(), 
+		    Impact.ACTION.getCode());
+	    this.mBeanOperations.add(operationInfo);
+	}
+    }
+
+    /**
+     * Exposes a field annotated with {@link ManagedHistogram} as a read-only 
+     * CompositeData attribute.
+     * @param <T>
+     * @param af the histogram field.
+     */
+    protected <T> void visitHistogramField(AnnotatedField<T> af) {
+	Field field = af.getJavaMember();
+	if (!exposedFields.add(field)) {
+	    return;
+	}
+	
+	attributeAccessors.add(Accessors.forHistogram(field));
+	
+	// open MBean infos require a description
+	String fieldDescription = "Distribution of " + field.getName();
+	if (af.isAnnotationPresent(Description.class)) {
+	    Description annDescription = af.getAnnotation(Description.class);
+	    fieldDescription = annDescription.value();
+	}
+	
+	MBeanAttributeInfo attributeInfo = new OpenMBeanAttributeInfoSupport(field.getName(), fieldDescription, 
+		HistogramAccessor.COMPOSITE_TYPE, true, false, false);
+	this.mBeanAttributes.add(attributeInfo);
+    }
+
+    /**
+     * Exposes a field annotated with {@link ManagedMeter} as a read-only attribute
+     * for each value of the meter (count, mean rate and moving averages).
+     * @param <T>
+     * @param af the meter field.
+     */
+    protected <T> void visitMeterField(AnnotatedField<T> af) {
+	Field field = af.getJavaMember();
+	if (!exposedFields.add(field)) {
+	    return;
+	}
+	
+	for (MeterAccessor accessor : Accessors.forMeter(field)) {
+	    attributeAccessors.add(accessor);
+	    
+	    MBeanAttributeInfo attributeInfo = new MBeanAttributeInfo(accessor.getName(), accessor.getType().getName(), 
+		    accessor.getValue().getDescription(), true, false, false);
+	    this.mBeanAttributes.add(attributeInfo);
+	}
+    }
 
     /* (non-Javadoc)
      * @see org.gescobar.management.cdi.AnnotatedTypeVisitor#visitAnnotatedMethod(javax.enterprise.inject.spi.AnnotatedMethod)
      */
     @Override
     public <T> void visitAnnotatedMethod(AnnotatedMethod<T> am) {
+	visitTimedMethod(am);
+	
+	if (am.isAnnotationPresent(ManagedAttribute.class)) {
+	    visitAttributeMethod(am);
+	}
+	
 	visitAnnotatedMethod(am, Impact.UNKNOWN);
     }
     
+    /**
+     * Exposes the property of a getter or setter annotated with {@link ManagedAttribute}
+     * as an attribute. The other method of the pair, if any, is searched in the class
+     * of the MBean. The annotation of the getter decides if the attribute is readable
+     * and cached, the one of the setter if it's writable; if only one of them is 
+     * annotated, its annotation decides everything.
+     * @param <T>
+     * @param am the getter or setter.
+     */
+    protected <T> void visitAttributeMethod(AnnotatedMethod<T> am) {
+	Method method = am.getJavaMember();
+	ManagedAttribute annAttribute = am.getAnnotation(ManagedAttribute.class);
+	
+	String name = PropertyAccessor.getAttributeName(method);
+	if (name == null) {
+	    throw new ManagementException(new IllegalArgumentException("Method " + method.getName() 
+		    + " is not a getter or setter"));
+	}
+	if (!propertyAttributes.add(name)) {
+	    // the other method of the pair was already visited
+	    return;
+	}
+	
+	// the name of the property as it's written in the methods (e.g. URL for getURL)
+	String property = method.getName().substring(method.getName().startsWith("is") ? 2 : 3);
+	
+	Method getter = findMethod("get" + property);
+	if (getter == null || getter.getReturnType().equals(Void.TYPE)) {
+	    getter = findMethod("is" + property);
+	}
+	Class<?> type = getter != null ? getter.getReturnType() : method.getParameterTypes()[0];
+	Method setter = findMethod("set" + property, type);
+	OpenTypeConverter converter = getOpenTypeConverter(getter != null ? getter.getGenericReturnType() 
+		: method.getGenericParameterTypes()[0]);
+	
+	ManagedAttribute annGetter = annotationOf(getter, method, annAttribute);
+	ManagedAttribute annSetter = annotationOf(setter, method, annAttribute);
+	long cacheMillis = annGetter.cacheMillis();
+	if (!annGetter.readable()) {
+	    getter = null;
+	}
+	if (!annSetter.writable() || (converter != null && !converter.isReconstructible())) {
+	    setter = null;
+	}
+	if (getter == null && setter == null) {
+	    return;
+	}
+	
+	PropertyAccessor accessor = new PropertyAccessor(name, getter, setter);
+	attributeAccessors.add(Accessors.cached(Accessors.openTyped(accessor, converter), cacheMillis));
+	
+	String methodDescription = "";
+	if (am.isAnnotationPresent(Description.class)) {
+	    Description annDescription = am.getAnnotation(Description.class);
+	    methodDescription = annDescription.value();
+	}
+	
+	boolean is = getter != null && getter.getName().startsWith("is");
+	MBeanAttributeInfo attributeInfo = createAttributeInfo(name, type, converter, methodDescription, 
+		getter != null, setter != null, is);
+	this.mBeanAttributes.add(attributeInfo);
+    }
+    
+    /**
+     * @return the annotation of the counterpart, or the annotation of the visited 
+     * method if the counterpart is not annotated.
+     */
+    private ManagedAttribute annotationOf(Method counterpart, Method visited, ManagedAttribute annVisited) {
+	if (counterpart == null || counterpart.equals(visited)) {
+	    return annVisited;
+	}
+	
+	ManagedAttribute annCounterpart = counterpart.getAnnotation(ManagedAttribute.class);
+	return annCounterpart != null ? annCounterpart : annVisited;
+    }
+    
+    /**
+     * @return the method of the MBean class or its superclasses with the name and
+     * parameter types, or null if there is none.
+     */
+    private Method findMethod(String name, Class<?>... parameterTypes) {
+	for (Class<?> c = javaClass; c != null && !c.equals(Object.class); c = c.getSuperclass()) {
+	    try {
+		Method method = c.getDeclaredMethod(name, parameterTypes);
+		if (!Modifier.isStatic(method.getModifiers())) {
+		    return method;
+		}
+	    } catch (NoSuchMethodException e) {
+		// try the superclass
+	    }
+	}
+	
+	return null;
+    }
+    
+    /**
+     * Exposes the timing of a method annotated with {@link Timed}, or of any 
+     * business method if the class is annotated, as a read-only CompositeData 
+     * attribute. The overloads of a method share the attribute.
+     * @param <T>
+     * @param am the method.
+     */
+    protected <T> void visitTimedMethod(AnnotatedMethod<T> am) {
+	Method method = am.getJavaMember();
+	if (!am.isAnnotationPresent(Timed.class) && !(timedType && isBusinessMethod(method))) {
+	    return;
+	}
+	
+	String name = TimingAccessor.getAttributeName(method.getName());
+	if (!timingAttributes.add(name)) {
+	    return;
+	}
+	
+	attributeAccessors.add(Accessors.forTimedMethod(method));
+	
+	MBeanAttributeInfo attributeInfo = new OpenMBeanAttributeInfoSupport(name, "Timing of " + method.getName(), 
+		TimingAccessor.COMPOSITE_TYPE, true, false, false);
+	this.mBeanAttributes.add(attributeInfo);
+    }
+    
+    /**
+     * @return true if the method can be intercepted by a class level interceptor.
+     */
+    private boolean isBusinessMethod(Method method) {
+	int modifiers = method.getModifiers();
+	return !Modifier.isStatic(modifiers) && !Modifier.isPrivate(modifiers) 
+		&& !method.getDeclaringClass().equals(Object.class);
+    }
+    
     protected <T> void visitAnnotatedMethod(AnnotatedMethod<T> am, Impact impact) {
 	// add the method to the collection of exposed methods
-	exposedMethods.add(am.getJavaMember());
+	if (exposedMethods.add(am.getJavaMember())) {
+	    operationInvokers.add(Accessors.forMethod(am.getJavaMember()));
+	}
 	
 	// create the MBeanOperationInfo
 	String methodDescription = "";
@@ -174,6 +616,14 @@ public class StandardMBeanInfoBuilder implements AnnotatedTypeVisitor {
 	return exposedFields.toArray(new Field[exposedFields.size()]);
     }
 
+    /* (non-Javadoc)
+     * @see org.gescobar.management.cdi.AnnotatedTypeVisitor#getAttributeAccessors()
+     */
+    @Override
+    public AttributeAccessor[] getAttributeAccessors() {
+	return attributeAccessors.toArray(new AttributeAccessor[attributeAccessors.size()]);
+    }
+
     /* (non-Javadoc)
      * @see org.gescobar.management.cdi.AnnotatedTypeVisitor#getMethods()
      */
@@ -182,13 +632,45 @@ public class StandardMBeanInfoBuilder implements AnnotatedTypeVisitor {
 	return exposedMethods.toArray(new Method[exposedMethods.size()]);
     }
     
+    /* (non-Javadoc)
+     * @see org.gescobar.management.cdi.AnnotatedTypeVisitor#getOperationTable()
+     */
+    @Override
+    public OperationTable getOperationTable() {
+	return new OperationTable(operationInvokers.toArray(new OperationInvoker[operationInvokers.size()]));
+    }
+    
+    /* (non-Javadoc)
+     * @see org.gescobar.management.cdi.AnnotatedTypeVisitor#getNotifierFields()
+     */
+    @Override
+    public Field[] getNotifierFields() {
+	return notifierFields.toArray(new Field[notifierFields.size()]);
+    }
+    
+    /* (non-Javadoc)
+     * @see org.gescobar.management.cdi.AnnotatedTypeVisitor#getCoalesceWindows()
+     */
+    @Override
+    public Map<String,Long> getCoalesceWindows() {
+	return new HashMap<String,Long>(coalesceWindows);
+    }
+    
+    /* (non-Javadoc)
+     * @see org.gescobar.management.cdi.AnnotatedTypeVisitor#getThresholds()
+     */
+    @Override
+    public Threshold[] getThresholds() {
+	return thresholds.toArray(new Threshold[thresholds.size()]);
+    }
+    
     /* (non-Javadoc)
      * @see org.gescobar.management.cdi.AnnotatedTypeVisitor#getMBeanInfo()
      */
     @Override
     public MBeanInfo getMBeanInfo() {
 	return new MBeanInfo(this.className, this.description, getMBeanAttributes(), 
-		getMBeanConstructors(), getMBeanOperations(), new MBeanNotificationInfo[0]);
+		getMBeanConstructors(), getMBeanOperations(), getMBeanNotifications());
     }
     
     private MBeanConstructorInfo[] getMBeanConstructors() {
@@ -203,4 +685,8 @@ public class StandardMBeanInfoBuilder implements AnnotatedTypeVisitor {
         return this.mBeanOperations.toArray(new MBeanOperationInfo[mBeanOperations.size()]);
     }
 
+    private MBeanNotificationInfo[] getMBeanNotifications() {
+	return this.mBeanNotifications.toArray(new MBeanNotificationInfo[mBeanNotifications.size()]);
+    }
+
 }
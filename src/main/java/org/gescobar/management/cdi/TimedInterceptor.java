@@ -0,0 +1,45 @@
+package org.gescobar.management.cdi;
+
+import java.io.Serializable;
+
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+
+import org.gescobar.management.Timed;
+import org.gescobar.management.util.MethodTimer;
+
+/**
+ * @author German Escobar
+ *
+ * The interceptor of the methods annotated with {@link Timed}. It records the 
+ * duration of each call in the {@link MethodTimer} of the method, which only takes 
+ * a map lookup and a few uncontended atomic updates. The timings are exposed by
+ * the MBean of the class.
+ */
+@Timed
+@Interceptor
+public class TimedInterceptor implements Serializable {
+
+    /**
+     * Generated Serial Version UID
+     */
+    private static final long serialVersionUID = -2866046398185736470L;
+
+    @AroundInvoke
+    public Object time(InvocationContext ctx) throws Exception {
+	MethodTimer timer = MethodTimer.forMethod(ctx.getMethod());
+
+	long start = System.nanoTime();
+	boolean failed = true;
+	try {
+	    Object result = ctx.proceed();
+	    failed = false;
+
+	    return result;
+	} finally {
+	    timer.record(System.nanoTime() - start, failed);
+	}
+    }
+
+}
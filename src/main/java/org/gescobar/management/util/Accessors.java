@@ -0,0 +1,179 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import org.gescobar.management.ManagementException;
+
+/**
+ * @author German Escobar
+ *
+ * Creates the {@link AttributeAccessor}s and {@link OperationInvoker}s used by 
+ * {@link MBeanImpl}. They are meant to be created once per class, when the
+ * MBean metadata is built, and not on every access.
+ */
+public final class Accessors {
+
+    private Accessors() {}
+
+    public static FieldAccessor forField(Field field) {
+	return new FieldAccessor(field);
+    }
+
+    /**
+     * Used by the generated metadata for the fields it can't reach.
+     * @param type the class of the exposed objects.
+     * @param declaringClass the name of the class, the type or one of its 
+     * superclasses, that declares the field.
+     * @param name the name of the field.
+     * @return the accessor of the field.
+     */
+    public static FieldAccessor forField(Class<?> type, String declaringClass, String name) {
+	for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+	    if (c.getName().equals(declaringClass)) {
+		try {
+		    return forField(c.getDeclaredField(name));
+		} catch (NoSuchFieldException e) {
+		    throw new ManagementException(e);
+		}
+	    }
+	}
+
+	throw new ManagementException(new IllegalArgumentException(declaringClass + " is not a superclass of " 
+		+ type.getName()));
+    }
+
+    /**
+     * @param field a field annotated with {@link org.gescobar.management.ManagedCounter}.
+     * @return a read-only accessor that returns the value of the counter.
+     */
+    public static CounterAccessor forCounter(Field field) {
+	return new CounterAccessor(field);
+    }
+
+    /**
+     * @param field a field annotated with {@link org.gescobar.management.ManagedHistogram}.
+     * @return a read-only accessor that returns a snapshot of the histogram.
+     */
+    public static HistogramAccessor forHistogram(Field field) {
+	return new HistogramAccessor(field);
+    }
+
+    /**
+     * @param field a field annotated with {@link org.gescobar.management.ManagedMeter}.
+     * @return the read-only accessors of the values of the meter.
+     */
+    public static MeterAccessor[] forMeter(Field field) {
+	MeterAccessor.Value[] values = MeterAccessor.Value.values();
+	MeterAccessor[] accessors = new MeterAccessor[values.length];
+	for (int i = 0; i < values.length; i++) {
+	    accessors[i] = new MeterAccessor(field, values[i]);
+	}
+
+	return accessors;
+    }
+
+    /**
+     * @param method a method annotated with {@link org.gescobar.management.Timed}.
+     * @return a read-only accessor that returns the timing of the method.
+     */
+    public static TimingAccessor forTimedMethod(Method method) {
+	return new TimingAccessor(method);
+    }
+
+    /**
+     * @param accessor any accessor.
+     * @param cacheMillis the time the values read are reused, 0 for no cache.
+     * @return an accessor that memoizes the values read by the accessor, or the 
+     * same accessor if cacheMillis is 0.
+     */
+    public static AttributeAccessor cached(AttributeAccessor accessor, long cacheMillis) {
+	if (cacheMillis <= 0) {
+	    return accessor;
+	}
+
+	return new CachingAccessor(accessor, cacheMillis);
+    }
+
+    /**
+     * @param accessor any accessor.
+     * @param converter the converter of the type of the attribute, can be null.
+     * @return an accessor that converts the values of the accessor to open types,
+     * or the same accessor if there is no converter or the values are open already.
+     */
+    public static AttributeAccessor openTyped(AttributeAccessor accessor, OpenTypeConverter converter) {
+	if (converter == null || converter.isIdentity()) {
+	    return accessor;
+	}
+
+	return new OpenTypeAccessor(accessor, converter);
+    }
+
+    public static AttributeAccessor[] forFields(Field[] fields) {
+	AttributeAccessor[] accessors = new AttributeAccessor[fields.length];
+	for (int i = 0; i < fields.length; i++) {
+	    accessors[i] = forField(fields[i]);
+	}
+
+	return accessors;
+    }
+
+    public static OperationInvoker forMethod(Method method) {
+	return new MethodInvoker(method);
+    }
+
+    public static OperationInvoker[] forMethods(Method[] methods) {
+	OperationInvoker[] invokers = new OperationInvoker[methods.length];
+	for (int i = 0; i < methods.length; i++) {
+	    invokers[i] = forMethod(methods[i]);
+	}
+
+	return invokers;
+    }
+
+    /**
+     * Suppresses the accessibility checks of the member. If a security manager 
+     * doesn't allow it, the member is left as it is and only public members will 
+     * be reachable.
+     * @param member the field or method to make accessible.
+     */
+    static void makeAccessible(AccessibleObject member) {
+	try {
+	    member.setAccessible(true);
+	} catch (SecurityException e) {
+	    // keep the default access checks
+	}
+    }
+
+    /**
+     * @param type any class.
+     * @return the wrapper class if the type is a primitive, the same type otherwise.
+     */
+    public static Class<?> wrap(Class<?> type) {
+	if (!type.isPrimitive()) {
+	    return type;
+	}
+
+	if (type.equals(Integer.TYPE)) {
+	    return Integer.class;
+	} else if (type.equals(Long.TYPE)) {
+	    return Long.class;
+	} else if (type.equals(Boolean.TYPE)) {
+	    return Boolean.class;
+	} else if (type.equals(Double.TYPE)) {
+	    return Double.class;
+	} else if (type.equals(Float.TYPE)) {
+	    return Float.class;
+	} else if (type.equals(Short.TYPE)) {
+	    return Short.class;
+	} else if (type.equals(Byte.TYPE)) {
+	    return Byte.class;
+	} else if (type.equals(Character.TYPE)) {
+	    return Character.class;
+	}
+
+	return Void.class;
+    }
+
+}
@@ -0,0 +1,404 @@
+package org.gescobar.management.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+import javax.management.RuntimeOperationsException;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenMBeanAttributeInfoSupport;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.gescobar.management.Counter;
+import org.gescobar.management.ManagementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * A single MBean that exposes all the live instances of a class, used by the beans
+ * annotated with {@link org.gescobar.management.MBean#aggregate()} instead of 
+ * registering an MBean per instance.
+ * 
+ * The instances are tracked with weak references, so an instance that is not 
+ * removed explicitly is forgotten once it's garbage collected. For each numeric 
+ * attribute (a counter or a numeric field) of the class, <i>attribute</i>Sum, 
+ * <i>attribute</i>Min, <i>attribute</i>Max and <i>attribute</i>ByInstance (a 
+ * TabularData with the value of each instance) are computed when they are read. 
+ * InstanceCount is the number of live instances. Integral attributes are aggregated
+ * as longs, the others as doubles; the min and max of no instances are 0.
+ */
+public class AggregateMBean implements DynamicMBean {
+
+    private static Logger log = LoggerFactory.getLogger(AggregateMBean.class);
+
+    public static final String INSTANCE_COUNT = "InstanceCount";
+
+    private static final String[] ROW_NAMES = new String[] { "instance", "value" };
+
+    /**
+     * The kinds of aggregated attributes, by suffix.
+     */
+    private enum Kind {
+	SUM("Sum", "Sum of "), 
+	MIN("Min", "Minimum of "), 
+	MAX("Max", "Maximum of "), 
+	BY_INSTANCE("ByInstance", "Value of each instance of ");
+
+	final String suffix;
+
+	final String description;
+
+	private Kind(String suffix, String description) {
+	    this.suffix = suffix;
+	    this.description = description;
+	}
+    }
+
+    private final String className;
+
+    private final NumericAccessor[] accessors;
+
+    private final boolean[] integral;
+
+    private final TabularType[] tabularTypes;
+
+    /**
+     * The aggregated attributes indexed by name.
+     */
+    private final Map<String,AggregatedAttribute> attributes;
+
+    private final MBeanInfo mBeanInfo;
+
+    private final Set<InstanceReference> instances = 
+	Collections.newSetFromMap(new ConcurrentHashMap<InstanceReference,Boolean>());
+
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+
+    private final AtomicLong instanceIds = new AtomicLong();
+
+    private final AtomicInteger instanceCount = new AtomicInteger();
+
+    /**
+     * @param className the name of the class of the instances.
+     * @param description the description of the MBean.
+     * @param attributeAccessors the accessors of the attributes of the class, the 
+     * numeric ones are aggregated.
+     */
+    public AggregateMBean(String className, String description, AttributeAccessor[] attributeAccessors) {
+	this.className = className;
+
+	List<NumericAccessor> numeric = new ArrayList<NumericAccessor>();
+	for (AttributeAccessor accessor : attributeAccessors) {
+	    if (accessor instanceof FieldAccessor && !((FieldAccessor) accessor).isNumeric()) {
+		continue;
+	    }
+	    if (accessor instanceof NumericAccessor) {
+		numeric.add((NumericAccessor) accessor);
+	    }
+	}
+
+	this.accessors = numeric.toArray(new NumericAccessor[numeric.size()]);
+	this.integral = new boolean[accessors.length];
+	this.tabularTypes = new TabularType[accessors.length];
+	this.attributes = new HashMap<String,AggregatedAttribute>();
+
+	List<MBeanAttributeInfo> attributeInfos = new ArrayList<MBeanAttributeInfo>();
+	attributeInfos.add(new MBeanAttributeInfo(INSTANCE_COUNT, Integer.TYPE.getName(), 
+		"Number of live instances", true, false, false));
+
+	try {
+	    for (int i = 0; i < accessors.length; i++) {
+		String name = accessors[i].getName();
+		integral[i] = isIntegral(accessors[i].getType());
+		SimpleType<?> valueType = integral[i] ? SimpleType.LONG : SimpleType.DOUBLE;
+
+		CompositeType rowType = new CompositeType(className + "." + name, "Value of " + name, ROW_NAMES, 
+			new String[] { "Id of the instance", "Value of " + name }, 
+			new OpenType<?>[] { SimpleType.LONG, valueType });
+		tabularTypes[i] = new TabularType(className + "." + name + "ByInstance", "Values of " + name, 
+			rowType, new String[] { ROW_NAMES[0] });
+
+		for (Kind kind : Kind.values()) {
+		    String attributeName = name + kind.suffix;
+		    attributes.put(attributeName, new AggregatedAttribute(i, kind));
+
+		    OpenType<?> type = kind == Kind.BY_INSTANCE ? tabularTypes[i] : valueType;
+		    attributeInfos.add(new OpenMBeanAttributeInfoSupport(attributeName, kind.description + name, 
+			    type, true, false, false));
+		}
+	    }
+	} catch (OpenDataException e) {
+	    throw new ManagementException(e);
+	}
+
+	this.mBeanInfo = new MBeanInfo(className, description, 
+		attributeInfos.toArray(new MBeanAttributeInfo[attributeInfos.size()]), null, null, null);
+    }
+
+    /**
+     * Starts tracking an instance.
+     * @param instance the instance.
+     */
+    public void add(Object instance) {
+	expungeCollected();
+
+	if (instances.add(new InstanceReference(instance, instanceIds.incrementAndGet(), collected))) {
+	    instanceCount.incrementAndGet();
+	}
+    }
+
+    /**
+     * Stops tracking an instance.
+     * @param instance the instance.
+     */
+    public void remove(Object instance) {
+	expungeCollected();
+
+	// the lookup key is equal to the reference held in the set
+	if (instances.remove(new InstanceReference(instance, 0, null))) {
+	    instanceCount.decrementAndGet();
+	}
+    }
+
+    public int getInstanceCount() {
+	expungeCollected();
+	return instanceCount.get();
+    }
+
+    @Override
+    public Object getAttribute(String attributeName) throws AttributeNotFoundException, MBeanException, 
+	    ReflectionException {
+	if (attributeName == null) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException("Attribute name cannot be null"), 
+		    "Cannot invoke a getter of " + className + " with null attribute name");
+	}
+
+	if (INSTANCE_COUNT.equals(attributeName)) {
+	    return getInstanceCount();
+	}
+
+	AggregatedAttribute attribute = attributes.get(attributeName);
+	if (attribute == null) {
+	    throw new AttributeNotFoundException("Cannot find " + attributeName + " attribute in " + className);
+	}
+
+	expungeCollected();
+	if (attribute.kind == Kind.BY_INSTANCE) {
+	    return byInstance(attribute.index);
+	}
+
+	return aggregate(attribute.index, attribute.kind);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributeNames) {
+	if (attributeNames == null) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException("attributeNames[] cannot be null"), 
+		    "Cannot invoke a getter of " + className);
+	}
+
+	AttributeList resultList = new AttributeList();
+	for (String attributeName : attributeNames) {
+	    try {
+		resultList.add(new Attribute(attributeName, getAttribute(attributeName)));
+	    } catch (Exception e) {
+		log.debug("couldn't read " + attributeName + " of " + className, e);
+	    }
+	}
+
+	return resultList;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException, 
+	    InvalidAttributeValueException, MBeanException, ReflectionException {
+	throw new InvalidAttributeValueException("The attributes of " + className + " are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+	return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, 
+	    ReflectionException {
+	throw new ReflectionException(new NoSuchMethodException(actionName), 
+		"Cannot find the operation " + actionName + " in " + className);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+	return mBeanInfo;
+    }
+
+    private Object aggregate(int index, Kind kind) throws MBeanException, ReflectionException {
+	NumericAccessor accessor = accessors[index];
+
+	double sum = 0;
+	long longSum = 0;
+	double min = Double.POSITIVE_INFINITY;
+	double max = Double.NEGATIVE_INFINITY;
+	for (InstanceReference reference : instances) {
+	    Object instance = reference.get();
+	    if (instance == null) {
+		continue;
+	    }
+
+	    double value = accessor.getDouble(instance);
+	    if (Double.isNaN(value)) {
+		continue;
+	    }
+
+	    sum += value;
+	    longSum += (long) value;
+	    min = Math.min(min, value);
+	    max = Math.max(max, value);
+	}
+
+	double result;
+	switch (kind) {
+	case SUM:
+	    if (integral[index]) {
+		return longSum;
+	    }
+	    result = sum;
+	    break;
+	case MIN:
+	    result = min == Double.POSITIVE_INFINITY ? 0 : min;
+	    break;
+	default:
+	    result = max == Double.NEGATIVE_INFINITY ? 0 : max;
+	}
+
+	if (integral[index]) {
+	    return (long) result;
+	}
+	return result;
+    }
+
+    private Object byInstance(int index) throws MBeanException, ReflectionException {
+	TabularDataSupport table = new TabularDataSupport(tabularTypes[index]);
+	CompositeType rowType = tabularTypes[index].getRowType();
+
+	for (InstanceReference reference : instances) {
+	    Object instance = reference.get();
+	    if (instance == null) {
+		continue;
+	    }
+
+	    double value = accessors[index].getDouble(instance);
+	    Object boxed;
+	    if (integral[index]) {
+		boxed = Long.valueOf((long) value);
+	    } else {
+		boxed = Double.valueOf(value);
+	    }
+
+	    try {
+		table.put(new CompositeDataSupport(rowType, ROW_NAMES, new Object[] { reference.id, boxed }));
+	    } catch (OpenDataException e) {
+		throw new MBeanException(e);
+	    }
+	}
+
+	return table;
+    }
+
+    /**
+     * Forgets the instances that were garbage collected.
+     */
+    private void expungeCollected() {
+	InstanceReference reference;
+	while ((reference = (InstanceReference) collected.poll()) != null) {
+	    if (instances.remove(reference)) {
+		instanceCount.decrementAndGet();
+	    }
+	}
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+	return type.equals(Long.TYPE) || type.equals(Integer.TYPE) || type.equals(Short.TYPE) 
+		|| type.equals(Byte.TYPE) || type.equals(Long.class) || type.equals(Integer.class) 
+		|| type.equals(Short.class) || type.equals(Byte.class) || type.equals(AtomicLong.class) 
+		|| type.equals(AtomicInteger.class) || type.equals(Counter.class);
+    }
+
+    /**
+     * An aggregated attribute: the index of the accessor and the kind of aggregate.
+     */
+    private static class AggregatedAttribute {
+
+	final int index;
+
+	final Kind kind;
+
+	AggregatedAttribute(int index, Kind kind) {
+	    this.index = index;
+	    this.kind = kind;
+	}
+
+    }
+
+    /**
+     * A weak reference to an instance, compared by the identity of the instance so 
+     * beans that override equals are tracked separately. Once the instance is 
+     * collected the reference is only equal to itself.
+     */
+    private static class InstanceReference extends WeakReference<Object> {
+
+	final long id;
+
+	private final int hash;
+
+	InstanceReference(Object instance, long id, ReferenceQueue<Object> queue) {
+	    super(instance, queue);
+	    this.id = id;
+	    this.hash = System.identityHashCode(instance);
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (obj == this) {
+		return true;
+	    }
+	    if (!(obj instanceof InstanceReference)) {
+		return false;
+	    }
+
+	    Object instance = get();
+	    return instance != null && instance == ((InstanceReference) obj).get();
+	}
+
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.gescobar.management.util;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+
+/**
+ * @author German Escobar
+ *
+ * Reads and writes a single exposed attribute of an instance. Accessors are
+ * created once per class and don't hold the instance, so they can be shared 
+ * by all the MBeans of that class.
+ */
+public interface AttributeAccessor {
+
+    /**
+     * @return the name of the attribute as it is exposed in the MBeanInfo.
+     */
+    String getName();
+
+    /**
+     * @return the type of the attribute.
+     */
+    Class<?> getType();
+
+    /**
+     * Retrieves the value of the attribute from the instance received as an argument.
+     * @param target the object that is exposed as an MBean.
+     * @return the value of the attribute.
+     * @throws MBeanException wraps an exception thrown while computing the value.
+     * @throws ReflectionException wraps any reflection problem.
+     */
+    Object get(Object target) throws MBeanException, ReflectionException;
+
+    /**
+     * Sets the value of the attribute in the instance received as an argument.
+     * @param target the object that is exposed as an MBean.
+     * @param value the new value of the attribute, not null.
+     * @throws InvalidAttributeValueException if the value is not assignable to the attribute.
+     * @throws MBeanException wraps an exception thrown while setting the value.
+     * @throws ReflectionException wraps any reflection problem.
+     */
+    void set(Object target, Object value) throws InvalidAttributeValueException, MBeanException, 
+    	ReflectionException;
+
+}
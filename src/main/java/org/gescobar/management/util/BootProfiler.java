@@ -0,0 +1,236 @@
+package org.gescobar.management.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.gescobar.management.ManagementException;
+
+/**
+ * @author German Escobar
+ *
+ * The time spent on each MBean class while the application boots: in the hooks of
+ * the CDI extension, visiting the AnnotatedType, building the MBeanInfo and the
+ * accessors, and registering the MBeans. Kept by the {@link Statistics}, that
+ * expose the slowest classes as a TabularData, and summarized in the log when the
+ * deployment is validated.
+ */
+public class BootProfiler {
+
+    /**
+     * The system property with the number of classes exposed, the slowest first.
+     */
+    public static final String TOP_PROPERTY = "org.gescobar.management.bootProfile.top";
+
+    public static final int DEFAULT_TOP = 20;
+
+    public enum Phase {
+	PROCESS_INJECTION_TARGET("processInjectionTarget"),
+	VISIT("visit"),
+	MBEAN_INFO("mBeanInfo"),
+	REGISTER_MBEAN("registerMBean");
+
+	final String item;
+
+	private Phase(String item) {
+	    this.item = item;
+	}
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private static final String RANK = "rank";
+
+    private static final String TYPE = "type";
+
+    private static final String TOTAL = "totalMillis";
+
+    private static final String REGISTRATIONS = "registrations";
+
+    private static final CompositeType ROW_TYPE;
+
+    private static final TabularType TABLE_TYPE;
+
+    static {
+	String[] names = new String[4 + PHASES.length];
+	String[] descriptions = new String[names.length];
+	OpenType<?>[] types = new OpenType<?>[names.length];
+
+	names[0] = RANK;
+	descriptions[0] = "Position of the class, the slowest first";
+	types[0] = SimpleType.INTEGER;
+	names[1] = TYPE;
+	descriptions[1] = "Name of the class";
+	types[1] = SimpleType.STRING;
+	names[2] = TOTAL;
+	descriptions[2] = "Time spent on the class in milliseconds";
+	types[2] = SimpleType.DOUBLE;
+	names[3] = REGISTRATIONS;
+	descriptions[3] = "Number of MBeans of the class registered";
+	types[3] = SimpleType.LONG;
+	for (int i = 0; i < PHASES.length; i++) {
+	    names[4 + i] = PHASES[i].item + "Millis";
+	    descriptions[4 + i] = "Time spent in " + PHASES[i].item + " in milliseconds";
+	    types[4 + i] = SimpleType.DOUBLE;
+	}
+
+	try {
+	    ROW_TYPE = new CompositeType(BootProfiler.class.getName() + ".Type", "Boot time of a class", names,
+		    descriptions, types);
+	    TABLE_TYPE = new TabularType(BootProfiler.class.getName() + ".Types", "Boot time of the classes",
+		    ROW_TYPE, new String[] { RANK });
+	} catch (OpenDataException e) {
+	    throw new ManagementException(e);
+	}
+    }
+
+    /**
+     * The time of each phase followed by the number of times it was recorded,
+     * indexed by class name.
+     */
+    private final ConcurrentMap<String,AtomicLongArray> timings = new ConcurrentHashMap<String,AtomicLongArray>();
+
+    /**
+     * Adds the time spent in a phase for a class.
+     * @param type the MBean class.
+     * @param phase the phase.
+     * @param nanos the time, in nanoseconds.
+     */
+    public void record(Class<?> type, Phase phase, long nanos) {
+	AtomicLongArray values = timings.get(type.getName());
+	if (values == null) {
+	    AtomicLongArray created = new AtomicLongArray(PHASES.length * 2);
+	    values = timings.putIfAbsent(type.getName(), created);
+	    if (values == null) {
+		values = created;
+	    }
+	}
+
+	values.addAndGet(phase.ordinal(), nanos);
+	values.incrementAndGet(PHASES.length + phase.ordinal());
+    }
+
+    /**
+     * @param count the maximum number of classes.
+     * @return the classes that took the most time, the slowest first (the rank).
+     */
+    public TabularData getTopTypes(int count) {
+	List<Map.Entry<String,AtomicLongArray>> entries = sortedEntries();
+
+	TabularData table = new TabularDataSupport(TABLE_TYPE);
+	String[] names = ROW_TYPE.keySet().toArray(new String[0]);
+	for (int rank = 1; rank <= Math.min(count, entries.size()); rank++) {
+	    Map.Entry<String,AtomicLongArray> entry = entries.get(rank - 1);
+	    AtomicLongArray values = entry.getValue();
+
+	    Map<String,Object> row = new HashMap<String,Object>();
+	    row.put(RANK, rank);
+	    row.put(TYPE, entry.getKey());
+	    row.put(TOTAL, millis(total(values)));
+	    row.put(REGISTRATIONS, values.get(PHASES.length + Phase.REGISTER_MBEAN.ordinal()));
+	    for (Phase phase : PHASES) {
+		row.put(phase.item + "Millis", millis(values.get(phase.ordinal())));
+	    }
+
+	    try {
+		table.put(new CompositeDataSupport(ROW_TYPE, names, valuesOf(row, names)));
+	    } catch (OpenDataException e) {
+		throw new ManagementException(e);
+	    }
+	}
+
+	return table;
+    }
+
+    /**
+     * @return a line with the number of classes, the time of each phase and the
+     * slowest class.
+     */
+    public String getSummary() {
+	List<Map.Entry<String,AtomicLongArray>> entries = sortedEntries();
+
+	long[] phases = new long[PHASES.length];
+	long registrations = 0;
+	for (Map.Entry<String,AtomicLongArray> entry : entries) {
+	    for (int i = 0; i < PHASES.length; i++) {
+		phases[i] += entry.getValue().get(i);
+	    }
+	    registrations += entry.getValue().get(PHASES.length + Phase.REGISTER_MBEAN.ordinal());
+	}
+
+	StringBuilder summary = new StringBuilder("MBean boot profile: " + entries.size() + " classes");
+	for (int i = 0; i < PHASES.length; i++) {
+	    summary.append(", ").append(PHASES[i].item).append(' ').append(format(phases[i])).append(" ms");
+	}
+	summary.append(" (").append(registrations).append(" registrations)");
+	if (!entries.isEmpty()) {
+	    Map.Entry<String,AtomicLongArray> slowest = entries.get(0);
+	    summary.append(", slowest ").append(slowest.getKey()).append(' ')
+		    .append(format(total(slowest.getValue()))).append(" ms");
+	}
+
+	return summary.toString();
+    }
+
+    public int getTypeCount() {
+	return timings.size();
+    }
+
+    private List<Map.Entry<String,AtomicLongArray>> sortedEntries() {
+	List<Map.Entry<String,AtomicLongArray>> entries =
+	    new ArrayList<Map.Entry<String,AtomicLongArray>>(timings.entrySet());
+
+	Collections.sort(entries, new Comparator<Map.Entry<String,AtomicLongArray>>() {
+	    @Override
+	    public int compare(Map.Entry<String,AtomicLongArray> e1, Map.Entry<String,AtomicLongArray> e2) {
+		long t1 = total(e1.getValue());
+		long t2 = total(e2.getValue());
+		return t1 > t2 ? -1 : (t1 == t2 ? e1.getKey().compareTo(e2.getKey()) : 1);
+	    }
+	});
+
+	return entries;
+    }
+
+    private static long total(AtomicLongArray values) {
+	long total = 0;
+	for (int i = 0; i < PHASES.length; i++) {
+	    total += values.get(i);
+	}
+
+	return total;
+    }
+
+    private static double millis(long nanos) {
+	return nanos / 1000000.0;
+    }
+
+    private static String format(long nanos) {
+	return String.format("%.1f", millis(nanos));
+    }
+
+    private static Object[] valuesOf(Map<String,Object> row, String[] names) {
+	Object[] values = new Object[names.length];
+	for (int i = 0; i < names.length; i++) {
+	    values[i] = row.get(names[i]);
+	}
+
+	return values;
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.gescobar.management.util;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+
+/**
+ * @author German Escobar
+ *
+ * An {@link AttributeAccessor} that memoizes the value read by another accessor
+ * for some time, for attributes that are expensive to compute (see 
+ * {@link org.gescobar.management.ManagedAttribute#cacheMillis()}). When the value
+ * expires, only one reader calls the delegate; the readers that arrive meanwhile
+ * wait for it and get the same value. Setting the attribute discards the value.
+ * 
+ * The value belongs to a single instance. The accessors in the metadata of a class
+ * are templates, {@link MBeanImpl} uses a {@link #copy()} of them for each instance.
+ */
+public class CachingAccessor implements AttributeAccessor {
+
+    private final AttributeAccessor delegate;
+
+    private final long cacheMillis;
+
+    private final long cacheNanos;
+
+    private volatile CachedValue cachedValue;
+
+    public CachingAccessor(AttributeAccessor delegate, long cacheMillis) {
+	this.delegate = delegate;
+	this.cacheMillis = cacheMillis;
+	this.cacheNanos = TimeUnit.MILLISECONDS.toNanos(cacheMillis);
+    }
+
+    /**
+     * @return an accessor with the same delegate and time, without a cached value.
+     */
+    public CachingAccessor copy() {
+	return new CachingAccessor(delegate, cacheMillis);
+    }
+
+    @Override
+    public String getName() {
+	return delegate.getName();
+    }
+
+    @Override
+    public Class<?> getType() {
+	return delegate.getType();
+    }
+
+    public long getCacheMillis() {
+	return cacheMillis;
+    }
+
+    @Override
+    public Object get(Object target) throws MBeanException, ReflectionException {
+	CachedValue cached = cachedValue;
+	if (cached != null && !cached.isExpired()) {
+	    return cached.value;
+	}
+
+	synchronized (this) {
+	    // another reader may have computed it while we were waiting
+	    cached = cachedValue;
+	    if (cached != null && !cached.isExpired()) {
+		return cached.value;
+	    }
+
+	    Object value = delegate.get(target);
+	    cachedValue = new CachedValue(value, System.nanoTime() + cacheNanos);
+
+	    return value;
+	}
+    }
+
+    @Override
+    public void set(Object target, Object value) throws InvalidAttributeValueException, 
+	    MBeanException, ReflectionException {
+	synchronized (this) {
+	    delegate.set(target, value);
+	    cachedValue = null;
+	}
+    }
+
+    private static class CachedValue {
+
+	final Object value;
+
+	final long expiration;
+
+	CachedValue(Object value, long expiration) {
+	    this.value = value;
+	    this.expiration = expiration;
+	}
+
+	boolean isExpired() {
+	    return System.nanoTime() - expiration >= 0;
+	}
+
+    }
+
+}
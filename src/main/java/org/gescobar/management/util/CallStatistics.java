@@ -0,0 +1,72 @@
+package org.gescobar.management.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.gescobar.management.Histogram;
+
+/**
+ * @author German Escobar
+ *
+ * The calls made to an {@link MBeanImpl} by JMX clients, kept when the 
+ * {@link Statistics} are enabled: the count, the errors and the latency of each kind
+ * of call. The counts and the histogram of a kind are created with its first 
+ * call, so the MBeans that are never used don't pay for them.
+ * 
+ * There may be tens of thousands of MBeans, and a single MBean is rarely called by
+ * many threads at the same time, so the counts are plain atomic longs and the 
+ * histogram is not striped: a kind of call takes one or two KB.
+ */
+public class CallStatistics {
+
+    public static final int GET_ATTRIBUTE = 0;
+
+    public static final int SET_ATTRIBUTE = 1;
+
+    public static final int INVOKE = 2;
+
+    /**
+     * The names of the kinds of calls, indexed by kind.
+     */
+    static final String[] KINDS = new String[] { "getAttribute", "setAttribute", "invoke" };
+
+    private final AtomicReferenceArray<Calls> calls = new AtomicReferenceArray<Calls>(KINDS.length);
+
+    /**
+     * Records a call.
+     * @param kind the kind of call.
+     * @param nanos the time it took, in nanoseconds.
+     * @param failed true if it threw an exception.
+     */
+    public void record(int kind, long nanos, boolean failed) {
+	Calls c = calls.get(kind);
+	if (c == null) {
+	    calls.compareAndSet(kind, null, new Calls());
+	    c = calls.get(kind);
+	}
+
+	c.count.incrementAndGet();
+	if (failed) {
+	    c.errors.incrementAndGet();
+	}
+	c.latency.record(nanos);
+    }
+
+    /**
+     * @return the calls of a kind or null if there were none.
+     */
+    Calls get(int kind) {
+	return calls.get(kind);
+    }
+
+    static class Calls {
+
+	final AtomicLong count = new AtomicLong();
+
+	final AtomicLong errors = new AtomicLong();
+
+	final Histogram latency = new Histogram(false);
+
+    }
+
+}
@@ -0,0 +1,163 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.ReflectionException;
+
+import org.gescobar.management.Counter;
+import org.gescobar.management.ManagementException;
+
+/**
+ * @author German Escobar
+ *
+ * A read-only {@link AttributeAccessor} for the fields annotated with 
+ * {@link org.gescobar.management.ManagedCounter}. The value of the attribute is 
+ * the long value of the counter held by the field.
+ */
+public class CounterAccessor implements NumericAccessor {
+
+    private static final Class<?>[] NO_PARAMETERS = new Class<?>[0];
+
+    private final Field field;
+
+    /**
+     * The public no-arg reset method of the counter type. Only used for the types 
+     * that are not known at compile time (i.e. LongAdder, which requires Java 8).
+     */
+    private final Method resetMethod;
+
+    public CounterAccessor(Field field) {
+	Class<?> type = field.getType();
+	if (!Number.class.isAssignableFrom(type)) {
+	    throw new ManagementException(new IllegalArgumentException("Field " + field.getName() 
+		    + " of type " + type.getName() + " is not a counter"));
+	}
+
+	this.field = field;
+	this.resetMethod = findResetMethod(type);
+
+	Accessors.makeAccessible(field);
+    }
+
+    @Override
+    public String getName() {
+	return field.getName();
+    }
+
+    @Override
+    public Class<?> getType() {
+	return Long.TYPE;
+    }
+
+    public Field getField() {
+	return field;
+    }
+
+    @Override
+    public Object get(Object target) throws ReflectionException {
+	Number counter = getCounter(target);
+	return counter == null ? 0L : counter.longValue();
+    }
+
+    @Override
+    public double getDouble(Object target) throws ReflectionException {
+	Number counter = getCounter(target);
+	return counter == null ? 0 : counter.longValue();
+    }
+
+    @Override
+    public void set(Object target, Object value) throws InvalidAttributeValueException, 
+	    ReflectionException {
+	throw new InvalidAttributeValueException("Attribute " + field.getName() + " is read-only");
+    }
+
+    /**
+     * Sets the counter of the target to zero.
+     * @param target the object that holds the counter.
+     * @throws ReflectionException
+     */
+    public void reset(Object target) throws ReflectionException {
+	Number counter = getCounter(target);
+	if (counter == null) {
+	    return;
+	}
+
+	if (counter instanceof Counter) {
+	    ((Counter) counter).reset();
+	} else if (counter instanceof AtomicLong) {
+	    ((AtomicLong) counter).set(0);
+	} else if (counter instanceof AtomicInteger) {
+	    ((AtomicInteger) counter).set(0);
+	} else if (resetMethod != null) {
+	    try {
+		resetMethod.invoke(counter);
+	    } catch (Exception e) {
+		throw new ReflectionException(e);
+	    }
+	} else {
+	    throw new ReflectionException(new NoSuchMethodException(counter.getClass().getName() + ".reset()"));
+	}
+    }
+
+    /**
+     * @return an invoker, named "reset" followed by the capitalized name of the 
+     * field, that resets the counter.
+     */
+    public OperationInvoker createResetInvoker() {
+	final String name = getResetOperationName(field.getName());
+
+	return new OperationInvoker() {
+
+	    @Override
+	    public String getName() {
+		return name;
+	    }
+
+	    @Override
+	    public Class<?>[] getParameterTypes() {
+		return NO_PARAMETERS;
+	    }
+
+	    @Override
+	    public Object invoke(Object target, Object[] params) throws ReflectionException {
+		reset(target);
+		return null;
+	    }
+
+	};
+    }
+
+    /**
+     * @param fieldName the name of the counter field.
+     * @return the name of the operation that resets the counter.
+     */
+    public static String getResetOperationName(String fieldName) {
+	return "reset" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+    }
+
+    private Number getCounter(Object target) throws ReflectionException {
+	try {
+	    return (Number) field.get(target);
+	} catch (IllegalAccessException e) {
+	    throw new ReflectionException(e);
+	}
+    }
+
+    private static Method findResetMethod(Class<?> type) {
+	if (Counter.class.isAssignableFrom(type) || AtomicLong.class.isAssignableFrom(type) 
+		|| AtomicInteger.class.isAssignableFrom(type)) {
+	    return null;
+	}
+
+	try {
+	    return type.getMethod("reset");
+	} catch (NoSuchMethodException e) {
+	    return null;
+	}
+    }
+
+}
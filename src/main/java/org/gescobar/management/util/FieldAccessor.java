@@ -0,0 +1,111 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.Field;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.ReflectionException;
+
+/**
+ * @author German Escobar
+ *
+ * An {@link AttributeAccessor} backed by a field. The accessibility check is 
+ * suppressed once, when the accessor is created, so private fields can be read
+ * and written without calling setAccessible on every access.
+ * 
+ * Fields of primitive numeric types or {@link Number}s can also be read as a double
+ * without boxing them.
+ */
+public class FieldAccessor implements NumericAccessor {
+
+    private final Field field;
+
+    /**
+     * The type used to check the values that are set, primitives are replaced
+     * with their wrappers.
+     */
+    private final Class<?> valueType;
+
+    /**
+     * True if the field is of a primitive type that can be widened to double.
+     */
+    private final boolean primitive;
+
+    public FieldAccessor(Field field) {
+	this.field = field;
+	this.valueType = Accessors.wrap(field.getType());
+	this.primitive = field.getType().isPrimitive() && !field.getType().equals(Boolean.TYPE);
+
+	Accessors.makeAccessible(field);
+    }
+
+    @Override
+    public String getName() {
+	return field.getName();
+    }
+
+    @Override
+    public Class<?> getType() {
+	return field.getType();
+    }
+
+    public Field getField() {
+	return field;
+    }
+
+    @Override
+    public Object get(Object target) throws ReflectionException {
+	try {
+	    return field.get(target);
+	} catch (IllegalAccessException e) {
+	    throw new ReflectionException(e);
+	}
+    }
+
+    /**
+     * @return true if the field can be read with {@link #getDouble(Object)}.
+     */
+    public boolean isNumeric() {
+	return primitive || Number.class.isAssignableFrom(field.getType());
+    }
+
+    /**
+     * @return the value of the field converted to double, NaN if the field is a 
+     * null Number.
+     * @throws IllegalStateException if the field is not numeric.
+     */
+    @Override
+    public double getDouble(Object target) throws ReflectionException {
+	try {
+	    if (primitive) {
+		return field.getDouble(target);
+	    }
+
+	    Object value = field.get(target);
+	    if (value instanceof Number) {
+		return ((Number) value).doubleValue();
+	    }
+	    if (value == null && isNumeric()) {
+		return Double.NaN;
+	    }
+	} catch (IllegalAccessException e) {
+	    throw new ReflectionException(e);
+	}
+
+	throw new IllegalStateException("Attribute " + field.getName() + " is not numeric");
+    }
+
+    @Override
+    public void set(Object target, Object value) throws InvalidAttributeValueException, 
+    	    ReflectionException {
+	if (!valueType.isInstance(value)) {
+	    throw(new InvalidAttributeValueException("Cannot set attribute "+ field.getName() +" to a " + value.getClass().getName() + " object, " + field.getType().getName() + " expected"));
+	}
+
+	try {
+	    field.set(target, value);
+	} catch (IllegalAccessException e) {
+	    throw new ReflectionException(e);
+	}
+    }
+
+}
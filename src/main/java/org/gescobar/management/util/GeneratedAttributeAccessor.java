@@ -0,0 +1,64 @@
+package org.gescobar.management.util;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.ReflectionException;
+
+/**
+ * @author German Escobar
+ *
+ * Base class of the {@link AttributeAccessor}s generated at compile time. The 
+ * generated subclasses access the field (or its getter and setter) directly; this
+ * class checks the values and wraps the exceptions as {@link FieldAccessor} does.
+ */
+public abstract class GeneratedAttributeAccessor implements AttributeAccessor {
+
+    private final String name;
+
+    private final Class<?> type;
+
+    private final Class<?> valueType;
+
+    protected GeneratedAttributeAccessor(String name, Class<?> type) {
+	this.name = name;
+	this.type = type;
+	this.valueType = Accessors.wrap(type);
+    }
+
+    @Override
+    public String getName() {
+	return name;
+    }
+
+    @Override
+    public Class<?> getType() {
+	return type;
+    }
+
+    @Override
+    public Object get(Object target) throws ReflectionException {
+	try {
+	    return doGet(target);
+	} catch (Exception e) {
+	    throw new ReflectionException(e);
+	}
+    }
+
+    @Override
+    public void set(Object target, Object value) throws InvalidAttributeValueException, 
+	    ReflectionException {
+	if (!valueType.isInstance(value)) {
+	    throw(new InvalidAttributeValueException("Cannot set attribute "+ name +" to a " + value.getClass().getName() + " object, " + type.getName() + " expected"));
+	}
+
+	try {
+	    doSet(target, value);
+	} catch (Exception e) {
+	    throw new ReflectionException(e);
+	}
+    }
+
+    protected abstract Object doGet(Object target) throws Exception;
+
+    protected abstract void doSet(Object target, Object value) throws Exception;
+
+}
@@ -0,0 +1,53 @@
+package org.gescobar.management.util;
+
+import javax.management.ReflectionException;
+
+/**
+ * @author German Escobar
+ *
+ * Base class of the {@link OperationInvoker}s generated at compile time. The 
+ * generated subclasses call the method directly; this class checks the number of 
+ * arguments and wraps the exceptions as {@link MethodInvoker} does.
+ */
+public abstract class GeneratedOperationInvoker implements OperationInvoker {
+
+    private static final Object[] NO_PARAMS = new Object[0];
+
+    private final String name;
+
+    private final Class<?>[] parameterTypes;
+
+    protected GeneratedOperationInvoker(String name, Class<?>[] parameterTypes) {
+	this.name = name;
+	this.parameterTypes = parameterTypes;
+    }
+
+    @Override
+    public String getName() {
+	return name;
+    }
+
+    @Override
+    public Class<?>[] getParameterTypes() {
+	return parameterTypes;
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] params) throws ReflectionException {
+	if (params == null) {
+	    params = NO_PARAMS;
+	}
+	if (params.length != parameterTypes.length) {
+	    throw new ReflectionException(new IllegalArgumentException("wrong number of arguments"));
+	}
+
+	try {
+	    return doInvoke(target, params);
+	} catch (Exception e) {
+	    throw new ReflectionException(e);
+	}
+    }
+
+    protected abstract Object doInvoke(Object target, Object[] params) throws Exception;
+
+}
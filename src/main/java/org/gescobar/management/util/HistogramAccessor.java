@@ -0,0 +1,156 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+import org.gescobar.management.Histogram;
+import org.gescobar.management.ManagementException;
+
+/**
+ * @author German Escobar
+ *
+ * A read-only {@link AttributeAccessor} for the {@link Histogram} fields annotated 
+ * with {@link org.gescobar.management.ManagedHistogram}. Every read returns the 
+ * values recorded since the previous read of the same reader as CompositeData; the
+ * JMX clients share the reader of the accessor.
+ */
+public class HistogramAccessor implements IntervalAccessor {
+
+    /**
+     * The items computed from a snapshot, shared with the {@link TimingAccessor}.
+     */
+    private static final String[] STATISTIC_NAMES = new String[] { 
+	"min", "max", "mean", "p50", "p90", "p99", "p999" };
+
+    private static final String[] STATISTIC_DESCRIPTIONS = new String[] { "Minimum value", 
+	"Maximum value", "Mean value", "50th percentile", "90th percentile", "99th percentile", 
+	"99.9th percentile" };
+
+    private static final OpenType<?>[] STATISTIC_TYPES = new OpenType<?>[] { SimpleType.LONG, 
+	SimpleType.LONG, SimpleType.DOUBLE, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, 
+	SimpleType.LONG };
+
+    private static final String[] ITEM_NAMES = new String[] { "count" };
+
+    private static final double[] QUANTILES = new double[] { 0.5, 0.9, 0.99, 0.999 };
+
+    /**
+     * The open type of the attributes.
+     */
+    public static final CompositeType COMPOSITE_TYPE = createCompositeType(Histogram.class.getName(), 
+	    "Values recorded since the last read", ITEM_NAMES, 
+	    new String[] { "Number of recorded values" }, new OpenType<?>[] { SimpleType.LONG });
+
+    private final Field field;
+
+    private final IntervalReader reader = new IntervalReader();
+
+    public HistogramAccessor(Field field) {
+	if (!Histogram.class.isAssignableFrom(field.getType())) {
+	    throw new ManagementException(new IllegalArgumentException("Field " + field.getName() 
+		    + " of type " + field.getType().getName() + " is not a " + Histogram.class.getName()));
+	}
+
+	this.field = field;
+
+	Accessors.makeAccessible(field);
+    }
+
+    @Override
+    public String getName() {
+	return field.getName();
+    }
+
+    @Override
+    public Class<?> getType() {
+	return CompositeData.class;
+    }
+
+    public Field getField() {
+	return field;
+    }
+
+    @Override
+    public Object get(Object target) throws ReflectionException {
+	return get(target, reader);
+    }
+
+    @Override
+    public Object get(Object target, IntervalReader reader) throws ReflectionException {
+	Histogram histogram;
+	try {
+	    histogram = (Histogram) field.get(target);
+	} catch (IllegalAccessException e) {
+	    throw new ReflectionException(e);
+	}
+
+	if (histogram == null) {
+	    return null;
+	}
+
+	Histogram.Snapshot snapshot = reader.interval(histogram);
+	return createCompositeData(COMPOSITE_TYPE, ITEM_NAMES, new Object[] { snapshot.getCount() }, snapshot);
+    }
+
+    @Override
+    public void set(Object target, Object value) throws InvalidAttributeValueException, 
+	    ReflectionException {
+	throw new InvalidAttributeValueException("Attribute " + field.getName() + " is read-only");
+    }
+
+    /**
+     * Creates a CompositeType with the items received as arguments followed by the
+     * statistics of a {@link Histogram.Snapshot}.
+     */
+    static CompositeType createCompositeType(String typeName, String description, String[] names, 
+	    String[] descriptions, OpenType<?>[] types) {
+	try {
+	    return new CompositeType(typeName, description, concat(names, STATISTIC_NAMES), 
+		    concat(descriptions, STATISTIC_DESCRIPTIONS), concat(types, STATISTIC_TYPES));
+	} catch (OpenDataException e) {
+	    throw new ManagementException(e);
+	}
+    }
+
+    /**
+     * Creates CompositeData of a type created with {@link #createCompositeType}.
+     * @param type the type of the data.
+     * @param names the names of the items that precede the statistics.
+     * @param values the values of the items that precede the statistics.
+     * @param snapshot the snapshot from which the statistics are computed.
+     * @throws ReflectionException
+     */
+    static CompositeData createCompositeData(CompositeType type, String[] names, Object[] values, 
+	    Histogram.Snapshot snapshot) throws ReflectionException {
+	Object[] statistics = new Object[STATISTIC_NAMES.length];
+	statistics[0] = snapshot.getMin();
+	statistics[1] = snapshot.getMax();
+	statistics[2] = snapshot.getMean();
+	for (int i = 0; i < QUANTILES.length; i++) {
+	    statistics[3 + i] = snapshot.getValueAtQuantile(QUANTILES[i]);
+	}
+
+	try {
+	    return new CompositeDataSupport(type, concat(names, STATISTIC_NAMES), concat(values, statistics));
+	} catch (OpenDataException e) {
+	    throw new ReflectionException(e);
+	}
+    }
+
+    private static <E> E[] concat(E[] first, E[] second) {
+	E[] result = Arrays.copyOf(first, first.length + second.length);
+	System.arraycopy(second, 0, result, first.length, second.length);
+
+	return result;
+    }
+
+}
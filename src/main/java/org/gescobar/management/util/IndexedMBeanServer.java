@@ -0,0 +1,946 @@
+package org.gescobar.management.util;
+
+import java.io.ObjectInputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.InvalidAttributeValueException;
+import javax.management.JMX;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.NotCompliantMBeanException;
+import javax.management.NotificationBroadcaster;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import javax.management.OperationsException;
+import javax.management.QueryExp;
+import javax.management.ReflectionException;
+import javax.management.RuntimeErrorException;
+import javax.management.RuntimeMBeanException;
+import javax.management.RuntimeOperationsException;
+import javax.management.StandardMBean;
+import javax.management.loading.ClassLoaderRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * A lightweight MBeanServer for embedded and Java SE deployments with a large number
+ * of MBeans. Select it with the system property
+ * {@value MBeanServerLocator#MBEAN_SERVER_PROPERTY}=indexed.
+ *
+ * The MBeans are kept in a concurrent map, so registrations don't serialize, and
+ * indexed by domain and by key property. A query looks up the smallest index entry
+ * that matches the fixed parts of the pattern and only checks those names, instead
+ * of scanning every MBean; only patterns without a fixed domain or key property
+ * (value patterns like id=4* don't count) scan everything. The indexes are weakly consistent
+ * with concurrent registrations, as the JDK queries are.
+ *
+ * DynamicMBeans ({@link MBeanImpl}, {@link LazyMBean}, {@link AggregateMBean}) are
+ * stored and called directly, without introspection or wrapping. Standard MBeans
+ * and MXBeans are wrapped in a StandardMBean when they are registered. There is no
+ * security manager support and the deprecated deserialize methods are not
+ * supported.
+ */
+public class IndexedMBeanServer implements MBeanServer {
+
+    private static Logger log = LoggerFactory.getLogger(IndexedMBeanServer.class);
+
+    public static final String DEFAULT_DOMAIN = "DefaultDomain";
+
+    private final String defaultDomain;
+
+    private final ConcurrentMap<ObjectName,Entry> mBeans = new ConcurrentHashMap<ObjectName,Entry>();
+
+    private final Set<ObjectName> names = mBeans.keySet();
+
+    /**
+     * The names indexed by domain and by key=value.
+     */
+    private final Index domainIndex = new Index();
+
+    private final Index propertyIndex = new Index();
+
+    private final MBeanServerDelegate delegate = new MBeanServerDelegate();
+
+    private final AtomicLong sequenceNumber = new AtomicLong();
+
+    /**
+     * The wrappers of the listeners that were added through this server, which are
+     * the ones the MBeans know.
+     */
+    private final ConcurrentMap<ListenerWrapper,ListenerWrapper> listeners =
+	new ConcurrentHashMap<ListenerWrapper,ListenerWrapper>();
+
+    private final ClassLoaderRepository classLoaderRepository = new ContextClassLoaderRepository();
+
+    public IndexedMBeanServer() {
+	this(DEFAULT_DOMAIN);
+    }
+
+    public IndexedMBeanServer(String defaultDomain) {
+	this.defaultDomain = defaultDomain;
+
+	try {
+	    registerMBean(delegate, MBeanServerDelegate.DELEGATE_NAME);
+	} catch (Exception e) {
+	    throw new IllegalStateException("couldn't register the MBeanServerDelegate", e);
+	}
+    }
+
+    /* (non-Javadoc)
+     * @see javax.management.MBeanServer#registerMBean(java.lang.Object, javax.management.ObjectName)
+     */
+    @Override
+    public ObjectInstance registerMBean(Object object, ObjectName name) throws InstanceAlreadyExistsException,
+	    MBeanRegistrationException, NotCompliantMBeanException {
+	if (object == null) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException("Object cannot be null"));
+	}
+
+	DynamicMBean mBean = toDynamicMBean(object);
+
+	MBeanRegistration registration = object instanceof MBeanRegistration ? (MBeanRegistration) object : null;
+	if (registration != null) {
+	    try {
+		ObjectName preRegistered = registration.preRegister(this, name);
+		if (preRegistered != null) {
+		    name = preRegistered;
+		}
+	    } catch (RuntimeException e) {
+		throw new RuntimeMBeanException(e, "preRegister of " + name + " failed");
+	    } catch (Exception e) {
+		throw new MBeanRegistrationException(e, "preRegister of " + name + " failed");
+	    }
+	}
+
+	name = checkName(name);
+
+	// LazyMBeans answer with a placeholder while they are registered; the info of
+	// a StandardMBean is built on first use, so it is not asked for its class name
+	String className = mBean == object ? mBean.getMBeanInfo().getClassName() : object.getClass().getName();
+	Entry entry = new Entry(name, object, mBean, className);
+	if (mBeans.putIfAbsent(name, entry) != null) {
+	    if (registration != null) {
+		registration.postRegister(Boolean.FALSE);
+	    }
+	    throw new InstanceAlreadyExistsException(name.toString());
+	}
+
+	index(name);
+
+	if (registration != null) {
+	    registration.postRegister(Boolean.TRUE);
+	}
+	sendNotification(MBeanServerNotification.REGISTRATION_NOTIFICATION, name);
+
+	return new ObjectInstance(name, className);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.management.MBeanServer#unregisterMBean(javax.management.ObjectName)
+     */
+    @Override
+    public void unregisterMBean(ObjectName name) throws InstanceNotFoundException, MBeanRegistrationException {
+	if (MBeanServerDelegate.DELEGATE_NAME.equals(name)) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException("The MBeanServerDelegate can't be unregistered"));
+	}
+
+	Entry entry = getEntry(name);
+	MBeanRegistration registration = entry.resource instanceof MBeanRegistration
+	    ? (MBeanRegistration) entry.resource : null;
+
+	if (registration != null) {
+	    try {
+		registration.preDeregister();
+	    } catch (RuntimeException e) {
+		throw new RuntimeMBeanException(e, "preDeregister of " + name + " failed");
+	    } catch (Exception e) {
+		throw new MBeanRegistrationException(e, "preDeregister of " + name + " failed");
+	    }
+	}
+
+	if (!mBeans.remove(entry.name, entry)) {
+	    // unregistered concurrently
+	    throw new InstanceNotFoundException(name.toString());
+	}
+	unindex(entry.name);
+
+	if (registration != null) {
+	    registration.postDeregister();
+	}
+	sendNotification(MBeanServerNotification.UNREGISTRATION_NOTIFICATION, entry.name);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.management.MBeanServer#getObjectInstance(javax.management.ObjectName)
+     */
+    @Override
+    public ObjectInstance getObjectInstance(ObjectName name) throws InstanceNotFoundException {
+	Entry entry = getEntry(name);
+	return new ObjectInstance(entry.name, entry.className);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.management.MBeanServer#queryMBeans(javax.management.ObjectName, javax.management.QueryExp)
+     */
+    @Override
+    public Set<ObjectInstance> queryMBeans(ObjectName name, QueryExp query) {
+	Set<ObjectInstance> result = new HashSet<ObjectInstance>();
+	for (ObjectName n : queryNames(name, query)) {
+	    Entry entry = mBeans.get(n);
+	    if (entry != null) {
+		result.add(new ObjectInstance(entry.name, entry.className));
+	    }
+	}
+
+	return result;
+    }
+
+    /* (non-Javadoc)
+     * @see javax.management.MBeanServer#queryNames(javax.management.ObjectName, javax.management.QueryExp)
+     */
+    @Override
+    public Set<ObjectName> queryNames(ObjectName name, QueryExp query) {
+	Set<ObjectName> result = new HashSet<ObjectName>();
+
+	if (name != null && name.getDomain().length() == 0) {
+	    name = withDefaultDomain(name);
+	}
+
+	// a name that is not a pattern is looked up directly
+	if (name != null && !name.isPattern()) {
+	    if (mBeans.containsKey(name) && matches(name, query)) {
+		result.add(name);
+	    }
+	    return result;
+	}
+
+	// names found in the index may have been unregistered since
+	Collection<ObjectName> candidates = candidates(name);
+	boolean checkRegistered = candidates != names;
+
+	for (ObjectName candidate : candidates) {
+	    if ((name == null || name.apply(candidate)) && (!checkRegistered || mBeans.containsKey(candidate))
+		    && matches(candidate, query)) {
+		result.add(candidate);
+	    }
+	}
+
+	return result;
+    }
+
+    /* (non-Javadoc)
+     * @see javax.management.MBeanServer#isRegistered(javax.management.ObjectName)
+     */
+    @Override
+    public boolean isRegistered(ObjectName name) {
+	if (name == null) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException("Object name cannot be null"));
+	}
+
+	return mBeans.get(name) != null || lookupInDefaultDomain(name) != null;
+    }
+
+    @Override
+    public Integer getMBeanCount() {
+	return mBeans.size();
+    }
+
+    /* (non-Javadoc)
+     * @see javax.management.MBeanServer#getAttribute(javax.management.ObjectName, java.lang.String)
+     */
+    @Override
+    public Object getAttribute(ObjectName name, String attribute) throws MBeanException, AttributeNotFoundException,
+	    InstanceNotFoundException, ReflectionException {
+	DynamicMBean mBean = getEntry(name).mBean;
+	try {
+	    return mBean.getAttribute(attribute);
+	} catch (RuntimeOperationsException e) {
+	    throw e;
+	} catch (RuntimeException e) {
+	    throw new RuntimeMBeanException(e, "getAttribute " + attribute + " of " + name + " failed");
+	} catch (Error e) {
+	    throw new RuntimeErrorException(e, "getAttribute " + attribute + " of " + name + " failed");
+	}
+    }
+
+    @Override
+    public AttributeList getAttributes(ObjectName name, String[] attributes) throws InstanceNotFoundException,
+	    ReflectionException {
+	DynamicMBean mBean = getEntry(name).mBean;
+	try {
+	    return mBean.getAttributes(attributes);
+	} catch (RuntimeOperationsException e) {
+	    throw e;
+	} catch (RuntimeException e) {
+	    throw new RuntimeMBeanException(e, "getAttributes of " + name + " failed");
+	} catch (Error e) {
+	    throw new RuntimeErrorException(e, "getAttributes of " + name + " failed");
+	}
+    }
+
+    @Override
+    public void setAttribute(ObjectName name, Attribute attribute) throws InstanceNotFoundException,
+	    AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+	DynamicMBean mBean = getEntry(name).mBean;
+	try {
+	    mBean.setAttribute(attribute);
+	} catch (RuntimeOperationsException e) {
+	    throw e;
+	} catch (RuntimeException e) {
+	    throw new RuntimeMBeanException(e, "setAttribute of " + name + " failed");
+	} catch (Error e) {
+	    throw new RuntimeErrorException(e, "setAttribute of " + name + " failed");
+	}
+    }
+
+    @Override
+    public AttributeList setAttributes(ObjectName name, AttributeList attributes) throws InstanceNotFoundException,
+	    ReflectionException {
+	DynamicMBean mBean = getEntry(name).mBean;
+	try {
+	    return mBean.setAttributes(attributes);
+	} catch (RuntimeOperationsException e) {
+	    throw e;
+	} catch (RuntimeException e) {
+	    throw new RuntimeMBeanException(e, "setAttributes of " + name + " failed");
+	} catch (Error e) {
+	    throw new RuntimeErrorException(e, "setAttributes of " + name + " failed");
+	}
+    }
+
+    @Override
+    public Object invoke(ObjectName name, String operationName, Object[] params, String[] signature)
+	    throws InstanceNotFoundException, MBeanException, ReflectionException {
+	DynamicMBean mBean = getEntry(name).mBean;
+	try {
+	    return mBean.invoke(operationName, params, signature);
+	} catch (RuntimeOperationsException e) {
+	    throw e;
+	} catch (RuntimeException e) {
+	    throw new RuntimeMBeanException(e, "invoke " + operationName + " of " + name + " failed");
+	} catch (Error e) {
+	    throw new RuntimeErrorException(e, "invoke " + operationName + " of " + name + " failed");
+	}
+    }
+
+    @Override
+    public String getDefaultDomain() {
+	return defaultDomain;
+    }
+
+    @Override
+    public String[] getDomains() {
+	Set<String> domains = domainIndex.keys();
+	return domains.toArray(new String[domains.size()]);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.management.MBeanServer#addNotificationListener(javax.management.ObjectName, javax.management.NotificationListener, javax.management.NotificationFilter, java.lang.Object)
+     */
+    @Override
+    public void addNotificationListener(ObjectName name, NotificationListener listener, NotificationFilter filter,
+	    Object handback) throws InstanceNotFoundException {
+	Entry entry = getEntry(name);
+	NotificationBroadcaster broadcaster = getBroadcaster(entry);
+
+	ListenerWrapper wrapper = new ListenerWrapper(entry.name, entry.resource, listener, filter, handback);
+	ListenerWrapper existing = listeners.putIfAbsent(wrapper, wrapper);
+	broadcaster.addNotificationListener(existing != null ? existing : wrapper, filter, handback);
+    }
+
+    @Override
+    public void addNotificationListener(ObjectName name, ObjectName listener, NotificationFilter filter,
+	    Object handback) throws InstanceNotFoundException {
+	addNotificationListener(name, getListener(listener), filter, handback);
+    }
+
+    @Override
+    public void removeNotificationListener(ObjectName name, NotificationListener listener)
+	    throws InstanceNotFoundException, ListenerNotFoundException {
+	Entry entry = getEntry(name);
+	NotificationBroadcaster broadcaster = getBroadcaster(entry);
+
+	boolean found = false;
+	for (ListenerWrapper wrapper : listeners.keySet()) {
+	    if (wrapper.name.equals(entry.name) && wrapper.listener == listener) {
+		listeners.remove(wrapper);
+		try {
+		    broadcaster.removeNotificationListener(wrapper);
+		    found = true;
+		} catch (ListenerNotFoundException e) {
+		    // already removed
+		}
+	    }
+	}
+
+	if (!found) {
+	    throw new ListenerNotFoundException("Listener not registered in " + name);
+	}
+    }
+
+    @Override
+    public void removeNotificationListener(ObjectName name, NotificationListener listener,
+	    NotificationFilter filter, Object handback) throws InstanceNotFoundException, ListenerNotFoundException {
+	Entry entry = getEntry(name);
+	NotificationBroadcaster broadcaster = getBroadcaster(entry);
+
+	ListenerWrapper wrapper = listeners.remove(new ListenerWrapper(entry.name, entry.resource, listener, filter,
+		handback));
+	if (wrapper == null) {
+	    throw new ListenerNotFoundException("Listener not registered in " + name + " with this filter and handback");
+	}
+
+	if (broadcaster instanceof NotificationEmitter) {
+	    ((NotificationEmitter) broadcaster).removeNotificationListener(wrapper, filter, handback);
+	} else {
+	    broadcaster.removeNotificationListener(wrapper);
+	}
+    }
+
+    @Override
+    public void removeNotificationListener(ObjectName name, ObjectName listener) throws InstanceNotFoundException,
+	    ListenerNotFoundException {
+	removeNotificationListener(name, getListener(listener));
+    }
+
+    @Override
+    public void removeNotificationListener(ObjectName name, ObjectName listener, NotificationFilter filter,
+	    Object handback) throws InstanceNotFoundException, ListenerNotFoundException {
+	removeNotificationListener(name, getListener(listener), filter, handback);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo(ObjectName name) throws InstanceNotFoundException, IntrospectionException,
+	    ReflectionException {
+	MBeanInfo info = getEntry(name).mBean.getMBeanInfo();
+	if (info == null) {
+	    throw new IntrospectionException("The MBeanInfo of " + name + " is null");
+	}
+
+	return info;
+    }
+
+    @Override
+    public boolean isInstanceOf(ObjectName name, String className) throws InstanceNotFoundException {
+	Entry entry = getEntry(name);
+	if (entry.className.equals(className)) {
+	    return true;
+	}
+
+	try {
+	    ClassLoader loader = entry.resource.getClass().getClassLoader();
+	    Class<?> c = Class.forName(className, false, loader);
+	    return c.isInstance(entry.resource);
+	} catch (ClassNotFoundException e) {
+	    return false;
+	}
+    }
+
+    @Override
+    public ObjectInstance createMBean(String className, ObjectName name) throws ReflectionException,
+	    InstanceAlreadyExistsException, MBeanRegistrationException, MBeanException, NotCompliantMBeanException {
+	return registerMBean(instantiate(className), name);
+    }
+
+    @Override
+    public ObjectInstance createMBean(String className, ObjectName name, ObjectName loaderName)
+	    throws ReflectionException, InstanceAlreadyExistsException, MBeanRegistrationException, MBeanException,
+	    NotCompliantMBeanException, InstanceNotFoundException {
+	return registerMBean(instantiate(className, loaderName), name);
+    }
+
+    @Override
+    public ObjectInstance createMBean(String className, ObjectName name, Object[] params, String[] signature)
+	    throws ReflectionException, InstanceAlreadyExistsException, MBeanRegistrationException, MBeanException,
+	    NotCompliantMBeanException {
+	return registerMBean(instantiate(className, params, signature), name);
+    }
+
+    @Override
+    public ObjectInstance createMBean(String className, ObjectName name, ObjectName loaderName, Object[] params,
+	    String[] signature) throws ReflectionException, InstanceAlreadyExistsException,
+	    MBeanRegistrationException, MBeanException, NotCompliantMBeanException, InstanceNotFoundException {
+	return registerMBean(instantiate(className, loaderName, params, signature), name);
+    }
+
+    @Override
+    public Object instantiate(String className) throws ReflectionException, MBeanException {
+	return instantiate(className, new Object[0], new String[0]);
+    }
+
+    @Override
+    public Object instantiate(String className, ObjectName loaderName) throws ReflectionException,
+	    MBeanException, InstanceNotFoundException {
+	return instantiate(className, loaderName, new Object[0], new String[0]);
+    }
+
+    @Override
+    public Object instantiate(String className, Object[] params, String[] signature) throws ReflectionException,
+	    MBeanException {
+	try {
+	    return newInstance(classLoaderRepository.loadClass(className), params, signature);
+	} catch (ClassNotFoundException e) {
+	    throw new ReflectionException(e, "Cannot load " + className);
+	}
+    }
+
+    @Override
+    public Object instantiate(String className, ObjectName loaderName, Object[] params, String[] signature)
+	    throws ReflectionException, MBeanException, InstanceNotFoundException {
+	ClassLoader loader = loaderName == null ? getClass().getClassLoader() : getClassLoader(loaderName);
+	try {
+	    return newInstance(Class.forName(className, false, loader), params, signature);
+	} catch (ClassNotFoundException e) {
+	    throw new ReflectionException(e, "Cannot load " + className);
+	}
+    }
+
+    @Override
+    @Deprecated
+    public ObjectInputStream deserialize(ObjectName name, byte[] data) throws OperationsException {
+	throw new OperationsException("deserialize is not supported");
+    }
+
+    @Override
+    @Deprecated
+    public ObjectInputStream deserialize(String className, byte[] data) throws OperationsException,
+	    ReflectionException {
+	throw new OperationsException("deserialize is not supported");
+    }
+
+    @Override
+    @Deprecated
+    public ObjectInputStream deserialize(String className, ObjectName loaderName, byte[] data)
+	    throws OperationsException, ReflectionException {
+	throw new OperationsException("deserialize is not supported");
+    }
+
+    @Override
+    public ClassLoader getClassLoaderFor(ObjectName name) throws InstanceNotFoundException {
+	return getEntry(name).resource.getClass().getClassLoader();
+    }
+
+    @Override
+    public ClassLoader getClassLoader(ObjectName loaderName) throws InstanceNotFoundException {
+	if (loaderName == null) {
+	    return getClass().getClassLoader();
+	}
+
+	Object resource = getEntry(loaderName).resource;
+	if (!(resource instanceof ClassLoader)) {
+	    throw new InstanceNotFoundException(loaderName + " is not a ClassLoader");
+	}
+
+	return (ClassLoader) resource;
+    }
+
+    @Override
+    public ClassLoaderRepository getClassLoaderRepository() {
+	return classLoaderRepository;
+    }
+
+    private Entry getEntry(ObjectName name) throws InstanceNotFoundException {
+	if (name == null) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException("Object name cannot be null"));
+	}
+
+	Entry entry = mBeans.get(name);
+	if (entry == null) {
+	    entry = lookupInDefaultDomain(name);
+	}
+	if (entry == null) {
+	    throw new InstanceNotFoundException(name.toString());
+	}
+
+	return entry;
+    }
+
+    /**
+     * @return the entry of a name without domain in the default domain, as the 
+     * names without domain are registered, or null if there is none.
+     */
+    private Entry lookupInDefaultDomain(ObjectName name) {
+	return name.getDomain().length() == 0 ? mBeans.get(withDefaultDomain(name)) : null;
+    }
+
+    private ObjectName checkName(ObjectName name) {
+	if (name == null) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException("Object name cannot be null"));
+	}
+	if (name.isPattern()) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException("Invalid name->" + name));
+	}
+
+	return name.getDomain().length() == 0 ? withDefaultDomain(name) : name;
+    }
+
+    private ObjectName withDefaultDomain(ObjectName name) {
+	try {
+	    return ObjectName.getInstance(defaultDomain + name.toString());
+	} catch (Exception e) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException(e));
+	}
+    }
+
+    /**
+     * @return the names that may match the pattern: the smallest index entry of the
+     * fixed parts of the pattern, or all the names if that entry holds most of them.
+     */
+    private Collection<ObjectName> candidates(ObjectName pattern) {
+	if (pattern == null) {
+	    return names;
+	}
+
+	Collection<ObjectName> smallest = null;
+	if (!pattern.isDomainPattern()) {
+	    smallest = domainIndex.get(pattern.getDomain());
+	}
+
+	Map<String,String> properties = pattern.getKeyPropertyList();
+	for (Map.Entry<String,String> property : properties.entrySet()) {
+	    if (pattern.isPropertyValuePattern(property.getKey())) {
+		continue;
+	    }
+
+	    Collection<ObjectName> names = propertyIndex.get(property.getKey() + "=" + property.getValue());
+	    if (smallest == null || names.size() < smallest.size()) {
+		smallest = names;
+	    }
+	    if (smallest.isEmpty()) {
+		break;
+	    }
+	}
+
+	return smallest != null && smallest.size() < mBeans.size() / 2 ? smallest : names;
+    }
+
+    private boolean matches(ObjectName name, QueryExp query) {
+	if (query == null) {
+	    return true;
+	}
+
+	try {
+	    query.setMBeanServer(this);
+	    return query.apply(name);
+	} catch (Exception e) {
+	    return false;
+	}
+    }
+
+    private void index(ObjectName name) {
+	domainIndex.add(name.getDomain(), name);
+	for (Map.Entry<String,String> property : name.getKeyPropertyList().entrySet()) {
+	    propertyIndex.add(property.getKey() + "=" + property.getValue(), name);
+	}
+    }
+
+    private void unindex(ObjectName name) {
+	domainIndex.remove(name.getDomain(), name);
+	for (Map.Entry<String,String> property : name.getKeyPropertyList().entrySet()) {
+	    propertyIndex.remove(property.getKey() + "=" + property.getValue(), name);
+	}
+    }
+
+    private void sendNotification(String type, ObjectName name) {
+	try {
+	    delegate.sendNotification(new MBeanServerNotification(type, MBeanServerDelegate.DELEGATE_NAME,
+		    sequenceNumber.incrementAndGet(), name));
+	} catch (RuntimeException e) {
+	    log.warn("couldn't send the " + type + " notification of " + name, e);
+	}
+    }
+
+    private NotificationBroadcaster getBroadcaster(Entry entry) {
+	if (!(entry.resource instanceof NotificationBroadcaster)) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException(entry.name
+		    + " is not a NotificationBroadcaster"));
+	}
+
+	return (NotificationBroadcaster) entry.resource;
+    }
+
+    private NotificationListener getListener(ObjectName listener) throws InstanceNotFoundException {
+	Object resource = getEntry(listener).resource;
+	if (!(resource instanceof NotificationListener)) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException(listener
+		    + " is not a NotificationListener"));
+	}
+
+	return (NotificationListener) resource;
+    }
+
+    private static Object newInstance(Class<?> type, Object[] params, String[] signature)
+	    throws ReflectionException, MBeanException {
+	if (signature == null) {
+	    signature = new String[0];
+	}
+
+	for (Constructor<?> constructor : type.getConstructors()) {
+	    Class<?>[] parameterTypes = constructor.getParameterTypes();
+	    if (parameterTypes.length != signature.length) {
+		continue;
+	    }
+
+	    boolean matches = true;
+	    for (int i = 0; i < parameterTypes.length && matches; i++) {
+		matches = parameterTypes[i].getName().equals(signature[i]);
+	    }
+	    if (!matches) {
+		continue;
+	    }
+
+	    try {
+		return constructor.newInstance(params == null ? new Object[0] : params);
+	    } catch (InvocationTargetException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof Exception) {
+		    throw new MBeanException((Exception) cause, "The constructor of " + type.getName() + " failed");
+		}
+		throw new RuntimeErrorException((Error) cause, "The constructor of " + type.getName() + " failed");
+	    } catch (Exception e) {
+		throw new ReflectionException(e, "Cannot create an instance of " + type.getName());
+	    }
+	}
+
+	throw new ReflectionException(new NoSuchMethodException(type.getName()),
+		"No public constructor of " + type.getName() + " matches the signature");
+    }
+
+    /**
+     * @return the object itself if it's a DynamicMBean, a StandardMBean that wraps
+     * it if it's a standard MBean or an MXBean.
+     * @throws NotCompliantMBeanException if it's none of them.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static DynamicMBean toDynamicMBean(Object object) throws NotCompliantMBeanException {
+	if (object instanceof DynamicMBean) {
+	    return (DynamicMBean) object;
+	}
+
+	for (Class<?> c = object.getClass(); c != null; c = c.getSuperclass()) {
+	    for (Class<?> i : c.getInterfaces()) {
+		if (i.getName().equals(c.getName() + "MBean")) {
+		    return new StandardMBean(object, (Class) i, false);
+		}
+		if (JMX.isMXBeanInterface(i)) {
+		    return new StandardMBean(object, (Class) i, true);
+		}
+	    }
+	}
+
+	throw new NotCompliantMBeanException(object.getClass().getName() + " is not a compliant MBean");
+    }
+
+    /**
+     * A registered MBean: the object that was registered and the DynamicMBean used
+     * to call it, the same object unless it's a standard MBean.
+     */
+    private static class Entry {
+
+	final ObjectName name;
+
+	final Object resource;
+
+	final DynamicMBean mBean;
+
+	final String className;
+
+	Entry(ObjectName name, Object resource, DynamicMBean mBean, String className) {
+	    this.name = name;
+	    this.resource = resource;
+	    this.mBean = mBean;
+	    this.className = className;
+	}
+
+    }
+
+    /**
+     * Sets of names indexed by a key. A bucket is removed when it becomes empty; the
+     * buckets are locked only to add and remove names, so an add never goes to a
+     * removed bucket, and read without locking.
+     */
+    private static class Index {
+
+	private final ConcurrentMap<String,Bucket> buckets = new ConcurrentHashMap<String,Bucket>();
+
+	void add(String key, ObjectName name) {
+	    while (true) {
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+		    Bucket created = new Bucket();
+		    bucket = buckets.putIfAbsent(key, created);
+		    if (bucket == null) {
+			bucket = created;
+		    }
+		}
+
+		synchronized (bucket) {
+		    if (!bucket.removed) {
+			bucket.names.add(name);
+			return;
+		    }
+		}
+	    }
+	}
+
+	void remove(String key, ObjectName name) {
+	    Bucket bucket = buckets.get(key);
+	    if (bucket == null) {
+		return;
+	    }
+
+	    synchronized (bucket) {
+		bucket.names.remove(name);
+		if (bucket.names.isEmpty()) {
+		    bucket.removed = true;
+		    buckets.remove(key, bucket);
+		}
+	    }
+	}
+
+	Collection<ObjectName> get(String key) {
+	    Bucket bucket = buckets.get(key);
+	    return bucket == null ? Collections.<ObjectName>emptySet() : bucket.names;
+	}
+
+	Set<String> keys() {
+	    return buckets.keySet();
+	}
+
+    }
+
+    private static class Bucket {
+
+	final Set<ObjectName> names = Collections.newSetFromMap(new ConcurrentHashMap<ObjectName,Boolean>());
+
+	/**
+	 * Guarded by this.
+	 */
+	boolean removed;
+
+    }
+
+    /**
+     * The listener given to the MBeans, it replaces the source of the notifications
+     * when it's the MBean itself with its name. Equal to the wrappers of the same
+     * registration, so it can be found when the listener is removed.
+     */
+    private static class ListenerWrapper implements NotificationListener {
+
+	final ObjectName name;
+
+	final Object resource;
+
+	final NotificationListener listener;
+
+	final NotificationFilter filter;
+
+	final Object handback;
+
+	ListenerWrapper(ObjectName name, Object resource, NotificationListener listener, NotificationFilter filter,
+		Object handback) {
+	    if (listener == null) {
+		throw new RuntimeOperationsException(new IllegalArgumentException("Listener cannot be null"));
+	    }
+
+	    this.name = name;
+	    this.resource = resource;
+	    this.listener = listener;
+	    this.filter = filter;
+	    this.handback = handback;
+	}
+
+	@Override
+	public void handleNotification(javax.management.Notification notification, Object hb) {
+	    if (notification != null && notification.getSource() == resource) {
+		notification.setSource(name);
+	    }
+	    listener.handleNotification(notification, hb);
+	}
+
+	@Override
+	public int hashCode() {
+	    return name.hashCode() * 31 + System.identityHashCode(listener);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (!(obj instanceof ListenerWrapper)) {
+		return false;
+	    }
+
+	    ListenerWrapper other = (ListenerWrapper) obj;
+	    return name.equals(other.name) && listener == other.listener && filter == other.filter
+		&& handback == other.handback;
+	}
+
+    }
+
+    /**
+     * Loads the classes with the context class loader of the calling thread or the
+     * class loader of the server.
+     */
+    private class ContextClassLoaderRepository implements ClassLoaderRepository {
+
+	@Override
+	public Class<?> loadClass(String className) throws ClassNotFoundException {
+	    return loadClassWithout(null, className);
+	}
+
+	@Override
+	public Class<?> loadClassWithout(ClassLoader exclude, String className) throws ClassNotFoundException {
+	    List<ClassLoader> loaders = new ArrayList<ClassLoader>(2);
+	    loaders.add(Thread.currentThread().getContextClassLoader());
+	    loaders.add(IndexedMBeanServer.class.getClassLoader());
+
+	    for (ClassLoader loader : loaders) {
+		if (loader != null && loader != exclude) {
+		    try {
+			return Class.forName(className, false, loader);
+		    } catch (ClassNotFoundException e) {
+			// try the next one
+		    }
+		}
+	    }
+
+	    throw new ClassNotFoundException(className);
+	}
+
+	@Override
+	public Class<?> loadClassBefore(ClassLoader stop, String className) throws ClassNotFoundException {
+	    return loadClassWithout(stop, className);
+	}
+
+    }
+
+}
@@ -0,0 +1,32 @@
+package org.gescobar.management.util;
+
+import javax.management.MBeanServer;
+
+/**
+ * @author German Escobar
+ *
+ * Provides a new {@link IndexedMBeanServer} if the system property 
+ * {@value MBeanServerLocator#MBEAN_SERVER_PROPERTY} is set to "indexed".
+ */
+public class IndexedMBeanServerProvider implements MBeanServerProvider {
+
+    public static final int PRIORITY = 300;
+
+    /* (non-Javadoc)
+     * @see org.gescobar.management.util.MBeanServerProvider#getMBeanServer()
+     */
+    @Override
+    public MBeanServer getMBeanServer() {
+	if (!MBeanServerLocator.INDEXED.equalsIgnoreCase(System.getProperty(MBeanServerLocator.MBEAN_SERVER_PROPERTY))) {
+	    return null;
+	}
+
+	return new IndexedMBeanServer();
+    }
+
+    @Override
+    public int getPriority() {
+	return PRIORITY;
+    }
+
+}
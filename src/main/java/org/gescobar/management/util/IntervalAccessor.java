@@ -0,0 +1,22 @@
+package org.gescobar.management.util;
+
+import javax.management.ReflectionException;
+
+/**
+ * @author German Escobar
+ *
+ * An {@link AttributeAccessor} whose values cover the interval since the previous
+ * read, e.g. the snapshots of a histogram. {@link #get(Object)} returns the 
+ * intervals of the JMX clients; other readers pass their own {@link IntervalReader}.
+ */
+public interface IntervalAccessor extends AttributeAccessor {
+
+    /**
+     * @param target the exposed object.
+     * @param reader the previous reads of the reader.
+     * @return the value of the attribute since the previous read of the reader.
+     * @throws ReflectionException
+     */
+    Object get(Object target, IntervalReader reader) throws ReflectionException;
+
+}
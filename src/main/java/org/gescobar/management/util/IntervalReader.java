@@ -0,0 +1,49 @@
+package org.gescobar.management.util;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.gescobar.management.Counter;
+import org.gescobar.management.Histogram;
+
+/**
+ * @author German Escobar
+ *
+ * The previous reads of a reader of the histograms and the timings, e.g. the JMX 
+ * clients or the {@link PrometheusExporter}, so each reader gets the values recorded
+ * since its own previous read instead of taking them from the others. The previous
+ * values are held weakly by histogram and counter, so they don't keep the exposed 
+ * objects alive.
+ */
+public class IntervalReader {
+
+    private final Map<Histogram,Histogram.Snapshot> snapshots = new WeakHashMap<Histogram,Histogram.Snapshot>();
+
+    private final Map<Counter,Long> sums = new WeakHashMap<Counter,Long>();
+
+    /**
+     * @param histogram any histogram.
+     * @return the values recorded since the previous call with the same histogram,
+     * or since it was created.
+     */
+    public synchronized Histogram.Snapshot interval(Histogram histogram) {
+	Histogram.Snapshot current = histogram.snapshot();
+	Histogram.Snapshot interval = current.since(snapshots.get(histogram));
+	snapshots.put(histogram, current);
+
+	return interval;
+    }
+
+    /**
+     * @param counter a counter that is never reset.
+     * @return the increments since the previous call with the same counter, or 
+     * since it was created.
+     */
+    public synchronized long interval(Counter counter) {
+	long current = counter.sum();
+	Long previous = sums.put(counter, current);
+
+	return previous == null ? current : current - previous;
+    }
+
+}
@@ -0,0 +1,42 @@
+package org.gescobar.management.util;
+
+import javax.management.MBeanServer;
+
+/**
+ * @author German Escobar
+ *
+ * Provides the MBeanServer of JBoss, if the JBoss JMX classes are available and
+ * the server is running.
+ */
+public class JBossMBeanServerProvider implements MBeanServerProvider {
+
+    public static final int PRIORITY = 200;
+
+    private static final String LOCATOR_CLASS = "org.jboss.mx.util.MBeanServerLocator";
+
+    /* (non-Javadoc)
+     * @see org.gescobar.management.util.MBeanServerProvider#getMBeanServer()
+     */
+    @Override
+    public MBeanServer getMBeanServer() {
+	// the JBoss JMX classes are a provided dependency
+	try {
+	    Class.forName(LOCATOR_CLASS, false, JBossMBeanServerProvider.class.getClassLoader());
+	} catch (ClassNotFoundException e) {
+	    return null;
+	}
+
+	try {
+	    return org.jboss.mx.util.MBeanServerLocator.locateJBoss();
+	} catch (IllegalStateException e) {
+	    // not running in JBoss
+	    return null;
+	}
+    }
+
+    @Override
+    public int getPriority() {
+	return PRIORITY;
+    }
+
+}
@@ -0,0 +1,226 @@
+package org.gescobar.management.util;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.RuntimeOperationsException;
+
+import org.gescobar.management.MBeanFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * @param <T>
+ * 
+ * A placeholder DynamicMBean that creates the real MBean the first time a client 
+ * asks for its MBeanInfo, reads or writes an attribute or invokes an operation. 
+ * Until then, registering it only costs this object.
+ * 
+ * The MBeanServer asks for the MBeanInfo while the MBean is being registered (to
+ * find out its class name). That call is answered with a placeholder MBeanInfo 
+ * that only has the class name and the description, so the registration doesn't 
+ * create the real MBean. 
+ * 
+ * Adding a notification listener also creates the real MBean, which receives the 
+ * registration callbacks at that moment so it knows its name, and the 
+ * unregistration callbacks with this placeholder.
+ */
+public class LazyMBean<T> implements DynamicMBean, NotificationEmitter, MBeanRegistration {
+
+    private static Logger log = LoggerFactory.getLogger(LazyMBean.class);
+
+    private final MBeanFactory mBeanFactory;
+
+    private final T implementation;
+
+    private final MBeanInfo placeholderInfo;
+
+    private volatile DynamicMBean delegate;
+
+    private volatile boolean registered;
+
+    private volatile MBeanServer mBeanServer;
+
+    private volatile ObjectName objectName;
+
+    /**
+     * @param mBeanFactory the factory used to create the real MBean.
+     * @param implementation the object that is exposed.
+     * @param placeholderInfo the MBeanInfo returned while the MBean is registered.
+     */
+    public LazyMBean(MBeanFactory mBeanFactory, T implementation, MBeanInfo placeholderInfo) {
+	this.mBeanFactory = mBeanFactory;
+	this.implementation = implementation;
+	this.placeholderInfo = placeholderInfo;
+    }
+
+    /**
+     * @return true if the real MBean has already been created.
+     */
+    public boolean isMaterialized() {
+	return delegate != null;
+    }
+
+    /**
+     * @return the real MBean, creating it if this is the first call.
+     */
+    public DynamicMBean getDelegate() {
+	DynamicMBean result = delegate;
+	if (result == null) {
+	    synchronized (this) {
+		result = delegate;
+		if (result == null) {
+		    result = mBeanFactory.createMBean(implementation);
+		    if (registered) {
+			register(result);
+		    }
+		    delegate = result;
+		}
+	    }
+	}
+
+	return result;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException,
+	    ReflectionException {
+	return getDelegate().getAttribute(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException,
+	    InvalidAttributeValueException, MBeanException, ReflectionException {
+	getDelegate().setAttribute(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+	return getDelegate().getAttributes(attributes);
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+	return getDelegate().setAttributes(attributes);
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException,
+	    ReflectionException {
+	return getDelegate().invoke(actionName, params, signature);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+	if (!registered && delegate == null) {
+	    // the MBeanServer is registering the MBean
+	    return placeholderInfo;
+	}
+
+	return getDelegate().getMBeanInfo();
+    }
+
+    @Override
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, 
+	    Object handback) {
+	getEmitter().addNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+	getEmitter().removeNotificationListener(listener);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, 
+	    Object handback) throws ListenerNotFoundException {
+	getEmitter().removeNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public MBeanNotificationInfo[] getNotificationInfo() {
+	return getMBeanInfo().getNotifications();
+    }
+
+    private NotificationEmitter getEmitter() {
+	DynamicMBean result = getDelegate();
+	if (!(result instanceof NotificationEmitter)) {
+	    throw new RuntimeOperationsException(new IllegalArgumentException(result.getClass().getName() 
+		    + " doesn't emit notifications"));
+	}
+
+	return (NotificationEmitter) result;
+    }
+
+    /**
+     * Gives the registration callbacks to the real MBean, it's created after this 
+     * placeholder was registered.
+     */
+    private void register(DynamicMBean mBean) {
+	if (mBean instanceof MBeanRegistration) {
+	    MBeanRegistration registration = (MBeanRegistration) mBean;
+	    try {
+		registration.preRegister(mBeanServer, objectName);
+		registration.postRegister(Boolean.TRUE);
+	    } catch (Exception e) {
+		log.warn("couldn't notify the registration of " + objectName + " to the real MBean", e);
+	    }
+	}
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+	this.mBeanServer = server;
+	this.objectName = name;
+	return name;
+    }
+
+    @Override
+    public void postRegister(Boolean registrationDone) {
+	synchronized (this) {
+	    registered = registrationDone.booleanValue();
+	    if (registered && delegate != null) {
+		register(delegate);
+	    }
+	}
+    }
+
+    /**
+     * Gives the callback to the real MBean, if it was created, so it stops the 
+     * sampling of its thresholds and leaves the statistics.
+     */
+    @Override
+    public void preDeregister() throws Exception {
+	synchronized (this) {
+	    if (delegate instanceof MBeanRegistration) {
+		((MBeanRegistration) delegate).preDeregister();
+	    }
+	}
+    }
+
+    @Override
+    public void postDeregister() {
+	synchronized (this) {
+	    registered = false;
+	    if (delegate instanceof MBeanRegistration) {
+		((MBeanRegistration) delegate).postDeregister();
+	    }
+	}
+    }
+
+}
@@ -2,7 +2,12 @@ package org.gescobar.management.util;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
@@ -10,7 +15,15 @@ import javax.management.AttributeNotFoundException;
 import javax.management.DynamicMBean;
 import javax.management.InvalidAttributeValueException;
 import javax.management.MBeanException;
+import javax.management.ListenerNotFoundException;
 import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import javax.management.RuntimeOperationsException;
 
@@ -21,42 +34,111 @@ import javax.management.RuntimeOperationsException;
  * 
  * The implementation of DynamicMBean. Uses the {@link ExposedMembers} to retrieve the exposed 
  * fields and operations of the instance. 
+ * 
+ * It's also a NotificationEmitter: the listeners are kept by a {@link NotificationSupport},
+ * created the first time it's needed, whose source is the name of the MBean once it's
+ * registered. The attributes with thresholds are watched by the {@link ThresholdSampler}
+ * while the MBean is registered.
+ * 
+ * An MBean bound weakly (see {@link #bindWeakly(MBeanReaper)}) doesn't keep its 
+ * instance alive; the {@link MBeanReaper} unregisters it once the instance is 
+ * collected.
+ * 
+ * Unless the {@link Statistics} are disabled, the calls of the JMX clients are 
+ * counted and timed in its {@link CallStatistics}.
  */
-public class MBeanImpl<T> implements DynamicMBean {
+public class MBeanImpl<T> implements DynamicMBean, NotificationEmitter, MBeanRegistration {
     
     private T implementation;
     
-    private Field[] exposedFields;
+    /**
+     * The weak reference to the instance if it's bound weakly, null otherwise.
+     */
+    private MBeanReaper.Binding<T> binding;
+    
+    /**
+     * The accessors of the exposed attributes indexed by attribute name. Built once in 
+     * the constructor so lookups don't have to scan the attributes on every call.
+     */
+    private final Map<String,AttributeAccessor> exposedAttributes;
     
-    private Method[] exposedMethods;
+    /**
+     * Resolves the invokers of the exposed operations by name and signature. 
+     */
+    private final OperationTable exposedOperations;
     
     private MBeanInfo mBeanInfo;
     
+    private volatile NotificationSupport notificationSupport;
+    
+    private volatile ObjectName objectName;
+    
+    private volatile MBeanServer mBeanServer;
+    
+    private Threshold[] thresholds = new Threshold[0];
+    
+    /**
+     * The watches of the thresholds while the MBean is registered, guarded by this.
+     */
+    private ThresholdSampler.Watch[] watches;
+    
+    /**
+     * The calls made to this MBean, null if the {@link Statistics} are disabled.
+     */
+    private final CallStatistics callStatistics = Statistics.ENABLED ? new CallStatistics() : null;
+    
+    /**
+     * When the registration started, if the {@link Statistics} are enabled.
+     */
+    private long registrationStart;
+    
     public MBeanImpl(T implementation, Field[] exposedFields, Method[] exposedMethods, 
 	    MBeanInfo mBeanInfo) {
+	this(implementation, Accessors.forFields(exposedFields), Accessors.forMethods(exposedMethods), 
+		mBeanInfo);
+    }
+    
+    public MBeanImpl(T implementation, AttributeAccessor[] attributeAccessors, 
+	    OperationInvoker[] operationInvokers, MBeanInfo mBeanInfo) {
+	this(implementation, attributeAccessors, new OperationTable(operationInvokers), mBeanInfo);
+    }
+    
+    public MBeanImpl(T implementation, AttributeAccessor[] attributeAccessors, 
+	    OperationTable operationTable, MBeanInfo mBeanInfo) {
 	this.implementation = implementation;
-	this.exposedFields = exposedFields;
-	this.exposedMethods = exposedMethods;
+	this.exposedAttributes = indexAttributes(attributeAccessors);
+	this.exposedOperations = operationTable;
 	this.mBeanInfo = mBeanInfo;
     }
 
     @Override
     public Object getAttribute(String attributeName) throws AttributeNotFoundException, 
     		MBeanException, ReflectionException {
+	if (!Statistics.ENABLED) {
+	    return readAttribute(attributeName);
+	}
+	
+	long start = System.nanoTime();
+	boolean failed = true;
+	try {
+	    Object value = readAttribute(attributeName);
+	    failed = false;
+	    return value;
+	} finally {
+	    callStatistics.record(CallStatistics.GET_ATTRIBUTE, System.nanoTime() - start, failed);
+	}
+    }
+    
+    private Object readAttribute(String attributeName) throws AttributeNotFoundException, 
+	    MBeanException, ReflectionException {
 	// check attribute_name is not null to avoid NullPointerException later on
 	if (attributeName == null) {
 	    throw new RuntimeOperationsException(new IllegalArgumentException("Attribute name cannot be null"),  "Cannot invoke a getter of " + mBeanInfo.getClassName() + " with null attribute name");
 	}
 	
-	for (Field f : exposedFields) {
-	    String name = f.getName();
-	    if (name.equals(attributeName)) {
-		try {
-		    return f.get(implementation);
-		} catch (IllegalAccessException e) {
-		    return new ReflectionException(e);
-		}
-	    }
+	AttributeAccessor accessor = exposedAttributes.get(attributeName);
+	if (accessor != null) {
+	    return accessor.get(getImplementation());
 	}
 	
 	// if attribute_name has not been recognized throw an AttributeNotFoundException
@@ -91,6 +173,23 @@ public class MBeanImpl<T> implements DynamicMBean {
     @Override
     public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException,
 	    MBeanException, ReflectionException {
+	if (!Statistics.ENABLED) {
+	    writeAttribute(attribute);
+	    return;
+	}
+	
+	long start = System.nanoTime();
+	boolean failed = true;
+	try {
+	    writeAttribute(attribute);
+	    failed = false;
+	} finally {
+	    callStatistics.record(CallStatistics.SET_ATTRIBUTE, System.nanoTime() - start, failed);
+	}
+    }
+    
+    private void writeAttribute(Attribute attribute) throws AttributeNotFoundException, 
+	    InvalidAttributeValueException, MBeanException, ReflectionException {
 	// check attribute is not null to avoid NullPointerException later on
 	if (attribute == null) {
 	    throw new RuntimeOperationsException(new IllegalArgumentException("Attribute cannot be null"), "Cannot invoke a setter of " + mBeanInfo.getClassName() + " with null attribute");
@@ -106,29 +205,13 @@ public class MBeanImpl<T> implements DynamicMBean {
 	    throw(new InvalidAttributeValueException("Cannot set attribute " + name + " to null"));
 	}
 	
-	boolean found = false;
-	for (Field f : exposedFields) {
-	    if (f.getName().equals(name)) {
-		found = true;
-		
-		if (isAssignable(f.getType(), value.getClass())) {
-		    try {
-			f.setAccessible(true);
-			f.set(implementation, value);
-		    } catch (IllegalAccessException e) {
-			throw new ReflectionException(e);
-		    }
-		} else {
-		    throw(new InvalidAttributeValueException("Cannot set attribute "+ name +" to a " + value.getClass().getName() + " object, " + f.getType().getName() + " expected"));
-		}
-		
-	    }
-	}
-	
-	if (!found) {
+	AttributeAccessor accessor = exposedAttributes.get(name);
+	if (accessor == null) {
 	    // no attributes for this class, throw a AttributeNotFoundException
 	    throw(new AttributeNotFoundException("Attribute " + name + " not found in " + mBeanInfo.getClassName()));
 	}
+	
+	accessor.set(getImplementation(), value);
     }
 
     @Override
@@ -151,7 +234,7 @@ public class MBeanImpl<T> implements DynamicMBean {
 	    try {
 		setAttribute(attr);
 		String name = attr.getName();
-		Object value = getAttribute(name); 
+		Object value = readAttribute(name); 
 		resultList.add(new Attribute(name,value));
 	    } catch(Exception e) {
 		e.printStackTrace();
@@ -164,6 +247,23 @@ public class MBeanImpl<T> implements DynamicMBean {
     @Override
     public Object invoke(String actionName, Object[] params, String[] signature)
 	    throws MBeanException, ReflectionException {
+	if (!Statistics.ENABLED) {
+	    return invokeOperation(actionName, params, signature);
+	}
+	
+	long start = System.nanoTime();
+	boolean failed = true;
+	try {
+	    Object result = invokeOperation(actionName, params, signature);
+	    failed = false;
+	    return result;
+	} finally {
+	    callStatistics.record(CallStatistics.INVOKE, System.nanoTime() - start, failed);
+	}
+    }
+    
+    private Object invokeOperation(String actionName, Object[] params, String[] signature)
+	    throws MBeanException, ReflectionException {
 	// check operationName is not null to avoid NullPointerException later on
 	if (actionName == null) {
 		throw new RuntimeOperationsException(new IllegalArgumentException("Operation name cannot be null"), 
@@ -171,27 +271,21 @@ public class MBeanImpl<T> implements DynamicMBean {
 	}
 	
 	// check for a recognized operation name and call the corresponding operation
-	boolean operationFound = false;
-	for (Method m : exposedMethods) {
-	    /* FIXME the name is not enough for comparison, we also need to compare attributes */
-	    if (m.getName().equals(actionName)) {
-		operationFound = true;
-		
-		try {
-		    return m.invoke(implementation, params);
-		} catch (Exception e) {
-		    throw new ReflectionException(e);
-		}
+	OperationInvoker invoker = exposedOperations.lookup(actionName, signature);
+	if (invoker == null) {
+	    if (exposedOperations.contains(actionName)) {
+		// the name is known but the signature doesn't match any operation
+		String operation = actionName + (signature == null ? "[]" : Arrays.toString(signature));
+		throw new ReflectionException(new NoSuchMethodException(operation), 
+			"Cannot find the operation " + operation + " in " + mBeanInfo.getClassName());
 	    }
-	}
-	
-	if (!operationFound) {
+
 	    // unrecognized operation name:
 	    throw new ReflectionException(new NoSuchMethodException(actionName), 
 		    "Cannot find the operation " + actionName + " in " + mBeanInfo.getClassName());
 	}
 	
-	return null;
+	return invoker.invoke(getImplementation(), params);
     }
     
     @Override
@@ -199,24 +293,203 @@ public class MBeanImpl<T> implements DynamicMBean {
 	return mBeanInfo;
     }
     
-    private boolean isAssignable(Class<?> to, Class<?> from) {
-	if (to.isPrimitive()) {
-	    to = fromPrimitiveToObject(to);
+    /**
+     * @return the object that keeps the listeners of this MBean and sends them the 
+     * notifications, creating it if this is the first call.
+     */
+    public NotificationSupport getNotificationSupport() {
+	NotificationSupport result = notificationSupport;
+	if (result == null) {
+	    synchronized (this) {
+		result = notificationSupport;
+		if (result == null) {
+		    result = new NotificationSupport(objectName != null ? objectName : this, 
+			    NotificationDispatcher.getDefault());
+		    notificationSupport = result;
+		}
+	    }
+	}
+	
+	return result;
+    }
+    
+    @Override
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, 
+	    Object handback) {
+	getNotificationSupport().addNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+	getNotificationSupport().removeNotificationListener(listener);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, 
+	    Object handback) throws ListenerNotFoundException {
+	getNotificationSupport().removeNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public MBeanNotificationInfo[] getNotificationInfo() {
+	return mBeanInfo.getNotifications();
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.management.MBeanRegistration#preRegister(javax.management.MBeanServer, javax.management.ObjectName)
+     */
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+	// the source of the notifications has to be serializable for remote listeners
+	synchronized (this) {
+	    this.objectName = name;
+	    this.mBeanServer = server;
+	    if (Statistics.ENABLED) {
+		this.registrationStart = System.nanoTime();
+	    }
+	    if (notificationSupport != null) {
+		notificationSupport.setSource(name);
+	    }
+	}
+	
+	return name;
+    }
+
+    @Override
+    public void postRegister(Boolean registrationDone) {
+	if (!registrationDone.booleanValue()) {
+	    return;
 	}
 	
-	if (from.isPrimitive()) {
-	    from = fromPrimitiveToObject(from);
+	if (binding != null) {
+	    binding.registered(mBeanServer, objectName);
 	}
 	
-	return to.isAssignableFrom(from);
+	if (Statistics.ENABLED) {
+	    Statistics.getDefault().beanRegistered(objectName, callStatistics, System.nanoTime() - registrationStart);
+	}
+	if (PrometheusExporter.ENABLED) {
+	    PrometheusExporter.getDefault().beanRegistered(objectName, this);
+	}
+	
+	if (thresholds.length > 0) {
+	    synchronized (this) {
+		if (watches == null) {
+		    ThresholdSampler sampler = ThresholdSampler.getDefault();
+		    watches = binding != null ? sampler.watch(binding, thresholds, getNotificationSupport()) 
+			    : sampler.watch(implementation, thresholds, getNotificationSupport());
+		}
+	    }
+	}
+    }
+
+    @Override
+    public void preDeregister() throws Exception {
+    }
+
+    @Override
+    public void postDeregister() {
+	if (binding != null) {
+	    binding.unregistered();
+	}
+	
+	if (Statistics.ENABLED && objectName != null) {
+	    Statistics.getDefault().beanUnregistered(objectName, callStatistics);
+	}
+	if (PrometheusExporter.ENABLED && objectName != null) {
+	    PrometheusExporter.getDefault().beanUnregistered(objectName, this);
+	}
+	
+	synchronized (this) {
+	    if (watches != null) {
+		ThresholdSampler.getDefault().unwatch(watches);
+		watches = null;
+	    }
+	}
+    }
+    
+    /**
+     * Sets the thresholds that are watched while the MBean is registered. Must be 
+     * called before it's registered.
+     * @param thresholds the thresholds of the attributes.
+     */
+    public void setThresholds(Threshold[] thresholds) {
+	this.thresholds = thresholds;
+    }
+    
+    /**
+     * Replaces the reference to the instance by a weak one, so the MBean doesn't keep
+     * it alive, and unregisters the MBean with the reaper once it's collected. Must 
+     * be called before it's registered.
+     * @param reaper the reaper that watches the instance.
+     */
+    public void bindWeakly(MBeanReaper reaper) {
+	if (binding == null) {
+	    this.binding = reaper.bind(implementation);
+	    this.implementation = null;
+	}
+    }
+    
+    /**
+     * @return true if the MBean doesn't keep its instance alive.
+     */
+    public boolean isBoundWeakly() {
+	return binding != null;
+    }
+    
+    /**
+     * @return the accessors of the exposed attributes, read directly by the 
+     * {@link PrometheusExporter}.
+     */
+    Collection<AttributeAccessor> getAttributeAccessors() {
+	return exposedAttributes.values();
     }
     
-    private Class<?> fromPrimitiveToObject(Class<?> primitive) {
-	if (primitive.equals(Integer.TYPE)) {
-	    return Integer.class;
+    AttributeAccessor getAttributeAccessor(String name) {
+	return exposedAttributes.get(name);
+    }
+    
+    /**
+     * @return the instance exposed by this MBean, null if it's bound weakly and 
+     * the instance was collected.
+     */
+    Object getTarget() {
+	return binding == null ? implementation : binding.get();
+    }
+    
+    /**
+     * @return the instance exposed by this MBean.
+     * @throws MBeanException if it's bound weakly and the instance was collected.
+     */
+    private T getImplementation() throws MBeanException {
+	if (binding == null) {
+	    return implementation;
+	}
+	
+	T result = binding.get();
+	if (result == null) {
+	    throw new MBeanException(new IllegalStateException("The instance of " + mBeanInfo.getClassName() 
+		    + " has been garbage collected"));
+	}
+	
+	return result;
+    }
+    
+    private static Map<String,AttributeAccessor> indexAttributes(AttributeAccessor[] accessors) {
+	Map<String,AttributeAccessor> index = new HashMap<String,AttributeAccessor>(accessors.length * 2);
+	for (AttributeAccessor accessor : accessors) {
+	    // the cached values belong to this instance
+	    if (accessor instanceof CachingAccessor) {
+		accessor = ((CachingAccessor) accessor).copy();
+	    }
+
+	    // keep the first attribute with a given name, as the linear scan did
+	    if (!index.containsKey(accessor.getName())) {
+		index.put(accessor.getName(), accessor);
+	    }
 	}
 	
-	return primitive;
+	return Collections.unmodifiableMap(index);
     }
 
 }
@@ -0,0 +1,127 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.management.MBeanInfo;
+
+import org.gescobar.management.ManagementException;
+import org.gescobar.management.Notifier;
+
+/**
+ * @author German Escobar
+ *
+ * Everything that is needed to create an {@link MBeanImpl} for any instance of a 
+ * class: the MBeanInfo, the attribute accessors and the operation table. None of
+ * them depends on the instance, so a single MBeanMetadata is shared by all the 
+ * MBeans of a class.
+ * 
+ * It also has the {@link Notifier} fields of the class, which are bound to each MBean
+ * when it's created, the coalescing windows of the notification types and the 
+ * thresholds of the attributes, which are watched while each MBean is registered.
+ */
+public class MBeanMetadata {
+
+    private final MBeanInfo mBeanInfo;
+
+    private final AttributeAccessor[] attributeAccessors;
+
+    private final OperationTable operationTable;
+
+    private final Field[] notifierFields;
+
+    private final Map<String,Long> coalesceWindows;
+
+    private final Threshold[] thresholds;
+
+    public MBeanMetadata(MBeanInfo mBeanInfo, AttributeAccessor[] attributeAccessors, 
+	    OperationTable operationTable) {
+	this(mBeanInfo, attributeAccessors, operationTable, new Field[0], Collections.<String,Long>emptyMap(), 
+		new Threshold[0]);
+    }
+
+    /**
+     * @param mBeanInfo the MBeanInfo.
+     * @param attributeAccessors the accessors of the attributes.
+     * @param operationTable the invokers of the operations.
+     * @param notifierFields the {@link Notifier} fields, already accessible.
+     * @param coalesceWindows the coalescing windows in milliseconds indexed by 
+     * notification type.
+     * @param thresholds the thresholds of the attributes.
+     */
+    public MBeanMetadata(MBeanInfo mBeanInfo, AttributeAccessor[] attributeAccessors, 
+	    OperationTable operationTable, Field[] notifierFields, Map<String,Long> coalesceWindows, 
+	    Threshold[] thresholds) {
+	this.mBeanInfo = mBeanInfo;
+	this.attributeAccessors = attributeAccessors;
+	this.operationTable = operationTable;
+	this.notifierFields = notifierFields;
+	this.coalesceWindows = coalesceWindows;
+	this.thresholds = thresholds;
+    }
+
+    /**
+     * Creates the MBean that exposes the instance received as an argument.
+     * @param <T>
+     * @param instance the object that is going to be exposed.
+     * @return an MBeanImpl backed by this metadata.
+     */
+    public <T> MBeanImpl<T> createMBean(T instance) {
+	MBeanImpl<T> mBean = new MBeanImpl<T>(instance, attributeAccessors, operationTable, mBeanInfo);
+	if (notifierFields.length > 0) {
+	    bindNotifiers(instance, mBean.getNotificationSupport());
+	}
+	if (thresholds.length > 0) {
+	    mBean.setThresholds(thresholds);
+	}
+
+	return mBean;
+    }
+
+    /**
+     * Binds the notifiers of the instance to the MBean. The fields that are null are 
+     * initialized with a new notifier.
+     */
+    private void bindNotifiers(Object instance, NotificationSupport support) {
+	support.setCoalesceWindows(coalesceWindows);
+
+	for (Field field : notifierFields) {
+	    try {
+		Notifier notifier = (Notifier) field.get(instance);
+		if (notifier == null) {
+		    notifier = new Notifier();
+		    field.set(instance, notifier);
+		}
+		notifier.bind(support);
+	    } catch (IllegalAccessException e) {
+		throw new ManagementException(e);
+	    }
+	}
+    }
+
+    public MBeanInfo getMBeanInfo() {
+	return mBeanInfo;
+    }
+
+    public AttributeAccessor[] getAttributeAccessors() {
+	return attributeAccessors;
+    }
+
+    public OperationTable getOperationTable() {
+	return operationTable;
+    }
+
+    public Field[] getNotifierFields() {
+	return notifierFields;
+    }
+
+    public Map<String,Long> getCoalesceWindows() {
+	return coalesceWindows;
+    }
+
+    public Threshold[] getThresholds() {
+	return thresholds;
+    }
+
+}
@@ -0,0 +1,24 @@
+package org.gescobar.management.util;
+
+/**
+ * @author German Escobar
+ *
+ * Implemented by the classes that the {@link org.gescobar.management.apt.MBeanProcessor}
+ * generates at compile time for each class annotated with 
+ * {@link org.gescobar.management.MBean}. The generated class is named after the 
+ * annotated class plus the {@link #GENERATED_SUFFIX} and lives in the same package.
+ */
+public interface MBeanMetadataProvider {
+
+    /**
+     * The suffix appended to the binary name of the annotated class to obtain the 
+     * name of the generated class.
+     */
+    String GENERATED_SUFFIX = "$MBeanMetadata";
+
+    /**
+     * @return the metadata of the annotated class, built without reflection.
+     */
+    MBeanMetadata getMetadata();
+
+}
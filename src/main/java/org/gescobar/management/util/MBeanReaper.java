@@ -0,0 +1,256 @@
+package org.gescobar.management.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * Unregisters the weakly bound MBeans (see
+ * {@link org.gescobar.management.cdi.AbstractMBeanFactory#createWeakMBean(Object)}) whose
+ * instance has been garbage collected, so an MBean that the application forgot to
+ * unregister doesn't keep its instance, and everything it references, alive.
+ *
+ * A daemon thread waits on the ReferenceQueue of the {@link Binding}s and
+ * unregisters the MBeans of the collected instances in batches. Bindings of MBeans
+ * that are not registered are just discarded. The counts of the default reaper are
+ * exposed by the {@link Statistics}.
+ */
+public class MBeanReaper {
+
+    private static Logger log = LoggerFactory.getLogger(MBeanReaper.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private static final long LATE_CHECK_MILLIS = 1000;
+
+    private static MBeanReaper defaultReaper;
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    /**
+     * The bindings whose instance was collected while their MBean was being
+     * registered, checked every {@link #LATE_CHECK_MILLIS}.
+     */
+    private final Queue<Binding<?>> late = new ConcurrentLinkedQueue<Binding<?>>();
+
+    private final int batchSize;
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong reaped = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    public MBeanReaper() {
+	this(DEFAULT_BATCH_SIZE);
+    }
+
+    public MBeanReaper(int batchSize) {
+	this.batchSize = batchSize;
+
+	this.worker = new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		reap();
+	    }
+	}, "MBeanReaper");
+	this.worker.setDaemon(true);
+	this.worker.start();
+    }
+
+    /**
+     * @return the reaper shared by the weakly bound MBeans, created (and its thread
+     * started) the first time one is created.
+     */
+    public static synchronized MBeanReaper getDefault() {
+	if (defaultReaper == null) {
+	    defaultReaper = new MBeanReaper();
+	    if (Statistics.ENABLED) {
+		Statistics.getDefault().setMBeanReaper(defaultReaper);
+	    }
+	}
+
+	return defaultReaper;
+    }
+
+    /**
+     * Stops the thread of the default reaper, if it was created.
+     */
+    public static synchronized void shutdownDefault() {
+	if (defaultReaper != null) {
+	    defaultReaper.shutdown();
+	    if (Statistics.ENABLED) {
+		Statistics.getDefault().setMBeanReaper(null);
+	    }
+	    defaultReaper = null;
+	}
+    }
+
+    /**
+     * Creates the weak reference to the instance of an MBean.
+     * @param <T>
+     * @param instance the object that is exposed.
+     * @return the binding, registered with the queue of this reaper.
+     */
+    public <T> Binding<T> bind(T instance) {
+	return new Binding<T>(instance, this);
+    }
+
+    /**
+     * Stops the thread of the reaper.
+     */
+    public void shutdown() {
+	running = false;
+	worker.interrupt();
+    }
+
+    /**
+     * @return the number of MBeans that were unregistered because their instance
+     * was collected.
+     */
+    public long getReapedCount() {
+	return reaped.get();
+    }
+
+    public long getFailureCount() {
+	return failures.get();
+    }
+
+    public long getBatchCount() {
+	return batches.get();
+    }
+
+    private void reap() {
+	List<Binding<?>> batch = new ArrayList<Binding<?>>(batchSize);
+
+	while (running) {
+	    try {
+		Binding<?> first = (Binding<?>) queue.remove(LATE_CHECK_MILLIS);
+		if (first != null) {
+		    batch.add(first);
+		}
+	    } catch (InterruptedException e) {
+		continue;
+	    }
+
+	    Binding<?> binding;
+	    while (batch.size() < batchSize && (binding = (Binding<?>) queue.poll()) != null) {
+		batch.add(binding);
+	    }
+	    while (batch.size() < batchSize && (binding = late.poll()) != null) {
+		batch.add(binding);
+	    }
+
+	    if (batch.isEmpty()) {
+		continue;
+	    }
+
+	    for (Binding<?> b : batch) {
+		unregister(b);
+	    }
+
+	    batches.incrementAndGet();
+	    batch.clear();
+	}
+    }
+
+    private void unregister(Binding<?> binding) {
+	MBeanServer mBeanServer;
+	ObjectName objectName;
+	synchronized (binding) {
+	    mBeanServer = binding.mBeanServer;
+	    objectName = binding.objectName;
+	    binding.mBeanServer = null;
+	    binding.objectName = null;
+	    binding.reaped = true;
+	}
+
+	if (objectName == null) {
+	    // not registered
+	    return;
+	}
+
+	try {
+	    mBeanServer.unregisterMBean(objectName);
+	    reaped.incrementAndGet();
+	} catch (InstanceNotFoundException e) {
+	    // unregistered concurrently
+	} catch (Exception e) {
+	    failures.incrementAndGet();
+	    log.warn("couldn't unregister " + objectName + " after its instance was collected", e);
+	}
+    }
+
+    /**
+     * The weak reference of an MBean to its instance, with the server and the name
+     * under which the MBean is registered, if it is.
+     */
+    public static class Binding<T> extends WeakReference<T> {
+
+	/**
+	 * Guarded by this.
+	 */
+	private MBeanServer mBeanServer;
+
+	/**
+	 * Guarded by this.
+	 */
+	private ObjectName objectName;
+
+	/**
+	 * True once the reaper has seen that the instance was collected, guarded by this.
+	 */
+	private boolean reaped;
+
+	private final MBeanReaper reaper;
+
+	Binding(T instance, MBeanReaper reaper) {
+	    super(instance, reaper.queue);
+	    this.reaper = reaper;
+	}
+
+	/**
+	 * Records that the MBean was registered.
+	 */
+	public void registered(MBeanServer mBeanServer, ObjectName objectName) {
+	    boolean alreadyReaped;
+	    synchronized (this) {
+		this.mBeanServer = mBeanServer;
+		this.objectName = objectName;
+		alreadyReaped = reaped;
+	    }
+
+	    // the instance was collected while the MBean was being registered
+	    if (alreadyReaped) {
+		reaper.late.add(this);
+	    }
+	}
+
+	/**
+	 * Records that the MBean was unregistered.
+	 */
+	public synchronized void unregistered() {
+	    this.mBeanServer = null;
+	    this.objectName = null;
+	}
+
+    }
+
+}
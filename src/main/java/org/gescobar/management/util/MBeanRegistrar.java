@@ -0,0 +1,464 @@
+package org.gescobar.management.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * Registers and unregisters MBeans on a background thread so the calls to the
+ * MBeanServer, which can take server-wide locks and send notifications, are kept
+ * off the application threads.
+ *
+ * Requests are queued in a bounded queue (callers block when it's full) and applied
+ * in batches, in the order they were submitted. A registration and an
+ * unregistration of the same name that end up in the same batch cancel each other,
+ * so short-lived beans never reach the MBeanServer, as long as skipping both gives
+ * the same result as applying them in order: the registration is the first request
+ * for the name in the batch and the name is not registered yet. Use 
+ * {@link #flush()} to wait until everything submitted so far has been applied. 
+ * 
+ * {@link #registerAll(Map)} and {@link #unregisterAll(Collection)} queue many 
+ * requests at once, e.g. for a pool of workers with an MBean each, taking the 
+ * submission lock once.
+ */
+public class MBeanRegistrar {
+
+    private static Logger log = LoggerFactory.getLogger(MBeanRegistrar.class);
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private static MBeanRegistrar defaultRegistrar;
+
+    private final MBeanServer mBeanServer;
+
+    private final BlockingQueue<Request> queue;
+
+    private final int batchSize;
+
+    private final Thread worker;
+
+    /**
+     * Guards the assignment of sequence numbers so requests are queued in order.
+     */
+    private final Object submitLock = new Object();
+
+    private long submitted;
+
+    /**
+     * Guards {@link #applied}, which is also used to wait for flushes.
+     */
+    private final Object appliedLock = new Object();
+
+    private long applied;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong registrations = new AtomicLong();
+
+    private final AtomicLong unregistrations = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong totalLatency = new AtomicLong();
+
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    public MBeanRegistrar(MBeanServer mBeanServer) {
+	this(mBeanServer, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    public MBeanRegistrar(MBeanServer mBeanServer, int capacity, int batchSize) {
+	this.mBeanServer = mBeanServer;
+	this.queue = new ArrayBlockingQueue<Request>(capacity);
+	this.batchSize = batchSize;
+
+	this.worker = new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		processRequests();
+	    }
+	}, "MBeanRegistrar");
+	this.worker.setDaemon(true);
+	this.worker.start();
+    }
+
+    /**
+     * @return the registrar shared by the automatically registered MBeans. It uses
+     * the MBeanServer returned by the {@link MBeanServerLocator}.
+     */
+    public static synchronized MBeanRegistrar getDefault() {
+	if (defaultRegistrar == null) {
+	    defaultRegistrar = new MBeanRegistrar(MBeanServerLocator.instance().getmBeanServer());
+	}
+
+	return defaultRegistrar;
+    }
+
+    /**
+     * Applies the pending requests of the default registrar, if it was created, and
+     * stops it.
+     */
+    public static synchronized void shutdownDefault() {
+	if (defaultRegistrar != null) {
+	    defaultRegistrar.shutdown();
+	    defaultRegistrar = null;
+	}
+    }
+
+    /**
+     * Queues the registration of an MBean.
+     * @param mBean the MBean.
+     * @param name the name under which it will be registered.
+     */
+    public void register(Object mBean, ObjectName name) {
+	submit(new Request(name, mBean));
+    }
+
+    /**
+     * Queues the unregistration of an MBean.
+     * @param name the name of the MBean.
+     */
+    public void unregister(ObjectName name) {
+	submit(new Request(name, null));
+    }
+
+    /**
+     * Queues the registration of several MBeans, in the iteration order of the map.
+     * @param mBeans the MBeans indexed by the name under which they will be registered.
+     */
+    public void registerAll(Map<ObjectName,?> mBeans) {
+	List<Request> requests = new ArrayList<Request>(mBeans.size());
+	for (Map.Entry<ObjectName,?> entry : mBeans.entrySet()) {
+	    requests.add(new Request(entry.getKey(), entry.getValue()));
+	}
+
+	submitAll(requests);
+    }
+
+    /**
+     * Queues the unregistration of several MBeans.
+     * @param names the names of the MBeans.
+     */
+    public void unregisterAll(Collection<ObjectName> names) {
+	List<Request> requests = new ArrayList<Request>(names.size());
+	for (ObjectName name : names) {
+	    requests.add(new Request(name, null));
+	}
+
+	submitAll(requests);
+    }
+
+    /**
+     * Waits until all the requests submitted before this call have been applied.
+     * @throws InterruptedException
+     */
+    public void flush() throws InterruptedException {
+	flush(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until all the requests submitted before this call have been applied or
+     * the timeout expires.
+     * @param timeout the maximum time to wait, 0 to wait forever.
+     * @param unit the unit of the timeout.
+     * @return true if the requests were applied, false if the timeout expired.
+     * @throws InterruptedException
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+	long target;
+	synchronized (submitLock) {
+	    target = submitted;
+	}
+
+	long deadline = System.nanoTime() + unit.toNanos(timeout);
+	synchronized (appliedLock) {
+	    while (applied < target) {
+		if (timeout == 0) {
+		    appliedLock.wait();
+		} else {
+		    long remaining = deadline - System.nanoTime();
+		    if (remaining <= 0) {
+			return false;
+		    }
+		    TimeUnit.NANOSECONDS.timedWait(appliedLock, remaining);
+		}
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * Applies the pending requests and stops the background thread. Requests
+     * submitted afterwards are applied on the calling thread.
+     */
+    public void shutdown() {
+	try {
+	    flush();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+
+	// requests are queued under the same lock, so none is queued after this
+	synchronized (submitLock) {
+	    running = false;
+	}
+	worker.interrupt();
+	awaitWorker();
+    }
+
+    /**
+     * @return the number of requests waiting to be applied.
+     */
+    public int getQueueDepth() {
+	return queue.size();
+    }
+
+    public long getRegistrationCount() {
+	return registrations.get();
+    }
+
+    public long getUnregistrationCount() {
+	return unregistrations.get();
+    }
+
+    /**
+     * @return the number of requests that were cancelled by a later request for the
+     * same name and never reached the MBeanServer.
+     */
+    public long getCoalescedCount() {
+	return coalesced.get();
+    }
+
+    public long getFailureCount() {
+	return failures.get();
+    }
+
+    public long getBatchCount() {
+	return batches.get();
+    }
+
+    /**
+     * @return the average time, in microseconds, from the submission of a request
+     * until it is applied.
+     */
+    public double getAverageLatency() {
+	long count = registrations.get() + unregistrations.get() + failures.get();
+	return count == 0 ? 0 : totalLatency.get() / (count * 1000.0);
+    }
+
+    /**
+     * @return the maximum time, in microseconds, from the submission of a request
+     * until it was applied.
+     */
+    public double getMaxLatency() {
+	return maxLatency.get() / 1000.0;
+    }
+
+    private void submit(Request request) {
+	submitAll(Collections.singletonList(request));
+    }
+
+    private void submitAll(List<Request> requests) {
+	boolean queued = false;
+	boolean interrupted = false;
+	synchronized (submitLock) {
+	    if (running) {
+		queued = true;
+		for (Request request : requests) {
+		    request.sequence = ++submitted;
+		    while (true) {
+			try {
+			    queue.put(request);
+			    break;
+			} catch (InterruptedException e) {
+			    // don't lose the request, restore the interrupt afterwards
+			    interrupted = true;
+			}
+		    }
+		}
+	    }
+	}
+
+	if (!queued) {
+	    // after the shutdown, once the queued requests have been applied
+	    awaitWorker();
+	    for (Request request : requests) {
+		apply(request);
+	    }
+	}
+
+	if (interrupted) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    /**
+     * Waits until the background thread has applied the queued requests and 
+     * stopped. It only stops after a shutdown.
+     */
+    private void awaitWorker() {
+	boolean interrupted = false;
+	while (worker.isAlive()) {
+	    try {
+		worker.join();
+	    } catch (InterruptedException e) {
+		interrupted = true;
+	    }
+	}
+
+	if (interrupted) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    private void processRequests() {
+	List<Request> batch = new ArrayList<Request>(batchSize);
+
+	while (running || !queue.isEmpty()) {
+	    try {
+		Request first = queue.poll(1, TimeUnit.SECONDS);
+		if (first == null) {
+		    continue;
+		}
+
+		batch.add(first);
+		queue.drainTo(batch, batchSize - 1);
+	    } catch (InterruptedException e) {
+		if (!running) {
+		    queue.drainTo(batch);
+		}
+	    }
+
+	    if (batch.isEmpty()) {
+		continue;
+	    }
+
+	    coalesce(batch);
+	    for (Request request : batch) {
+		if (!request.cancelled) {
+		    apply(request);
+		}
+	    }
+
+	    batches.incrementAndGet();
+	    markApplied(batch.get(batch.size() - 1).sequence);
+	    batch.clear();
+	}
+    }
+
+    /**
+     * Cancels the registrations that are followed by an unregistration of the same
+     * name in the same batch, if the registration is the first request for the name
+     * in the batch, the unregistration the next one, and the name is not registered.
+     * Otherwise the registration could fail (e.g. register A, register B, unregister
+     * leaves the name unregistered) and the requests are applied as they are. The 
+     * previous batches have been applied already, so the MBeanServer knows about all
+     * of their registrations.
+     */
+    private void coalesce(List<Request> batch) {
+	// the first request of each name in the batch, while it's a registration
+	Map<ObjectName,Request> firstRegistrations = new HashMap<ObjectName,Request>();
+	Set<ObjectName> seen = new HashSet<ObjectName>();
+
+	for (Request request : batch) {
+	    if (seen.add(request.name)) {
+		if (request.isRegistration()) {
+		    firstRegistrations.put(request.name, request);
+		}
+		continue;
+	    }
+
+	    Request registration = firstRegistrations.remove(request.name);
+	    if (registration != null && !request.isRegistration() && !mBeanServer.isRegistered(request.name)) {
+		registration.cancelled = true;
+		request.cancelled = true;
+		coalesced.addAndGet(2);
+		// as if the name wasn't in the batch so far
+		seen.remove(request.name);
+	    }
+	}
+    }
+
+    private void apply(Request request) {
+	try {
+	    if (request.isRegistration()) {
+		mBeanServer.registerMBean(request.mBean, request.name);
+		registrations.incrementAndGet();
+	    } else {
+		mBeanServer.unregisterMBean(request.name);
+		unregistrations.incrementAndGet();
+	    }
+	} catch (Exception e) {
+	    failures.incrementAndGet();
+	    log.warn("couldn't " + (request.isRegistration() ? "register " : "unregister ") + request.name, e);
+	}
+
+	long latency = System.nanoTime() - request.submitTime;
+	totalLatency.addAndGet(latency);
+
+	long max = maxLatency.get();
+	while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+	    max = maxLatency.get();
+	}
+    }
+
+    private void markApplied(long sequence) {
+	synchronized (appliedLock) {
+	    if (sequence > applied) {
+		applied = sequence;
+	    }
+	    appliedLock.notifyAll();
+	}
+    }
+
+    /**
+     * A registration (if it has an MBean) or an unregistration.
+     */
+    private static class Request {
+
+	final ObjectName name;
+
+	final Object mBean;
+
+	final long submitTime = System.nanoTime();
+
+	long sequence;
+
+	boolean cancelled;
+
+	Request(ObjectName name, Object mBean) {
+	    this.name = name;
+	    this.mBean = mBean;
+	}
+
+	boolean isRegistration() {
+	    return mBean != null;
+	}
+
+    }
+
+}
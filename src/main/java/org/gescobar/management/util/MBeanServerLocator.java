@@ -1,50 +1,130 @@
 package org.gescobar.management.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
 
 import javax.management.MBeanServer;
-import javax.management.MBeanServerFactory;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * Locates the MBeanServer using the {@link MBeanServerProvider}s found with the
+ * ServiceLoader. The server is resolved once, when the locator is first used, and
+ * published safely by the class initialization of the holder.
+ */
 public class MBeanServerLocator {
+
+    private static Logger log = LoggerFactory.getLogger(MBeanServerLocator.class);
+
+    /**
+     * Set to "indexed" to use an {@link IndexedMBeanServer} instead of looking up
+     * the MBeanServer of the container.
+     */
+    public static final String MBEAN_SERVER_PROPERTY = "org.gescobar.management.mbeanServer";
+
+    public static final String INDEXED = "indexed";
     
-    private MBeanServer mBeanServer;
-    
-    private static MBeanServerLocator instance;
+    private volatile MBeanServer mBeanServer;
     
     private MBeanServerLocator() {
 	this.mBeanServer = locateMBeanServer();
     }
     
     public static MBeanServerLocator instance() {
-	if (instance == null) {
-	    instance = new MBeanServerLocator();
-	}
-	
-	return instance;
+	return Holder.INSTANCE;
     }
 
     public MBeanServer getmBeanServer() {
         return mBeanServer;
     }
 
+    /**
+     * Replaces the located MBeanServer. MBeans that are already registered, and the
+     * beans that were already deployed, keep using the previous one.
+     */
     public void setmBeanServer(MBeanServer mBeanServer) {
         this.mBeanServer = mBeanServer;
     }
 
     private MBeanServer locateMBeanServer() {
-	MBeanServer mBeanServer = null;
+	for (MBeanServerProvider provider : loadProviders()) {
+	    try {
+		MBeanServer mBeanServer = provider.getMBeanServer();
+		if (mBeanServer != null) {
+		    log.debug("using the MBeanServer of " + provider.getClass().getName());
+		    return mBeanServer;
+		}
+	    } catch (RuntimeException e) {
+		log.warn("MBeanServerProvider " + provider.getClass().getName() + " failed", e);
+	    } catch (LinkageError e) {
+		log.warn("MBeanServerProvider " + provider.getClass().getName() + " failed", e);
+	    }
+	}
+	
+	return new PlatformMBeanServerProvider().getMBeanServer();
+    }
+
+    /**
+     * @return the providers visible to this library and to the context class loader,
+     * sorted by descending priority.
+     */
+    private List<MBeanServerProvider> loadProviders() {
+	List<MBeanServerProvider> providers = new ArrayList<MBeanServerProvider>();
+	Set<String> classNames = new HashSet<String>();
+	
+	ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+	loadProviders(MBeanServerLocator.class.getClassLoader(), providers, classNames);
+	if (contextClassLoader != null) {
+	    loadProviders(contextClassLoader, providers, classNames);
+	}
 	
-	try {
-	    mBeanServer = org.jboss.mx.util.MBeanServerLocator.locateJBoss();
-	} catch (IllegalStateException e) {
-	    ArrayList<MBeanServer> al = MBeanServerFactory.findMBeanServer(null);
-	    if (al.isEmpty())
-		mBeanServer = MBeanServerFactory.createMBeanServer();
-	    else
-		mBeanServer = (MBeanServer) al.get(0);
+	Collections.sort(providers, new Comparator<MBeanServerProvider>() {
+	    @Override
+	    public int compare(MBeanServerProvider p1, MBeanServerProvider p2) {
+		int priority1 = p1.getPriority();
+		int priority2 = p2.getPriority();
+		return priority1 > priority2 ? -1 : (priority1 == priority2 ? 0 : 1);
+	    }
+	});
+	
+	return providers;
+    }
+
+    private void loadProviders(ClassLoader classLoader, List<MBeanServerProvider> providers, Set<String> classNames) {
+	Iterator<MBeanServerProvider> iterator = ServiceLoader.load(MBeanServerProvider.class, classLoader).iterator();
+	while (true) {
+	    try {
+		if (!iterator.hasNext()) {
+		    return;
+		}
+
+		MBeanServerProvider provider = iterator.next();
+		if (classNames.add(provider.getClass().getName())) {
+		    providers.add(provider);
+		}
+	    } catch (ServiceConfigurationError e) {
+		log.warn("couldn't load an MBeanServerProvider", e);
+	    }
 	}
+    }
+    
+    /**
+     * Creates the locator, and resolves the server, on first use.
+     */
+    private static class Holder {
+	
+	static final MBeanServerLocator INSTANCE = new MBeanServerLocator();
 	
-	return mBeanServer;
     }
     
 }
@@ -0,0 +1,30 @@
+package org.gescobar.management.util;
+
+import javax.management.MBeanServer;
+
+/**
+ * @author German Escobar
+ *
+ * Provides the MBeanServer in which the MBeans are registered. The providers are
+ * discovered with the ServiceLoader (list them in 
+ * META-INF/services/org.gescobar.management.util.MBeanServerProvider) and asked, 
+ * by descending priority, until one of them returns a server. This happens once, 
+ * the {@link MBeanServerLocator} keeps the result.
+ *
+ * The built-in providers are the {@link IndexedMBeanServerProvider} (300, only if
+ * selected with a system property), the {@link JBossMBeanServerProvider} (200) and 
+ * the {@link PlatformMBeanServerProvider} (100).
+ */
+public interface MBeanServerProvider {
+
+    /**
+     * @return the MBeanServer or null if it's not available in this environment.
+     */
+    MBeanServer getMBeanServer();
+
+    /**
+     * @return the priority of the provider, higher priorities are asked first.
+     */
+    int getPriority();
+
+}
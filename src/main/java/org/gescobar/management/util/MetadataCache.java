@@ -0,0 +1,176 @@
+package org.gescobar.management.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author German Escobar
+ *
+ * A concurrent cache of {@link MBeanMetadata} keyed by class. 
+ * 
+ * Classes are held through weak references so the cache doesn't prevent the 
+ * class loader of a redeployed application from being collected. The metadata
+ * itself references the class (through its fields and methods), so it is held
+ * through a soft reference; otherwise it would keep its own key reachable. Note 
+ * that a soft reference is only cleared under memory pressure, so until then the
+ * cached metadata keeps the class, and its class loader, reachable. The classes
+ * of an application have to be removed with {@link #remove(Class)} when it's 
+ * undeployed, as the CDI extension does on shutdown.
+ */
+public class MetadataCache {
+
+    private final ConcurrentMap<ClassKey,SoftReference<MBeanMetadata>> entries = 
+	new ConcurrentHashMap<ClassKey,SoftReference<MBeanMetadata>>();
+
+    private final ReferenceQueue<Class<?>> staleKeys = new ReferenceQueue<Class<?>>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param type the class of the exposed object.
+     * @return the cached metadata of the class or null if there is none.
+     */
+    public MBeanMetadata get(Class<?> type) {
+	expungeStaleEntries();
+
+	ClassKey key = new ClassKey(type, null);
+	SoftReference<MBeanMetadata> ref = entries.get(key);
+	MBeanMetadata metadata = ref == null ? null : ref.get();
+
+	if (metadata == null) {
+	    if (ref != null) {
+		// the metadata was collected, remove the entry
+		entries.remove(key, ref);
+	    }
+	    misses.incrementAndGet();
+	} else {
+	    hits.incrementAndGet();
+	}
+
+	return metadata;
+    }
+
+    /**
+     * Adds the metadata of the class unless another thread added it first.
+     * @param type the class of the exposed object.
+     * @param metadata the metadata built for the class.
+     * @return the metadata that is in the cache after the call, which should be used
+     * instead of the argument.
+     */
+    public MBeanMetadata putIfAbsent(Class<?> type, MBeanMetadata metadata) {
+	expungeStaleEntries();
+
+	ClassKey key = new ClassKey(type, staleKeys);
+	SoftReference<MBeanMetadata> ref = new SoftReference<MBeanMetadata>(metadata);
+
+	while (true) {
+	    SoftReference<MBeanMetadata> existing = entries.putIfAbsent(key, ref);
+	    if (existing == null) {
+		return metadata;
+	    }
+
+	    MBeanMetadata existingMetadata = existing.get();
+	    if (existingMetadata != null) {
+		return existingMetadata;
+	    }
+
+	    if (entries.replace(key, existing, ref)) {
+		return metadata;
+	    }
+	}
+    }
+
+    /**
+     * Removes the metadata of a class and of its subclasses, e.g. the proxies of 
+     * the container that are exposed with the metadata of the bean class.
+     * @param type the class of the exposed objects.
+     */
+    public void remove(Class<?> type) {
+	expungeStaleEntries();
+
+	for (ClassKey key : entries.keySet()) {
+	    Class<?> cached = key.get();
+	    if (cached != null && type.isAssignableFrom(cached)) {
+		entries.remove(key);
+	    }
+	}
+    }
+
+    /**
+     * Removes all the entries. The hit and miss counters are not reset.
+     */
+    public void clear() {
+	entries.clear();
+    }
+
+    /**
+     * @return the number of cached classes, including entries whose metadata 
+     * has been collected but not removed yet.
+     */
+    public int size() {
+	return entries.size();
+    }
+
+    /**
+     * @return the number of lookups that found the metadata in the cache.
+     */
+    public long getHitCount() {
+	return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that didn't find the metadata in the cache.
+     */
+    public long getMissCount() {
+	return misses.get();
+    }
+
+    private void expungeStaleEntries() {
+	Reference<? extends Class<?>> ref;
+	while ((ref = staleKeys.poll()) != null) {
+	    entries.remove(ref);
+	}
+    }
+
+    /**
+     * Weak reference to a class that compares by the identity of the class. The 
+     * hash code is computed eagerly so stale keys can still be removed. Also used 
+     * by {@link MethodTimer}.
+     */
+    static class ClassKey extends WeakReference<Class<?>> {
+
+	private final int hash;
+
+	ClassKey(Class<?> type, ReferenceQueue<Class<?>> queue) {
+	    super(type, queue);
+	    this.hash = System.identityHashCode(type);
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (this == obj) {
+		return true;
+	    }
+	    if (!(obj instanceof ClassKey)) {
+		return false;
+	    }
+
+	    Class<?> type = get();
+	    return type != null && type == ((ClassKey) obj).get();
+	}
+
+    }
+
+}
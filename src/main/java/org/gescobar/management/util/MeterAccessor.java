@@ -0,0 +1,118 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.Field;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.ReflectionException;
+
+import org.gescobar.management.ManagementException;
+import org.gescobar.management.Meter;
+
+/**
+ * @author German Escobar
+ *
+ * A read-only {@link AttributeAccessor} for one of the values of a {@link Meter} 
+ * field annotated with {@link org.gescobar.management.ManagedMeter}. Each field is 
+ * exposed by one accessor per {@link Value}.
+ */
+public class MeterAccessor implements AttributeAccessor {
+
+    /**
+     * The values of a meter that are exposed as attributes.
+     */
+    public enum Value {
+	COUNT("Count", Long.TYPE, "Number of events"),
+	MEAN_RATE("MeanRate", Double.TYPE, "Mean rate in events per second"),
+	ONE_MINUTE_RATE("OneMinuteRate", Double.TYPE, "One minute moving average in events per second"),
+	FIVE_MINUTE_RATE("FiveMinuteRate", Double.TYPE, "Five minute moving average in events per second"),
+	FIFTEEN_MINUTE_RATE("FifteenMinuteRate", Double.TYPE, "Fifteen minute moving average in events per second");
+
+	private final String suffix;
+
+	private final Class<?> type;
+
+	private final String description;
+
+	private Value(String suffix, Class<?> type, String description) {
+	    this.suffix = suffix;
+	    this.type = type;
+	    this.description = description;
+	}
+
+	public Class<?> getType() {
+	    return type;
+	}
+
+	public String getDescription() {
+	    return description;
+	}
+
+    }
+
+    private final Field field;
+
+    private final Value value;
+
+    private final String name;
+
+    public MeterAccessor(Field field, Value value) {
+	if (!Meter.class.isAssignableFrom(field.getType())) {
+	    throw new ManagementException(new IllegalArgumentException("Field " + field.getName() 
+		    + " of type " + field.getType().getName() + " is not a " + Meter.class.getName()));
+	}
+
+	this.field = field;
+	this.value = value;
+	this.name = field.getName() + value.suffix;
+
+	Accessors.makeAccessible(field);
+    }
+
+    @Override
+    public String getName() {
+	return name;
+    }
+
+    @Override
+    public Class<?> getType() {
+	return value.getType();
+    }
+
+    public Value getValue() {
+	return value;
+    }
+
+    @Override
+    public Object get(Object target) throws ReflectionException {
+	Meter meter;
+	try {
+	    meter = (Meter) field.get(target);
+	} catch (IllegalAccessException e) {
+	    throw new ReflectionException(e);
+	}
+
+	if (meter == null) {
+	    return value == Value.COUNT ? (Object) 0L : (Object) 0.0;
+	}
+
+	switch (value) {
+	    case COUNT:
+		return meter.getCount();
+	    case MEAN_RATE:
+		return meter.getMeanRate();
+	    case ONE_MINUTE_RATE:
+		return meter.getOneMinuteRate();
+	    case FIVE_MINUTE_RATE:
+		return meter.getFiveMinuteRate();
+	    default:
+		return meter.getFifteenMinuteRate();
+	}
+    }
+
+    @Override
+    public void set(Object target, Object value) throws InvalidAttributeValueException, 
+	    ReflectionException {
+	throw new InvalidAttributeValueException("Attribute " + name + " is read-only");
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.Method;
+
+import javax.management.ReflectionException;
+
+/**
+ * @author German Escobar
+ *
+ * An {@link OperationInvoker} backed by a method. As in {@link FieldAccessor}, the 
+ * accessibility check is suppressed once, when the invoker is created.
+ */
+public class MethodInvoker implements OperationInvoker {
+
+    private final Method method;
+
+    private final Class<?>[] parameterTypes;
+
+    public MethodInvoker(Method method) {
+	this.method = method;
+	this.parameterTypes = method.getParameterTypes();
+
+	Accessors.makeAccessible(method);
+    }
+
+    @Override
+    public String getName() {
+	return method.getName();
+    }
+
+    @Override
+    public Class<?>[] getParameterTypes() {
+	return parameterTypes;
+    }
+
+    public Method getMethod() {
+	return method;
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] params) throws ReflectionException {
+	try {
+	    return method.invoke(target, params);
+	} catch (Exception e) {
+	    throw new ReflectionException(e);
+	}
+    }
+
+}
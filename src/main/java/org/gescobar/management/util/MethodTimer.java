@@ -0,0 +1,102 @@
+package org.gescobar.management.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.gescobar.management.Counter;
+import org.gescobar.management.Histogram;
+import org.gescobar.management.util.MetadataCache.ClassKey;
+
+/**
+ * @author German Escobar
+ *
+ * The calls, errors and latencies of a timed method, recorded by the 
+ * {@link org.gescobar.management.cdi.TimedInterceptor}. There is a single 
+ * MethodTimer for all the overloads of a method in a class, shared by all the
+ * instances of the class. The latencies and errors are cumulative, the readers
+ * compute their intervals with an {@link IntervalReader}.
+ * 
+ * The timers are indexed by the declaring class, held through a weak reference as
+ * the {@link MetadataCache} does, so they don't keep the class loader of an 
+ * undeployed application reachable. A timer doesn't reference its class.
+ */
+public class MethodTimer {
+
+    /**
+     * The timers by declaring class and method name, so the overloads share a timer.
+     */
+    private static final ConcurrentMap<ClassKey,ConcurrentMap<String,MethodTimer>> TIMERS = 
+	new ConcurrentHashMap<ClassKey,ConcurrentMap<String,MethodTimer>>();
+
+    private static final ReferenceQueue<Class<?>> STALE_KEYS = new ReferenceQueue<Class<?>>();
+
+    private final Histogram latency = new Histogram();
+
+    private final Counter errors = new Counter();
+
+    /**
+     * @param method a timed method.
+     * @return the timer of the method, created the first time it's requested.
+     */
+    public static MethodTimer forMethod(Method method) {
+	expungeStaleEntries();
+
+	Class<?> type = method.getDeclaringClass();
+	ConcurrentMap<String,MethodTimer> timers = TIMERS.get(new ClassKey(type, null));
+	if (timers == null) {
+	    ConcurrentMap<String,MethodTimer> newTimers = new ConcurrentHashMap<String,MethodTimer>();
+	    timers = TIMERS.putIfAbsent(new ClassKey(type, STALE_KEYS), newTimers);
+	    if (timers == null) {
+		timers = newTimers;
+	    }
+	}
+
+	MethodTimer timer = timers.get(method.getName());
+	if (timer == null) {
+	    MethodTimer newTimer = new MethodTimer();
+	    timer = timers.putIfAbsent(method.getName(), newTimer);
+	    if (timer == null) {
+		timer = newTimer;
+	    }
+	}
+
+	return timer;
+    }
+
+    /**
+     * Records a call.
+     * @param nanos the duration of the call in nanoseconds.
+     * @param failed true if the call threw an exception.
+     */
+    public void record(long nanos, boolean failed) {
+	latency.record(nanos);
+	if (failed) {
+	    errors.increment();
+	}
+    }
+
+    /**
+     * @return the latencies of all the calls.
+     */
+    public Histogram getLatency() {
+	return latency;
+    }
+
+    /**
+     * @return the number of calls that threw an exception.
+     */
+    public Counter getErrors() {
+	return errors;
+    }
+
+    private static void expungeStaleEntries() {
+	Reference<? extends Class<?>> ref;
+	while ((ref = STALE_KEYS.poll()) != null) {
+	    TIMERS.remove(ref);
+	}
+    }
+
+}
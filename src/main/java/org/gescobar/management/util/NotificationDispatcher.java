@@ -0,0 +1,266 @@
+package org.gescobar.management.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * Delivers notifications to the listeners on a small pool of daemon threads, so the
+ * threads that send them never wait for a listener.
+ * 
+ * Every listener has its own bounded queue. When a notification is queued to an idle
+ * listener, a task that drains its queue is submitted to the pool; at most one task 
+ * per listener is pending or running, so the notifications reach each listener in
+ * order and a slow listener holds at most one thread. A task delivers a batch and 
+ * resubmits itself if there are more, so busy listeners share the threads. When the
+ * queue of a listener is full the notification is dropped and counted.
+ * 
+ * The dispatcher also runs the flushes of the coalesced notifications.
+ */
+public class NotificationDispatcher {
+
+    private static Logger log = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final int BATCH_SIZE = 64;
+
+    private static NotificationDispatcher defaultDispatcher;
+
+    private final ExecutorService executor;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final int queueCapacity;
+
+    private final AtomicLong delivered = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    public NotificationDispatcher(int threads, int queueCapacity) {
+	this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("NotificationDispatcher"));
+	this.scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("NotificationCoalescer"));
+	this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @return the dispatcher shared by all the MBeans, with two threads or one per 
+     * processor if there are more.
+     */
+    public static synchronized NotificationDispatcher getDefault() {
+	if (defaultDispatcher == null) {
+	    int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+	    defaultDispatcher = new NotificationDispatcher(threads, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	return defaultDispatcher;
+    }
+
+    /**
+     * Stops the threads of the default dispatcher, if it was created.
+     */
+    public static synchronized void shutdownDefault() {
+	if (defaultDispatcher != null) {
+	    defaultDispatcher.shutdown();
+	    defaultDispatcher = null;
+	}
+    }
+
+    /**
+     * Creates the queue of a listener. 
+     * @param listener the listener.
+     * @param filter the filter of the listener, can be null. It's evaluated on the 
+     * threads of the dispatcher.
+     * @param handback the handback of the listener, can be null.
+     * @return the queue used to send notifications to the listener.
+     */
+    public ListenerQueue createQueue(NotificationListener listener, NotificationFilter filter, Object handback) {
+	return new ListenerQueue(listener, filter, handback);
+    }
+
+    /**
+     * Runs a task after a delay on the thread of the dispatcher that flushes the 
+     * coalesced notifications. The task is dropped if the dispatcher was shut down.
+     */
+    void schedule(Runnable task, long delayMillis) {
+	try {
+	    scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+	} catch (RejectedExecutionException e) {
+	    log.debug("the dispatcher was shut down, dropping a coalesced notification");
+	}
+    }
+
+    /**
+     * Stops the threads of the dispatcher. The notifications that are still queued 
+     * are not delivered.
+     */
+    public void shutdown() {
+	executor.shutdownNow();
+	scheduler.shutdownNow();
+    }
+
+    public long getDeliveredCount() {
+	return delivered.get();
+    }
+
+    /**
+     * @return the number of notifications that were discarded because the queue of 
+     * the listener was full.
+     */
+    public long getDroppedCount() {
+	return dropped.get();
+    }
+
+    /**
+     * @return the number of notifications whose listener or filter threw an exception.
+     */
+    public long getFailureCount() {
+	return failures.get();
+    }
+
+    /**
+     * The notifications that are waiting to be delivered to a listener.
+     */
+    public class ListenerQueue implements Runnable {
+
+	private final NotificationListener listener;
+
+	private final NotificationFilter filter;
+
+	private final Object handback;
+
+	private final BlockingQueue<Notification> queue;
+
+	/**
+	 * True while a task that drains the queue is pending or running.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	ListenerQueue(NotificationListener listener, NotificationFilter filter, Object handback) {
+	    this.listener = listener;
+	    this.filter = filter;
+	    this.handback = handback;
+	    this.queue = new ArrayBlockingQueue<Notification>(queueCapacity);
+	}
+
+	/**
+	 * Queues a notification without blocking. 
+	 * @param notification the notification.
+	 * @return false if the queue was full and the notification was dropped.
+	 */
+	public boolean offer(Notification notification) {
+	    if (!queue.offer(notification)) {
+		droppedCount.incrementAndGet();
+		dropped.incrementAndGet();
+		return false;
+	    }
+
+	    if (scheduled.compareAndSet(false, true)) {
+		submit();
+	    }
+
+	    return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+	    for (int i = 0; i < BATCH_SIZE; i++) {
+		Notification notification = queue.poll();
+		if (notification == null) {
+		    break;
+		}
+		deliver(notification);
+	    }
+
+	    scheduled.set(false);
+
+	    // a notification may have been queued after the last poll
+	    if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+		submit();
+	    }
+	}
+
+	public boolean matches(NotificationListener listener, NotificationFilter filter, Object handback) {
+	    return this.listener == listener && this.filter == filter && this.handback == handback;
+	}
+
+	public NotificationListener getListener() {
+	    return listener;
+	}
+
+	public int getDepth() {
+	    return queue.size();
+	}
+
+	public long getDroppedCount() {
+	    return droppedCount.get();
+	}
+
+	private void submit() {
+	    try {
+		executor.execute(this);
+	    } catch (RuntimeException e) {
+		// the dispatcher was shut down
+		scheduled.set(false);
+		queue.clear();
+	    }
+	}
+
+	private void deliver(Notification notification) {
+	    try {
+		if (filter == null || filter.isNotificationEnabled(notification)) {
+		    listener.handleNotification(notification, handback);
+		    delivered.incrementAndGet();
+		}
+	    } catch (Exception e) {
+		failures.incrementAndGet();
+		log.warn("listener " + listener + " failed to handle the notification " + notification.getType(), e);
+	    }
+	}
+
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+	private final String name;
+
+	private final AtomicInteger count = new AtomicInteger();
+
+	DaemonThreadFactory(String name) {
+	    this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+
+    }
+
+}
@@ -0,0 +1,202 @@
+package org.gescobar.management.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+
+import org.gescobar.management.util.NotificationDispatcher.ListenerQueue;
+
+/**
+ * @author German Escobar
+ *
+ * Keeps the listeners of an MBean and sends them its notifications through a 
+ * {@link NotificationDispatcher}, which queues them for each listener. Sending a 
+ * notification never blocks and, if there are no listeners, does nothing.
+ * 
+ * The types that have a coalescing window deliver the first notification of a burst
+ * right away. The ones that are sent during the window replace each other and only 
+ * the last one is delivered when the window expires, which opens a new window.
+ */
+public class NotificationSupport {
+
+    private volatile Object source;
+
+    private final NotificationDispatcher dispatcher;
+
+    private final List<ListenerQueue> listeners = new CopyOnWriteArrayList<ListenerQueue>();
+
+    private final AtomicLong sequenceNumber = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * The coalescers indexed by notification type. Replaced, never modified.
+     */
+    private volatile Map<String,Coalescer> coalescers = Collections.emptyMap();
+
+    /**
+     * @param source the source of the notifications, usually the MBean.
+     * @param dispatcher the dispatcher that delivers the notifications.
+     */
+    public NotificationSupport(Object source, NotificationDispatcher dispatcher) {
+	this.source = source;
+	this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Sets the coalescing windows of the notification types. 
+     * @param coalesceMillis the window in milliseconds indexed by notification type.
+     */
+    public void setCoalesceWindows(Map<String,Long> coalesceMillis) {
+	Map<String,Coalescer> map = new HashMap<String,Coalescer>();
+	for (Map.Entry<String,Long> entry : coalesceMillis.entrySet()) {
+	    if (entry.getValue() > 0) {
+		map.put(entry.getKey(), new Coalescer(entry.getValue()));
+	    }
+	}
+
+	this.coalescers = map;
+    }
+
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+	if (listener == null) {
+	    throw new IllegalArgumentException("Listener cannot be null");
+	}
+
+	listeners.add(dispatcher.createQueue(listener, filter, handback));
+    }
+
+    /**
+     * Removes all the registrations of a listener.
+     */
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+	boolean found = false;
+	for (ListenerQueue queue : listeners) {
+	    if (queue.getListener() == listener) {
+		found |= listeners.remove(queue);
+	    }
+	}
+
+	if (!found) {
+	    throw new ListenerNotFoundException("Listener not registered");
+	}
+    }
+
+    /**
+     * Removes the registration of a listener with exactly the same filter and handback.
+     */
+    public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, 
+	    Object handback) throws ListenerNotFoundException {
+	for (ListenerQueue queue : listeners) {
+	    if (queue.matches(listener, filter, handback) && listeners.remove(queue)) {
+		return;
+	    }
+	}
+
+	throw new ListenerNotFoundException("Listener not registered with this filter and handback");
+    }
+
+    /**
+     * Sends a notification to the listeners, or to the coalescer of its type.
+     * @param notification the notification.
+     */
+    public void sendNotification(Notification notification) {
+	if (listeners.isEmpty()) {
+	    return;
+	}
+
+	Coalescer coalescer = coalescers.get(notification.getType());
+	if (coalescer != null) {
+	    coalescer.send(notification);
+	} else {
+	    deliver(notification);
+	}
+    }
+
+    public boolean hasListeners() {
+	return !listeners.isEmpty();
+    }
+
+    public Object getSource() {
+	return source;
+    }
+
+    public void setSource(Object source) {
+	this.source = source;
+    }
+
+    public long nextSequenceNumber() {
+	return sequenceNumber.incrementAndGet();
+    }
+
+    /**
+     * @return the number of notifications that were replaced by a later one of the 
+     * same type and never delivered.
+     */
+    public long getCoalescedCount() {
+	return coalesced.get();
+    }
+
+    private void deliver(Notification notification) {
+	for (ListenerQueue queue : listeners) {
+	    queue.offer(notification);
+	}
+    }
+
+    /**
+     * Coalesces the notifications of a type.
+     */
+    private class Coalescer implements Runnable {
+
+	private final long windowMillis;
+
+	/**
+	 * The following fields are guarded by this.
+	 */
+	private long windowEnd;
+
+	private Notification pending;
+
+	Coalescer(long windowMillis) {
+	    this.windowMillis = windowMillis;
+	}
+
+	synchronized void send(Notification notification) {
+	    long now = System.currentTimeMillis();
+	    if (pending == null && now >= windowEnd) {
+		windowEnd = now + windowMillis;
+		deliver(notification);
+		return;
+	    }
+
+	    if (pending == null) {
+		dispatcher.schedule(this, windowEnd - now);
+	    } else {
+		coalesced.incrementAndGet();
+	    }
+	    pending = notification;
+	}
+
+	/**
+	 * Delivers the last notification of the window.
+	 */
+	@Override
+	public synchronized void run() {
+	    if (pending != null) {
+		windowEnd = System.currentTimeMillis() + windowMillis;
+		deliver(pending);
+		pending = null;
+	    }
+	}
+
+    }
+
+}
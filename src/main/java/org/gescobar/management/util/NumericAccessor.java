@@ -0,0 +1,23 @@
+package org.gescobar.management.util;
+
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+
+/**
+ * @author German Escobar
+ *
+ * An {@link AttributeAccessor} of a numeric attribute that can also read the value
+ * as a primitive double, without boxing it. Used to sample the attributes that are 
+ * monitored.
+ */
+public interface NumericAccessor extends AttributeAccessor {
+
+    /**
+     * @param target the object that is exposed as an MBean.
+     * @return the value of the attribute converted to double.
+     * @throws MBeanException wraps an exception thrown while computing the value.
+     * @throws ReflectionException wraps any reflection problem.
+     */
+    double getDouble(Object target) throws MBeanException, ReflectionException;
+
+}
@@ -0,0 +1,215 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.gescobar.management.ManagementException;
+
+/**
+ * @author German Escobar
+ *
+ * An ObjectName with placeholders in the values of its key properties, used to 
+ * register an MBean per instance, e.g. <code>app:type=Worker,id={id}</code>. A 
+ * placeholder is the name of a field of the class, whose value is used, or 
+ * <code>#</code>, replaced with a sequence number of the template (starting at 1). 
+ * 
+ * The template is parsed once: it's validated and split into the literal segments 
+ * of its canonical name and the placeholders, so creating a name only appends the 
+ * values and the resulting string is already in canonical order. A value that fills
+ * a whole key property is quoted if it needs it; in a partial value the characters
+ * that are not allowed are replaced with '_'.
+ */
+public class ObjectNameTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([^{}]*)\\}");
+
+    private static final Pattern MARKER = Pattern.compile("__ph(\\d+)__");
+
+    private static final String SEQUENCE = "#";
+
+    private final String template;
+
+    /**
+     * The name if the template has no placeholders, null otherwise.
+     */
+    private final ObjectName constant;
+
+    /**
+     * The literal segments of the canonical name, one more than the placeholders.
+     */
+    private final String[] literals;
+
+    /**
+     * The field of each placeholder, null for the sequence number.
+     */
+    private final Field[] fields;
+
+    /**
+     * True if the placeholder is the whole value of a key property.
+     */
+    private final boolean[] wholeValues;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ObjectNameTemplate(String template, ObjectName constant, String[] literals, Field[] fields, 
+	    boolean[] wholeValues) {
+	this.template = template;
+	this.constant = constant;
+	this.literals = literals;
+	this.fields = fields;
+	this.wholeValues = wholeValues;
+    }
+
+    /**
+     * Parses a template.
+     * @param template the template, a valid ObjectName if the placeholders are replaced.
+     * @param type the class of the instances, the fields of the placeholders are 
+     * searched in it and its superclasses.
+     * @return the parsed template.
+     * @throws MalformedObjectNameException if the template is not a valid ObjectName,
+     * has placeholders outside the values or is a pattern.
+     * @throws ManagementException if a field doesn't exist.
+     */
+    public static ObjectNameTemplate parse(String template, Class<?> type) throws MalformedObjectNameException {
+	List<Field> fields = new ArrayList<Field>();
+
+	// replace the placeholders with markers that are valid values
+	StringBuffer marked = new StringBuffer();
+	Matcher matcher = PLACEHOLDER.matcher(template);
+	while (matcher.find()) {
+	    String placeholder = matcher.group(1).trim();
+	    fields.add(SEQUENCE.equals(placeholder) ? null : findField(type, placeholder));
+	    matcher.appendReplacement(marked, "__ph" + (fields.size() - 1) + "__");
+	}
+	matcher.appendTail(marked);
+
+	ObjectName name = new ObjectName(marked.toString());
+	if (name.isPattern()) {
+	    throw new MalformedObjectNameException("Template " + template + " is a pattern");
+	}
+	if (fields.isEmpty()) {
+	    return new ObjectNameTemplate(template, name, null, null, null);
+	}
+
+	String canonical = name.getCanonicalName();
+	int valuesStart = canonical.indexOf(':');
+
+	String[] literals = new String[fields.size() + 1];
+	Field[] orderedFields = new Field[fields.size()];
+	boolean[] wholeValues = new boolean[fields.size()];
+
+	// split the canonical name, the placeholders may have been reordered
+	Matcher markers = MARKER.matcher(canonical);
+	int last = 0;
+	int count = 0;
+	while (markers.find()) {
+	    int start = markers.start();
+	    int end = markers.end();
+	    int keyStart = Math.max(valuesStart, canonical.lastIndexOf(',', start));
+	    int equals = canonical.indexOf('=', keyStart);
+	    if (start < valuesStart || equals == -1 || equals > start) {
+		throw new MalformedObjectNameException("Template " + template 
+			+ " has placeholders outside the values of the key properties");
+	    }
+
+	    literals[count] = canonical.substring(last, start);
+	    orderedFields[count] = fields.get(Integer.parseInt(markers.group(1)));
+	    wholeValues[count] = canonical.charAt(start - 1) == '=' 
+		&& (end == canonical.length() || canonical.charAt(end) == ',');
+	    last = end;
+	    count++;
+	}
+	literals[count] = canonical.substring(last);
+
+	return new ObjectNameTemplate(template, null, literals, orderedFields, wholeValues);
+    }
+
+    /**
+     * @return true if the template has no placeholders, so all the instances have 
+     * the same name.
+     */
+    public boolean isConstant() {
+	return constant != null;
+    }
+
+    public String getTemplate() {
+	return template;
+    }
+
+    /**
+     * Creates the name of an instance. Takes the next sequence number if the template
+     * uses it.
+     * @param instance the object that is exposed, can be null if the template is 
+     * constant.
+     * @return the name of the instance.
+     * @throws MalformedObjectNameException if the values make the name invalid.
+     */
+    public ObjectName create(Object instance) throws MalformedObjectNameException {
+	if (constant != null) {
+	    return constant;
+	}
+
+	StringBuilder sb = new StringBuilder(template.length() + 16 * fields.length);
+	sb.append(literals[0]);
+	for (int i = 0; i < fields.length; i++) {
+	    String value = fields[i] == null ? String.valueOf(sequence.incrementAndGet()) : readField(fields[i], instance);
+	    appendValue(sb, value, wholeValues[i]);
+	    sb.append(literals[i + 1]);
+	}
+
+	return ObjectName.getInstance(sb.toString());
+    }
+
+    private static void appendValue(StringBuilder sb, String value, boolean wholeValue) {
+	boolean valid = value.length() > 0;
+	for (int i = 0; i < value.length() && valid; i++) {
+	    valid = !isSpecial(value.charAt(i));
+	}
+
+	if (valid) {
+	    sb.append(value);
+	} else if (wholeValue) {
+	    sb.append(ObjectName.quote(value));
+	} else {
+	    for (int i = 0; i < value.length(); i++) {
+		char c = value.charAt(i);
+		sb.append(isSpecial(c) ? '_' : c);
+	    }
+	}
+    }
+
+    private static boolean isSpecial(char c) {
+	return c == ',' || c == '=' || c == ':' || c == '"' || c == '*' || c == '?' || c == '\n';
+    }
+
+    private static String readField(Field field, Object instance) {
+	try {
+	    return String.valueOf(field.get(instance));
+	} catch (IllegalAccessException e) {
+	    throw new ManagementException(e);
+	}
+    }
+
+    private static Field findField(Class<?> type, String name) {
+	for (Class<?> c = type; c != null && !c.equals(Object.class); c = c.getSuperclass()) {
+	    try {
+		Field field = c.getDeclaredField(name);
+		Accessors.makeAccessible(field);
+		return field;
+	    } catch (NoSuchFieldException e) {
+		// try the superclass
+	    }
+	}
+
+	throw new ManagementException(new IllegalArgumentException("The ObjectName placeholder {" + name 
+		+ "} is not a field of " + type.getName()));
+    }
+
+}
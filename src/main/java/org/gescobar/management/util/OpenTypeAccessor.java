@@ -0,0 +1,59 @@
+package org.gescobar.management.util;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+import javax.management.openmbean.OpenDataException;
+
+/**
+ * @author German Escobar
+ *
+ * An {@link AttributeAccessor} that converts the values read by another accessor to
+ * open types, and the values written back, with the {@link OpenTypeConverter} of the
+ * type of the attribute. Used by the MBeans of the classes annotated with
+ * {@link org.gescobar.management.MBean#openTypes()}.
+ */
+public class OpenTypeAccessor implements AttributeAccessor {
+
+    private final AttributeAccessor delegate;
+
+    private final OpenTypeConverter converter;
+
+    public OpenTypeAccessor(AttributeAccessor delegate, OpenTypeConverter converter) {
+	this.delegate = delegate;
+	this.converter = converter;
+    }
+
+    @Override
+    public String getName() {
+	return delegate.getName();
+    }
+
+    /**
+     * @return the class of the open values, e.g. CompositeData.
+     */
+    @Override
+    public Class<?> getType() {
+	return converter.getOpenClass();
+    }
+
+    public OpenTypeConverter getConverter() {
+	return converter;
+    }
+
+    @Override
+    public Object get(Object target) throws MBeanException, ReflectionException {
+	try {
+	    return converter.toOpenValue(delegate.get(target));
+	} catch (OpenDataException e) {
+	    throw new MBeanException(e, "Cannot convert " + getName() + " to an open type");
+	}
+    }
+
+    @Override
+    public void set(Object target, Object value) throws InvalidAttributeValueException, MBeanException,
+	    ReflectionException {
+	delegate.set(target, converter.fromOpenValue(value));
+    }
+
+}
@@ -0,0 +1,735 @@
+package org.gescobar.management.util;
+
+import java.beans.Introspector;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.gescobar.management.ManagementException;
+
+/**
+ * @author German Escobar
+ *
+ * Converts the values of a Java type to the open types of JMX, so the clients can
+ * read them without the classes of the application, as the MXBeans do (see
+ * {@link org.gescobar.management.MBean#openTypes()}):
+ *
+ * <ul>
+ *   <li>the primitives, their wrappers, String, BigDecimal, BigInteger, Date and
+ *   ObjectName are kept as they are.</li>
+ *   <li>enums are converted to the name of the constant.</li>
+ *   <li>arrays and collections (List, Set, SortedSet and Collection) are converted
+ *   to arrays of the open type of their elements.</li>
+ *   <li>maps are converted to a TabularData with a key and a value per row,
+ *   indexed by the key.</li>
+ *   <li>any other class is converted to a CompositeData with an item for each of
+ *   its getters. These values can't be converted back.</li>
+ * </ul>
+ *
+ * The converter of a type is built once, with the open type, the getters and the
+ * converters of the elements resolved, and shared through {@link #forType(Type)},
+ * so converting a value doesn't reflect over its class. The converters reference
+ * the getters of the classes of the application, so they have to be removed with
+ * {@link #remove(ClassLoader)} when it's undeployed, as the CDI extension does on
+ * shutdown.
+ */
+public abstract class OpenTypeConverter {
+
+    /**
+     * The converters built so far, indexed by type.
+     */
+    private static final ConcurrentMap<Type,OpenTypeConverter> CONVERTERS =
+	new ConcurrentHashMap<Type,OpenTypeConverter>();
+
+    private static final Map<Class<?>,SimpleType<?>> SIMPLE_TYPES = new HashMap<Class<?>,SimpleType<?>>();
+
+    static {
+	SimpleType<?>[] simpleTypes = { SimpleType.BIGDECIMAL, SimpleType.BIGINTEGER, SimpleType.BOOLEAN,
+		SimpleType.BYTE, SimpleType.CHARACTER, SimpleType.DATE, SimpleType.DOUBLE, SimpleType.FLOAT,
+		SimpleType.INTEGER, SimpleType.LONG, SimpleType.OBJECTNAME, SimpleType.SHORT, SimpleType.STRING,
+		SimpleType.VOID };
+	for (SimpleType<?> simpleType : simpleTypes) {
+	    try {
+		SIMPLE_TYPES.put(Class.forName(simpleType.getClassName()), simpleType);
+	    } catch (ClassNotFoundException e) {
+		throw new ManagementException(e);
+	    }
+	}
+    }
+
+    private final Type type;
+
+    private final OpenType<?> openType;
+
+    private final Class<?> openClass;
+
+    protected OpenTypeConverter(Type type, OpenType<?> openType) {
+	this.type = type;
+	this.openType = openType;
+	this.openClass = classOf(openType);
+    }
+
+    /**
+     * @param type the type of an attribute, with its type arguments if it's generic.
+     * @return the converter of the type, built the first time.
+     * @throws ManagementException wraps an IllegalArgumentException if the type
+     * can't be mapped: type variables, wildcards, maps and collections without
+     * type arguments, classes without getters and classes that contain themselves.
+     */
+    public static OpenTypeConverter forType(Type type) throws ManagementException {
+	return forType(type, new HashSet<Type>());
+    }
+
+    private static OpenTypeConverter forType(Type type, Set<Type> visiting) {
+	OpenTypeConverter converter = CONVERTERS.get(type);
+	if (converter != null) {
+	    return converter;
+	}
+
+	if (!visiting.add(type)) {
+	    throw unsupported(type, "it references itself");
+	}
+	try {
+	    converter = create(type, visiting);
+	} catch (OpenDataException e) {
+	    throw new ManagementException(e, "Cannot map " + type + " to an open type");
+	} finally {
+	    visiting.remove(type);
+	}
+
+	OpenTypeConverter previous = CONVERTERS.putIfAbsent(type, converter);
+	return previous != null ? previous : converter;
+    }
+
+    /**
+     * Removes the converters of the types that reference a class loaded by a class 
+     * loader or by its descendants.
+     * @param loader the class loader of an application that is undeployed.
+     */
+    public static void remove(ClassLoader loader) {
+	for (Type type : CONVERTERS.keySet()) {
+	    if (references(type, loader)) {
+		CONVERTERS.remove(type);
+	    }
+	}
+    }
+
+    private static boolean references(Type type, ClassLoader loader) {
+	if (type instanceof Class<?>) {
+	    Class<?> c = (Class<?>) type;
+	    while (c.isArray()) {
+		c = c.getComponentType();
+	    }
+	    for (ClassLoader l = c.getClassLoader(); l != null; l = l.getParent()) {
+		if (l == loader) {
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	if (type instanceof GenericArrayType) {
+	    return references(((GenericArrayType) type).getGenericComponentType(), loader);
+	}
+
+	if (type instanceof ParameterizedType) {
+	    ParameterizedType parameterized = (ParameterizedType) type;
+	    if (references(parameterized.getRawType(), loader)) {
+		return true;
+	    }
+	    for (Type argument : parameterized.getActualTypeArguments()) {
+		if (references(argument, loader)) {
+		    return true;
+		}
+	    }
+	}
+
+	return false;
+    }
+
+    private static OpenTypeConverter create(Type type, Set<Type> visiting) throws OpenDataException {
+	if (type instanceof Class<?>) {
+	    Class<?> c = (Class<?>) type;
+	    SimpleType<?> simpleType = SIMPLE_TYPES.get(Accessors.wrap(c));
+	    if (simpleType != null) {
+		return new IdentityConverter(c, simpleType);
+	    }
+	    if (c.isEnum()) {
+		return new EnumConverter(c);
+	    }
+	    if (c.isArray()) {
+		if (c.getComponentType().isPrimitive()) {
+		    return new IdentityConverter(c, ArrayType.getPrimitiveArrayType(c));
+		}
+		return new ArrayConverter(c, forType(c.getComponentType(), visiting));
+	    }
+	    if (Collection.class.isAssignableFrom(c) || Map.class.isAssignableFrom(c)) {
+		throw unsupported(type, "it has no type arguments");
+	    }
+	    if (CompositeData.class.isAssignableFrom(c) || TabularData.class.isAssignableFrom(c)) {
+		throw unsupported(type, "its open type is unknown");
+	    }
+
+	    return new BeanConverter(c, visiting);
+	}
+
+	if (type instanceof GenericArrayType) {
+	    return new ArrayConverter(type, forType(((GenericArrayType) type).getGenericComponentType(), visiting));
+	}
+
+	if (type instanceof ParameterizedType) {
+	    ParameterizedType parameterized = (ParameterizedType) type;
+	    Class<?> raw = (Class<?>) parameterized.getRawType();
+	    Type[] arguments = parameterized.getActualTypeArguments();
+	    if (Map.class.isAssignableFrom(raw) && (raw.isInterface() || raw.equals(HashMap.class)
+		    || raw.equals(LinkedHashMap.class) || raw.equals(TreeMap.class))) {
+		return new MapConverter(parameterized, forType(arguments[0], visiting), forType(arguments[1], visiting));
+	    }
+	    if (Collection.class.isAssignableFrom(raw) && (raw.isInterface() || raw.equals(ArrayList.class)
+		    || raw.equals(HashSet.class) || raw.equals(LinkedHashSet.class) || raw.equals(TreeSet.class))) {
+		return new CollectionConverter(parameterized, raw, forType(arguments[0], visiting));
+	    }
+	}
+
+	throw unsupported(type, "it's not a class, an array, a collection or a map");
+    }
+
+    /**
+     * @return the type converted.
+     */
+    public Type getType() {
+	return type;
+    }
+
+    /**
+     * @return the open type of the converted values.
+     */
+    public OpenType<?> getOpenType() {
+	return openType;
+    }
+
+    /**
+     * @return the class of the converted values, e.g. CompositeData or String[].
+     */
+    public Class<?> getOpenClass() {
+	return openClass;
+    }
+
+    /**
+     * @return true if the values are not converted because they are open already.
+     */
+    public boolean isIdentity() {
+	return false;
+    }
+
+    /**
+     * @return true if the converted values can be converted back, i.e. the
+     * attributes of this type can be writable.
+     */
+    public boolean isReconstructible() {
+	return true;
+    }
+
+    /**
+     * @param value a value of the type, can be null.
+     * @return the open value, null if the value is null.
+     * @throws OpenDataException if the value doesn't match the open type, e.g.
+     * a map with a null key.
+     */
+    public abstract Object toOpenValue(Object value) throws OpenDataException;
+
+    /**
+     * @param openValue an open value, can be null.
+     * @return the value of the type, null if the open value is null.
+     * @throws InvalidAttributeValueException if the open value doesn't match the
+     * open type or can't be converted back.
+     */
+    public abstract Object fromOpenValue(Object openValue) throws InvalidAttributeValueException;
+
+    /**
+     * @param openValue an open value.
+     * @throws InvalidAttributeValueException if the value is not of the open type.
+     */
+    protected void checkOpenValue(Object openValue) throws InvalidAttributeValueException {
+	if (!openType.isValue(openValue)) {
+	    throw new InvalidAttributeValueException("The value " + openValue + " is not of the open type "
+		    + openType.getTypeName() + " of " + typeName(type));
+	}
+    }
+
+    private static Class<?> classOf(OpenType<?> openType) {
+	try {
+	    return Class.forName(openType.getClassName());
+	} catch (ClassNotFoundException e) {
+	    // all the open types are JDK classes
+	    throw new ManagementException(e);
+	}
+    }
+
+    private static String typeName(Type type) {
+	return type instanceof Class<?> ? ((Class<?>) type).getName() : type.toString();
+    }
+
+    private static ManagementException unsupported(Type type, String reason) {
+	return new ManagementException(new IllegalArgumentException("Cannot map " + typeName(type)
+		+ " to an open type: " + reason));
+    }
+
+    /**
+     * The types whose values are open already.
+     */
+    private static class IdentityConverter extends OpenTypeConverter {
+
+	IdentityConverter(Type type, OpenType<?> openType) {
+	    super(type, openType);
+	}
+
+	@Override
+	public boolean isIdentity() {
+	    return true;
+	}
+
+	@Override
+	public Object toOpenValue(Object value) {
+	    return value;
+	}
+
+	@Override
+	public Object fromOpenValue(Object openValue) {
+	    return openValue;
+	}
+
+    }
+
+    /**
+     * Enums, converted to the name of the constant.
+     */
+    private static class EnumConverter extends OpenTypeConverter {
+
+	private final Class<?> enumClass;
+
+	EnumConverter(Class<?> enumClass) {
+	    super(enumClass, SimpleType.STRING);
+	    this.enumClass = enumClass;
+	}
+
+	@Override
+	public Object toOpenValue(Object value) {
+	    return value == null ? null : ((Enum<?>) value).name();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public Object fromOpenValue(Object openValue) throws InvalidAttributeValueException {
+	    if (openValue == null) {
+		return null;
+	    }
+	    checkOpenValue(openValue);
+
+	    try {
+		return Enum.valueOf((Class) enumClass, (String) openValue);
+	    } catch (IllegalArgumentException e) {
+		throw new InvalidAttributeValueException(openValue + " is not a constant of " + enumClass.getName());
+	    }
+	}
+
+    }
+
+    /**
+     * Arrays of any other type, converted to arrays of the open type of the
+     * elements.
+     */
+    private static class ArrayConverter extends OpenTypeConverter {
+
+	private final OpenTypeConverter elementConverter;
+
+	private final Class<?> componentClass;
+
+	ArrayConverter(Type type, OpenTypeConverter elementConverter) throws OpenDataException {
+	    super(type, arrayTypeOf(elementConverter));
+	    this.elementConverter = elementConverter;
+	    this.componentClass = rawClassOf(elementConverter.getType());
+	}
+
+	@Override
+	public boolean isIdentity() {
+	    return elementConverter.isIdentity();
+	}
+
+	@Override
+	public boolean isReconstructible() {
+	    return elementConverter.isReconstructible();
+	}
+
+	@Override
+	public Object toOpenValue(Object value) throws OpenDataException {
+	    if (value == null || isIdentity()) {
+		return value;
+	    }
+
+	    int length = Array.getLength(value);
+	    Object openValue = Array.newInstance(getOpenClass().getComponentType(), length);
+	    for (int i = 0; i < length; i++) {
+		Array.set(openValue, i, elementConverter.toOpenValue(Array.get(value, i)));
+	    }
+
+	    return openValue;
+	}
+
+	@Override
+	public Object fromOpenValue(Object openValue) throws InvalidAttributeValueException {
+	    if (openValue == null) {
+		return null;
+	    }
+	    checkOpenValue(openValue);
+	    if (isIdentity()) {
+		return openValue;
+	    }
+
+	    int length = Array.getLength(openValue);
+	    Object value = Array.newInstance(componentClass, length);
+	    for (int i = 0; i < length; i++) {
+		Array.set(value, i, elementConverter.fromOpenValue(Array.get(openValue, i)));
+	    }
+
+	    return value;
+	}
+
+    }
+
+    /**
+     * Collections, converted to arrays of the open type of the elements. They are
+     * converted back to an ArrayList, a LinkedHashSet or a TreeSet.
+     */
+    private static class CollectionConverter extends OpenTypeConverter {
+
+	private final Class<?> collectionClass;
+
+	private final OpenTypeConverter elementConverter;
+
+	CollectionConverter(ParameterizedType type, Class<?> collectionClass, OpenTypeConverter elementConverter)
+		throws OpenDataException {
+	    super(type, arrayTypeOf(elementConverter));
+	    this.collectionClass = collectionClass;
+	    this.elementConverter = elementConverter;
+	}
+
+	@Override
+	public boolean isReconstructible() {
+	    return elementConverter.isReconstructible();
+	}
+
+	@Override
+	public Object toOpenValue(Object value) throws OpenDataException {
+	    if (value == null) {
+		return null;
+	    }
+
+	    // a single pass over the collection, its size may change while it's read
+	    Object[] elements = ((Collection<?>) value).toArray();
+	    Object openValue = Array.newInstance(getOpenClass().getComponentType(), elements.length);
+	    for (int i = 0; i < elements.length; i++) {
+		Array.set(openValue, i, elementConverter.toOpenValue(elements[i]));
+	    }
+
+	    return openValue;
+	}
+
+	@Override
+	public Object fromOpenValue(Object openValue) throws InvalidAttributeValueException {
+	    if (openValue == null) {
+		return null;
+	    }
+	    checkOpenValue(openValue);
+
+	    Collection<Object> collection = newCollection();
+	    int length = Array.getLength(openValue);
+	    for (int i = 0; i < length; i++) {
+		collection.add(elementConverter.fromOpenValue(Array.get(openValue, i)));
+	    }
+
+	    return collection;
+	}
+
+	private Collection<Object> newCollection() {
+	    if (SortedSet.class.isAssignableFrom(collectionClass)) {
+		return new TreeSet<Object>();
+	    }
+	    if (Set.class.isAssignableFrom(collectionClass)) {
+		return new LinkedHashSet<Object>();
+	    }
+
+	    return new ArrayList<Object>();
+	}
+
+    }
+
+    /**
+     * Maps, converted to a TabularData with a "key" and a "value" item per row,
+     * indexed by the key. They are converted back to a LinkedHashMap or a TreeMap.
+     */
+    private static class MapConverter extends OpenTypeConverter {
+
+	private static final String KEY = "key";
+
+	private static final String VALUE = "value";
+
+	private static final String[] ITEMS = { KEY, VALUE };
+
+	private final boolean sorted;
+
+	private final OpenTypeConverter keyConverter;
+
+	private final OpenTypeConverter valueConverter;
+
+	private final CompositeType rowType;
+
+	MapConverter(ParameterizedType type, OpenTypeConverter keyConverter, OpenTypeConverter valueConverter)
+		throws OpenDataException {
+	    super(type, tabularTypeOf(type, keyConverter, valueConverter));
+	    this.sorted = SortedMap.class.isAssignableFrom((Class<?>) type.getRawType());
+	    this.keyConverter = keyConverter;
+	    this.valueConverter = valueConverter;
+	    this.rowType = ((TabularType) getOpenType()).getRowType();
+	}
+
+	private static TabularType tabularTypeOf(ParameterizedType type, OpenTypeConverter keyConverter,
+		OpenTypeConverter valueConverter) throws OpenDataException {
+	    String name = "java.util.Map<" + keyConverter.getOpenType().getTypeName() + ","
+		    + valueConverter.getOpenType().getTypeName() + ">";
+	    CompositeType rowType = new CompositeType(name, name, ITEMS, ITEMS,
+		    new OpenType<?>[] { keyConverter.getOpenType(), valueConverter.getOpenType() });
+
+	    return new TabularType(name, typeName(type), rowType, new String[] { KEY });
+	}
+
+	@Override
+	public boolean isReconstructible() {
+	    return keyConverter.isReconstructible() && valueConverter.isReconstructible();
+	}
+
+	@Override
+	public Object toOpenValue(Object value) throws OpenDataException {
+	    if (value == null) {
+		return null;
+	    }
+
+	    TabularData table = new TabularDataSupport((TabularType) getOpenType());
+	    for (Map.Entry<?,?> entry : ((Map<?,?>) value).entrySet()) {
+		if (entry.getKey() == null) {
+		    throw new OpenDataException("The map of type " + typeName(getType()) + " has a null key");
+		}
+		table.put(new CompositeDataSupport(rowType, ITEMS, new Object[] {
+			keyConverter.toOpenValue(entry.getKey()), valueConverter.toOpenValue(entry.getValue()) }));
+	    }
+
+	    return table;
+	}
+
+	@Override
+	public Object fromOpenValue(Object openValue) throws InvalidAttributeValueException {
+	    if (openValue == null) {
+		return null;
+	    }
+	    checkOpenValue(openValue);
+
+	    Map<Object,Object> map = sorted ? new TreeMap<Object,Object>() : new LinkedHashMap<Object,Object>();
+	    for (Object row : ((TabularData) openValue).values()) {
+		CompositeData data = (CompositeData) row;
+		map.put(keyConverter.fromOpenValue(data.get(KEY)), valueConverter.fromOpenValue(data.get(VALUE)));
+	    }
+
+	    return map;
+	}
+
+    }
+
+    /**
+     * Any other class, converted to a CompositeData with an item for each getter.
+     * The getters and the converters of the items are resolved once.
+     */
+    private static class BeanConverter extends OpenTypeConverter {
+
+	private final Method[] getters;
+
+	private final String[] items;
+
+	private final OpenTypeConverter[] itemConverters;
+
+	BeanConverter(Class<?> beanClass, Set<Type> visiting) throws OpenDataException {
+	    this(beanClass, gettersOf(beanClass), visiting);
+	}
+
+	private BeanConverter(Class<?> beanClass, Method[] getters, Set<Type> visiting) throws OpenDataException {
+	    this(beanClass, getters, convertersOf(getters, visiting));
+	}
+
+	private BeanConverter(Class<?> beanClass, Method[] getters, OpenTypeConverter[] itemConverters)
+		throws OpenDataException {
+	    super(beanClass, compositeTypeOf(beanClass, getters, itemConverters));
+	    this.getters = getters;
+	    this.items = itemNamesOf(getters);
+	    this.itemConverters = itemConverters;
+	}
+
+	@Override
+	public boolean isReconstructible() {
+	    return false;
+	}
+
+	@Override
+	public Object toOpenValue(Object value) throws OpenDataException {
+	    if (value == null) {
+		return null;
+	    }
+
+	    Object[] values = new Object[getters.length];
+	    for (int i = 0; i < getters.length; i++) {
+		try {
+		    values[i] = itemConverters[i].toOpenValue(getters[i].invoke(value));
+		} catch (OpenDataException e) {
+		    throw e;
+		} catch (Exception e) {
+		    OpenDataException ode = new OpenDataException("Cannot read " + items[i] + " of "
+			    + typeName(getType()) + ": " + e);
+		    ode.initCause(e);
+		    throw ode;
+		}
+	    }
+
+	    return new CompositeDataSupport((CompositeType) getOpenType(), items, values);
+	}
+
+	@Override
+	public Object fromOpenValue(Object openValue) throws InvalidAttributeValueException {
+	    throw new InvalidAttributeValueException("The values of " + typeName(getType())
+		    + " can't be converted back from open types");
+	}
+
+	private static Method[] gettersOf(Class<?> beanClass) {
+	    List<Method> getters = new ArrayList<Method>();
+	    for (Method method : beanClass.getMethods()) {
+		if (!Modifier.isStatic(method.getModifiers()) && !method.getDeclaringClass().equals(Object.class)
+			&& !method.isBridge() && isGetter(method)) {
+		    Accessors.makeAccessible(method);
+		    getters.add(method);
+		}
+	    }
+	    if (getters.isEmpty()) {
+		throw unsupported(beanClass, "it has no getters");
+	    }
+
+	    // the items of a CompositeType are sorted by name
+	    Method[] sorted = getters.toArray(new Method[getters.size()]);
+	    Arrays.sort(sorted, new Comparator<Method>() {
+		@Override
+		public int compare(Method m1, Method m2) {
+		    return itemNameOf(m1).compareTo(itemNameOf(m2));
+		}
+	    });
+
+	    return sorted;
+	}
+
+	private static boolean isGetter(Method method) {
+	    String name = method.getName();
+	    if (method.getParameterTypes().length > 0) {
+		return false;
+	    }
+
+	    return (name.startsWith("get") && name.length() > 3 && !method.getReturnType().equals(Void.TYPE))
+		    || (name.startsWith("is") && name.length() > 2 && method.getReturnType().equals(Boolean.TYPE));
+	}
+
+	private static String itemNameOf(Method getter) {
+	    String name = getter.getName();
+	    return Introspector.decapitalize(name.substring(name.startsWith("is") ? 2 : 3));
+	}
+
+	private static String[] itemNamesOf(Method[] getters) {
+	    String[] items = new String[getters.length];
+	    for (int i = 0; i < getters.length; i++) {
+		items[i] = itemNameOf(getters[i]);
+	    }
+
+	    return items;
+	}
+
+	private static OpenTypeConverter[] convertersOf(Method[] getters, Set<Type> visiting) {
+	    OpenTypeConverter[] converters = new OpenTypeConverter[getters.length];
+	    for (int i = 0; i < getters.length; i++) {
+		converters[i] = OpenTypeConverter.forType(getters[i].getGenericReturnType(), visiting);
+	    }
+
+	    return converters;
+	}
+
+	private static CompositeType compositeTypeOf(Class<?> beanClass, Method[] getters,
+		OpenTypeConverter[] itemConverters) throws OpenDataException {
+	    String[] items = itemNamesOf(getters);
+	    OpenType<?>[] itemTypes = new OpenType<?>[getters.length];
+	    for (int i = 0; i < getters.length; i++) {
+		itemTypes[i] = itemConverters[i].getOpenType();
+	    }
+
+	    return new CompositeType(beanClass.getName(), beanClass.getName(), items, items, itemTypes);
+	}
+
+    }
+
+    /**
+     * @return the open type of the arrays of the elements; the dimensions of the
+     * arrays of arrays are added.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static ArrayType<?> arrayTypeOf(OpenTypeConverter elementConverter) throws OpenDataException {
+	return new ArrayType(1, elementConverter.getOpenType());
+    }
+
+    private static Class<?> rawClassOf(Type type) {
+	if (type instanceof Class<?>) {
+	    return (Class<?>) type;
+	}
+	if (type instanceof ParameterizedType) {
+	    return (Class<?>) ((ParameterizedType) type).getRawType();
+	}
+	if (type instanceof GenericArrayType) {
+	    return Array.newInstance(rawClassOf(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+	}
+
+	return Object.class;
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.gescobar.management.util;
+
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+
+/**
+ * @author German Escobar
+ *
+ * Invokes a single exposed operation of an instance. As with 
+ * {@link AttributeAccessor}, invokers are created once per class and shared by 
+ * all the MBeans of that class.
+ */
+public interface OperationInvoker {
+
+    /**
+     * @return the name of the operation as it is exposed in the MBeanInfo.
+     */
+    String getName();
+
+    /**
+     * @return the types of the parameters of the operation.
+     */
+    Class<?>[] getParameterTypes();
+
+    /**
+     * Invokes the operation on the instance received as an argument.
+     * @param target the object that is exposed as an MBean.
+     * @param params the arguments of the operation, can be null if it has no parameters.
+     * @return the value returned by the operation, null if it is void.
+     * @throws MBeanException wraps an exception thrown by the operation.
+     * @throws ReflectionException wraps any reflection problem.
+     */
+    Object invoke(Object target, Object[] params) throws MBeanException, ReflectionException;
+
+}
@@ -0,0 +1,227 @@
+package org.gescobar.management.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author German Escobar
+ *
+ * Resolves the {@link OperationInvoker} of an operation from its name and signature,
+ * as received by {@link javax.management.DynamicMBean#invoke(String, Object[], String[])}.
+ * The table is built once per class and is immutable except for its resolution 
+ * caches, so it can be shared by all the MBeans of that class.
+ * 
+ * The declared signatures are interned when the table is built. A signature that
+ * matches one of them exactly is resolved without allocating and, when the caller 
+ * also uses interned strings (as local clients usually do), without comparing 
+ * characters. Any other signature (wrapper types for primitive parameters or a 
+ * null signature) is resolved once and cached, including the signatures that 
+ * don't resolve to any operation so they fail fast on the next call.
+ */
+public class OperationTable {
+
+    /**
+     * The maximum number of signatures, resolved or not, cached per operation name.
+     * Prevents clients that send arbitrary signatures from growing the cache forever.
+     */
+    private static final int MAX_CACHED_SIGNATURES = 64;
+
+    /**
+     * Cached for signatures that don't resolve to any operation.
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    private static final String[] EMPTY_SIGNATURE = new String[0];
+
+    private final Map<String,Overloads> operations;
+
+    public OperationTable(OperationInvoker[] invokers) {
+	Map<String,List<OperationInvoker>> byName = new HashMap<String,List<OperationInvoker>>();
+	for (OperationInvoker invoker : invokers) {
+	    List<OperationInvoker> list = byName.get(invoker.getName());
+	    if (list == null) {
+		list = new ArrayList<OperationInvoker>(1);
+		byName.put(invoker.getName(), list);
+	    }
+	    list.add(invoker);
+	}
+
+	Map<String,Overloads> operations = new HashMap<String,Overloads>(byName.size() * 2);
+	for (Map.Entry<String,List<OperationInvoker>> entry : byName.entrySet()) {
+	    List<OperationInvoker> list = entry.getValue();
+	    operations.put(entry.getKey(), new Overloads(list.toArray(new OperationInvoker[list.size()])));
+	}
+
+	this.operations = Collections.unmodifiableMap(operations);
+    }
+
+    /**
+     * @param name the name of the operation.
+     * @return true if there is at least one operation with that name, regardless
+     * of its signature.
+     */
+    public boolean contains(String name) {
+	return operations.containsKey(name);
+    }
+
+    /**
+     * Finds the operation that matches the name and signature. 
+     * @param name the name of the operation.
+     * @param signature the class names of the parameters, can be null.
+     * @return the OperationInvoker or null if no operation matches.
+     */
+    public OperationInvoker lookup(String name, String[] signature) {
+	Overloads overloads = operations.get(name);
+	if (overloads == null) {
+	    return null;
+	}
+
+	return overloads.lookup(signature == null ? EMPTY_SIGNATURE : signature);
+    }
+
+    /**
+     * The operations that share a name.
+     */
+    private static class Overloads {
+
+	private final OperationInvoker[] invokers;
+
+	/**
+	 * The interned class names of the parameters of each invoker.
+	 */
+	private final String[][] signatures;
+
+	private final ConcurrentMap<SignatureKey,Object> resolved = 
+	    new ConcurrentHashMap<SignatureKey,Object>();
+
+	Overloads(OperationInvoker[] invokers) {
+	    this.invokers = invokers;
+	    this.signatures = new String[invokers.length][];
+
+	    for (int i = 0; i < invokers.length; i++) {
+		Class<?>[] types = invokers[i].getParameterTypes();
+		signatures[i] = new String[types.length];
+		for (int j = 0; j < types.length; j++) {
+		    signatures[i][j] = types[j].getName().intern();
+		}
+	    }
+	}
+
+	OperationInvoker lookup(String[] signature) {
+	    // fast path: the signature matches a declared one
+	    for (int i = 0; i < signatures.length; i++) {
+		if (matchesExactly(signatures[i], signature)) {
+		    return invokers[i];
+		}
+	    }
+
+	    SignatureKey key = new SignatureKey(signature);
+	    Object cached = resolved.get(key);
+	    if (cached == null) {
+		cached = resolve(signature);
+		if (resolved.size() < MAX_CACHED_SIGNATURES) {
+		    // copy the signature, the caller owns the array
+		    resolved.putIfAbsent(new SignatureKey(signature.clone()), cached);
+		}
+	    }
+
+	    return cached == NOT_FOUND ? null : (OperationInvoker) cached;
+	}
+
+	/**
+	 * Resolves a signature that doesn't match any declared one exactly: 
+	 * primitive parameters can be referenced by their wrapper class names and
+	 * an empty signature selects the only operation with that name.
+	 */
+	private Object resolve(String[] signature) {
+	    OperationInvoker found = null;
+	    for (int i = 0; i < invokers.length; i++) {
+		if (matchesLeniently(invokers[i].getParameterTypes(), signature)) {
+		    if (found != null) {
+			// ambiguous
+			return NOT_FOUND;
+		    }
+		    found = invokers[i];
+		}
+	    }
+
+	    if (found == null && signature.length == 0 && invokers.length == 1) {
+		found = invokers[0];
+	    }
+
+	    return found == null ? NOT_FOUND : found;
+	}
+
+	private static boolean matchesExactly(String[] declared, String[] signature) {
+	    if (declared.length != signature.length) {
+		return false;
+	    }
+
+	    for (int i = 0; i < declared.length; i++) {
+		String s = signature[i];
+		if (declared[i] != s && !declared[i].equals(s)) {
+		    return false;
+		}
+	    }
+
+	    return true;
+	}
+
+	private static boolean matchesLeniently(Class<?>[] types, String[] signature) {
+	    if (types.length != signature.length) {
+		return false;
+	    }
+
+	    for (int i = 0; i < types.length; i++) {
+		String s = signature[i];
+		if (!types[i].getName().equals(s) && !Accessors.wrap(types[i]).getName().equals(s)) {
+		    return false;
+		}
+	    }
+
+	    return true;
+	}
+
+    }
+
+    /**
+     * Key of the resolution cache, compares signatures by value.
+     */
+    private static class SignatureKey {
+
+	private final String[] signature;
+
+	private final int hash;
+
+	SignatureKey(String[] signature) {
+	    this.signature = signature;
+	    this.hash = Arrays.hashCode(signature);
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (this == obj) {
+		return true;
+	    }
+	    if (!(obj instanceof SignatureKey)) {
+		return false;
+	    }
+
+	    SignatureKey other = (SignatureKey) obj;
+	    return hash == other.hash && Arrays.equals(signature, other.signature);
+	}
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package org.gescobar.management.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * Provides the first MBeanServer created with the MBeanServerFactory or, if there is
+ * none, the platform MBeanServer. It's always available and is used when no other
+ * provider returns a server.
+ */
+public class PlatformMBeanServerProvider implements MBeanServerProvider {
+
+    public static final int PRIORITY = 100;
+
+    /* (non-Javadoc)
+     * @see org.gescobar.management.util.MBeanServerProvider#getMBeanServer()
+     */
+    @Override
+    public MBeanServer getMBeanServer() {
+	List<MBeanServer> mBeanServers = MBeanServerFactory.findMBeanServer(null);
+	if (!mBeanServers.isEmpty()) {
+	    return mBeanServers.get(0);
+	}
+
+	return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    @Override
+    public int getPriority() {
+	return PRIORITY;
+    }
+
+}
@@ -0,0 +1,564 @@
+package org.gescobar.management.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.gescobar.management.ManagementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author German Escobar
+ *
+ * Serves the numeric attributes of the registered {@link MBeanImpl}s in the text
+ * format of Prometheus, on the path {@value #PATH} of an embedded HTTP server, so
+ * they can be scraped without a JMX round trip per attribute. It's started only if
+ * the system property {@value #PORT_PROPERTY} is set.
+ *
+ * The name of the metrics is made of the domain and the type key of the ObjectName
+ * followed by the name of the attribute; the other keys are labels. They are
+ * computed, and encoded, once per ObjectName when the MBean is registered. The
+ * numbers, counters and booleans are exported as they are, and the numeric items
+ * of the CompositeData (e.g. histograms and timings) with an "item" label. The
+ * histograms and timings cover the interval since the previous scrape, kept apart
+ * from the intervals of the JMX clients.
+ *
+ * The attributes are read directly with their accessors and written to the
+ * response as they are read, through a buffer that is reused by the single thread
+ * that serves the requests. The aggregate MBeans and the placeholders of the lazy
+ * ones are not exported.
+ */
+public class PrometheusExporter {
+
+    private static Logger log = LoggerFactory.getLogger(PrometheusExporter.class);
+
+    /**
+     * The system property with the port of the HTTP server. The exporter is
+     * disabled if it's not set.
+     */
+    public static final String PORT_PROPERTY = "org.gescobar.management.prometheus.port";
+
+    /**
+     * The system property with the address the HTTP server is bound to, all the
+     * interfaces by default.
+     */
+    public static final String HOST_PROPERTY = "org.gescobar.management.prometheus.host";
+
+    public static final boolean ENABLED = System.getProperty(PORT_PROPERTY) != null;
+
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String ITEM_LABEL = "item";
+
+    /**
+     * The exported MBeans grouped by the prefix of their metrics, so the samples
+     * of a metric are written together.
+     */
+    private final ConcurrentMap<String,Family> families = new ConcurrentHashMap<String,Family>();
+
+    private final MetricWriter writer = new MetricWriter();
+
+    /**
+     * The names of the attributes already written for the current family. Only
+     * used by the thread that serves the requests.
+     */
+    private final Set<String> writtenAttributes = new HashSet<String>();
+
+    /**
+     * The previous reads of the histograms and timings by the scrapes.
+     */
+    private final IntervalReader intervalReader = new IntervalReader();
+
+    private HttpServer server;
+
+    /**
+     * @return the exporter shared by the whole library. Only used when
+     * {@link #ENABLED}.
+     */
+    public static PrometheusExporter getDefault() {
+	return Holder.INSTANCE;
+    }
+
+    /**
+     * Starts the HTTP server on the port of {@value #PORT_PROPERTY}. If it can't
+     * be started, e.g. because the port is in use, the error is logged.
+     */
+    public synchronized void start() {
+	if (server != null) {
+	    return;
+	}
+
+	String host = System.getProperty(HOST_PROPERTY);
+	int port = Integer.getInteger(PORT_PROPERTY, 0);
+	InetSocketAddress address = host == null ? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+	try {
+	    server = HttpServer.create(address, 0);
+	} catch (IOException e) {
+	    log.warn("couldn't start the Prometheus exporter on " + address, e);
+	    return;
+	}
+
+	server.createContext(PATH, new MetricsHandler());
+	// a single thread, so the buffers can be reused without locking
+	ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+	    @Override
+	    public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, "PrometheusExporter");
+		thread.setDaemon(true);
+		return thread;
+	    }
+	});
+	server.setExecutor(executor);
+	server.start();
+
+	log.info("exporting the MBeans to Prometheus on " + server.getAddress() + PATH);
+    }
+
+    /**
+     * Stops the HTTP server, if it's started.
+     */
+    public synchronized void stop() {
+	if (server == null) {
+	    return;
+	}
+
+	server.stop(0);
+	if (server.getExecutor() instanceof ExecutorService) {
+	    ((ExecutorService) server.getExecutor()).shutdownNow();
+	}
+	server = null;
+    }
+
+    /**
+     * @return the address of the HTTP server, null if it's not started.
+     */
+    public synchronized InetSocketAddress getAddress() {
+	return server == null ? null : server.getAddress();
+    }
+
+    /**
+     * Exports the attributes of an MBean while it's registered.
+     */
+    public void beanRegistered(ObjectName objectName, MBeanImpl<?> mBean) {
+	String prefix = prefixOf(objectName);
+
+	Family family = families.get(prefix);
+	if (family == null) {
+	    Family created = new Family(prefix);
+	    family = families.putIfAbsent(prefix, created);
+	    if (family == null) {
+		family = created;
+	    }
+	}
+
+	family.beans.put(objectName, new Exported(mBean, labelsOf(objectName)));
+    }
+
+    public void beanUnregistered(ObjectName objectName, MBeanImpl<?> mBean) {
+	Family family = families.get(prefixOf(objectName));
+	if (family != null) {
+	    Exported exported = family.beans.get(objectName);
+	    if (exported != null && exported.mBean == mBean) {
+		family.beans.remove(objectName, exported);
+	    }
+	}
+    }
+
+    /**
+     * Writes the metrics of all the exported MBeans. Must be called by a single
+     * thread at a time, it reuses the buffers.
+     * @param out the stream to which the metrics are written.
+     * @throws IOException if the metrics can't be written.
+     */
+    void writeMetrics(OutputStream out) throws IOException {
+	writer.reset(out);
+
+	for (Family family : families.values()) {
+	    writtenAttributes.clear();
+	    for (Exported exported : family.beans.values()) {
+		for (AttributeAccessor accessor : exported.mBean.getAttributeAccessors()) {
+		    if (writtenAttributes.add(accessor.getName())) {
+			writeMetric(family, accessor);
+		    }
+		}
+	    }
+	}
+
+	writer.flush();
+    }
+
+    /**
+     * Writes an attribute of all the MBeans of a family, with its type.
+     */
+    private void writeMetric(Family family, AttributeAccessor accessor) throws IOException {
+	boolean typeWritten = false;
+	byte[] name = family.metricName(accessor.getName());
+
+	for (Exported exported : family.beans.values()) {
+	    Object target = exported.mBean.getTarget();
+	    AttributeAccessor a = exported.mBean.getAttributeAccessor(accessor.getName());
+	    if (target == null || a == null) {
+		continue;
+	    }
+
+	    try {
+		if (isNumeric(a)) {
+		    double value = ((NumericAccessor) a).getDouble(target);
+		    typeWritten = writeType(name, a, typeWritten);
+		    writer.writeSample(name, exported.labels, null, value);
+		    continue;
+		}
+
+		Object value = a instanceof IntervalAccessor ? ((IntervalAccessor) a).get(target, intervalReader) 
+			: a.get(target);
+		if (value instanceof Number || value instanceof Boolean) {
+		    typeWritten = writeType(name, a, typeWritten);
+		    writer.writeSample(name, exported.labels, null, toDouble(value));
+		} else if (value instanceof CompositeData) {
+		    CompositeData data = (CompositeData) value;
+		    for (String item : data.getCompositeType().keySet()) {
+			Object itemValue = data.get(item);
+			if (itemValue instanceof Number || itemValue instanceof Boolean) {
+			    typeWritten = writeType(name, a, typeWritten);
+			    writer.writeSample(name, exported.labels, item, toDouble(itemValue));
+			}
+		    }
+		}
+	    } catch (IOException e) {
+		throw e;
+	    } catch (Exception e) {
+		// e.g. a getter that failed, the other attributes are still exported
+		log.debug("couldn't export " + accessor.getName() + " of " + exported.mBean, e);
+	    }
+	}
+    }
+
+    private boolean writeType(byte[] name, AttributeAccessor accessor, boolean typeWritten) throws IOException {
+	if (!typeWritten) {
+	    writer.writeType(name, accessor instanceof CounterAccessor ? "counter" : "gauge");
+	}
+
+	return true;
+    }
+
+    private static boolean isNumeric(AttributeAccessor accessor) {
+	return accessor instanceof CounterAccessor
+		|| (accessor instanceof FieldAccessor && ((FieldAccessor) accessor).isNumeric());
+    }
+
+    private static double toDouble(Object value) {
+	if (value instanceof Boolean) {
+	    return ((Boolean) value).booleanValue() ? 1 : 0;
+	}
+
+	return ((Number) value).doubleValue();
+    }
+
+    /**
+     * @return the domain and the type key of the name, as a valid metric name.
+     */
+    static String prefixOf(ObjectName objectName) {
+	String type = objectName.getKeyProperty("type");
+	return sanitize(type == null ? objectName.getDomain() : objectName.getDomain() + "_" + type);
+    }
+
+    /**
+     * @return the keys of the name other than the type, sorted and escaped as
+     * labels: key1="value1",key2="value2".
+     */
+    static String labelsOf(ObjectName objectName) {
+	Map<String,String> properties = new TreeMap<String,String>(objectName.getKeyPropertyList());
+	properties.remove("type");
+
+	StringBuilder labels = new StringBuilder();
+	for (Map.Entry<String,String> property : properties.entrySet()) {
+	    if (labels.length() > 0) {
+		labels.append(',');
+	    }
+	    labels.append(sanitize(property.getKey())).append("=\"");
+	    String value = property.getValue();
+	    appendEscaped(labels, value.startsWith("\"") ? ObjectName.unquote(value) : value);
+	    labels.append('"');
+	}
+
+	return labels.toString();
+    }
+
+    private static String sanitize(String name) {
+	StringBuilder sanitized = new StringBuilder(name.length() + 1);
+	if (name.length() == 0 || Character.isDigit(name.charAt(0))) {
+	    sanitized.append('_');
+	}
+	for (int i = 0; i < name.length(); i++) {
+	    char c = name.charAt(i);
+	    boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	    sanitized.append(valid ? c : '_');
+	}
+
+	return sanitized.toString();
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+	for (int i = 0; i < value.length(); i++) {
+	    char c = value.charAt(i);
+	    if (c == '\\' || c == '"') {
+		sb.append('\\').append(c);
+	    } else if (c == '\n') {
+		sb.append("\\n");
+	    } else {
+		sb.append(c);
+	    }
+	}
+    }
+
+    private static byte[] utf8(String s) {
+	try {
+	    return s.getBytes("UTF-8");
+	} catch (UnsupportedEncodingException e) {
+	    throw new ManagementException(e);
+	}
+    }
+
+    /**
+     * The MBeans whose metrics share a prefix, and the names of their metrics.
+     */
+    private static class Family {
+
+	final String prefix;
+
+	final ConcurrentMap<ObjectName,Exported> beans = new ConcurrentHashMap<ObjectName,Exported>();
+
+	final ConcurrentMap<String,byte[]> metricNames = new ConcurrentHashMap<String,byte[]>();
+
+	Family(String prefix) {
+	    this.prefix = prefix;
+	}
+
+	byte[] metricName(String attribute) {
+	    byte[] name = metricNames.get(attribute);
+	    if (name == null) {
+		name = utf8(prefix + "_" + sanitize(attribute));
+		metricNames.put(attribute, name);
+	    }
+
+	    return name;
+	}
+
+    }
+
+    /**
+     * An exported MBean with its labels, encoded once.
+     */
+    private static class Exported {
+
+	final MBeanImpl<?> mBean;
+
+	final byte[] labels;
+
+	Exported(MBeanImpl<?> mBean, String labels) {
+	    this.mBean = mBean;
+	    this.labels = utf8(labels);
+	}
+
+    }
+
+    /**
+     * Writes the lines of the text format to a stream through a reusable buffer.
+     */
+    private static class MetricWriter {
+
+	private static final byte[] TYPE = utf8("# TYPE ");
+
+	private static final byte[] ITEM = utf8(ITEM_LABEL + "=\"");
+
+	private final byte[] buffer = new byte[8192];
+
+	private final char[] digits = new char[32];
+
+	private int count;
+
+	private OutputStream out;
+
+	void reset(OutputStream out) {
+	    this.out = out;
+	    this.count = 0;
+	}
+
+	void writeType(byte[] name, String type) throws IOException {
+	    write(TYPE);
+	    write(name);
+	    write((byte) ' ');
+	    writeAscii(type);
+	    write((byte) '\n');
+	}
+
+	/**
+	 * Writes name{labels,item="item"} value.
+	 */
+	void writeSample(byte[] name, byte[] labels, String item, double value) throws IOException {
+	    write(name);
+	    if (labels.length > 0 || item != null) {
+		write((byte) '{');
+		write(labels);
+		if (item != null) {
+		    if (labels.length > 0) {
+			write((byte) ',');
+		    }
+		    write(ITEM);
+		    writeEscaped(item);
+		    write((byte) '"');
+		}
+		write((byte) '}');
+	    }
+	    write((byte) ' ');
+	    writeValue(value);
+	    write((byte) '\n');
+	}
+
+	private void writeValue(double value) throws IOException {
+	    if (Double.isNaN(value)) {
+		writeAscii("NaN");
+	    } else if (Double.isInfinite(value)) {
+		writeAscii(value > 0 ? "+Inf" : "-Inf");
+	    } else if (value == (long) value && Math.abs(value) < 1e15) {
+		writeLong((long) value);
+	    } else {
+		writeAscii(Double.toString(value));
+	    }
+	}
+
+	private void writeLong(long value) throws IOException {
+	    if (value < 0) {
+		write((byte) '-');
+		value = -value;
+	    }
+
+	    int position = digits.length;
+	    do {
+		digits[--position] = (char) ('0' + value % 10);
+		value /= 10;
+	    } while (value > 0);
+
+	    for (int i = position; i < digits.length; i++) {
+		write((byte) digits[i]);
+	    }
+	}
+
+	/**
+	 * Writes a string of ASCII characters, e.g. the numbers and the types. Any
+	 * other character is replaced by an underscore.
+	 */
+	private void writeAscii(String s) throws IOException {
+	    for (int i = 0; i < s.length(); i++) {
+		char c = s.charAt(i);
+		write(c < 128 ? (byte) c : (byte) '_');
+	    }
+	}
+
+	/**
+	 * Writes the value of a label, e.g. the item of a CompositeData, escaped as
+	 * the labels of the ObjectNames are. Any character that is not ASCII is
+	 * replaced by an underscore.
+	 */
+	private void writeEscaped(String s) throws IOException {
+	    for (int i = 0; i < s.length(); i++) {
+		char c = s.charAt(i);
+		if (c == '\\' || c == '"') {
+		    write((byte) '\\');
+		    write((byte) c);
+		} else if (c == '\n') {
+		    write((byte) '\\');
+		    write((byte) 'n');
+		} else {
+		    write(c < 128 ? (byte) c : (byte) '_');
+		}
+	    }
+	}
+
+	private void write(byte[] bytes) throws IOException {
+	    if (bytes.length > buffer.length - count) {
+		flushBuffer();
+		if (bytes.length > buffer.length) {
+		    out.write(bytes);
+		    return;
+		}
+	    }
+
+	    System.arraycopy(bytes, 0, buffer, count, bytes.length);
+	    count += bytes.length;
+	}
+
+	private void write(byte b) throws IOException {
+	    if (count == buffer.length) {
+		flushBuffer();
+	    }
+	    buffer[count++] = b;
+	}
+
+	private void flushBuffer() throws IOException {
+	    out.write(buffer, 0, count);
+	    count = 0;
+	}
+
+	void flush() throws IOException {
+	    flushBuffer();
+	    out.flush();
+	    out = null;
+	}
+
+    }
+
+    /**
+     * Serves the metrics, streamed as they are read.
+     */
+    private class MetricsHandler implements HttpHandler {
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+	    try {
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+		    exchange.sendResponseHeaders(200, -1);
+		    return;
+		}
+
+		// a length of 0 means the response is chunked
+		exchange.sendResponseHeaders(200, 0);
+		writeMetrics(exchange.getResponseBody());
+	    } finally {
+		exchange.close();
+	    }
+	}
+
+    }
+
+    /**
+     * Creates the exporter on first use.
+     */
+    private static class Holder {
+
+	static final PrometheusExporter INSTANCE = new PrometheusExporter();
+
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.gescobar.management.util;
+
+import java.beans.Introspector;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+
+/**
+ * @author German Escobar
+ *
+ * An {@link AttributeAccessor} backed by a getter and/or a setter, for the methods
+ * annotated with {@link org.gescobar.management.ManagedAttribute}. As in 
+ * {@link MethodInvoker}, the accessibility checks are suppressed once.
+ */
+public class PropertyAccessor implements AttributeAccessor {
+
+    private final String name;
+
+    private final Class<?> type;
+
+    /**
+     * The type used to check the values that are set, primitives are replaced
+     * with their wrappers.
+     */
+    private final Class<?> valueType;
+
+    private final Method getter;
+
+    private final Method setter;
+
+    /**
+     * @param name the name of the attribute.
+     * @param getter the getter, null if the attribute is write-only.
+     * @param setter the setter, null if the attribute is read-only.
+     */
+    public PropertyAccessor(String name, Method getter, Method setter) {
+	this.name = name;
+	this.type = getter != null ? getter.getReturnType() : setter.getParameterTypes()[0];
+	this.valueType = Accessors.wrap(type);
+	this.getter = getter;
+	this.setter = setter;
+
+	if (getter != null) {
+	    Accessors.makeAccessible(getter);
+	}
+	if (setter != null) {
+	    Accessors.makeAccessible(setter);
+	}
+    }
+
+    /**
+     * @param method a getter (getX() or isX()) or a setter (setX(value)).
+     * @return the name of the attribute, following the JavaBeans rules (e.g. size 
+     * for getSize, URL for getURL), or null if the method is not a getter or a setter.
+     */
+    public static String getAttributeName(Method method) {
+	String name = method.getName();
+	int parameters = method.getParameterTypes().length;
+	Class<?> returnType = method.getReturnType();
+
+	String property = null;
+	if (name.startsWith("get") && parameters == 0 && !returnType.equals(Void.TYPE)) {
+	    property = name.substring(3);
+	} else if (name.startsWith("is") && parameters == 0 && returnType.equals(Boolean.TYPE)) {
+	    property = name.substring(2);
+	} else if (name.startsWith("set") && parameters == 1 && returnType.equals(Void.TYPE)) {
+	    property = name.substring(3);
+	}
+
+	if (property == null || property.length() == 0) {
+	    return null;
+	}
+
+	return Introspector.decapitalize(property);
+    }
+
+    @Override
+    public String getName() {
+	return name;
+    }
+
+    @Override
+    public Class<?> getType() {
+	return type;
+    }
+
+    public Method getGetter() {
+	return getter;
+    }
+
+    public Method getSetter() {
+	return setter;
+    }
+
+    @Override
+    public Object get(Object target) throws MBeanException, ReflectionException {
+	if (getter == null) {
+	    throw new ReflectionException(new NoSuchMethodException("Attribute " + name + " is write-only"));
+	}
+
+	try {
+	    return getter.invoke(target);
+	} catch (InvocationTargetException e) {
+	    throw wrap(e);
+	} catch (Exception e) {
+	    throw new ReflectionException(e);
+	}
+    }
+
+    @Override
+    public void set(Object target, Object value) throws InvalidAttributeValueException, 
+	    MBeanException, ReflectionException {
+	if (setter == null) {
+	    throw new InvalidAttributeValueException("Attribute " + name + " is read-only");
+	}
+	if (!valueType.isInstance(value)) {
+	    throw(new InvalidAttributeValueException("Cannot set attribute "+ name +" to a " + value.getClass().getName() + " object, " + type.getName() + " expected"));
+	}
+
+	try {
+	    setter.invoke(target, value);
+	} catch (InvocationTargetException e) {
+	    throw wrap(e);
+	} catch (Exception e) {
+	    throw new ReflectionException(e);
+	}
+    }
+
+    /**
+     * @return an MBeanException with the exception thrown by the getter or setter.
+     */
+    private MBeanException wrap(InvocationTargetException e) {
+	Throwable cause = e.getCause();
+	if (cause instanceof Exception) {
+	    return new MBeanException((Exception) cause);
+	}
+
+	return new MBeanException(e);
+    }
+
+}
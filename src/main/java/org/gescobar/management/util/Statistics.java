@@ -0,0 +1,315 @@
+package org.gescobar.management.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.gescobar.management.Counter;
+import org.gescobar.management.Histogram;
+import org.gescobar.management.ManagementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * Statistics of the management layer itself, registered as
+ * {@value #OBJECT_NAME}: the calls made to each registered {@link MBeanImpl} (see
+ * {@link CallStatistics}), the time spent building metadata, the hits of the
+ * metadata cache, the latency of the registrations and the time spent on each MBean
+ * class while booting (see {@link BootProfiler}).
+ *
+ * They are off by default. Set the system property {@value #PROPERTY} to true to 
+ * switch them on. Each MBean then counts its calls, which takes one or two KB per 
+ * kind of call it receives (see {@link CallStatistics}). {@link #ENABLED} is a 
+ * constant, so when they are off the JIT removes the instrumentation of the MBeans
+ * entirely.
+ */
+public class Statistics implements StatisticsMBean {
+
+    private static Logger log = LoggerFactory.getLogger(Statistics.class);
+
+    /**
+     * The system property that enables the statistics, false by default.
+     */
+    public static final String PROPERTY = "org.gescobar.management.statistics";
+
+    public static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+    public static final String OBJECT_NAME = "org.gescobar.management:type=Statistics";
+
+    private static final String NAME = "name";
+
+    private static final CompositeType ROW_TYPE;
+
+    private static final TabularType TABLE_TYPE;
+
+    static {
+	int kinds = CallStatistics.KINDS.length;
+	String[] names = new String[1 + kinds * 3];
+	String[] descriptions = new String[names.length];
+	OpenType<?>[] types = new OpenType<?>[names.length];
+
+	names[0] = NAME;
+	descriptions[0] = "ObjectName of the MBean";
+	types[0] = SimpleType.STRING;
+	for (int i = 0; i < kinds; i++) {
+	    String kind = CallStatistics.KINDS[i];
+	    names[1 + i * 3] = kind + "Count";
+	    descriptions[1 + i * 3] = "Number of " + kind + " calls";
+	    types[1 + i * 3] = SimpleType.LONG;
+	    names[2 + i * 3] = kind + "Errors";
+	    descriptions[2 + i * 3] = "Number of " + kind + " calls that failed";
+	    types[2 + i * 3] = SimpleType.LONG;
+	    names[3 + i * 3] = kind + "Latency";
+	    descriptions[3 + i * 3] = "Latency of the " + kind + " calls in nanoseconds";
+	    types[3 + i * 3] = HistogramAccessor.COMPOSITE_TYPE;
+	}
+
+	try {
+	    ROW_TYPE = new CompositeType(Statistics.class.getName() + ".Bean", "Calls of an MBean", names,
+		    descriptions, types);
+	    TABLE_TYPE = new TabularType(Statistics.class.getName() + ".Beans", "Calls of the MBeans", ROW_TYPE,
+		    new String[] { NAME });
+	} catch (OpenDataException e) {
+	    throw new ManagementException(e);
+	}
+    }
+
+    /**
+     * The latency of the kinds of calls that were never made.
+     */
+    private static final CompositeData EMPTY_SNAPSHOT = snapshot(new Histogram());
+
+    private final ConcurrentMap<ObjectName,CallStatistics> beans = new ConcurrentHashMap<ObjectName,CallStatistics>();
+
+    private final Counter metadataBuilds = new Counter();
+
+    private final Histogram metadataBuildTime = new Histogram();
+
+    private final Counter registrations = new Counter();
+
+    private final Histogram registrationLatency = new Histogram();
+
+    private volatile MetadataCache metadataCache;
+
+    private volatile MBeanReaper mBeanReaper;
+
+    private final BootProfiler bootProfiler = new BootProfiler();
+
+    /**
+     * @return the statistics shared by the whole library. Only used when
+     * {@link #ENABLED}.
+     */
+    public static Statistics getDefault() {
+	return Holder.INSTANCE;
+    }
+
+    /**
+     * Registers these statistics as {@value #OBJECT_NAME}.
+     * @param mBeanServer the server in which they are registered.
+     * @return true if they were registered.
+     */
+    public boolean register(MBeanServer mBeanServer) {
+	try {
+	    mBeanServer.registerMBean(this, new ObjectName(OBJECT_NAME));
+	    return true;
+	} catch (Exception e) {
+	    // e.g. registered by another deployment
+	    log.warn("couldn't register " + OBJECT_NAME, e);
+	    return false;
+	}
+    }
+
+    /**
+     * Unregisters these statistics, if they are registered.
+     * @param mBeanServer the server in which they were registered.
+     */
+    public void unregister(MBeanServer mBeanServer) {
+	try {
+	    ObjectName objectName = new ObjectName(OBJECT_NAME);
+	    if (mBeanServer.isRegistered(objectName)) {
+		mBeanServer.unregisterMBean(objectName);
+	    }
+	} catch (Exception e) {
+	    log.warn("couldn't unregister " + OBJECT_NAME, e);
+	}
+    }
+
+    /**
+     * Reports the calls of an MBean while it's registered.
+     */
+    public void beanRegistered(ObjectName objectName, CallStatistics calls, long nanos) {
+	beans.put(objectName, calls);
+	registrations.increment();
+	registrationLatency.record(nanos);
+    }
+
+    public void beanUnregistered(ObjectName objectName, CallStatistics calls) {
+	beans.remove(objectName, calls);
+    }
+
+    public void metadataBuilt(long nanos) {
+	metadataBuilds.increment();
+	metadataBuildTime.record(nanos);
+    }
+
+    /**
+     * Sets the cache whose hits and misses are reported.
+     */
+    public void setMetadataCache(MetadataCache metadataCache) {
+	this.metadataCache = metadataCache;
+    }
+
+    /**
+     * Sets the reaper whose counts are reported.
+     */
+    public void setMBeanReaper(MBeanReaper mBeanReaper) {
+	this.mBeanReaper = mBeanReaper;
+    }
+
+    public BootProfiler getBootProfiler() {
+	return bootProfiler;
+    }
+
+    /* (non-Javadoc)
+     * @see org.gescobar.management.util.StatisticsMBean#getBeans()
+     */
+    @Override
+    public TabularData getBeans() {
+	TabularData table = new TabularDataSupport(TABLE_TYPE);
+
+	try {
+	    for (Map.Entry<ObjectName,CallStatistics> entry : beans.entrySet()) {
+		table.put(createRow(entry.getKey(), entry.getValue()));
+	    }
+	} catch (Exception e) {
+	    throw new ManagementException(e);
+	}
+
+	return table;
+    }
+
+    @Override
+    public int getBeanCount() {
+	return beans.size();
+    }
+
+    @Override
+    public long getMetadataBuildCount() {
+	return metadataBuilds.sum();
+    }
+
+    @Override
+    public CompositeData getMetadataBuildTime() {
+	return snapshot(metadataBuildTime);
+    }
+
+    @Override
+    public long getMetadataCacheHits() {
+	MetadataCache cache = metadataCache;
+	return cache == null ? 0 : cache.getHitCount();
+    }
+
+    @Override
+    public long getMetadataCacheMisses() {
+	MetadataCache cache = metadataCache;
+	return cache == null ? 0 : cache.getMissCount();
+    }
+
+    @Override
+    public long getReapedCount() {
+	MBeanReaper reaper = mBeanReaper;
+	return reaper == null ? 0 : reaper.getReapedCount();
+    }
+
+    @Override
+    public long getReaperFailureCount() {
+	MBeanReaper reaper = mBeanReaper;
+	return reaper == null ? 0 : reaper.getFailureCount();
+    }
+
+    @Override
+    public long getReaperBatchCount() {
+	MBeanReaper reaper = mBeanReaper;
+	return reaper == null ? 0 : reaper.getBatchCount();
+    }
+
+    @Override
+    public long getRegistrationCount() {
+	return registrations.sum();
+    }
+
+    @Override
+    public CompositeData getRegistrationLatency() {
+	return snapshot(registrationLatency);
+    }
+
+    /* (non-Javadoc)
+     * @see org.gescobar.management.util.StatisticsMBean#getBootProfile()
+     */
+    @Override
+    public TabularData getBootProfile() {
+	return bootProfile(Integer.getInteger(BootProfiler.TOP_PROPERTY, BootProfiler.DEFAULT_TOP));
+    }
+
+    @Override
+    public TabularData bootProfile(int count) {
+	return bootProfiler.getTopTypes(count);
+    }
+
+    private CompositeData createRow(ObjectName objectName, CallStatistics calls) throws OpenDataException,
+	    ReflectionException {
+	int kinds = CallStatistics.KINDS.length;
+	String[] names = new String[1 + kinds * 3];
+	Object[] values = new Object[names.length];
+
+	names[0] = NAME;
+	values[0] = objectName.getCanonicalName();
+	for (int i = 0; i < kinds; i++) {
+	    CallStatistics.Calls c = calls.get(i);
+	    String kind = CallStatistics.KINDS[i];
+	    names[1 + i * 3] = kind + "Count";
+	    values[1 + i * 3] = c == null ? 0L : c.count.get();
+	    names[2 + i * 3] = kind + "Errors";
+	    values[2 + i * 3] = c == null ? 0L : c.errors.get();
+	    names[3 + i * 3] = kind + "Latency";
+	    values[3 + i * 3] = c == null ? EMPTY_SNAPSHOT : snapshot(c.latency);
+	}
+
+	return new CompositeDataSupport(ROW_TYPE, names, values);
+    }
+
+    private static CompositeData snapshot(Histogram histogram) {
+	Histogram.Snapshot snapshot = histogram.snapshot();
+	try {
+	    return HistogramAccessor.createCompositeData(HistogramAccessor.COMPOSITE_TYPE, new String[] { "count" },
+		    new Object[] { snapshot.getCount() }, snapshot);
+	} catch (ReflectionException e) {
+	    throw new ManagementException(e);
+	}
+    }
+
+    /**
+     * Creates the statistics on first use.
+     */
+    private static class Holder {
+
+	static final Statistics INSTANCE = new Statistics();
+
+    }
+
+}
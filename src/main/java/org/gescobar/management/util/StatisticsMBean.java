@@ -0,0 +1,58 @@
+package org.gescobar.management.util;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+/**
+ * @author German Escobar
+ *
+ * The management interface of the {@link Statistics}. The latencies are in 
+ * nanoseconds and cover all the calls since the MBean was registered, as the 
+ * counts do.
+ */
+public interface StatisticsMBean {
+
+    /**
+     * @return a row per registered MBean with the count, the errors and the latency
+     * of its getAttribute, setAttribute and invoke calls.
+     */
+    TabularData getBeans();
+
+    int getBeanCount();
+
+    long getMetadataBuildCount();
+
+    CompositeData getMetadataBuildTime();
+
+    long getMetadataCacheHits();
+
+    long getMetadataCacheMisses();
+
+    /**
+     * @return the number of weakly bound MBeans unregistered by the {@link MBeanReaper}
+     * because their instance was collected.
+     */
+    long getReapedCount();
+
+    long getReaperFailureCount();
+
+    long getReaperBatchCount();
+
+    long getRegistrationCount();
+
+    CompositeData getRegistrationLatency();
+
+    /**
+     * @return the MBean classes that took the most time to boot, the slowest first,
+     * as many as the system property {@value BootProfiler#TOP_PROPERTY} (20 by default).
+     * @see BootProfiler
+     */
+    TabularData getBootProfile();
+
+    /**
+     * @param count the maximum number of classes.
+     * @return the MBean classes that took the most time to boot, the slowest first.
+     */
+    TabularData bootProfile(int count);
+
+}
@@ -0,0 +1,40 @@
+package org.gescobar.management.util;
+
+/**
+ * @author German Escobar
+ *
+ * The thresholds of an attribute annotated with 
+ * {@link org.gescobar.management.GaugeThreshold} and the accessor used to sample it. 
+ * Like the accessors, it's created once per class and doesn't hold the instance.
+ */
+public class Threshold {
+
+    private final NumericAccessor accessor;
+
+    private final double high;
+
+    private final double low;
+
+    public Threshold(NumericAccessor accessor, double high, double low) {
+	this.accessor = accessor;
+	this.high = high;
+	this.low = low;
+    }
+
+    public NumericAccessor getAccessor() {
+	return accessor;
+    }
+
+    public String getName() {
+	return accessor.getName();
+    }
+
+    public double getHigh() {
+	return high;
+    }
+
+    public double getLow() {
+	return low;
+    }
+
+}
@@ -0,0 +1,241 @@
+package org.gescobar.management.util;
+
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author German Escobar
+ *
+ * Samples the attributes annotated with {@link org.gescobar.management.GaugeThreshold}
+ * of the registered MBeans on a single daemon thread, and sends a notification 
+ * through the MBean when a value crosses its thresholds.
+ * 
+ * The watches are kept in a concurrent set, so watching or unwatching an MBean 
+ * only touches its own watches and a sampling round doesn't lock. The values are 
+ * read as primitive doubles, so a round only allocates its iterator and the 
+ * notifications of the crossings.
+ */
+public class ThresholdSampler {
+
+    private static Logger log = LoggerFactory.getLogger(ThresholdSampler.class);
+
+    public static final String HIGH_TYPE = "jmx.monitor.gauge.high";
+
+    public static final String LOW_TYPE = "jmx.monitor.gauge.low";
+
+    /**
+     * The system property with the sampling period in milliseconds.
+     */
+    public static final String PERIOD_PROPERTY = "org.gescobar.management.threshold.period";
+
+    public static final long DEFAULT_PERIOD = 1000;
+
+    private static ThresholdSampler defaultSampler;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Set<Watch> watches = Collections.newSetFromMap(new ConcurrentHashMap<Watch,Boolean>());
+
+    private final AtomicLong rounds = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    public ThresholdSampler(long periodMillis) {
+	this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+	    @Override
+	    public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, "ThresholdSampler");
+		thread.setDaemon(true);
+		return thread;
+	    }
+	});
+
+	this.scheduler.scheduleWithFixedDelay(new Runnable() {
+	    @Override
+	    public void run() {
+		sample();
+	    }
+	}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the sampler shared by all the MBeans, created (and its thread started)
+     * the first time an MBean with thresholds is registered.
+     */
+    public static synchronized ThresholdSampler getDefault() {
+	if (defaultSampler == null) {
+	    defaultSampler = new ThresholdSampler(Long.getLong(PERIOD_PROPERTY, DEFAULT_PERIOD));
+	}
+
+	return defaultSampler;
+    }
+
+    /**
+     * Stops the thread of the default sampler, if it was created.
+     */
+    public static synchronized void shutdownDefault() {
+	if (defaultSampler != null) {
+	    defaultSampler.shutdown();
+	    defaultSampler = null;
+	}
+    }
+
+    /**
+     * Starts sampling the attributes of an instance.
+     * @param target the object that is exposed as an MBean.
+     * @param thresholds the thresholds of its class.
+     * @param support the notification support of the MBean.
+     * @return the watches, used to stop sampling.
+     */
+    public Watch[] watch(Object target, Threshold[] thresholds, NotificationSupport support) {
+	return watch(target, null, thresholds, support);
+    }
+
+    /**
+     * Starts sampling the attributes of an instance that is referenced weakly, the
+     * watches are skipped once it's collected.
+     * @param target the reference to the object that is exposed as an MBean.
+     * @param thresholds the thresholds of its class.
+     * @param support the notification support of the MBean.
+     * @return the watches, used to stop sampling.
+     */
+    public Watch[] watch(Reference<?> target, Threshold[] thresholds, NotificationSupport support) {
+	return watch(null, target, thresholds, support);
+    }
+
+    private Watch[] watch(Object target, Reference<?> reference, Threshold[] thresholds, 
+	    NotificationSupport support) {
+	Watch[] added = new Watch[thresholds.length];
+	for (int i = 0; i < thresholds.length; i++) {
+	    added[i] = new Watch(target, reference, thresholds[i], support);
+	}
+
+	watches.addAll(Arrays.asList(added));
+
+	return added;
+    }
+
+    /**
+     * Stops sampling the watches received as an argument.
+     * @param removed the watches returned by {@link #watch(Object, Threshold[], NotificationSupport)}.
+     */
+    public void unwatch(Watch[] removed) {
+	for (Watch watch : removed) {
+	    watches.remove(watch);
+	}
+    }
+
+    /**
+     * Stops the thread of the sampler.
+     */
+    public void shutdown() {
+	scheduler.shutdownNow();
+    }
+
+    /**
+     * @return the number of attributes that are sampled.
+     */
+    public int getWatchCount() {
+	return watches.size();
+    }
+
+    public long getRoundCount() {
+	return rounds.get();
+    }
+
+    /**
+     * @return the number of samples that couldn't be read.
+     */
+    public long getFailureCount() {
+	return failures.get();
+    }
+
+    void sample() {
+	for (Watch watch : watches) {
+	    try {
+		watch.sample();
+	    } catch (Exception e) {
+		// an exception would cancel the sampling of all the watches
+		if (failures.getAndIncrement() == 0) {
+		    log.warn("couldn't sample " + watch.threshold.getName(), e);
+		}
+	    }
+	}
+
+	rounds.incrementAndGet();
+    }
+
+    /**
+     * The threshold of an attribute of an instance and the state of the hysteresis.
+     * Only the thread of the sampler uses the state.
+     */
+    public static class Watch {
+
+	private final Object target;
+
+	/**
+	 * The weak reference to the target, if it's not referenced strongly.
+	 */
+	private final Reference<?> reference;
+
+	private final Threshold threshold;
+
+	private final NotificationSupport support;
+
+	/**
+	 * True after a high notification, until the value falls to the low threshold.
+	 */
+	private boolean high;
+
+	Watch(Object target, Reference<?> reference, Threshold threshold, NotificationSupport support) {
+	    this.target = target;
+	    this.reference = reference;
+	    this.threshold = threshold;
+	    this.support = support;
+	}
+
+	void sample() throws Exception {
+	    Object t = reference == null ? target : reference.get();
+	    if (t == null) {
+		// collected, the MBean is about to be unregistered
+		return;
+	    }
+
+	    double value = threshold.getAccessor().getDouble(t);
+
+	    if (!high && value >= threshold.getHigh()) {
+		high = true;
+		send(HIGH_TYPE, value, threshold.getHigh());
+	    } else if (high && value <= threshold.getLow()) {
+		high = false;
+		send(LOW_TYPE, value, threshold.getLow());
+	    }
+	}
+
+	private void send(String type, double value, double limit) {
+	    if (!support.hasListeners()) {
+		return;
+	    }
+
+	    Notification notification = new Notification(type, support.getSource(), support.nextSequenceNumber(), 
+		    threshold.getName() + " is " + value + ", threshold " + limit);
+	    notification.setUserData(Double.valueOf(value));
+	    support.sendNotification(notification);
+	}
+
+    }
+
+}
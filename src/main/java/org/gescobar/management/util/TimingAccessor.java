@@ -0,0 +1,84 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.Method;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+import org.gescobar.management.Histogram;
+import org.gescobar.management.Timed;
+
+/**
+ * @author German Escobar
+ *
+ * A read-only {@link AttributeAccessor} that exposes the {@link MethodTimer} of a
+ * method annotated with {@link org.gescobar.management.Timed}. Every read returns 
+ * the calls, errors and latencies (in nanoseconds) since the previous read of the
+ * same reader; the JMX clients share the reader of the accessor.
+ */
+public class TimingAccessor implements IntervalAccessor {
+
+    private static final String[] ITEM_NAMES = new String[] { "count", "errors" };
+
+    /**
+     * The open type of the attributes.
+     */
+    public static final CompositeType COMPOSITE_TYPE = HistogramAccessor.createCompositeType(
+	    Timed.class.getName(), "Calls since the last read, latencies in nanoseconds", ITEM_NAMES, 
+	    new String[] { "Number of calls", "Number of calls that threw an exception" }, 
+	    new OpenType<?>[] { SimpleType.LONG, SimpleType.LONG });
+
+    private final String name;
+
+    private final MethodTimer timer;
+
+    private final IntervalReader reader = new IntervalReader();
+
+    public TimingAccessor(Method method) {
+	this.name = getAttributeName(method.getName());
+	this.timer = MethodTimer.forMethod(method);
+    }
+
+    /**
+     * @param methodName the name of a timed method.
+     * @return the name of the attribute that exposes the timing of the method.
+     */
+    public static String getAttributeName(String methodName) {
+	return methodName + "Timing";
+    }
+
+    @Override
+    public String getName() {
+	return name;
+    }
+
+    @Override
+    public Class<?> getType() {
+	return CompositeData.class;
+    }
+
+    @Override
+    public Object get(Object target) throws ReflectionException {
+	return get(target, reader);
+    }
+
+    @Override
+    public Object get(Object target, IntervalReader reader) throws ReflectionException {
+	Histogram.Snapshot snapshot = reader.interval(timer.getLatency());
+	long errors = reader.interval(timer.getErrors());
+
+	return HistogramAccessor.createCompositeData(COMPOSITE_TYPE, ITEM_NAMES, 
+		new Object[] { snapshot.getCount(), errors }, snapshot);
+    }
+
+    @Override
+    public void set(Object target, Object value) throws InvalidAttributeValueException, 
+	    ReflectionException {
+	throw new InvalidAttributeValueException("Attribute " + name + " is read-only");
+    }
+
+}
@@ -0,0 +1,65 @@
+package org.gescobar.management;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestCounter {
+
+    @Test
+    public void shouldCountWithoutContention() throws Exception {
+	Counter counter = new Counter();
+	counter.increment();
+	counter.add(5);
+	counter.decrement();
+
+	Assert.assertEquals(counter.sum(), 5);
+	Assert.assertEquals(counter.sumThenReset(), 5);
+	Assert.assertEquals(counter.sum(), 0);
+    }
+
+    @Test
+    public void shouldNotLoseUpdatesOfManyThreads() throws Exception {
+	final Counter counter = new Counter();
+	final int threads = 8;
+	final int increments = 100000;
+	final CountDownLatch start = new CountDownLatch(1);
+
+	Thread[] workers = new Thread[threads];
+	for (int i = 0; i < threads; i++) {
+	    workers[i] = new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			start.await();
+		    } catch (InterruptedException e) {
+			return;
+		    }
+		    for (int j = 0; j < increments; j++) {
+			counter.increment();
+		    }
+		}
+	    });
+	    workers[i].start();
+	}
+	start.countDown();
+	for (Thread worker : workers) {
+	    worker.join();
+	}
+
+	Assert.assertEquals(counter.sum(), (long) threads * increments);
+	Assert.assertEquals(counter.sumThenReset(), (long) threads * increments);
+	Assert.assertEquals(counter.sum(), 0);
+
+	counter.add(3);
+	Assert.assertEquals(counter.longValue(), 3);
+	counter.reset();
+	Assert.assertEquals(counter.longValue(), 0);
+    }
+
+}
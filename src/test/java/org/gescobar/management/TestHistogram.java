@@ -0,0 +1,105 @@
+package org.gescobar.management;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.gescobar.management.util.IntervalReader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestHistogram {
+
+    @Test
+    public void shouldKeepTheValuesAfterASnapshot() throws Exception {
+	Histogram histogram = new Histogram();
+	for (int i = 1; i <= 100; i++) {
+	    histogram.record(i);
+	}
+
+	Histogram.Snapshot snapshot = histogram.snapshot();
+	Assert.assertEquals(snapshot.getCount(), 100);
+	Assert.assertEquals(snapshot.getMin(), 1);
+	Assert.assertEquals(snapshot.getMax(), 100);
+	Assert.assertEquals(snapshot.getMean(), 50.5);
+	Assert.assertTrue(Math.abs(snapshot.getValueAtQuantile(0.5) - 50) <= 2);
+
+	Assert.assertEquals(histogram.snapshot().getCount(), 100);
+    }
+
+    @Test
+    public void shouldComputeTheIntervalBetweenSnapshots() throws Exception {
+	Histogram histogram = new Histogram();
+	histogram.record(5);
+	Histogram.Snapshot first = histogram.snapshot();
+
+	histogram.record(1000);
+	histogram.record(2000);
+	Histogram.Snapshot interval = histogram.snapshot().since(first);
+
+	Assert.assertEquals(interval.getCount(), 2);
+	Assert.assertEquals(interval.getSum(), 3000);
+	// the bounds of the buckets of the interval, within 1/32 of the values
+	Assert.assertTrue(interval.getMin() >= 1000 - 1000 / 32 && interval.getMin() <= 1000);
+	Assert.assertEquals(interval.getMax(), 2000);
+
+	Histogram.Snapshot empty = histogram.snapshot().since(histogram.snapshot());
+	Assert.assertEquals(empty.getCount(), 0);
+	Assert.assertEquals(empty.getMin(), 0);
+	Assert.assertEquals(empty.getMax(), 0);
+    }
+
+    @Test
+    public void shouldGiveEachReaderItsOwnInterval() throws Exception {
+	Histogram histogram = new Histogram();
+	IntervalReader console = new IntervalReader();
+	IntervalReader scraper = new IntervalReader();
+
+	histogram.record(10);
+	Assert.assertEquals(console.interval(histogram).getCount(), 1);
+
+	histogram.record(20);
+	Assert.assertEquals(console.interval(histogram).getCount(), 1);
+	Assert.assertEquals(scraper.interval(histogram).getCount(), 2);
+	Assert.assertEquals(scraper.interval(histogram).getCount(), 0);
+    }
+
+    @Test
+    public void shouldNotLoseValuesOfManyThreads() throws Exception {
+	final Histogram histogram = new Histogram();
+	final int threads = 8;
+	final int values = 50000;
+	final CountDownLatch start = new CountDownLatch(1);
+
+	Thread[] workers = new Thread[threads];
+	for (int i = 0; i < threads; i++) {
+	    workers[i] = new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			start.await();
+		    } catch (InterruptedException e) {
+			return;
+		    }
+		    for (int j = 1; j <= values; j++) {
+			histogram.record(j);
+		    }
+		}
+	    });
+	    workers[i].start();
+	}
+	start.countDown();
+	for (Thread worker : workers) {
+	    worker.join();
+	}
+
+	Histogram.Snapshot snapshot = histogram.snapshot();
+	Assert.assertEquals(snapshot.getCount(), (long) threads * values);
+	Assert.assertEquals(snapshot.getMin(), 1);
+	Assert.assertEquals(snapshot.getMax(), values);
+	Assert.assertEquals(snapshot.getSum(), (long) threads * values * (values + 1) / 2);
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.gescobar.management;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestMeter {
+
+    @Test
+    public void shouldConvergeToASteadyRateWithFrequentReads() throws Exception {
+	assertSteadyRate(5);
+    }
+
+    @Test
+    public void shouldConvergeToASteadyRateWithReadsEveryMinute() throws Exception {
+	assertSteadyRate(60);
+    }
+
+    @Test
+    public void shouldConvergeToASteadyRateWithReadsEveryFiveMinutes() throws Exception {
+	assertSteadyRate(300);
+    }
+
+    @Test
+    public void shouldDecayWhenThereAreNoEvents() throws Exception {
+	FakeClock clock = new FakeClock();
+	Meter meter = new Meter(clock);
+
+	meter.mark(50);
+	clock.advance(5);
+	Assert.assertEquals(meter.getOneMinuteRate(), 10.0, 0.0001);
+
+	// a minute without events leaves 1/e of the one minute rate
+	clock.advance(60);
+	Assert.assertEquals(meter.getOneMinuteRate(), 10.0 / Math.E, 0.0001);
+	Assert.assertEquals(meter.getCount(), 50);
+    }
+
+    @Test
+    public void shouldNotTickBeforeAnInterval() throws Exception {
+	FakeClock clock = new FakeClock();
+	Meter meter = new Meter(clock);
+
+	meter.mark(10);
+	clock.advance(4);
+	Assert.assertEquals(meter.getOneMinuteRate(), 0.0);
+	Assert.assertEquals(meter.getCount(), 10);
+	Assert.assertEquals(meter.getMeanRate(), 2.5, 0.0001);
+    }
+
+    /**
+     * Marks 10 events per second for two hours, reading the rates every 
+     * readSeconds.
+     */
+    private static void assertSteadyRate(int readSeconds) {
+	FakeClock clock = new FakeClock();
+	Meter meter = new Meter(clock);
+
+	for (int elapsed = 0; elapsed < 7200; elapsed += readSeconds) {
+	    meter.mark(10 * readSeconds);
+	    clock.advance(readSeconds);
+	    meter.getOneMinuteRate();
+	}
+
+	Assert.assertEquals(meter.getOneMinuteRate(), 10.0, 0.01);
+	Assert.assertEquals(meter.getFiveMinuteRate(), 10.0, 0.01);
+	Assert.assertEquals(meter.getFifteenMinuteRate(), 10.0, 0.01);
+	Assert.assertEquals(meter.getMeanRate(), 10.0, 0.01);
+    }
+
+    private static class FakeClock implements Meter.Clock {
+
+	private long nanos = 1000;
+
+	void advance(int seconds) {
+	    nanos += TimeUnit.SECONDS.toNanos(seconds);
+	}
+
+	@Override
+	public long nanoTime() {
+	    return nanos;
+	}
+
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.gescobar.management.cdi;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.enterprise.inject.spi.AnnotatedType;
+import javax.management.MBeanInfo;
+
+import org.gescobar.management.util.AttributeAccessor;
+import org.gescobar.management.util.MBeanMetadata;
+import org.gescobar.management.util.MetadataCache;
+import org.gescobar.management.util.OperationInvoker;
+import org.gescobar.management.util.OperationTable;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestAbstractMBeanFactory {
+
+    @Test
+    public void shouldUseThePrecomputedMetadataForAProxy() throws Exception {
+	MetadataCache cache = AbstractMBeanFactory.getMetadataCache();
+	MBeanMetadata precomputed = new MBeanMetadata(new MBeanInfo(Bean.class.getName(), "", null, null, null, null), 
+		new AttributeAccessor[0], new OperationTable(new OperationInvoker[0]));
+	cache.putIfAbsent(Bean.class, precomputed);
+	try {
+	    // a subclass, as the proxies of the container
+	    Bean proxy = new Bean() {};
+	    AbstractMBeanFactory mBeanFactory = new AbstractMBeanFactory() {
+		@Override
+		protected AnnotatedType<? extends Object> getAnnotatedType(Object instance) throws Exception {
+		    return annotatedType(Bean.class);
+		}
+	    };
+
+	    Assert.assertSame(mBeanFactory.getMetadata(proxy), precomputed);
+	    Assert.assertSame(cache.get(proxy.getClass()), precomputed);
+	    Assert.assertSame(mBeanFactory.getMetadata(proxy), precomputed);
+	} finally {
+	    cache.remove(Bean.class);
+	}
+    }
+
+    /**
+     * @return an AnnotatedType that only knows its class, so the metadata can't be 
+     * built from it.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> AnnotatedType<T> annotatedType(final Class<T> type) {
+	return (AnnotatedType<T>) Proxy.newProxyInstance(TestAbstractMBeanFactory.class.getClassLoader(), 
+		new Class<?>[] { AnnotatedType.class }, new InvocationHandler() {
+		    @Override
+		    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("getJavaClass")) {
+			    return type;
+			}
+
+			throw new UnsupportedOperationException(method.getName());
+		    }
+		});
+    }
+
+    public static class Bean {
+
+    }
+
+}
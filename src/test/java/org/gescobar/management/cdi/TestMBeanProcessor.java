@@ -0,0 +1,285 @@
+package org.gescobar.management.cdi;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.enterprise.inject.spi.AnnotatedConstructor;
+import javax.enterprise.inject.spi.AnnotatedField;
+import javax.enterprise.inject.spi.AnnotatedMethod;
+import javax.enterprise.inject.spi.AnnotatedParameter;
+import javax.enterprise.inject.spi.AnnotatedType;
+import javax.management.Attribute;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.gescobar.management.util.MBeanImpl;
+import org.gescobar.management.util.MBeanMetadata;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ * Compiles a class with the {@link org.gescobar.management.apt.MBeanProcessor} and
+ * checks that the generated metadata exposes the same attributes and operations, 
+ * with the same values, as the reflective one.
+ */
+public class TestMBeanProcessor {
+
+    private static final String SOURCE = 
+	"package sample;\n" +
+	"import org.gescobar.management.*;\n" +
+	"class Base {\n" +
+	"    @ManagedAttribute protected double ratio = 0.5;\n" +
+	"    @ManagedAttribute private int inherited = 7;\n" +
+	"}\n" +
+	"@MBean(\"sample:type=Sample\")\n" +
+	"public class Sample extends Base {\n" +
+	"    @ManagedAttribute public int visible = 1;\n" +
+	"    @ManagedAttribute private long hidden = 2;\n" +
+	"    @ManagedAttribute(writable=false) private String readOnly = \"first\";\n" +
+	"    @ManagedAttribute(readable=false) String writeOnly = \"second\";\n" +
+	"    @ManagedAttribute private final StringBuilder builder = new StringBuilder(\"third\");\n" +
+	"    @ManagedAttribute private boolean enabled = true;\n" +
+	"    @ManagedAttribute private int counted = 3;\n" +
+	"    public int getCounted() { return counted * 10; }\n" +
+	"    public void setCounted(int counted) { this.counted = counted * 10; }\n" +
+	"    public boolean isEnabled() { return !enabled; }\n" +
+	"    @ManagedOperation public int add(int a, int b) { return a + b; }\n" +
+	"    @ManagedOperation public long add(long a) { return a + hidden; }\n" +
+	"    @ManagedOperation(impact=Impact.ACTION) public void reset() { visible = 0; }\n" +
+	"}\n";
+
+    @Test
+    public void shouldGenerateTheSameMetadataAsTheReflectiveBuilders() throws Exception {
+	Class<?> type = compile();
+
+	MBeanMetadata generated = AbstractMBeanFactory.loadGeneratedMetadata(type);
+	Assert.assertNotNull(generated, "the processor skipped the class");
+	MBeanMetadata reflective = AbstractMBeanFactory.buildMetadata(annotatedType(type));
+
+	Map<String,MBeanAttributeInfo> generatedAttributes = attributes(generated);
+	Map<String,MBeanAttributeInfo> reflectiveAttributes = attributes(reflective);
+	Assert.assertEquals(generatedAttributes.keySet(), reflectiveAttributes.keySet());
+	for (MBeanAttributeInfo info : generatedAttributes.values()) {
+	    MBeanAttributeInfo other = reflectiveAttributes.get(info.getName());
+	    Assert.assertEquals(info.getType(), other.getType(), info.getName());
+	    Assert.assertEquals(info.isReadable(), other.isReadable(), info.getName());
+	    Assert.assertEquals(info.isWritable(), other.isWritable(), info.getName());
+	    Assert.assertEquals(info.isIs(), other.isIs(), info.getName());
+	}
+	Assert.assertEquals(operations(generated), operations(reflective));
+
+	MBeanImpl<Object> generatedMBean = generated.createMBean(type.newInstance());
+	MBeanImpl<Object> reflectiveMBean = reflective.createMBean(type.newInstance());
+
+	// the fields are read and written, not their getters and setters
+	for (String name : generatedAttributes.keySet()) {
+	    Assert.assertEquals(string(generatedMBean.getAttribute(name)), string(reflectiveMBean.getAttribute(name)), name);
+	}
+	Assert.assertEquals(generatedMBean.getAttribute("counted"), 3);
+	Assert.assertEquals(generatedMBean.getAttribute("enabled"), true);
+	Assert.assertEquals(generatedMBean.getAttribute("inherited"), 7);
+
+	Object[][] values = new Object[][] { { "visible", 10 }, { "hidden", 20L }, { "writeOnly", "changed" }, 
+		{ "counted", 30 }, { "ratio", 0.25 }, { "inherited", 70 }, { "builder", new StringBuilder("changed") } };
+	for (Object[] value : values) {
+	    Attribute attribute = new Attribute((String) value[0], value[1]);
+	    generatedMBean.setAttribute(attribute);
+	    reflectiveMBean.setAttribute(attribute);
+	    Assert.assertEquals(string(generatedMBean.getAttribute(attribute.getName())), 
+		    string(reflectiveMBean.getAttribute(attribute.getName())), attribute.getName());
+	}
+	Assert.assertEquals(generatedMBean.getAttribute("counted"), 30);
+
+	Assert.assertEquals(generatedMBean.invoke("add", new Object[] { 1, 2 }, new String[] { "int", "int" }), 3);
+	Assert.assertEquals(generatedMBean.invoke("add", new Object[] { 1L }, new String[] { "long" }), 
+		reflectiveMBean.invoke("add", new Object[] { 1L }, new String[] { "long" }));
+    }
+
+    private Class<?> compile() throws Exception {
+	File dir = File.createTempFile("processor", "");
+	dir.delete();
+	File sourceDir = new File(dir, "sample");
+	sourceDir.mkdirs();
+
+	File source = new File(sourceDir, "Sample.java");
+	Writer writer = new FileWriter(source);
+	try {
+	    writer.write(SOURCE);
+	} finally {
+	    writer.close();
+	}
+
+	JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+	int result = compiler.run(null, null, null, "-classpath", System.getProperty("java.class.path"), 
+		"-processor", "org.gescobar.management.apt.MBeanProcessor", "-d", dir.getPath(), source.getPath());
+	Assert.assertEquals(result, 0);
+
+	ClassLoader classLoader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, getClass().getClassLoader());
+	return Class.forName("sample.Sample", true, classLoader);
+    }
+
+    private static Map<String,MBeanAttributeInfo> attributes(MBeanMetadata metadata) {
+	Map<String,MBeanAttributeInfo> attributes = new TreeMap<String,MBeanAttributeInfo>();
+	for (MBeanAttributeInfo info : metadata.getMBeanInfo().getAttributes()) {
+	    attributes.put(info.getName(), info);
+	}
+
+	return attributes;
+    }
+
+    private static Set<String> operations(MBeanMetadata metadata) {
+	Set<String> operations = new HashSet<String>();
+	for (MBeanOperationInfo info : metadata.getMBeanInfo().getOperations()) {
+	    StringBuilder sb = new StringBuilder(info.getReturnType()).append(' ').append(info.getName()).append('(');
+	    for (MBeanParameterInfo parameter : info.getSignature()) {
+		sb.append(parameter.getType()).append(',');
+	    }
+	    operations.add(sb.append(") ").append(info.getImpact()).toString());
+	}
+
+	return operations;
+    }
+
+    private static String string(Object value) {
+	return value == null ? null : value.toString();
+    }
+
+    /**
+     * @return an AnnotatedType that reads the annotations of the class and its 
+     * members with reflection, as the container does.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> AnnotatedType<T> annotatedType(Class<T> type) {
+	Set<Object> fields = new HashSet<Object>();
+	Set<Object> methods = new HashSet<Object>();
+	for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+	    for (Field field : c.getDeclaredFields()) {
+		fields.add(annotated(AnnotatedField.class, field, field));
+	    }
+	    for (Method method : c.getDeclaredMethods()) {
+		methods.add(annotated(AnnotatedMethod.class, method, method));
+	    }
+	}
+	Set<Object> constructors = new HashSet<Object>();
+	for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+	    constructors.add(annotated(AnnotatedConstructor.class, constructor, constructor));
+	}
+
+	return annotated(AnnotatedType.class, type, type, "getFields", fields, "getMethods", methods, 
+		"getConstructors", constructors);
+    }
+
+    /**
+     * Creates a proxy of an Annotated interface whose annotations are those of the 
+     * element. The values of other methods are passed as name and value pairs.
+     */
+    @SuppressWarnings("rawtypes")
+    private static <A> A annotated(Class<A> annotatedType, final AnnotatedElement element, final Object subject, 
+	    Object... values) {
+	final Map<String,Object> results = new TreeMap<String,Object>();
+	for (int i = 0; i < values.length; i += 2) {
+	    results.put((String) values[i], values[i + 1]);
+	}
+
+	InvocationHandler handler = new InvocationHandler() {
+	    @Override
+	    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if (results.containsKey(name)) {
+		    return results.get(name);
+		} else if (name.equals("getAnnotation")) {
+		    return element.getAnnotation((Class<? extends Annotation>) args[0]);
+		} else if (name.equals("isAnnotationPresent")) {
+		    return element.isAnnotationPresent((Class<? extends Annotation>) args[0]);
+		} else if (name.equals("getAnnotations")) {
+		    return new HashSet<Annotation>(Arrays.asList(element.getAnnotations()));
+		} else if (name.equals("getJavaClass") || name.equals("getJavaMember")) {
+		    return subject;
+		} else if (name.equals("isStatic")) {
+		    return Modifier.isStatic(((Member) subject).getModifiers());
+		} else if (name.equals("getParameters")) {
+		    return parameters(proxy, subject);
+		} else if (name.equals("hashCode")) {
+		    return System.identityHashCode(proxy);
+		} else if (name.equals("equals")) {
+		    return proxy == args[0];
+		} else if (name.equals("toString")) {
+		    return subject.toString();
+		}
+
+		throw new UnsupportedOperationException(name);
+	    }
+	};
+
+	return annotatedType.cast(Proxy.newProxyInstance(TestMBeanProcessor.class.getClassLoader(), 
+		new Class<?>[] { annotatedType }, handler));
+    }
+
+    private static List<Object> parameters(Object callable, Object subject) {
+	Class<?>[] types = subject instanceof Method ? ((Method) subject).getParameterTypes() 
+		: ((Constructor<?>) subject).getParameterTypes();
+	final Annotation[][] annotations = subject instanceof Method ? ((Method) subject).getParameterAnnotations() 
+		: ((Constructor<?>) subject).getParameterAnnotations();
+
+	List<Object> parameters = new ArrayList<Object>();
+	for (int i = 0; i < types.length; i++) {
+	    final Annotation[] parameterAnnotations = annotations[i];
+	    AnnotatedElement element = new AnnotatedElement() {
+		@Override
+		public <A extends Annotation> A getAnnotation(Class<A> annotationClass) {
+		    for (Annotation annotation : parameterAnnotations) {
+			if (annotationClass.isInstance(annotation)) {
+			    return annotationClass.cast(annotation);
+			}
+		    }
+		    return null;
+		}
+
+		@Override
+		public boolean isAnnotationPresent(Class<? extends Annotation> annotationClass) {
+		    return getAnnotation(annotationClass) != null;
+		}
+
+		@Override
+		public Annotation[] getAnnotations() {
+		    return parameterAnnotations;
+		}
+
+		@Override
+		public Annotation[] getDeclaredAnnotations() {
+		    return parameterAnnotations;
+		}
+	    };
+	    parameters.add(annotated(AnnotatedParameter.class, element, types[i], "getPosition", i, 
+		    "getDeclaringCallable", callable, "getBaseType", types[i]));
+	}
+
+	return Collections.unmodifiableList(parameters);
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.gescobar.management.cdi;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.enterprise.inject.spi.AnnotatedType;
+import javax.enterprise.inject.spi.InjectionTarget;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.gescobar.management.MBean;
+import org.gescobar.management.util.AggregateMBean;
+import org.gescobar.management.util.AttributeAccessor;
+import org.gescobar.management.util.MBeanMetadata;
+import org.gescobar.management.util.MBeanServerLocator;
+import org.gescobar.management.util.MetadataCache;
+import org.gescobar.management.util.OperationInvoker;
+import org.gescobar.management.util.OperationTable;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestManagementInjectionTarget {
+
+    @Test
+    public void shouldRegisterTheAggregateMBeanOnceAndUnregisterItOnShutdown() throws Exception {
+	MetadataCache cache = AbstractMBeanFactory.getMetadataCache();
+	cache.putIfAbsent(Aggregated.class, new MBeanMetadata(new MBeanInfo(Aggregated.class.getName(), "", null, 
+		null, null, null), new AttributeAccessor[0], new OperationTable(new OperationInvoker[0])));
+
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName objectName = new ObjectName("org.gescobar.management.test:type=Aggregated");
+	try {
+	    // the metadata is taken from the cache, the AnnotatedType can't build it
+	    ManagementInjectionTarget<Aggregated> target = new ManagementInjectionTarget<Aggregated>(
+		    annotatedType(Aggregated.class), delegate(Aggregated.class));
+	    Assert.assertTrue(target.isAggregate());
+
+	    target.postConstruct(new Aggregated());
+	    target.postConstruct(new Aggregated());
+	    Assert.assertTrue(mBeanServer.isRegistered(objectName));
+	    Assert.assertEquals(mBeanServer.getAttribute(objectName, AggregateMBean.INSTANCE_COUNT), 2);
+
+	    target.unregisterAggregateMBean();
+	    Assert.assertFalse(mBeanServer.isRegistered(objectName));
+	} finally {
+	    cache.remove(Aggregated.class);
+	    if (mBeanServer.isRegistered(objectName)) {
+		mBeanServer.unregisterMBean(objectName);
+	    }
+	}
+    }
+
+    /**
+     * @return an AnnotatedType that only knows its class and its annotations.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> AnnotatedType<T> annotatedType(final Class<T> type) {
+	return (AnnotatedType<T>) Proxy.newProxyInstance(TestManagementInjectionTarget.class.getClassLoader(), 
+		new Class<?>[] { AnnotatedType.class }, new InvocationHandler() {
+		    @Override
+		    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("getJavaClass")) {
+			    return type;
+			}
+			if (method.getName().equals("getAnnotation")) {
+			    return type.getAnnotation((Class<? extends Annotation>) args[0]);
+			}
+			if (method.getName().equals("isAnnotationPresent")) {
+			    return type.isAnnotationPresent((Class<? extends Annotation>) args[0]);
+			}
+
+			throw new UnsupportedOperationException(method.getName());
+		    }
+		});
+    }
+
+    /**
+     * @return an InjectionTarget that does nothing.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> InjectionTarget<T> delegate(Class<T> type) {
+	return (InjectionTarget<T>) Proxy.newProxyInstance(TestManagementInjectionTarget.class.getClassLoader(), 
+		new Class<?>[] { InjectionTarget.class }, new InvocationHandler() {
+		    @Override
+		    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			return null;
+		    }
+		});
+    }
+
+    @MBean(value="org.gescobar.management.test:type=Aggregated", aggregate=true)
+    public static class Aggregated {
+
+    }
+
+}
@@ -0,0 +1,19 @@
+package org.gescobar.management.test;
+
+import javax.enterprise.context.Dependent;
+
+import org.gescobar.management.Counter;
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedCounter;
+
+@Dependent
+@MBean(value="org.gescobar:type=CounterAggregate", aggregate=true)
+public class CounterAggregate {
+
+    @ManagedCounter
+    private Counter hits = new Counter();
+
+    public void hit() {
+	hits.increment();
+    }
+}
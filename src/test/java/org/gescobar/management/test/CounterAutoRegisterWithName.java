@@ -23,6 +23,11 @@ public class CounterAutoRegisterWithName {
     public void resetCounter2(int value) {
 	counter = value;
     }
+    
+    @ManagedOperation(impact=Impact.ACTION)
+    public void resetCounter2(int value, int multiplier) {
+	counter = value * multiplier;
+    }
 
     public int getCounter() {
         return counter;
@@ -0,0 +1,79 @@
+package org.gescobar.management.test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.gescobar.management.Counter;
+import org.gescobar.management.GaugeThreshold;
+import org.gescobar.management.Histogram;
+import org.gescobar.management.Meter;
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedAttribute;
+import org.gescobar.management.ManagedCounter;
+import org.gescobar.management.ManagedHistogram;
+import org.gescobar.management.ManagedMeter;
+import org.gescobar.management.ManagedNotification;
+import org.gescobar.management.Notifier;
+import org.gescobar.management.Timed;
+
+@ApplicationScoped
+@MBean("org.gescobar:type=CounterManaged")
+@ManagedNotification(types="org.gescobar.alert", description="Sent by alert")
+public class CounterManaged {
+
+    @ManagedCounter(resettable=true)
+    private Counter requests = new Counter();
+
+    @ManagedCounter
+    private AtomicLong errors = new AtomicLong();
+
+    @ManagedHistogram
+    private Histogram latency = new Histogram();
+
+    @ManagedMeter
+    private Meter throughput = new Meter();
+
+    @Inject
+    private Notifier notifier;
+
+    @ManagedAttribute(writable=false)
+    @GaugeThreshold(high=100, low=10)
+    private volatile int load;
+
+    public void request() {
+	requests.increment();
+    }
+
+    public void record(long time) {
+	latency.record(time);
+    }
+
+    @Timed
+    public long process() {
+	throughput.mark();
+	return requests.sum();
+    }
+
+    public void alert(String message) {
+	notifier.send("org.gescobar.alert", message);
+    }
+
+    public void setLoad(int load) {
+	this.load = load;
+    }
+
+    public void error() {
+	errors.incrementAndGet();
+    }
+
+    @ManagedAttribute(cacheMillis=60000)
+    public long getSnapshotTime() {
+	return System.nanoTime();
+    }
+
+    public long getRequests() {
+	return requests.sum();
+    }
+}
@@ -0,0 +1,35 @@
+package org.gescobar.management.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedAttribute;
+
+@ApplicationScoped
+@MBean(value="org.gescobar:type=CounterOpenTypes", openTypes=true)
+public class CounterOpenTypes {
+
+    @ManagedAttribute
+    private TimeUnit unit = TimeUnit.SECONDS;
+    
+    @ManagedAttribute
+    private List<String> names = Arrays.asList("first", "second");
+    
+    @ManagedAttribute
+    private Map<String,Integer> sizes = new TreeMap<String,Integer>();
+    
+    public CounterOpenTypes() {
+	sizes.put("small", 1);
+	sizes.put("large", 100);
+    }
+
+    public TimeUnit getUnit() {
+	return unit;
+    }
+}
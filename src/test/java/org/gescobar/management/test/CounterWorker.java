@@ -0,0 +1,20 @@
+package org.gescobar.management.test;
+
+import javax.enterprise.context.Dependent;
+
+import org.gescobar.management.MBean;
+import org.gescobar.management.ManagedAttribute;
+
+@Dependent
+@MBean("org.gescobar:type=CounterWorker,pool={pool},id={#}")
+public class CounterWorker {
+
+    private String pool = "default";
+
+    @ManagedAttribute
+    private int jobs;
+
+    public void job() {
+	jobs++;
+    }
+}
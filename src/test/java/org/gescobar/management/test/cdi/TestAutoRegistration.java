@@ -1,22 +1,41 @@
 package org.gescobar.management.test.cdi;
 
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Inject;
 import javax.management.Attribute;
+import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationFilterSupport;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.OpenMBeanAttributeInfo;
+import javax.management.openmbean.TabularData;
 
 import org.gescobar.management.MBeanFactory;
 import org.gescobar.management.cdi.CDIMBeanFactory;
+import org.gescobar.management.test.CounterAggregate;
 import org.gescobar.management.test.CounterAutoRegisterNoName;
 import org.gescobar.management.test.CounterAutoRegisterWithName;
+import org.gescobar.management.test.CounterLazy;
+import org.gescobar.management.test.CounterManaged;
+import org.gescobar.management.test.CounterOpenTypes;
+import org.gescobar.management.test.CounterWorker;
+import org.gescobar.management.util.Statistics;
+import org.gescobar.management.util.ThresholdSampler;
 import org.gescobar.management.util.MBeanServerLocator;
 import org.jboss.arquillian.api.Deployment;
 import org.jboss.arquillian.testng.Arquillian;
-import org.jboss.shrinkwrap.api.ArchivePaths;
 import org.jboss.shrinkwrap.api.ShrinkWrap;
-import org.jboss.shrinkwrap.api.asset.EmptyAsset;
 import org.jboss.shrinkwrap.api.spec.JavaArchive;
 import org.testng.Assert;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 
 /**
@@ -32,10 +51,11 @@ public class TestAutoRegistration extends Arquillian {
 		.addPackage(MBeanFactory.class.getPackage()) 
 		.addPackage(CDIMBeanFactory.class.getPackage())
 		.addPackage(MBeanServerLocator.class.getPackage())
-		.addClasses(CounterAutoRegisterWithName.class, CounterAutoRegisterNoName.class)
+		.addClasses(CounterAutoRegisterWithName.class, CounterAutoRegisterNoName.class, CounterLazy.class, 
+			CounterManaged.class, CounterAggregate.class, CounterWorker.class, CounterOpenTypes.class)
 		.addManifestResource("META-INF/services/javax.enterprise.inject.spi.Extension", 
 			"services/javax.enterprise.inject.spi.Extension")
-		.addManifestResource(EmptyAsset.INSTANCE, ArchivePaths.create("beans.xml"));
+		.addManifestResource("timed-beans.xml", "beans.xml");
 	
 	return archive;
     }
@@ -45,6 +65,27 @@ public class TestAutoRegistration extends Arquillian {
     
     @Inject
     private CounterAutoRegisterNoName counterNoName;
+    
+    @Inject
+    private CounterLazy counterLazy;
+    
+    @Inject
+    private CounterManaged counterManaged;
+    
+    @Inject
+    private CounterAggregate aggregate1;
+    
+    @Inject
+    private CounterAggregate aggregate2;
+    
+    @Inject
+    private CounterWorker worker1;
+    
+    @Inject
+    private CounterWorker worker2;
+    
+    @Inject
+    private CounterOpenTypes counterOpenTypes;
 
     @Test
     public void shouldRegisterAnnotatedWithNameMBean() throws Exception {
@@ -73,6 +114,56 @@ public class TestAutoRegistration extends Arquillian {
 	Assert.assertEquals(counterWithName.getCounter(), 5);
     }
     
+    @Test(expectedExceptions=ReflectionException.class)
+    public void shouldFailWithUnknownSignature() throws Exception {
+	Assert.assertNotNull(counterWithName);
+	
+	// the bean is not created until the first call
+	counterWithName.getCounter();
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterAutoRegisterWithName");
+	
+	// the operation exists but there is no overload that receives a String
+	mBeanServer.invoke(name, "resetCounter2", new Object[] { "5" }, new String[] { "java.lang.String" });
+    }
+    
+    @Test
+    public void shouldSelectTheOverloadOfTheSignature() throws Exception {
+	// the bean is not created until the first call
+	counterWithName.getCounter();
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterAutoRegisterWithName");
+	
+	// exact match of the declared signatures
+	mBeanServer.invoke(name, "resetCounter2", new Object[] { 5 }, new String[] { "int" });
+	Assert.assertEquals(counterWithName.getCounter(), 5);
+	mBeanServer.invoke(name, "resetCounter2", new Object[] { 5, 3 }, new String[] { "int", "int" });
+	Assert.assertEquals(counterWithName.getCounter(), 15);
+	
+	// the wrapper class names are accepted for the primitive parameters
+	mBeanServer.invoke(name, "resetCounter2", new Object[] { 2, 4 }, 
+		new String[] { "java.lang.Integer", "java.lang.Integer" });
+	Assert.assertEquals(counterWithName.getCounter(), 8);
+	
+	// a null signature selects the only overload
+	mBeanServer.invoke(name, "resetCounter", null, null);
+	Assert.assertEquals(counterWithName.getCounter(), 0);
+    }
+    
+    @Test(expectedExceptions=ReflectionException.class)
+    public void shouldFailWithANullSignatureAndOverloads() throws Exception {
+	// the bean is not created until the first call
+	counterWithName.getCounter();
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterAutoRegisterWithName");
+	
+	// resetCounter2 has two overloads, none without parameters
+	mBeanServer.invoke(name, "resetCounter2", new Object[] { 5 }, null);
+    }
+    
     @Test
     public void shouldRegisterAnnotatedWithNoNameMBean() throws Exception {
 	Assert.assertNotNull(counterNoName);
@@ -84,4 +175,297 @@ public class TestAutoRegistration extends Arquillian {
 	
 	Assert.assertNotNull(result);
     }
+    
+    @Test
+    public void shouldRegisterLazyMBean() throws Exception {
+	Assert.assertNotNull(counterLazy);
+	
+	Assert.assertEquals(counterLazy.getCounter(), 0);
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterLazy");
+	
+	// the first access creates the real MBean
+	Assert.assertEquals(mBeanServer.getMBeanInfo(name).getAttributes().length, 1);
+	
+	mBeanServer.setAttribute(name, new Attribute("counter", 3));
+	Assert.assertEquals(counterLazy.getCounter(), 3);
+    }
+    
+    @Test
+    public void shouldExposeManagedCounters() throws Exception {
+	Assert.assertNotNull(counterManaged);
+	
+	counterManaged.request();
+	counterManaged.request();
+	counterManaged.error();
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterManaged");
+	
+	Assert.assertEquals(mBeanServer.getAttribute(name, "requests"), 2L);
+	Assert.assertEquals(mBeanServer.getAttribute(name, "errors"), 1L);
+	
+	// only the requests counter is resettable
+	mBeanServer.invoke(name, "resetRequests", null, null);
+	Assert.assertEquals(counterManaged.getRequests(), 0L);
+    }
+    
+    @Test
+    public void shouldExposeManagedHistograms() throws Exception {
+	Assert.assertNotNull(counterManaged);
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterManaged");
+	
+	// start a new interval
+	mBeanServer.getAttribute(name, "latency");
+	
+	for (int i = 1; i <= 100; i++) {
+	    counterManaged.record(i);
+	}
+	
+	CompositeData latency = (CompositeData) mBeanServer.getAttribute(name, "latency");
+	Assert.assertEquals(latency.get("count"), 100L);
+	Assert.assertEquals(latency.get("min"), 1L);
+	Assert.assertEquals(latency.get("max"), 100L);
+	Assert.assertEquals(latency.get("mean"), 50.5);
+	
+	// each read returns the values recorded since the previous one
+	latency = (CompositeData) mBeanServer.getAttribute(name, "latency");
+	Assert.assertEquals(latency.get("count"), 0L);
+    }
+    
+    @Test
+    public void shouldExposeTimedMethods() throws Exception {
+	Assert.assertNotNull(counterManaged);
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterManaged");
+	
+	// start a new interval
+	mBeanServer.getAttribute(name, "processTiming");
+	
+	counterManaged.process();
+	counterManaged.process();
+	
+	CompositeData timing = (CompositeData) mBeanServer.getAttribute(name, "processTiming");
+	Assert.assertEquals(timing.get("count"), 2L);
+	Assert.assertEquals(timing.get("errors"), 0L);
+    }
+    
+    @Test
+    public void shouldExposeManagedMeters() throws Exception {
+	Assert.assertNotNull(counterManaged);
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterManaged");
+	
+	long count = (Long) mBeanServer.getAttribute(name, "throughputCount");
+	
+	counterManaged.process();
+	counterManaged.process();
+	
+	Assert.assertEquals(mBeanServer.getAttribute(name, "throughputCount"), count + 2);
+	Assert.assertTrue((Double) mBeanServer.getAttribute(name, "throughputMeanRate") > 0);
+	Assert.assertNotNull(mBeanServer.getAttribute(name, "throughputOneMinuteRate"));
+    }
+    
+    @Test
+    public void shouldCacheGetterAttributes() throws Exception {
+	Assert.assertNotNull(counterManaged);
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterManaged");
+	
+	Object snapshotTime = mBeanServer.getAttribute(name, "snapshotTime");
+	
+	// the value is reused for a minute
+	Assert.assertEquals(mBeanServer.getAttribute(name, "snapshotTime"), snapshotTime);
+    }
+    
+    @Test
+    public void shouldSendNotifications() throws Exception {
+	Assert.assertNotNull(counterManaged);
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterManaged");
+	
+	// the alerts and the threshold crossings
+	Assert.assertEquals(mBeanServer.getMBeanInfo(name).getNotifications().length, 2);
+	
+	final BlockingQueue<Notification> received = new LinkedBlockingQueue<Notification>();
+	NotificationListener listener = new NotificationListener() {
+	    @Override
+	    public void handleNotification(Notification notification, Object handback) {
+		received.add(notification);
+	    }
+	};
+	
+	NotificationFilterSupport filter = new NotificationFilterSupport();
+	filter.enableType("org.gescobar.alert");
+	
+	mBeanServer.addNotificationListener(name, listener, filter, null);
+	try {
+	    counterManaged.alert("disk full");
+	    
+	    // the notifications are delivered on another thread
+	    Notification notification = received.poll(5, TimeUnit.SECONDS);
+	    Assert.assertNotNull(notification);
+	    Assert.assertEquals(notification.getType(), "org.gescobar.alert");
+	    Assert.assertEquals(notification.getMessage(), "disk full");
+	    Assert.assertEquals(notification.getSource(), name);
+	} finally {
+	    mBeanServer.removeNotificationListener(name, listener);
+	}
+    }
+    
+    @Test
+    public void shouldNotifyThresholdCrossings() throws Exception {
+	Assert.assertNotNull(counterManaged);
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterManaged");
+	
+	final BlockingQueue<Notification> received = new LinkedBlockingQueue<Notification>();
+	NotificationListener listener = new NotificationListener() {
+	    @Override
+	    public void handleNotification(Notification notification, Object handback) {
+		received.add(notification);
+	    }
+	};
+	
+	NotificationFilterSupport filter = new NotificationFilterSupport();
+	filter.enableType("jmx.monitor.gauge");
+	
+	mBeanServer.addNotificationListener(name, listener, filter, null);
+	try {
+	    // the attribute is sampled every second
+	    counterManaged.setLoad(150);
+	    Notification notification = received.poll(5, TimeUnit.SECONDS);
+	    Assert.assertNotNull(notification);
+	    Assert.assertEquals(notification.getType(), ThresholdSampler.HIGH_TYPE);
+	    Assert.assertEquals(notification.getUserData(), 150.0);
+	    
+	    // no notification until it falls to the low threshold
+	    counterManaged.setLoad(50);
+	    Assert.assertNull(received.poll(2, TimeUnit.SECONDS));
+	    
+	    counterManaged.setLoad(0);
+	    notification = received.poll(5, TimeUnit.SECONDS);
+	    Assert.assertNotNull(notification);
+	    Assert.assertEquals(notification.getType(), ThresholdSampler.LOW_TYPE);
+	} finally {
+	    mBeanServer.removeNotificationListener(name, listener);
+	}
+    }
+    
+    @Test
+    public void shouldAggregateInstances() throws Exception {
+	Assert.assertNotNull(aggregate1);
+	Assert.assertNotNull(aggregate2);
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterAggregate");
+	
+	aggregate1.hit();
+	aggregate2.hit();
+	aggregate2.hit();
+	
+	// a single MBean for all the instances, the other ones have no hits
+	Assert.assertTrue((Integer) mBeanServer.getAttribute(name, "InstanceCount") >= 2);
+	Assert.assertEquals(mBeanServer.getAttribute(name, "hitsSum"), 3L);
+	Assert.assertEquals(mBeanServer.getAttribute(name, "hitsMax"), 2L);
+    }
+    
+    @Test
+    public void shouldRegisterAnMBeanPerInstance() throws Exception {
+	Assert.assertNotNull(worker1);
+	Assert.assertNotNull(worker2);
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	
+	// the names are filled with the pool field and a sequence number
+	Set<ObjectName> names = mBeanServer.queryNames(new ObjectName("org.gescobar:type=CounterWorker,pool=default,*"), null);
+	Assert.assertTrue(names.size() >= 2);
+	for (ObjectName name : names) {
+	    Assert.assertNotNull(name.getKeyProperty("id"));
+	}
+    }
+    
+    @Test
+    public void shouldCountTheCallsInTheStatistics() throws Exception {
+	requireStatistics();
+	
+	// the bean is not created until the first call
+	counterWithName.getCounter();
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterAutoRegisterWithName");
+	ObjectName statistics = new ObjectName(Statistics.OBJECT_NAME);
+	Assert.assertTrue(mBeanServer.isRegistered(statistics));
+	
+	TabularData before = (TabularData) mBeanServer.getAttribute(statistics, "Beans");
+	long count = (Long) before.get(new Object[] { name.getCanonicalName() }).get("getAttributeCount");
+	
+	mBeanServer.getAttribute(name, "counter");
+	mBeanServer.getAttribute(name, "counter");
+	
+	TabularData after = (TabularData) mBeanServer.getAttribute(statistics, "Beans");
+	CompositeData row = after.get(new Object[] { name.getCanonicalName() });
+	Assert.assertEquals(((Long) row.get("getAttributeCount")).longValue(), count + 2);
+	Assert.assertTrue((Long) ((CompositeData) row.get("getAttributeLatency")).get("count") >= 2);
+    }
+    
+    @Test
+    public void shouldProfileTheBootOfTheMBeanClasses() throws Exception {
+	requireStatistics();
+	
+	counterWithName.getCounter();
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	TabularData profile = (TabularData) mBeanServer.invoke(new ObjectName(Statistics.OBJECT_NAME), "bootProfile",
+		new Object[] { Integer.MAX_VALUE }, new String[] { int.class.getName() });
+	
+	CompositeData row = null;
+	for (Object value : profile.values()) {
+	    CompositeData candidate = (CompositeData) value;
+	    if (CounterAutoRegisterWithName.class.getName().equals(candidate.get("type"))) {
+		row = candidate;
+	    }
+	}
+	Assert.assertNotNull(row);
+	Assert.assertTrue((Long) row.get("registrations") >= 1);
+	Assert.assertTrue((Double) row.get("totalMillis") > 0);
+    }
+    
+    @Test
+    public void shouldExposeOpenTypes() throws Exception {
+	// the bean is not created until the first call
+	counterOpenTypes.getUnit();
+	
+	MBeanServer mBeanServer = MBeanServerLocator.instance().getmBeanServer();
+	ObjectName name = new ObjectName("org.gescobar:type=CounterOpenTypes");
+	
+	for (MBeanAttributeInfo attributeInfo : mBeanServer.getMBeanInfo(name).getAttributes()) {
+	    Assert.assertTrue(attributeInfo instanceof OpenMBeanAttributeInfo);
+	}
+	
+	Assert.assertEquals(mBeanServer.getAttribute(name, "unit"), "SECONDS");
+	Assert.assertEquals((String[]) mBeanServer.getAttribute(name, "names"), new String[] { "first", "second" });
+	TabularData sizes = (TabularData) mBeanServer.getAttribute(name, "sizes");
+	Assert.assertEquals(sizes.get(new Object[] { "large" }).get("value"), 100);
+	
+	mBeanServer.setAttribute(name, new Attribute("unit", "MINUTES"));
+	Assert.assertEquals(counterOpenTypes.getUnit(), TimeUnit.MINUTES);
+    }
+    
+    /**
+     * The statistics are off by default, the container has to be started with them on.
+     */
+    private static void requireStatistics() {
+	if (!Statistics.ENABLED) {
+	    throw new SkipException("start the container with -D" + Statistics.PROPERTY + "=true");
+	}
+    }
 }
@@ -0,0 +1,292 @@
+package org.gescobar.management.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.AttributeChangeNotification;
+import javax.management.InstanceNotFoundException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerFactory;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.NotificationFilterSupport;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.Query;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ * Runs the same calls against the {@link IndexedMBeanServer} and the MBeanServer of
+ * the JDK and expects the same results.
+ */
+public class TestIndexedMBeanServer {
+
+    private static final String[] NAMES = new String[] { 
+	"a:type=X,id=1", "a:type=X,id=2", "a:type=X,id=10", "a:type=Y,id=1", "a:type=Y,id=2,pool=p1", 
+	"ab:type=X,id=1", "b:type=X,id=1", "b:type=Z", "DefaultDomain:type=X,id=3", "c:name=\"quoted,value\"" 
+    };
+
+    private static final String[] PATTERNS = new String[] { 
+	"*:*", "a:*", "a:type=X,*", "a:type=X,id=1", "a:id=1,*", "*:type=X,*", "*:id=1,type=X", "a*:*", 
+	"?:*", "a:id=1*,*", "a:type=X,id=?,*", "*:type=Y,pool=p1,*", ":*", ":type=X,*", "b:type=Z", "b:type=W", 
+	"c:*", "c:name=\"quoted,value\"", "d:*", "*:type=*,*", "a:type=X,id=1,pool=p1" 
+    };
+
+    @Test
+    public void shouldQueryAsThePlatformMBeanServer() throws Exception {
+	MBeanServer platform = MBeanServerFactory.newMBeanServer();
+	MBeanServer indexed = new IndexedMBeanServer();
+	for (String name : NAMES) {
+	    platform.registerMBean(new Item(), new ObjectName(name));
+	    indexed.registerMBean(new Item(), new ObjectName(name));
+	}
+	assertSameQueries(platform, indexed);
+
+	// the unregistered names are removed from the indexes
+	for (int i = 0; i < NAMES.length; i += 2) {
+	    platform.unregisterMBean(new ObjectName(NAMES[i]));
+	    indexed.unregisterMBean(new ObjectName(NAMES[i]));
+	}
+	assertSameQueries(platform, indexed);
+
+	for (int i = 0; i < NAMES.length; i += 2) {
+	    platform.registerMBean(new Item(), new ObjectName(NAMES[i]));
+	    indexed.registerMBean(new Item(), new ObjectName(NAMES[i]));
+	}
+	assertSameQueries(platform, indexed);
+    }
+
+    @Test
+    public void shouldApplyTheDefaultDomain() throws Exception {
+	MBeanServer platform = MBeanServerFactory.newMBeanServer();
+	MBeanServer indexed = new IndexedMBeanServer();
+	Assert.assertEquals(indexed.getDefaultDomain(), platform.getDefaultDomain());
+
+	for (MBeanServer mBeanServer : new MBeanServer[] { platform, indexed }) {
+	    ObjectName name = new ObjectName(":type=Item");
+	    ObjectName qualified = new ObjectName(mBeanServer.getDefaultDomain() + ":type=Item");
+
+	    Assert.assertEquals(mBeanServer.registerMBean(new Item(), name).getObjectName(), qualified);
+	    Assert.assertTrue(mBeanServer.isRegistered(name));
+	    Assert.assertTrue(mBeanServer.isRegistered(qualified));
+	    Assert.assertEquals(mBeanServer.getObjectInstance(name).getObjectName(), qualified);
+	    Assert.assertEquals(mBeanServer.getAttribute(name, "Value"), 0);
+	    Assert.assertEquals(mBeanServer.queryNames(name, null), new HashSet<ObjectName>(Arrays.asList(qualified)));
+	    Assert.assertEquals(mBeanServer.queryNames(new ObjectName(":*"), null), 
+		    new HashSet<ObjectName>(Arrays.asList(qualified)));
+
+	    mBeanServer.unregisterMBean(name);
+	    Assert.assertFalse(mBeanServer.isRegistered(name));
+	    Assert.assertFalse(mBeanServer.isRegistered(qualified));
+	    try {
+		mBeanServer.getObjectInstance(name);
+		Assert.fail("found an unregistered MBean");
+	    } catch (InstanceNotFoundException e) {
+		// expected
+	    }
+	}
+    }
+
+    @Test
+    public void shouldAddAndRemoveListenersAsThePlatformMBeanServer() throws Exception {
+	for (MBeanServer mBeanServer : new MBeanServer[] { MBeanServerFactory.newMBeanServer(), new IndexedMBeanServer() }) {
+	    ObjectName name = new ObjectName("a:type=Item");
+	    Item item = new Item();
+	    mBeanServer.registerMBean(item, name);
+
+	    Listener listener = new Listener();
+	    NotificationFilterSupport filter = new NotificationFilterSupport();
+	    filter.enableType(AttributeChangeNotification.ATTRIBUTE_CHANGE);
+	    Object handback = new Object();
+	    mBeanServer.addNotificationListener(name, listener, filter, handback);
+	    mBeanServer.addNotificationListener(name, listener, null, null);
+
+	    // the source is replaced with the name
+	    item.send("other");
+	    item.send(AttributeChangeNotification.ATTRIBUTE_CHANGE);
+	    Assert.assertEquals(listener.notifications.size(), 3);
+	    for (Notification notification : listener.notifications) {
+		Assert.assertEquals(notification.getSource(), name);
+	    }
+	    Assert.assertEquals(listener.handbacks.size(), 3);
+	    Assert.assertTrue(listener.handbacks.contains(handback));
+
+	    // only the listener with the filter and handback
+	    mBeanServer.removeNotificationListener(name, listener, filter, handback);
+	    listener.clear();
+	    item.send(AttributeChangeNotification.ATTRIBUTE_CHANGE);
+	    Assert.assertEquals(listener.notifications.size(), 1);
+	    try {
+		mBeanServer.removeNotificationListener(name, listener, filter, handback);
+		Assert.fail("removed a listener twice");
+	    } catch (ListenerNotFoundException e) {
+		// expected
+	    }
+
+	    // every registration of the listener
+	    mBeanServer.addNotificationListener(name, listener, filter, handback);
+	    mBeanServer.removeNotificationListener(name, listener);
+	    listener.clear();
+	    item.send(AttributeChangeNotification.ATTRIBUTE_CHANGE);
+	    Assert.assertEquals(listener.notifications.size(), 0);
+	    try {
+		mBeanServer.removeNotificationListener(name, listener);
+		Assert.fail("removed a listener twice");
+	    } catch (ListenerNotFoundException e) {
+		// expected
+	    }
+	}
+    }
+
+    @Test
+    public void shouldNotifyTheRegistrations() throws Exception {
+	for (MBeanServer mBeanServer : new MBeanServer[] { MBeanServerFactory.newMBeanServer(), new IndexedMBeanServer() }) {
+	    Listener listener = new Listener();
+	    mBeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, null, null);
+
+	    ObjectName name = new ObjectName("a:type=Item");
+	    mBeanServer.registerMBean(new Item(), name);
+	    mBeanServer.unregisterMBean(name);
+
+	    Assert.assertEquals(listener.notifications.size(), 2);
+	    Assert.assertEquals(listener.notifications.get(0).getType(), MBeanServerNotification.REGISTRATION_NOTIFICATION);
+	    Assert.assertEquals(listener.notifications.get(1).getType(), MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+	    Assert.assertEquals(((MBeanServerNotification) listener.notifications.get(1)).getMBeanName(), name);
+
+	    mBeanServer.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener);
+	}
+    }
+
+    @Test
+    public void shouldQueryWhileTheIndexesChange() throws Exception {
+	final IndexedMBeanServer mBeanServer = new IndexedMBeanServer();
+	Set<ObjectName> stable = new HashSet<ObjectName>();
+	for (int i = 0; i < 10; i++) {
+	    ObjectName name = new ObjectName("stable:type=Item,id=" + i);
+	    mBeanServer.registerMBean(new Item(), name);
+	    stable.add(name);
+	}
+
+	// registers and unregisters names whose buckets are emptied and created again
+	final AtomicBoolean running = new AtomicBoolean(true);
+	final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	List<Thread> threads = new ArrayList<Thread>();
+	for (int t = 0; t < 2; t++) {
+	    final int thread = t;
+	    threads.add(new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    try {
+			int i = 0;
+			while (running.get()) {
+			    ObjectName name = new ObjectName("churn:type=Item,thread=" + thread + ",id=" + (i++ % 3));
+			    mBeanServer.registerMBean(new Item(), name);
+			    mBeanServer.unregisterMBean(name);
+			}
+		    } catch (Throwable e) {
+			failure.compareAndSet(null, e);
+		    }
+		}
+	    }));
+	}
+	for (Thread thread : threads) {
+	    thread.start();
+	}
+
+	try {
+	    ObjectName stablePattern = new ObjectName("stable:type=Item,*");
+	    ObjectName churnPattern = new ObjectName("churn:id=1,*");
+	    ObjectName itemPattern = new ObjectName("*:type=Item,*");
+	    for (int i = 0; i < 20000; i++) {
+		Assert.assertEquals(mBeanServer.queryNames(stablePattern, null), stable);
+		for (ObjectName name : mBeanServer.queryNames(churnPattern, null)) {
+		    Assert.assertTrue(churnPattern.apply(name), name.toString());
+		}
+		Assert.assertTrue(mBeanServer.queryNames(itemPattern, null).containsAll(stable));
+	    }
+	} finally {
+	    running.set(false);
+	    for (Thread thread : threads) {
+		thread.join();
+	    }
+	}
+	Assert.assertNull(failure.get());
+
+	// the buckets of the unregistered names are gone
+	Assert.assertEquals(mBeanServer.queryNames(new ObjectName("churn:*"), null).size(), 0);
+	Assert.assertFalse(Arrays.asList(mBeanServer.getDomains()).contains("churn"));
+	Assert.assertEquals(mBeanServer.getMBeanCount().intValue(), stable.size() + 1);
+    }
+
+    private static void assertSameQueries(MBeanServer platform, MBeanServer indexed) throws Exception {
+	Assert.assertEquals(indexed.getMBeanCount(), platform.getMBeanCount());
+	Assert.assertEquals(new HashSet<String>(Arrays.asList(indexed.getDomains())), 
+		new HashSet<String>(Arrays.asList(platform.getDomains())));
+	Assert.assertEquals(indexed.queryNames(null, null), platform.queryNames(null, null));
+
+	for (String pattern : PATTERNS) {
+	    ObjectName name = new ObjectName(pattern);
+	    Assert.assertEquals(indexed.queryNames(name, null), platform.queryNames(name, null), pattern);
+	    Assert.assertEquals(indexed.queryMBeans(name, null), platform.queryMBeans(name, null), pattern);
+	    Assert.assertEquals(indexed.queryNames(name, Query.eq(Query.attr("Value"), Query.value(0))), 
+		    platform.queryNames(name, Query.eq(Query.attr("Value"), Query.value(0))), pattern);
+	}
+
+	for (String name : NAMES) {
+	    Assert.assertEquals(indexed.isRegistered(new ObjectName(name)), platform.isRegistered(new ObjectName(name)));
+	}
+    }
+
+    public interface ItemMBean {
+
+	int getValue();
+
+    }
+
+    public static class Item extends NotificationBroadcasterSupport implements ItemMBean {
+
+	private long sequence;
+
+	@Override
+	public int getValue() {
+	    return 0;
+	}
+
+	void send(String type) {
+	    sendNotification(new Notification(type, this, ++sequence));
+	}
+
+    }
+
+    private static class Listener implements NotificationListener {
+
+	final List<Notification> notifications = new ArrayList<Notification>();
+
+	final List<Object> handbacks = new ArrayList<Object>();
+
+	@Override
+	public synchronized void handleNotification(Notification notification, Object handback) {
+	    notifications.add(notification);
+	    handbacks.add(handback);
+	}
+
+	synchronized void clear() {
+	    notifications.clear();
+	    handbacks.clear();
+	}
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.gescobar.management.MBeanFactory;
+import org.gescobar.management.ManagementException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestLazyMBean {
+
+    @Test
+    public void shouldStopWatchingTheThresholdsWhenUnregistered() throws Exception {
+	ThresholdSampler sampler = ThresholdSampler.getDefault();
+	int watches = sampler.getWatchCount();
+
+	MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+	ObjectName name = new ObjectName("org.gescobar.test:type=Gauge");
+	LazyMBean<Gauge> lazyMBean = createLazyMBean(new Gauge());
+	mBeanServer.registerMBean(lazyMBean, name);
+	Assert.assertFalse(lazyMBean.isMaterialized());
+	Assert.assertEquals(sampler.getWatchCount(), watches);
+
+	// the real MBean is registered, and starts the sampling, on the first call
+	Assert.assertEquals(mBeanServer.getAttribute(name, "load"), 0);
+	Assert.assertTrue(lazyMBean.isMaterialized());
+	Assert.assertEquals(sampler.getWatchCount(), watches + 1);
+
+	mBeanServer.unregisterMBean(name);
+	Assert.assertEquals(sampler.getWatchCount(), watches);
+    }
+
+    @Test
+    public void shouldNotCreateTheRealMBeanWhenUnregistered() throws Exception {
+	MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+	ObjectName name = new ObjectName("org.gescobar.test:type=Gauge");
+	LazyMBean<Gauge> lazyMBean = createLazyMBean(new Gauge());
+
+	mBeanServer.registerMBean(lazyMBean, name);
+	mBeanServer.unregisterMBean(name);
+	Assert.assertFalse(lazyMBean.isMaterialized());
+    }
+
+    private static LazyMBean<Gauge> createLazyMBean(Gauge gauge) throws Exception {
+	FieldAccessor accessor = Accessors.forField(Gauge.class.getDeclaredField("load"));
+	MBeanInfo mBeanInfo = new MBeanInfo(Gauge.class.getName(), "", new MBeanAttributeInfo[] { 
+		new MBeanAttributeInfo("load", "int", "", true, false, false) }, null, null, null);
+	final MBeanMetadata metadata = new MBeanMetadata(mBeanInfo, new AttributeAccessor[] { accessor }, 
+		new OperationTable(new OperationInvoker[0]), new Field[0], Collections.<String,Long>emptyMap(), 
+		new Threshold[] { new Threshold(accessor, 100, 10) });
+
+	MBeanFactory mBeanFactory = new MBeanFactory() {
+	    @Override
+	    public <T> DynamicMBean createMBean(T instance) throws ManagementException {
+		return metadata.createMBean(instance);
+	    }
+	};
+
+	return new LazyMBean<Gauge>(mBeanFactory, gauge, new MBeanInfo(Gauge.class.getName(), "", null, null, null, null));
+    }
+
+    public static class Gauge {
+
+	volatile int load;
+
+    }
+
+}
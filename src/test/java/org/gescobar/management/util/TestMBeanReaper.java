@@ -0,0 +1,100 @@
+package org.gescobar.management.util;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestMBeanReaper {
+
+    @Test
+    public void shouldUnregisterTheMBeanOfACollectedInstance() throws Exception {
+	MBeanReaper reaper = new MBeanReaper();
+	try {
+	    Statistics statistics = new Statistics();
+	    statistics.setMBeanReaper(reaper);
+
+	    MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+	    ObjectName name = new ObjectName("org.gescobar.test:type=Gauge");
+	    register(mBeanServer, name, reaper);
+	    Assert.assertTrue(mBeanServer.isRegistered(name));
+	    Assert.assertEquals(statistics.getReapedCount(), 0);
+
+	    long deadline = System.currentTimeMillis() + 10000;
+	    while (mBeanServer.isRegistered(name) && System.currentTimeMillis() < deadline) {
+		System.gc();
+		Thread.sleep(50);
+	    }
+
+	    Assert.assertFalse(mBeanServer.isRegistered(name));
+	    Assert.assertEquals(reaper.getReapedCount(), 1);
+	    Assert.assertEquals(reaper.getFailureCount(), 0);
+	    Assert.assertEquals(statistics.getReapedCount(), 1);
+	    Assert.assertEquals(statistics.getReaperFailureCount(), 0);
+	    Assert.assertTrue(statistics.getReaperBatchCount() >= 1);
+	} finally {
+	    reaper.shutdown();
+	}
+    }
+
+    @Test
+    public void shouldKeepTheMBeanOfAReachableInstance() throws Exception {
+	MBeanReaper reaper = new MBeanReaper();
+	try {
+	    MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+	    ObjectName name = new ObjectName("org.gescobar.test:type=Gauge");
+	    Gauge gauge = new Gauge();
+	    MBeanImpl<Gauge> mBean = createMBean(gauge);
+	    mBean.bindWeakly(reaper);
+	    mBeanServer.registerMBean(mBean, name);
+
+	    System.gc();
+	    Thread.sleep(200);
+
+	    Assert.assertTrue(mBeanServer.isRegistered(name));
+	    gauge.load = 5;
+	    Assert.assertEquals(mBeanServer.getAttribute(name, "load"), 5);
+	    Assert.assertEquals(reaper.getReapedCount(), 0);
+	} finally {
+	    reaper.shutdown();
+	}
+    }
+
+    /**
+     * Registers the MBean of an instance that isn't referenced once this method returns.
+     */
+    private static void register(MBeanServer mBeanServer, ObjectName name, MBeanReaper reaper) throws Exception {
+	MBeanImpl<Gauge> mBean = createMBean(new Gauge());
+	mBean.bindWeakly(reaper);
+	mBeanServer.registerMBean(mBean, name);
+    }
+
+    private static MBeanImpl<Gauge> createMBean(Gauge gauge) throws Exception {
+	FieldAccessor accessor = Accessors.forField(Gauge.class.getDeclaredField("load"));
+	MBeanInfo mBeanInfo = new MBeanInfo(Gauge.class.getName(), "", new MBeanAttributeInfo[] { 
+		new MBeanAttributeInfo("load", "int", "", true, false, false) }, null, null, null);
+	MBeanMetadata metadata = new MBeanMetadata(mBeanInfo, new AttributeAccessor[] { accessor }, 
+		new OperationTable(new OperationInvoker[0]), new Field[0], Collections.<String,Long>emptyMap(), 
+		new Threshold[0]);
+
+	return metadata.createMBean(gauge);
+    }
+
+    public static class Gauge {
+
+	volatile int load;
+
+    }
+
+}
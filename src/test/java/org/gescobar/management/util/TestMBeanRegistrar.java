@@ -0,0 +1,257 @@
+package org.gescobar.management.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestMBeanRegistrar {
+
+    private MBeanServer mBeanServer;
+
+    private MBeanRegistrar registrar;
+
+    @BeforeMethod
+    public void createRegistrar() {
+	mBeanServer = MBeanServerFactory.newMBeanServer();
+	registrar = new MBeanRegistrar(mBeanServer);
+    }
+
+    @AfterMethod
+    public void shutdownRegistrar() {
+	registrar.shutdown();
+    }
+
+    @Test
+    public void shouldApplyTheRequestsInOrderOnFlush() throws Exception {
+	ObjectName name = name(1);
+	for (int i = 0; i < 100; i++) {
+	    registrar.register(new Dummy(), name);
+	    registrar.unregister(name);
+	}
+	registrar.register(new Dummy(), name);
+	registrar.flush();
+
+	Assert.assertTrue(mBeanServer.isRegistered(name));
+	Assert.assertEquals(registrar.getQueueDepth(), 0);
+	Assert.assertEquals(registrar.getFailureCount(), 0);
+
+	registrar.unregister(name);
+	Assert.assertTrue(registrar.flush(5, TimeUnit.SECONDS));
+	Assert.assertFalse(mBeanServer.isRegistered(name));
+    }
+
+    @Test
+    public void shouldTimeOutTheFlushWhileTheWorkerIsBlocked() throws Exception {
+	Blocker blocker = new Blocker();
+	registrar.register(blocker, name(0));
+	blocker.awaitRegistration();
+	registrar.register(new Dummy(), name(1));
+
+	Assert.assertFalse(registrar.flush(100, TimeUnit.MILLISECONDS));
+	Assert.assertFalse(mBeanServer.isRegistered(name(1)));
+
+	blocker.release();
+	Assert.assertTrue(registrar.flush(5, TimeUnit.SECONDS));
+	Assert.assertTrue(mBeanServer.isRegistered(name(1)));
+    }
+
+    @Test
+    public void shouldCoalesceTheRequestsOfABatch() throws Exception {
+	Blocker blocker = new Blocker();
+	registrar.register(blocker, name(0));
+	blocker.awaitRegistration();
+
+	// queued while the worker is blocked, so they are applied in the same batch
+	Map<ObjectName,Object> mBeans = new LinkedHashMap<ObjectName,Object>();
+	List<ObjectName> names = new ArrayList<ObjectName>();
+	for (int i = 1; i <= 10; i++) {
+	    mBeans.put(name(i), new Dummy());
+	    names.add(name(i));
+	}
+	registrar.registerAll(mBeans);
+	registrar.unregisterAll(names.subList(0, 5));
+
+	blocker.release();
+	registrar.flush();
+
+	for (int i = 1; i <= 10; i++) {
+	    Assert.assertEquals(mBeanServer.isRegistered(name(i)), i > 5);
+	}
+	Assert.assertEquals(registrar.getCoalescedCount(), 10);
+	Assert.assertEquals(registrar.getRegistrationCount(), 6);
+	Assert.assertEquals(registrar.getUnregistrationCount(), 0);
+    }
+
+    @Test
+    public void shouldNotCoalesceARegistrationThatIsNotTheFirstOfItsName() throws Exception {
+	Blocker blocker = new Blocker();
+	registrar.register(blocker, name(0));
+	blocker.awaitRegistration();
+
+	// in order, the second registration fails and the unregistration removes the first
+	registrar.register(new Dummy(), name(1));
+	registrar.register(new Dummy(), name(1));
+	registrar.unregister(name(1));
+
+	blocker.release();
+	registrar.flush();
+
+	Assert.assertFalse(mBeanServer.isRegistered(name(1)));
+	Assert.assertEquals(registrar.getCoalescedCount(), 0);
+	Assert.assertEquals(registrar.getFailureCount(), 1);
+    }
+
+    @Test
+    public void shouldNotCoalesceTheRequestsOfARegisteredName() throws Exception {
+	registrar.register(new Dummy(), name(1));
+	registrar.flush();
+
+	Blocker blocker = new Blocker();
+	registrar.register(blocker, name(0));
+	blocker.awaitRegistration();
+
+	// in order, the registration fails and the unregistration removes the registered MBean
+	registrar.register(new Dummy(), name(1));
+	registrar.unregister(name(1));
+
+	blocker.release();
+	registrar.flush();
+
+	Assert.assertFalse(mBeanServer.isRegistered(name(1)));
+	Assert.assertEquals(registrar.getCoalescedCount(), 0);
+    }
+
+    @Test
+    public void shouldApplyThePendingRequestsOnShutdown() throws Exception {
+	final Blocker blocker = new Blocker();
+	registrar.register(blocker, name(0));
+	blocker.awaitRegistration();
+	registrar.register(new Dummy(), name(1));
+
+	new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		try {
+		    Thread.sleep(100);
+		} catch (InterruptedException e) {
+		    // release it anyway
+		}
+		blocker.release();
+	    }
+	}).start();
+	registrar.shutdown();
+	Assert.assertTrue(mBeanServer.isRegistered(name(1)));
+
+	// applied on the calling thread
+	registrar.register(new Dummy(), name(2));
+	Assert.assertTrue(mBeanServer.isRegistered(name(2)));
+	Assert.assertTrue(registrar.flush(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldNotLoseTheRequestsSubmittedDuringTheShutdown() throws Exception {
+	final int threads = 4;
+	final int requests = 500;
+	final CountDownLatch started = new CountDownLatch(threads);
+	List<Thread> submitters = new ArrayList<Thread>();
+	for (int t = 0; t < threads; t++) {
+	    final int offset = t * requests;
+	    Thread submitter = new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    started.countDown();
+		    for (int i = 0; i < requests; i++) {
+			registrar.register(new Dummy(), name(offset + i));
+		    }
+		}
+	    });
+	    submitter.start();
+	    submitters.add(submitter);
+	}
+
+	started.await();
+	registrar.shutdown();
+	for (Thread submitter : submitters) {
+	    submitter.join();
+	}
+
+	Assert.assertTrue(registrar.flush(5, TimeUnit.SECONDS));
+	for (int i = 0; i < threads * requests; i++) {
+	    Assert.assertTrue(mBeanServer.isRegistered(name(i)), name(i).toString());
+	}
+    }
+
+    private static ObjectName name(int id) {
+	try {
+	    return new ObjectName("org.gescobar.test:type=Dummy,id=" + id);
+	} catch (MalformedObjectNameException e) {
+	    throw new IllegalArgumentException(e);
+	}
+    }
+
+    public interface DummyMBean {
+    }
+
+    public static class Dummy implements DummyMBean {
+    }
+
+    public interface BlockerMBean {
+    }
+
+    /**
+     * Blocks the thread that registers it until it's released.
+     */
+    public static class Blocker implements BlockerMBean, MBeanRegistration {
+
+	private final CountDownLatch registering = new CountDownLatch(1);
+
+	private final CountDownLatch released = new CountDownLatch(1);
+
+	void awaitRegistration() throws InterruptedException {
+	    Assert.assertTrue(registering.await(5, TimeUnit.SECONDS));
+	}
+
+	void release() {
+	    released.countDown();
+	}
+
+	@Override
+	public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+	    registering.countDown();
+	    released.await(5, TimeUnit.SECONDS);
+	    return name;
+	}
+
+	@Override
+	public void postRegister(Boolean registrationDone) {
+	}
+
+	@Override
+	public void preDeregister() throws Exception {
+	}
+
+	@Override
+	public void postDeregister() {
+	}
+
+    }
+
+}
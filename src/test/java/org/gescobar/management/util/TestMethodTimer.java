@@ -0,0 +1,61 @@
+package org.gescobar.management.util;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestMethodTimer {
+
+    @Test
+    public void shouldShareTheTimerOfTheOverloads() throws Exception {
+	MethodTimer timer = MethodTimer.forMethod(Timed.class.getMethod("run"));
+	Assert.assertSame(MethodTimer.forMethod(Timed.class.getMethod("run", int.class)), timer);
+	Assert.assertSame(MethodTimer.forMethod(Timed.class.getMethod("run")), timer);
+	Assert.assertNotSame(MethodTimer.forMethod(Timed.class.getMethod("stop")), timer);
+    }
+
+    @Test
+    public void shouldNotKeepTheClassLoaderOfATimedMethodReachable() throws Exception {
+	WeakReference<ClassLoader> loader = timeInAnotherClassLoader();
+
+	long deadline = System.currentTimeMillis() + 10000;
+	while (loader.get() != null && System.currentTimeMillis() < deadline) {
+	    System.gc();
+	    Thread.sleep(50);
+	}
+
+	Assert.assertNull(loader.get());
+    }
+
+    private WeakReference<ClassLoader> timeInAnotherClassLoader() throws Exception {
+	URL classes = Timed.class.getProtectionDomain().getCodeSource().getLocation();
+	ClassLoader loader = new URLClassLoader(new URL[] { classes }, null);
+	Class<?> type = loader.loadClass(Timed.class.getName());
+	Assert.assertNotSame(type, Timed.class);
+
+	MethodTimer.forMethod(type.getMethod("run")).record(1000, false);
+
+	return new WeakReference<ClassLoader>(loader);
+    }
+
+    public static class Timed {
+
+	public void run() {
+	}
+
+	public void run(int times) {
+	}
+
+	public void stop() {
+	}
+
+    }
+
+}
@@ -0,0 +1,83 @@
+package org.gescobar.management.util;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.management.openmbean.CompositeData;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestOpenTypeConverter {
+
+    @Test
+    public void shouldReleaseTheClassLoaderOfARemovedConverter() throws Exception {
+	WeakReference<ClassLoader> loader = convertInAnotherClassLoader();
+
+	long deadline = System.currentTimeMillis() + 10000;
+	while (loader.get() != null && System.currentTimeMillis() < deadline) {
+	    System.gc();
+	    Thread.sleep(50);
+	}
+
+	Assert.assertNull(loader.get());
+    }
+
+    @Test
+    public void shouldConvertTheElementsSeenWhileReadingACollection() throws Exception {
+	OpenTypeConverter converter = OpenTypeConverter.forType(Names.class.getDeclaredField("names").getGenericType());
+
+	// grew after its size was read
+	Collection<String> names = new AbstractCollection<String>() {
+	    @Override
+	    public Iterator<String> iterator() {
+		return Arrays.asList("a", "b").iterator();
+	    }
+
+	    @Override
+	    public int size() {
+		return 1;
+	    }
+	};
+
+	Assert.assertEquals((String[]) converter.toOpenValue(names), new String[] { "a", "b" });
+    }
+
+    private WeakReference<ClassLoader> convertInAnotherClassLoader() throws Exception {
+	URL classes = Point.class.getProtectionDomain().getCodeSource().getLocation();
+	ClassLoader loader = new URLClassLoader(new URL[] { classes }, null);
+	Class<?> type = loader.loadClass(Point.class.getName());
+	Assert.assertNotSame(type, Point.class);
+
+	CompositeData point = (CompositeData) OpenTypeConverter.forType(type).toOpenValue(type.newInstance());
+	Assert.assertEquals(point.get("x"), 1);
+
+	OpenTypeConverter.remove(loader);
+
+	return new WeakReference<ClassLoader>(loader);
+    }
+
+    public static class Names {
+
+	Collection<String> names;
+
+    }
+
+    public static class Point {
+
+	public int getX() {
+	    return 1;
+	}
+
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.gescobar.management.util;
+
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestOperationTable {
+
+    @Test
+    public void shouldResolveAnExactSignature() throws Exception {
+	Invoker reset = new Invoker("reset");
+	Invoker resetInt = new Invoker("reset", int.class);
+	Invoker resetLong = new Invoker("reset", long.class);
+	OperationTable table = new OperationTable(new OperationInvoker[] { reset, resetInt, resetLong });
+
+	Assert.assertSame(table.lookup("reset", new String[0]), reset);
+	Assert.assertSame(table.lookup("reset", new String[] { "int" }), resetInt);
+	Assert.assertSame(table.lookup("reset", new String[] { "long" }), resetLong);
+
+	// not interned, compared by value
+	Assert.assertSame(table.lookup("reset", new String[] { new String("long") }), resetLong);
+
+	// the exact signatures are never resolved leniently
+	Assert.assertEquals(resetInt.lookups + resetLong.lookups, 0);
+    }
+
+    @Test
+    public void shouldResolveTheWrapperClassNames() throws Exception {
+	Invoker resetInt = new Invoker("reset", int.class);
+	Invoker resetLong = new Invoker("reset", long.class);
+	Invoker add = new Invoker("add", int.class, Integer.class);
+	OperationTable table = new OperationTable(new OperationInvoker[] { resetInt, resetLong, add });
+
+	Assert.assertSame(table.lookup("reset", new String[] { "java.lang.Integer" }), resetInt);
+	Assert.assertSame(table.lookup("reset", new String[] { "java.lang.Long" }), resetLong);
+	Assert.assertSame(table.lookup("add", new String[] { "java.lang.Integer", "java.lang.Integer" }), add);
+
+	// a wrapper parameter doesn't accept the primitive name
+	Assert.assertNull(table.lookup("add", new String[] { "int", "int" }));
+	Assert.assertNull(table.lookup("reset", new String[] { "java.lang.Short" }));
+    }
+
+    @Test
+    public void shouldResolveANullSignatureToTheOnlyOverload() throws Exception {
+	Invoker reset = new Invoker("reset", int.class);
+	Invoker add = new Invoker("add", int.class);
+	Invoker addLong = new Invoker("add", long.class);
+	OperationTable table = new OperationTable(new OperationInvoker[] { reset, add, addLong });
+
+	Assert.assertSame(table.lookup("reset", null), reset);
+	Assert.assertSame(table.lookup("reset", new String[0]), reset);
+
+	// ambiguous
+	Assert.assertNull(table.lookup("add", null));
+
+	Assert.assertTrue(table.contains("add"));
+	Assert.assertFalse(table.contains("remove"));
+	Assert.assertNull(table.lookup("remove", null));
+    }
+
+    @Test
+    public void shouldCacheTheSignaturesThatDontResolve() throws Exception {
+	Invoker reset = new Invoker("reset", int.class);
+	Invoker resetLong = new Invoker("reset", long.class);
+	OperationTable table = new OperationTable(new OperationInvoker[] { reset, resetLong });
+
+	String[] signature = new String[] { "java.lang.String" };
+	Assert.assertNull(table.lookup("reset", signature));
+	int lookups = reset.lookups;
+	Assert.assertTrue(lookups > 0);
+
+	// resolved from the cache, even if the caller changes its array
+	signature[0] = "java.lang.Integer";
+	Assert.assertSame(table.lookup("reset", signature), reset);
+	lookups = reset.lookups;
+	Assert.assertNull(table.lookup("reset", new String[] { "java.lang.String" }));
+	Assert.assertSame(table.lookup("reset", new String[] { "java.lang.Integer" }), reset);
+	Assert.assertEquals(reset.lookups, lookups);
+    }
+
+    @Test
+    public void shouldLimitTheCachedSignatures() throws Exception {
+	Invoker reset = new Invoker("reset", int.class);
+	OperationTable table = new OperationTable(new OperationInvoker[] { reset });
+
+	for (int i = 0; i < 1000; i++) {
+	    Assert.assertNull(table.lookup("reset", new String[] { "Type" + i }));
+	}
+
+	// the first ones are still cached, the last ones are resolved each time
+	int lookups = reset.lookups;
+	table.lookup("reset", new String[] { "Type0" });
+	Assert.assertEquals(reset.lookups, lookups);
+	table.lookup("reset", new String[] { "Type999" });
+	Assert.assertTrue(reset.lookups > lookups);
+    }
+
+    /**
+     * Counts the times the types are requested, i.e. the signature is resolved
+     * leniently.
+     */
+    private static class Invoker implements OperationInvoker {
+
+	private final String name;
+
+	private final Class<?>[] types;
+
+	private int calls;
+
+	private int lookups;
+
+	Invoker(String name, Class<?>... types) {
+	    this.name = name;
+	    this.types = types;
+	}
+
+	@Override
+	public String getName() {
+	    return name;
+	}
+
+	@Override
+	public Class<?>[] getParameterTypes() {
+	    // the table reads the types once when it's built
+	    if (calls++ > 0) {
+		lookups++;
+	    }
+	    return types;
+	}
+
+	@Override
+	public Object invoke(Object target, Object[] params) throws MBeanException, ReflectionException {
+	    return null;
+	}
+
+    }
+
+}
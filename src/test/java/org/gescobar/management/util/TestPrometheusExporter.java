@@ -0,0 +1,187 @@
+package org.gescobar.management.util;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+import org.gescobar.management.Counter;
+import org.gescobar.management.Histogram;
+import org.gescobar.management.Meter;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author German Escobar
+ *
+ */
+public class TestPrometheusExporter {
+
+    private PrometheusExporter exporter;
+
+    @BeforeMethod
+    public void start() {
+	exporter = new PrometheusExporter();
+	exporter.start();
+	Assert.assertNotNull(exporter.getAddress());
+    }
+
+    @AfterMethod
+    public void stop() {
+	exporter.stop();
+    }
+
+    @Test
+    public void shouldServeTheMetricsOfTheRegisteredMBeans() throws Exception {
+	Service service = new Service();
+	service.requests.add(3);
+	service.latency.record(10);
+	service.latency.record(20);
+	service.events.mark(2);
+
+	ObjectName name = new ObjectName("org.gescobar.test:type=Service,name=" + ObjectName.quote("a\"b"));
+	exporter.beanRegistered(name, createMBean(service));
+
+	List<String> lines = scrape();
+
+	Assert.assertTrue(lines.contains("# TYPE org_gescobar_test_Service_requests counter"), lines.toString());
+	Assert.assertTrue(lines.contains("org_gescobar_test_Service_requests{name=\"a\\\"b\"} 3"), lines.toString());
+
+	Assert.assertTrue(lines.contains("# TYPE org_gescobar_test_Service_latency gauge"), lines.toString());
+	Assert.assertTrue(lines.contains("org_gescobar_test_Service_latency{name=\"a\\\"b\",item=\"count\"} 2"), 
+		lines.toString());
+	Assert.assertTrue(startsWith(lines, "org_gescobar_test_Service_latency{name=\"a\\\"b\",item=\"p99\"} "), 
+		lines.toString());
+
+	Assert.assertTrue(lines.contains("# TYPE org_gescobar_test_Service_eventsCount gauge"), lines.toString());
+	Assert.assertTrue(lines.contains("org_gescobar_test_Service_eventsCount{name=\"a\\\"b\"} 2"), lines.toString());
+	Assert.assertTrue(startsWith(lines, "org_gescobar_test_Service_eventsOneMinuteRate{name=\"a\\\"b\"} "), 
+		lines.toString());
+
+	// the items are escaped as the labels of the names
+	Assert.assertTrue(lines.contains("org_gescobar_test_Service_odd{name=\"a\\\"b\",item=\"x\\\"y\\\\z\"} 7"), 
+		lines.toString());
+    }
+
+    @Test
+    public void shouldStopServingTheUnregisteredMBeans() throws Exception {
+	ObjectName name = new ObjectName("org.gescobar.test:type=Service");
+	MBeanImpl<Service> mBean = createMBean(new Service());
+	exporter.beanRegistered(name, mBean);
+	Assert.assertTrue(lines(scrape(), "org_gescobar_test_Service_requests") > 0);
+
+	exporter.beanUnregistered(name, mBean);
+	Assert.assertEquals(lines(scrape(), "org_gescobar_test_Service_"), 0);
+    }
+
+    private List<String> scrape() throws Exception {
+	InetSocketAddress address = exporter.getAddress();
+	URL url = new URL("http://127.0.0.1:" + address.getPort() + PrometheusExporter.PATH);
+	HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+	try {
+	    Assert.assertEquals(connection.getResponseCode(), 200);
+	    Assert.assertTrue(connection.getContentType().startsWith("text/plain"));
+
+	    List<String> lines = new ArrayList<String>();
+	    BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+	    String line;
+	    while ((line = reader.readLine()) != null) {
+		lines.add(line);
+	    }
+	    reader.close();
+
+	    return lines;
+	} finally {
+	    connection.disconnect();
+	}
+    }
+
+    private static boolean startsWith(List<String> lines, String prefix) {
+	return lines(lines, prefix) > 0;
+    }
+
+    private static int lines(List<String> lines, String prefix) {
+	int count = 0;
+	for (String line : lines) {
+	    if (line.startsWith(prefix)) {
+		count++;
+	    }
+	}
+
+	return count;
+    }
+
+    private static MBeanImpl<Service> createMBean(Service service) throws Exception {
+	List<AttributeAccessor> accessors = new ArrayList<AttributeAccessor>();
+	accessors.add(Accessors.forCounter(Service.class.getDeclaredField("requests")));
+	accessors.add(Accessors.forHistogram(Service.class.getDeclaredField("latency")));
+	accessors.addAll(Arrays.asList(Accessors.forMeter(Service.class.getDeclaredField("events"))));
+	accessors.add(new OddAccessor());
+
+	MBeanInfo mBeanInfo = new MBeanInfo(Service.class.getName(), "", null, null, null, null);
+	MBeanMetadata metadata = new MBeanMetadata(mBeanInfo, accessors.toArray(new AttributeAccessor[0]), 
+		new OperationTable(new OperationInvoker[0]));
+
+	return metadata.createMBean(service);
+    }
+
+    public static class Service {
+
+	Counter requests = new Counter();
+
+	Histogram latency = new Histogram();
+
+	Meter events = new Meter();
+
+    }
+
+    /**
+     * Returns a CompositeData whose item has to be escaped.
+     */
+    private static class OddAccessor implements AttributeAccessor {
+
+	@Override
+	public String getName() {
+	    return "odd";
+	}
+
+	@Override
+	public Class<?> getType() {
+	    return CompositeData.class;
+	}
+
+	@Override
+	public Object get(Object target) {
+	    try {
+		String[] items = new String[] { "x\"y\\z" };
+		CompositeType type = new CompositeType("Odd", "Odd", items, items, 
+			new OpenType<?>[] { SimpleType.LONG });
+		return new CompositeDataSupport(type, items, new Object[] { 7L });
+	    } catch (Exception e) {
+		throw new IllegalStateException(e);
+	    }
+	}
+
+	@Override
+	public void set(Object target, Object value) throws InvalidAttributeValueException {
+	    throw new InvalidAttributeValueException("odd is read-only");
+	}
+
+    }
+
+}